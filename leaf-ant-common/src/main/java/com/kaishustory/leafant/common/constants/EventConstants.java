@@ -47,6 +47,46 @@ public class EventConstants {
      */
     public final static String ACTION_INDEX_CREATE = "create";
 
+    /**
+     * 事件动作：ES索引重建（按新映射创建新版本物理索引）
+     */
+    public final static String ACTION_INDEX_REBUILD = "es-rebuild";
+
+    /**
+     * 事件动作：ES索引复制（重建时从现有索引复制数据，不重新读取MySQL）
+     */
+    public final static String ACTION_INDEX_COPY = "es-copy";
+
+    /**
+     * 事件动作：ES索引切换（重建完成后，别名切换到新版本物理索引）
+     */
+    public final static String ACTION_INDEX_SWITCH = "es-switch";
+
+    /**
+     * 事件动作：Redis增加分片（迁移新分片负责的Key）
+     */
+    public final static String ACTION_REDIS_ADD_SHARD = "redis-add-shard";
+
+    /**
+     * 事件动作：Redis继续分片迁移（上次迁移失败或中断后重新执行，完成后清除迁移前分片）
+     */
+    public final static String ACTION_REDIS_RESUME_SHARD = "redis-resume-shard";
+
+    /**
+     * 事件动作：MySQL重新分表（新分表规则生效，迁移期间同时写入原分表）
+     */
+    public final static String ACTION_MYSQL_RESHARD = "mysql-reshard";
+
+    /**
+     * 事件动作：MySQL重新分表完成（迁移数据补写完成，停止写入原分表）
+     */
+    public final static String ACTION_MYSQL_RESHARD_FINISH = "mysql-reshard-finish";
+
+    /**
+     * 事件动作：查询事件路由目标队列深度（返回处理该请求的转换节点）
+     */
+    public final static String ACTION_ROUTE_STATS = "route-stats";
+
     /**
      * 事件动作：同步状态
      */
@@ -37,6 +37,11 @@ public class MappingConstants {
      */
     public final static String TYPE_MYSQL = "mysql";
 
+    /**
+     * 副本子表类型：转换节点本地存储（内存映射文件）
+     */
+    public final static String TYPE_LOCAL = "local";
+
     /**
      * 事件来源：Canal
      */
@@ -47,4 +52,34 @@ public class MappingConstants {
      */
     public final static String SOURCE_INIT = "init";
 
+    /**
+     * 分表策略：取模（分表字段值 % 分表数，目标数据源Key为余数）
+     */
+    public final static String SHARDING_MOD = "mod";
+
+    /**
+     * 分表策略：一致性哈希（目标数据源Key为分片编号，增加分片只迁移新分片负责的数据）
+     */
+    public final static String SHARDING_HASH = "hash";
+
+    /**
+     * 分表策略：范围（目标数据源Key为范围起始值，分表字段值归属不大于该值的最大起始值）
+     */
+    public final static String SHARDING_RANGE = "range";
+
+    /**
+     * MQ转发格式：事件列表JSON（原格式，包含全部列信息）
+     */
+    public final static String MQ_ENVELOPE_EVENT = "event";
+
+    /**
+     * MQ转发格式：精简JSON（每条消息一行，只包含主键及变更字段）
+     */
+    public final static String MQ_ENVELOPE_COMPACT = "compact";
+
+    /**
+     * MQ转发格式：二进制（按结构描述编码，结构ID在消息属性 schemaId 中）
+     */
+    public final static String MQ_ENVELOPE_BINARY = "binary";
+
 }
@@ -12,11 +12,14 @@
 
 package com.kaishustory.leafant.common.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static com.kaishustory.leafant.common.constants.EventConstants.LOAD_STATUS_NO;
 import static com.kaishustory.leafant.common.constants.MappingConstants.TYPE_ES;
@@ -62,16 +65,46 @@ public class EsSyncConfig {
      */
     private boolean esIndexManager;
 
+    /**
+     * 索引分片数
+     */
+    private int numberOfShards = 5;
+
+    /**
+     * 索引副本数
+     */
+    private int numberOfReplicas = 1;
+
+    /**
+     * 索引版本（0：固定名称索引，>0：别名 index 指向物理索引 index_v版本号）
+     */
+    private int indexVersion = 0;
+
+    /**
+     * 重建中的物理索引（为空表示未重建）
+     */
+    private String rebuildIndex;
+
+    /**
+     * 重建中的新版本主表结构映射（仅投影变更时记录；重建期间原映射保持不变，切换后替换 masterTable）
+     */
+    private EsSyncMappingTable rebuildMasterTable;
+
     /**
      * 多表结构
      */
     private boolean mult;
 
     /**
-     * 多表结构，副本子表类型（支持：es、redis）
+     * 多表结构，副本子表类型（支持：es、redis、local）
      */
     private String copyChildType = TYPE_ES;
 
+    /**
+     * 是否本地副本（子表副本配置，数据写入各转换节点本地存储，不写入ES）
+     */
+    private boolean localCopy = false;
+
     /**
      * 是否同步
      */
@@ -97,6 +130,49 @@ public class EsSyncConfig {
      */
     private Date updateTime;
 
+    /**
+     * 当前物理索引名称
+     */
+    @JsonIgnore
+    public String getPhysicalIndex() {
+        return getVersionIndex(indexVersion);
+    }
+
+    /**
+     * 指定版本物理索引名称
+     *
+     * @param version 索引版本
+     * @return 物理索引名称
+     */
+    public String getVersionIndex(int version) {
+        return version > 0 ? index + "_v" + version : index;
+    }
+
+    /**
+     * 是否重建索引中
+     */
+    @JsonIgnore
+    public boolean isRebuilding() {
+        return rebuildIndex != null;
+    }
+
+    /**
+     * 重建索引是否可从现有索引复制
+     * <p>
+     * 投影未变更时原样复制；投影已变更时，仅单表结构且新版本映射的同步列均在原映射中，才可按列转换现有文档，否则需从MySQL全量导入。
+     */
+    @JsonIgnore
+    public boolean isRebuildCopyable() {
+        if (rebuildMasterTable == null) {
+            return true;
+        }
+        if (mult || !masterTable.getTableKey().equals(rebuildMasterTable.getTableKey())) {
+            return false;
+        }
+        Set<String> columns = masterTable.getFieldMapping().stream().filter(EsSyncMappingField::isSync).map(EsSyncMappingField::getSourceColumn).collect(Collectors.toSet());
+        return rebuildMasterTable.getFieldMapping().stream().filter(EsSyncMappingField::isSync).allMatch(field -> columns.contains(field.getSourceColumn()));
+    }
+
     /**
      * 表列表
      */
@@ -105,6 +181,42 @@ public class EsSyncConfig {
         return getTableList(tableList, this.masterTable);
     }
 
+    /**
+     * 重建中的新版本表列表（未重建或未变更映射时为空）
+     */
+    @JsonIgnore
+    public List<EsSyncMappingTable> getRebuildTableList() {
+        List<EsSyncMappingTable> tableList = new ArrayList<>();
+        return rebuildMasterTable != null ? getTableList(tableList, this.rebuildMasterTable) : tableList;
+    }
+
+    /**
+     * 获得表对应的新版本映射（按表Key及同一表Key中的次序对应）
+     *
+     * @param table 当前映射表
+     * @return 新版本映射表（未变更映射时为当前映射表，新版本中已移除时为空）
+     */
+    public EsSyncMappingTable getRebuildTable(EsSyncMappingTable table) {
+        if (rebuildMasterTable == null) {
+            return table;
+        }
+        int order = 0;
+        for (EsSyncMappingTable current : getTableList()) {
+            if (current == table) {
+                break;
+            }
+            if (current.getTableKey().equals(table.getTableKey())) {
+                order++;
+            }
+        }
+        for (EsSyncMappingTable rebuild : getRebuildTableList()) {
+            if (rebuild.getTableKey().equals(table.getTableKey()) && order-- == 0) {
+                return rebuild;
+            }
+        }
+        return null;
+    }
+
     /**
      * 递归提取表列表
      *
@@ -16,6 +16,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 
 import java.sql.Types;
+import java.util.Objects;
 
 /**
  * ElasticSearch字段同步映射配置
@@ -139,6 +140,27 @@ public class EsSyncMappingField {
         return esTypeName;
     }
 
+    /**
+     * 是否相同投影（字段名、源列、列类型、同步及关联设置均相同；ES索引、分词设置不影响文档内容）
+     *
+     * @param other 对比字段
+     * @return 是否相同
+     */
+    public boolean sameProjection(EsSyncMappingField other) {
+        return other != null
+                && Objects.equals(field, other.field)
+                && Objects.equals(sourceColumn, other.sourceColumn)
+                && type == other.type
+                && sync == other.sync
+                && primaryKey == other.primaryKey
+                && foreignKey == other.foreignKey
+                && Objects.equals(foreignField, other.foreignField)
+                && joinKey == other.joinKey
+                && Objects.equals(joinChildColumn, other.joinChildColumn)
+                && Objects.equals(joinMasterColumn, other.joinMasterColumn)
+                && Objects.equals(joinMasterEsField, other.joinMasterEsField);
+    }
+
     /**
      * 转换Es类型
      *
@@ -18,6 +18,7 @@ import lombok.Data;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -199,11 +200,57 @@ public class EsSyncMappingTable {
         return this.config_.getEsAddr();
     }
 
+    @JsonIgnore
+    public String getRebuildIndex() {
+        return this.config_.getRebuildIndex();
+    }
+
+    /**
+     * 重建中的新版本映射表（未变更映射时为当前表，新版本中已移除时为空）
+     */
+    @JsonIgnore
+    public EsSyncMappingTable getRebuildTable() {
+        return this.config_.getRebuildTable(this);
+    }
+
     @JsonIgnore
     public EsSyncConfig getConfig() {
         return this.config_;
     }
 
+    /**
+     * 是否相同投影（源表、字段投影、子表结构均相同，仅ES索引、分词设置不同）
+     *
+     * @param other 对比映射表
+     * @return 是否相同
+     */
+    public boolean sameProjection(EsSyncMappingTable other) {
+        if (other == null || isMaster != other.isMaster || !getTableKey().equals(other.getTableKey())) {
+            return false;
+        }
+        List<EsSyncMappingField> fields = fieldMapping != null ? fieldMapping : Collections.emptyList();
+        List<EsSyncMappingField> otherFields = other.fieldMapping != null ? other.fieldMapping : Collections.emptyList();
+        if (fields.size() != otherFields.size()) {
+            return false;
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            if (!fields.get(i).sameProjection(otherFields.get(i))) {
+                return false;
+            }
+        }
+        List<EsSyncMappingTable> children = childTable != null ? childTable : Collections.emptyList();
+        List<EsSyncMappingTable> otherChildren = other.childTable != null ? other.childTable : Collections.emptyList();
+        if (children.size() != otherChildren.size()) {
+            return false;
+        }
+        for (int i = 0; i < children.size(); i++) {
+            if (!children.get(i).sameProjection(otherChildren.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * 复制
      */
@@ -94,6 +94,14 @@ public class Event {
      * MySQL binlog位置
      */
     private long logfileOffset;
+    /**
+     * 源事务标识（事务开始的 binlog文件:位置，仅Canal事件）
+     */
+    private String transactionId;
+    /**
+     * 是否为源事务在本表的最后一个事件（订阅端收到事务结束后标记，仅Canal事件）
+     */
+    private boolean transactionEnd;
 
     public Event() {
     }
@@ -35,6 +35,11 @@ public class InitLoadInfo {
      */
     private SyncDataSourceConfig dataSourceConfig;
 
+    /**
+     * 重新分表补写（只加载目标分表变更的记录，仅MySQL）
+     */
+    private boolean reshard = false;
+
     public InitLoadInfo() {
     }
 
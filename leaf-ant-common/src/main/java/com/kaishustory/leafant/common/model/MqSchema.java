@@ -0,0 +1,82 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.common.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * MQ二进制格式结构描述（按结构ID登记，消费方按消息属性 schemaId 读取）
+ **/
+@Data
+public class MqSchema {
+
+    /**
+     * 结构ID（表名及字段定义的摘要）
+     */
+    private String id;
+
+    /**
+     * 完整表名（实例:数据库:表名）
+     */
+    private String tableKey;
+
+    /**
+     * 字段列表（按编码顺序）
+     */
+    private List<Field> fields;
+
+    public MqSchema() {
+    }
+
+    public MqSchema(String id, String tableKey, List<Field> fields) {
+        this.id = id;
+        this.tableKey = tableKey;
+        this.fields = fields;
+    }
+
+    /**
+     * 字段定义
+     */
+    @Data
+    public static class Field {
+
+        /**
+         * 字段名称
+         */
+        private String name;
+        /**
+         * MySQL类型
+         */
+        private String mysqlType;
+        /**
+         * SQL类型
+         */
+        private int sqlType;
+        /**
+         * 是否主键
+         */
+        private boolean key;
+
+        public Field() {
+        }
+
+        public Field(String name, String mysqlType, int sqlType, boolean key) {
+            this.name = name;
+            this.mysqlType = mysqlType;
+            this.sqlType = sqlType;
+            this.key = key;
+        }
+    }
+}
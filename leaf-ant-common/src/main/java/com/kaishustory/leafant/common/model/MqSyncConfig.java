@@ -17,6 +17,7 @@ import lombok.Data;
 import java.util.Date;
 
 import static com.kaishustory.leafant.common.constants.EventConstants.LOAD_STATUS_NO;
+import static com.kaishustory.leafant.common.constants.MappingConstants.MQ_ENVELOPE_EVENT;
 
 /**
  * MQ表同步映射配置
@@ -69,6 +70,11 @@ public class MqSyncConfig {
      */
     private Integer timeout = 0;
 
+    /**
+     * 转发格式（event：事件列表JSON，compact：精简JSON，binary：二进制）
+     */
+    private String envelope = MQ_ENVELOPE_EVENT;
+
     /**
      * 初始化状态：no：未初始化，initing：初始化中，complete：完成，fail：失败，no-support：不支持初始化
      */
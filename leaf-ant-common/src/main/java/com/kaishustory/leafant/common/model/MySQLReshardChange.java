@@ -0,0 +1,48 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.common.model;
+
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * MySQL重新分表变更
+ **/
+@Data
+public class MySQLReshardChange {
+
+    /**
+     * 映射ID
+     */
+    private String mappingId;
+
+    /**
+     * 新分表策略（mod：取模，hash：一致性哈希，range：范围）
+     */
+    private String shardingStrategy;
+
+    /**
+     * 新目标数据源
+     */
+    private Map<Long, SyncDataSourceConfig> targetDataSource;
+
+    public MySQLReshardChange() {
+    }
+
+    public MySQLReshardChange(String mappingId, String shardingStrategy, Map<Long, SyncDataSourceConfig> targetDataSource) {
+        this.mappingId = mappingId;
+        this.shardingStrategy = shardingStrategy;
+        this.targetDataSource = targetDataSource;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.common.model;
+
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * MySQL重新分表删除记录（补写期间同步删除的记录，完成前按源表复核）
+ **/
+@Data
+public class MySQLReshardTombstone {
+
+    /**
+     * 记录ID（映射ID:主键）
+     */
+    private String id;
+
+    /**
+     * 映射ID
+     */
+    private String mappingId;
+
+    /**
+     * 主键值 <主键字段，字段值>
+     */
+    private Map<String, String> keys;
+
+    /**
+     * 目标数据源Key（新分表规则）
+     */
+    private Long targetShard;
+
+    public MySQLReshardTombstone() {
+    }
+
+    public MySQLReshardTombstone(String mappingId, String primaryKey, Map<String, String> keys, Long targetShard) {
+        this.id = mappingId + ":" + primaryKey;
+        this.mappingId = mappingId;
+        this.keys = keys;
+        this.targetShard = targetShard;
+    }
+}
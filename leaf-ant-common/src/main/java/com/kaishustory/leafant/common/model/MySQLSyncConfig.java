@@ -18,6 +18,7 @@ import java.util.Date;
 import java.util.Map;
 
 import static com.kaishustory.leafant.common.constants.EventConstants.LOAD_STATUS_NO;
+import static com.kaishustory.leafant.common.constants.MappingConstants.SHARDING_MOD;
 
 /**
  * MySQL同步配置
@@ -70,6 +71,21 @@ public class MySQLSyncConfig {
      */
     private String shardingCol;
 
+    /**
+     * 分表策略（mod：取模，hash：一致性哈希，range：范围）
+     */
+    private String shardingStrategy = SHARDING_MOD;
+
+    /**
+     * 迁移前分表策略（重新分表期间有效，完成后为 null）
+     */
+    private String migrateFromStrategy;
+
+    /**
+     * 迁移前目标数据源（重新分表期间同时写入，完成后为 null）
+     */
+    private Map<Long, SyncDataSourceConfig> migrateFromDataSource;
+
     /**
      * 是否同步
      */
@@ -90,5 +106,11 @@ public class MySQLSyncConfig {
      */
     private Date updateTime;
 
+    /**
+     * 是否重新分表中
+     */
+    public boolean isMigrating() {
+        return migrateFromDataSource != null && !migrateFromDataSource.isEmpty();
+    }
 
 }
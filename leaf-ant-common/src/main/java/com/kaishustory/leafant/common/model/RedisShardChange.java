@@ -0,0 +1,40 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.common.model;
+
+import lombok.Data;
+
+/**
+ * Redis分片变更
+ **/
+@Data
+public class RedisShardChange {
+
+    /**
+     * 映射ID
+     */
+    private String mappingId;
+
+    /**
+     * 新增分片
+     */
+    private RedisSyncConfig.RedisDataSourceConfig shard;
+
+    public RedisShardChange() {
+    }
+
+    public RedisShardChange(String mappingId, RedisSyncConfig.RedisDataSourceConfig shard) {
+        this.mappingId = mappingId;
+        this.shard = shard;
+    }
+}
@@ -15,6 +15,7 @@ package com.kaishustory.leafant.common.model;
 import lombok.Data;
 
 import java.util.Date;
+import java.util.List;
 
 import static com.kaishustory.leafant.common.constants.EventConstants.LOAD_STATUS_NO;
 
@@ -74,6 +75,45 @@ public class RedisSyncConfig {
      */
     private boolean simplifyField = true;
 
+    /**
+     * 二进制内容（替代JSON，长度前缀编码）
+     */
+    private boolean binaryValue = false;
+
+    /**
+     * 压缩阈值（字节，内容超过阈值时压缩；0：不压缩）
+     */
+    private int compressThreshold = 0;
+
+    /**
+     * 过期时间（秒，每次写入时刷新；0：不过期）
+     * <p>
+     * 过期由Redis自动删除数据，无对应删除事件，二级索引成员无法清除，不能与二级索引同时配置。
+     */
+    private long expireSeconds = 0;
+
+    /**
+     * Hash存储（字段名 → 字段值），更新只写入变更字段（HSET），空值字段删除（HDEL）
+     */
+    private boolean hashMode = false;
+
+    /**
+     * 二级索引字段（集合：{redisKeyPrefix}:idx:{字段}:{字段值} → 主键集合）
+     */
+    private List<String> indexColumns;
+
+    /**
+     * 范围索引字段（有序集合：{redisKeyPrefix}:zidx:{字段} → 主键，分值为字段值，只支持数值字段）
+     */
+    private List<String> rangeIndexColumns;
+
+    /**
+     * 是否配置二级索引（集合索引或范围索引）
+     */
+    public boolean hasIndex() {
+        return (indexColumns != null && !indexColumns.isEmpty()) || (rangeIndexColumns != null && !rangeIndexColumns.isEmpty());
+    }
+
     /**
      * MySQL数据源配置（读取）
      */
@@ -84,6 +124,16 @@ public class RedisSyncConfig {
      */
     private RedisDataSourceConfig redisDataSourceConfig;
 
+    /**
+     * Redis分片数据源配置（按Redis Key一致性哈希分布；为空时只写入 redisDataSourceConfig）
+     */
+    private List<RedisDataSourceConfig> shards;
+
+    /**
+     * 迁移前分片（增加分片迁移中不为空，迁移完成后清除）
+     */
+    private List<RedisDataSourceConfig> migrateFromShards;
+
     /**
      * 创建时间
      */
@@ -0,0 +1,303 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.common.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.kaishustory.leafant.common.model.Event;
+import com.kaishustory.leafant.common.model.EventColumn;
+import com.kaishustory.leafant.common.model.MqSchema;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static com.kaishustory.leafant.common.constants.EventConstants.TYPE_DELETE;
+import static com.kaishustory.leafant.common.constants.EventConstants.TYPE_INSERT;
+
+/**
+ * MQ转发格式编解码
+ * <p>
+ * 1、精简JSON：{"op":"UPDATE","db":"库","table":"表","pk":"主键","ts":执行时间,"data":{"字段":"值"}}，
+ * 新增包含全部字段，修改包含主键及变更字段，删除只包含主键，空值为 null；
+ * 2、二进制：版本(1) + 行数(varint) + [类型(1字节) + 执行时间(varlong) + 包含位图 + 空值位图 + 包含且非空字段值...]，
+ * 位图按结构字段顺序，每字段1位；字段值为 长度(varint) + UTF-8。
+ * 结构ID写入消息属性 schemaId，结构描述登记在 Mongo 集合 mq_schema（_id 为结构ID），
+ * 消费方按结构ID读取该集合或调用管理端接口 GET /mqMapping/schema?schemaId= 获得结构后解码（结构内容不变，可长期缓存）。
+ **/
+public final class MqEnvelopeCodec {
+
+    /**
+     * 二进制格式版本
+     */
+    private static final byte BINARY_VERSION = 1;
+
+    /**
+     * 消息属性：转发格式
+     */
+    public static final String PROPERTY_ENVELOPE = "envelope";
+
+    /**
+     * 消息属性：结构ID
+     */
+    public static final String PROPERTY_SCHEMA_ID = "schemaId";
+
+    /**
+     * 精简JSON（保留空值）
+     */
+    private static final Gson GSON = new GsonBuilder().serializeNulls().disableHtmlEscaping().create();
+
+    private MqEnvelopeCodec() {
+    }
+
+    /**
+     * 精简JSON编码
+     *
+     * @param event 事件
+     * @return 消息内容
+     */
+    public static byte[] encodeCompact(Event event) {
+        Map<String, String> data = new LinkedHashMap<>();
+        event.getAllColumns().stream().filter(col -> isPresent(event, col)).forEach(col -> data.put(col.getName(), col.isNull() ? null : col.getValue()));
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("op", event.getTypeName());
+        row.put("db", event.getDatabase());
+        row.put("table", event.getTable());
+        row.put("pk", event.getPrimaryKey());
+        row.put("ts", event.getExecuteTime());
+        row.put("data", data);
+        return GSON.toJson(row).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 生成结构描述
+     *
+     * @param event 事件
+     * @return 结构描述
+     */
+    public static MqSchema schemaOf(Event event) {
+        List<MqSchema.Field> fields = event.getAllColumns().stream()
+                .map(col -> new MqSchema.Field(col.getName(), col.getMysqlType(), col.getSqlType(), col.isKey()))
+                .collect(Collectors.toList());
+        String signature = event.getTableKey() + "|" + fields.stream()
+                .map(field -> field.getName() + ":" + field.getMysqlType() + ":" + (field.isKey() ? 1 : 0))
+                .collect(Collectors.joining(","));
+        return new MqSchema(digest(signature), event.getTableKey(), fields);
+    }
+
+    /**
+     * 二进制编码（单行，字段顺序与结构一致）
+     *
+     * @param schema 结构描述
+     * @param event  事件
+     * @return 行内容
+     */
+    public static byte[] encodeBinaryRow(MqSchema schema, Event event) {
+        List<EventColumn> columns = event.getAllColumns();
+        int size = schema.getFields().size();
+        byte[] present = new byte[(size + 7) / 8];
+        byte[] nulls = new byte[(size + 7) / 8];
+        ByteArrayOutputStream values = new ByteArrayOutputStream(64 + size * 16);
+        for (int i = 0; i < size; i++) {
+            EventColumn col = columns.get(i);
+            if (isPresent(event, col)) {
+                present[i >> 3] |= 1 << (i & 7);
+                if (col.isNull() || col.getValue() == null) {
+                    nulls[i >> 3] |= 1 << (i & 7);
+                } else {
+                    byte[] bytes = col.getValue().getBytes(StandardCharsets.UTF_8);
+                    writeVarint(values, bytes.length);
+                    values.write(bytes, 0, bytes.length);
+                }
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(values.size() + present.length * 2 + 12);
+        out.write(event.getType());
+        writeVarint(out, event.getExecuteTime());
+        out.write(present, 0, present.length);
+        out.write(nulls, 0, nulls.length);
+        out.write(values.toByteArray(), 0, values.size());
+        return out.toByteArray();
+    }
+
+    /**
+     * 二进制编码（合并多行为一条消息）
+     *
+     * @param rows 行内容（同一结构）
+     * @return 消息内容
+     */
+    public static byte[] encodeBinary(List<byte[]> rows) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(rows.stream().mapToInt(row -> row.length).sum() + 6);
+        out.write(BINARY_VERSION);
+        writeVarint(out, rows.size());
+        rows.forEach(row -> out.write(row, 0, row.length));
+        return out.toByteArray();
+    }
+
+    /**
+     * 二进制解码（消息不完整或与结构不一致时抛出 IllegalArgumentException）
+     *
+     * @param schema 结构描述
+     * @param data   消息内容
+     * @return 行列表
+     */
+    public static List<BinaryRow> decodeBinary(MqSchema schema, byte[] data) {
+        require(data, 0, 1);
+        if (data[0] != BINARY_VERSION) {
+            throw new IllegalArgumentException("不支持的二进制格式版本：" + data[0]);
+        }
+        int size = schema.getFields().size();
+        int bitmapLen = (size + 7) / 8;
+        int[] pos = {1};
+        long rowCount = readVarint(data, pos);
+        // 每行至少包含 类型 + 执行时间 + 位图
+        if (rowCount < 0 || rowCount > (data.length - pos[0]) / (2 + 2 * bitmapLen)) {
+            throw new IllegalArgumentException(String.format("二进制消息行数与长度不一致！rows：%d，bytes：%d", rowCount, data.length));
+        }
+        List<BinaryRow> rows = new ArrayList<>((int) rowCount);
+        for (int r = 0; r < rowCount; r++) {
+            require(data, pos[0], 1);
+            int type = data[pos[0]++];
+            BinaryRow row = new BinaryRow(type, readVarint(data, pos), size);
+            int presentAt = pos[0];
+            int nullAt = presentAt + bitmapLen;
+            require(data, presentAt, bitmapLen * 2);
+            pos[0] = nullAt + bitmapLen;
+            for (int i = 0; i < size; i++) {
+                if ((data[presentAt + (i >> 3)] & (1 << (i & 7))) != 0) {
+                    row.present.set(i);
+                    if ((data[nullAt + (i >> 3)] & (1 << (i & 7))) == 0) {
+                        long len = readVarint(data, pos);
+                        if (len > Integer.MAX_VALUE) {
+                            throw new IllegalArgumentException(String.format("二进制消息字段长度无效！field：%s，len：%d", schema.getFields().get(i).getName(), len));
+                        }
+                        require(data, pos[0], (int) len);
+                        row.values[i] = new String(data, pos[0], (int) len, StandardCharsets.UTF_8);
+                        pos[0] += len;
+                    }
+                }
+            }
+            rows.add(row);
+        }
+        if (pos[0] != data.length) {
+            throw new IllegalArgumentException(String.format("二进制消息长度与结构不一致！schemaId：%s，read：%d，bytes：%d", schema.getId(), pos[0], data.length));
+        }
+        return rows;
+    }
+
+    /**
+     * 检查剩余字节数（消息截断时抛出异常）
+     */
+    private static void require(byte[] data, int pos, int len) {
+        if (len < 0 || pos > data.length - len) {
+            throw new IllegalArgumentException(String.format("二进制消息不完整！pos：%d，need：%d，bytes：%d", pos, len, data.length));
+        }
+    }
+
+    /**
+     * 字段是否写入（新增：全部字段，修改：主键及变更字段，删除：主键）
+     */
+    private static boolean isPresent(Event event, EventColumn col) {
+        return event.getType() == TYPE_INSERT || col.isKey() || (col.isUpdated() && event.getType() != TYPE_DELETE);
+    }
+
+    private static String digest(String signature) {
+        try {
+            byte[] md5 = MessageDigest.getInstance("MD5").digest(signature.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(16);
+            for (int i = 0; i < 8; i++) {
+                sb.append(String.format("%02x", md5[i]));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] data, int[] pos) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            require(data, pos[0], 1);
+            if (shift > 63) {
+                throw new IllegalArgumentException("二进制消息变长整数无效！pos：" + pos[0]);
+            }
+            byte b = data[pos[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    /**
+     * 二进制行
+     */
+    public static class BinaryRow {
+
+        /**
+         * 事件类型
+         */
+        private final int type;
+
+        /**
+         * 执行时间
+         */
+        private final long executeTime;
+
+        /**
+         * 包含字段（按结构字段顺序）
+         */
+        private final BitSet present;
+
+        /**
+         * 字段值（按结构字段顺序，未包含或空值为 null）
+         */
+        private final String[] values;
+
+        BinaryRow(int type, long executeTime, int size) {
+            this.type = type;
+            this.executeTime = executeTime;
+            this.present = new BitSet(size);
+            this.values = new String[size];
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        public long getExecuteTime() {
+            return executeTime;
+        }
+
+        public boolean isPresent(int index) {
+            return present.get(index);
+        }
+
+        public String getValue(int index) {
+            return values[index];
+        }
+    }
+}
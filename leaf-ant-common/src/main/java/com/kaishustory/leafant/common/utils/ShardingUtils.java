@@ -0,0 +1,159 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.common.utils;
+
+import com.kaishustory.leafant.common.model.EventColumn;
+import com.kaishustory.leafant.common.model.SyncDataSourceConfig;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Types;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.kaishustory.leafant.common.constants.MappingConstants.SHARDING_HASH;
+import static com.kaishustory.leafant.common.constants.MappingConstants.SHARDING_RANGE;
+
+/**
+ * 分表计算
+ * <p>
+ * 1、取模：整数取值、其他取 hashCode，按分表数取模（增加分表时大部分记录变更分表）；
+ * 2、一致性哈希：按分片编号生成虚拟节点，分表字段值（字符串形式）MD5 定位，增加分片只迁移新分片负责的记录；
+ * 3、范围：目标数据源Key为范围起始值，只支持整数分表字段。
+ **/
+public class ShardingUtils {
+
+    /**
+     * 每个分片虚拟节点数
+     */
+    private static final int VIRTUAL_NODES = 160;
+
+    /**
+     * 哈希环缓存 <分片编号列表，哈希环 <虚拟节点哈希，分片编号>>
+     */
+    private static final Map<List<Long>, TreeMap<Long, Long>> RINGS = new ConcurrentHashMap<>();
+
+    /**
+     * 计算目标数据源
+     *
+     * @param strategy         分表策略
+     * @param targetDataSource 目标数据源
+     * @param shardingCol      分表字段
+     * @return 目标数据源
+     */
+    public static Option<SyncDataSourceConfig> route(String strategy, Map<Long, SyncDataSourceConfig> targetDataSource, EventColumn shardingCol) {
+        if (targetDataSource.size() == 1) {
+            // 单表
+            return Option.of(targetDataSource.values().stream().findFirst());
+        }
+        Long shardingKey = locate(strategy, targetDataSource, shardingCol);
+        if (shardingKey != null && targetDataSource.containsKey(shardingKey)) {
+            return Option.of(targetDataSource.get(shardingKey));
+        } else {
+            return Option.empty();
+        }
+    }
+
+    /**
+     * 计算分片
+     *
+     * @param strategy         分表策略
+     * @param targetDataSource 目标数据源
+     * @param shardingCol      分表字段
+     * @return 目标数据源Key（无法计算时为 null）
+     */
+    public static Long locate(String strategy, Map<Long, SyncDataSourceConfig> targetDataSource, EventColumn shardingCol) {
+        if (SHARDING_HASH.equals(strategy)) {
+            TreeMap<Long, Long> ring = getRing(targetDataSource.keySet());
+            Map.Entry<Long, Long> node = ring.ceilingEntry(hash(shardingCol.getValue() != null ? shardingCol.getValue() : ""));
+            return node != null ? node.getValue() : ring.firstEntry().getValue();
+
+        } else if (SHARDING_RANGE.equals(strategy)) {
+            if (shardingCol.getValue() != null && !isInt(shardingCol.getSqlType())) {
+                Log.error("范围分表只支持整数字段！column：{}", shardingCol.getName());
+                return null;
+            }
+            long value = shardingCol.getValue() != null ? Long.parseLong(shardingCol.getValue()) : 0L;
+            return new TreeSet<>(targetDataSource.keySet()).floor(value);
+
+        } else {
+            // 取模（默认）
+            long shardingValue = shardingCol.getValue() != null ?
+                    (isInt(shardingCol.getSqlType()) ?
+                            // 整数取值
+                            Long.parseLong(shardingCol.getValue()) :
+                            // 字符串，小数取hash值
+                            Objects.hashCode(shardingCol.getValue()) & Integer.MAX_VALUE)
+                    : 0L;
+            // 根据分片数取模
+            return shardingValue % targetDataSource.size();
+        }
+    }
+
+    /**
+     * 获得哈希环
+     *
+     * @param shards 分片编号
+     * @return 哈希环
+     */
+    private static TreeMap<Long, Long> getRing(Set<Long> shards) {
+        return RINGS.computeIfAbsent(new ArrayList<>(new TreeSet<>(shards)), keys -> {
+            TreeMap<Long, Long> ring = new TreeMap<>();
+            keys.forEach(key -> {
+                for (int i = 0; i < VIRTUAL_NODES; i++) {
+                    ring.put(hash("shard-" + key + "#" + i), key);
+                }
+            });
+            return ring;
+        });
+    }
+
+    /**
+     * 哈希（MD5前8字节）
+     *
+     * @param value 内容
+     * @return 哈希值
+     */
+    private static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 判断是否为整数类型
+     *
+     * @param type 列类型
+     * @return 是否为整数类型
+     */
+    private static boolean isInt(int type) {
+        switch (type) {
+            case Types.INTEGER:
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.BIT:
+            case Types.BIGINT:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.common.utils;
+
+import com.kaishustory.leafant.common.model.Event;
+import com.kaishustory.leafant.common.model.EventColumn;
+import com.kaishustory.leafant.common.model.MqSchema;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.kaishustory.leafant.common.constants.EventConstants.*;
+import static org.junit.Assert.*;
+
+/**
+ * MQ转发格式编解码测试
+ **/
+public class MqEnvelopeCodecTest {
+
+    @Test
+    public void binaryRoundTrip() {
+        Event insert = event(TYPE_INSERT, "1", "张三", null);
+        MqSchema schema = MqEnvelopeCodec.schemaOf(insert);
+        Event update = event(TYPE_UPDATE, "2", "李四", "18");
+        update.getAfterColumns().get(2).setUpdated(true);
+        Event delete = event(TYPE_DELETE, "3", "王五", "20");
+
+        List<MqEnvelopeCodec.BinaryRow> rows = MqEnvelopeCodec.decodeBinary(schema, encode(schema, insert, update, delete));
+        assertEquals(3, rows.size());
+
+        // 新增：全部字段，空值为 null
+        MqEnvelopeCodec.BinaryRow row = rows.get(0);
+        assertEquals(TYPE_INSERT, row.getType());
+        assertEquals(1000L, row.getExecuteTime());
+        assertTrue(row.isPresent(0) && row.isPresent(1) && row.isPresent(2));
+        assertEquals("1", row.getValue(0));
+        assertEquals("张三", row.getValue(1));
+        assertNull(row.getValue(2));
+
+        // 修改：主键及变更字段
+        row = rows.get(1);
+        assertEquals(TYPE_UPDATE, row.getType());
+        assertTrue(row.isPresent(0) && !row.isPresent(1) && row.isPresent(2));
+        assertEquals("2", row.getValue(0));
+        assertEquals("18", row.getValue(2));
+
+        // 删除：只包含主键
+        row = rows.get(2);
+        assertEquals(TYPE_DELETE, row.getType());
+        assertTrue(row.isPresent(0) && !row.isPresent(1) && !row.isPresent(2));
+        assertEquals("3", row.getValue(0));
+    }
+
+    @Test
+    public void emptyMessage() {
+        MqSchema schema = MqEnvelopeCodec.schemaOf(event(TYPE_INSERT, "1", "a", "1"));
+        assertTrue(MqEnvelopeCodec.decodeBinary(schema, MqEnvelopeCodec.encodeBinary(Collections.emptyList())).isEmpty());
+    }
+
+    @Test
+    public void rejectTruncated() {
+        Event insert = event(TYPE_INSERT, "1", "张三", "18");
+        MqSchema schema = MqEnvelopeCodec.schemaOf(insert);
+        byte[] data = encode(schema, insert, event(TYPE_INSERT, "2", "李四", null));
+        for (int len = 0; len < data.length; len++) {
+            assertRejected(schema, Arrays.copyOf(data, len));
+        }
+    }
+
+    @Test
+    public void rejectTrailingBytes() {
+        Event insert = event(TYPE_INSERT, "1", "张三", "18");
+        MqSchema schema = MqEnvelopeCodec.schemaOf(insert);
+        byte[] data = encode(schema, insert);
+        assertRejected(schema, Arrays.copyOf(data, data.length + 1));
+    }
+
+    @Test
+    public void rejectUnknownVersion() {
+        Event insert = event(TYPE_INSERT, "1", "张三", "18");
+        MqSchema schema = MqEnvelopeCodec.schemaOf(insert);
+        byte[] data = encode(schema, insert);
+        data[0] = 2;
+        assertRejected(schema, data);
+    }
+
+    @Test
+    public void rejectBadLengths() {
+        MqSchema schema = MqEnvelopeCodec.schemaOf(event(TYPE_INSERT, "1", "a", "1"));
+        // 行数超过剩余长度
+        assertRejected(schema, new byte[]{1, (byte) 0xFF, (byte) 0xFF, 0x03, 1, 0, 0, 0});
+        // 字段长度超过剩余长度（类型、执行时间、包含位图：第1个字段、空值位图、长度 100）
+        assertRejected(schema, new byte[]{1, 1, 1, 0, 1, 0, 100, 'a'});
+        // 字段长度超过 int 范围
+        assertRejected(schema, new byte[]{1, 1, 1, 0, 1, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01});
+        // 变长整数过长
+        byte[] overlong = new byte[14];
+        Arrays.fill(overlong, (byte) 0x80);
+        overlong[0] = 1;
+        assertRejected(schema, overlong);
+    }
+
+    private static byte[] encode(MqSchema schema, Event... events) {
+        return MqEnvelopeCodec.encodeBinary(Arrays.stream(events).map(event -> MqEnvelopeCodec.encodeBinaryRow(schema, event)).collect(Collectors.toList()));
+    }
+
+    private static void assertRejected(MqSchema schema, byte[] data) {
+        try {
+            MqEnvelopeCodec.decodeBinary(schema, data);
+            fail("应拒绝消息：" + Arrays.toString(data));
+        } catch (IllegalArgumentException expected) {
+            // 消息不完整或与结构不一致
+        }
+    }
+
+    private static Event event(int type, String id, String name, String age) {
+        List<EventColumn> columns = Arrays.asList(
+                new EventColumn(true, 0, "id", id, "bigint(20)", -5, false, false),
+                new EventColumn(false, 1, "name", name, "varchar(32)", 12, false, false),
+                new EventColumn(false, 2, "age", age, "int(11)", 4, false, age == null)
+        );
+        Event event = new Event();
+        event.setServer("server");
+        event.setDatabase("db");
+        event.setTable("t_user");
+        event.setType(type);
+        event.setPrimaryKey(id);
+        event.setExecuteTime(1000L);
+        if (type == TYPE_DELETE) {
+            event.setBeforeColumns(columns);
+        } else {
+            event.setAfterColumns(columns);
+        }
+        return event;
+    }
+}
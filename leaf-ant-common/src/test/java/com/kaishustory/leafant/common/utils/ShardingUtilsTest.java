@@ -0,0 +1,122 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.common.utils;
+
+import com.kaishustory.leafant.common.model.EventColumn;
+import com.kaishustory.leafant.common.model.SyncDataSourceConfig;
+import org.junit.Test;
+
+import java.sql.Types;
+import java.util.*;
+
+import static com.kaishustory.leafant.common.constants.MappingConstants.*;
+import static org.junit.Assert.*;
+
+/**
+ * 分表计算测试
+ **/
+public class ShardingUtilsTest {
+
+    @Test
+    public void modInteger() {
+        Map<Long, SyncDataSourceConfig> targets = targets(0L, 1L, 2L, 3L);
+        assertEquals(Long.valueOf(2), ShardingUtils.locate(SHARDING_MOD, targets, column("10", Types.BIGINT)));
+        assertEquals(Long.valueOf(3), ShardingUtils.locate(SHARDING_MOD, targets, column("7", Types.INTEGER)));
+        assertEquals(Long.valueOf(0), ShardingUtils.locate(SHARDING_MOD, targets, column(null, Types.INTEGER)));
+        assertEquals("t_2", ShardingUtils.route(SHARDING_MOD, targets, column("6", Types.INTEGER)).get().getTable());
+    }
+
+    @Test
+    public void modString() {
+        Map<Long, SyncDataSourceConfig> targets = targets(0L, 1L, 2L);
+        long expected = ("user-1001".hashCode() & Integer.MAX_VALUE) % 3;
+        assertEquals(Long.valueOf(expected), ShardingUtils.locate(SHARDING_MOD, targets, column("user-1001", Types.VARCHAR)));
+        // 未指定策略时默认取模
+        assertEquals(Long.valueOf(expected), ShardingUtils.locate(null, targets, column("user-1001", Types.VARCHAR)));
+    }
+
+    @Test
+    public void singleTable() {
+        Map<Long, SyncDataSourceConfig> targets = targets(5L);
+        for (String strategy : Arrays.asList(SHARDING_MOD, SHARDING_HASH, SHARDING_RANGE)) {
+            assertEquals("t_5", ShardingUtils.route(strategy, targets, column("123", Types.INTEGER)).get().getTable());
+        }
+    }
+
+    @Test
+    public void hashStableAndBalanced() {
+        Map<Long, SyncDataSourceConfig> targets = targets(0L, 1L, 2L, 3L);
+        // 目标数据源顺序不影响结果
+        Map<Long, SyncDataSourceConfig> reversed = new LinkedHashMap<>();
+        new ArrayDeque<>(targets.keySet()).descendingIterator().forEachRemaining(key -> reversed.put(key, targets.get(key)));
+
+        Map<Long, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 10000; i++) {
+            EventColumn col = column(String.valueOf(i), Types.BIGINT);
+            Long shard = ShardingUtils.locate(SHARDING_HASH, targets, col);
+            assertTrue(targets.containsKey(shard));
+            assertEquals(shard, ShardingUtils.locate(SHARDING_HASH, reversed, col));
+            counts.merge(shard, 1, Integer::sum);
+        }
+        counts.values().forEach(count -> assertTrue("分布不均：" + counts, count > 1500 && count < 3500));
+    }
+
+    @Test
+    public void hashAddShardMovesOnlyToNewShard() {
+        Map<Long, SyncDataSourceConfig> before = targets(0L, 1L, 2L, 3L);
+        Map<Long, SyncDataSourceConfig> after = targets(0L, 1L, 2L, 3L, 4L);
+        int moved = 0;
+        for (int i = 0; i < 10000; i++) {
+            EventColumn col = column("key-" + i, Types.VARCHAR);
+            Long from = ShardingUtils.locate(SHARDING_HASH, before, col);
+            Long to = ShardingUtils.locate(SHARDING_HASH, after, col);
+            if (!from.equals(to)) {
+                assertEquals(Long.valueOf(4), to);
+                moved++;
+            }
+        }
+        // 约1/5的记录迁移到新分片
+        assertTrue("迁移记录数：" + moved, moved > 1000 && moved < 3000);
+    }
+
+    @Test
+    public void range() {
+        Map<Long, SyncDataSourceConfig> targets = targets(0L, 1000L, 5000L);
+        assertEquals(Long.valueOf(0), ShardingUtils.locate(SHARDING_RANGE, targets, column("999", Types.BIGINT)));
+        assertEquals(Long.valueOf(1000), ShardingUtils.locate(SHARDING_RANGE, targets, column("1000", Types.BIGINT)));
+        assertEquals(Long.valueOf(5000), ShardingUtils.locate(SHARDING_RANGE, targets, column("700000", Types.INTEGER)));
+        assertEquals(Long.valueOf(0), ShardingUtils.locate(SHARDING_RANGE, targets, column(null, Types.INTEGER)));
+        // 小于最小起始值
+        assertNull(ShardingUtils.locate(SHARDING_RANGE, targets, column("-1", Types.BIGINT)));
+        assertFalse(ShardingUtils.route(SHARDING_RANGE, targets, column("-1", Types.BIGINT)).exist());
+    }
+
+    @Test
+    public void rangeRejectsNonInteger() {
+        Map<Long, SyncDataSourceConfig> targets = targets(0L, 1000L);
+        assertNull(ShardingUtils.locate(SHARDING_RANGE, targets, column("abc", Types.VARCHAR)));
+        assertFalse(ShardingUtils.route(SHARDING_RANGE, targets, column("abc", Types.VARCHAR)).exist());
+    }
+
+    private static Map<Long, SyncDataSourceConfig> targets(Long... keys) {
+        Map<Long, SyncDataSourceConfig> targets = new LinkedHashMap<>();
+        for (Long key : keys) {
+            targets.put(key, new SyncDataSourceConfig("rds", "jdbc:mysql://localhost:3306/db", "db", "t_" + key, "user", "password"));
+        }
+        return targets;
+    }
+
+    private static EventColumn column(String value, int sqlType) {
+        return new EventColumn(false, 0, "shard_id", value, "bigint(20)", sqlType, false, value == null);
+    }
+}
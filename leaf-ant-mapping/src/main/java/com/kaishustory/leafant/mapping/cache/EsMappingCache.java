@@ -52,6 +52,11 @@ public class EsMappingCache {
      */
     private ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
 
+    /**
+     * 映射版本（每次加载后递增，依赖映射的路由计划按版本失效）
+     */
+    private volatile long version = 0;
+
     /**
      * 映射Dao
      */
@@ -98,6 +103,7 @@ public class EsMappingCache {
             esMappingConfigCache.invalidateAll();
             esMappingTableCache.putAll(allMappingTable);
             esMappingConfigCache.putAll(allConfig);
+            version++;
 
         } catch (Throwable t) {
             Log.info("ES配置加载发生异常！", t);
@@ -152,6 +158,15 @@ public class EsMappingCache {
         }
     }
 
+    /**
+     * 映射版本
+     *
+     * @return 版本
+     */
+    public long getVersion() {
+        return version;
+    }
+
     /**
      * 获得缓存KEY
      *
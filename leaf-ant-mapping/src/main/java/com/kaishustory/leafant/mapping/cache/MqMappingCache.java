@@ -46,6 +46,11 @@ public class MqMappingCache {
      */
     private ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
 
+    /**
+     * 映射版本（每次加载后递增，依赖映射的路由计划按版本失效）
+     */
+    private volatile long version = 0;
+
     /**
      * 映射Dao
      */
@@ -83,6 +88,7 @@ public class MqMappingCache {
             }
             mqMappingCache.cleanUp();
             mqMappingCache.putAll(allMapping);
+            version++;
 
         } catch (Throwable t) {
             Log.info("MQ配置加载发生异常！", t);
@@ -114,6 +120,15 @@ public class MqMappingCache {
         }
     }
 
+    /**
+     * 映射版本
+     *
+     * @return 版本
+     */
+    public long getVersion() {
+        return version;
+    }
+
     /**
      * 获得缓存KEY
      *
@@ -46,6 +46,11 @@ public class RedisMappingCache {
      */
     private ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
 
+    /**
+     * 映射版本（每次加载后递增，依赖映射的路由计划按版本失效）
+     */
+    private volatile long version = 0;
+
     /**
      * 映射Dao
      */
@@ -85,6 +90,7 @@ public class RedisMappingCache {
             }
             redisMappingCache.invalidateAll();
             redisMappingCache.putAll(allMapping);
+            version++;
 
         } catch (Throwable t) {
             Log.info("Redis配置加载发生异常！", t);
@@ -116,6 +122,15 @@ public class RedisMappingCache {
         }
     }
 
+    /**
+     * 映射版本
+     *
+     * @return 版本
+     */
+    public long getVersion() {
+        return version;
+    }
+
     /**
      * 获得缓存KEY
      *
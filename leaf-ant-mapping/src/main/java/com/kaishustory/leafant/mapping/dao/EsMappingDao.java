@@ -30,6 +30,8 @@ import java.util.Date;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import static com.kaishustory.leafant.common.constants.EventConstants.LOAD_STATUS_NO;
+
 /**
  * ElasticSearch映射配置管理
  **/
@@ -136,6 +138,44 @@ public class EsMappingDao {
         mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(syncStatus.getMappingId())), Update.update("sync", syncStatus.isSync()), collection);
     }
 
+    /**
+     * 开始重建索引，记录新版本物理索引
+     * <p>
+     * 投影已变更时，原映射保持不变，新版本映射单独记录（实时数据按新版本映射转换后双写）；
+     * 投影未变更时（仅ES索引、分词设置变更），新版本映射直接替换原映射，实时数据直接双写新版本索引。
+     *
+     * @param id                 ID
+     * @param rebuildIndex       新版本物理索引
+     * @param rebuildMasterTable 新版本主表结构映射
+     * @param reproject          投影是否变更
+     * @param shards             新版本索引分片数
+     * @param replicas           新版本索引副本数
+     */
+    public void startRebuild(String id, String rebuildIndex, EsSyncMappingTable rebuildMasterTable, boolean reproject, int shards, int replicas) {
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(id)), Update.update("rebuildIndex", rebuildIndex)
+                .set(reproject ? "rebuildMasterTable" : "masterTable", rebuildMasterTable)
+                .set("numberOfShards", shards)
+                .set("numberOfReplicas", replicas)
+                .set("init", LOAD_STATUS_NO)
+                .set("updateTime", new Date()), collection);
+    }
+
+    /**
+     * 完成索引切换（更新索引版本，新版本映射替换原映射，清除重建索引）
+     *
+     * @param id           ID
+     * @param indexVersion 索引版本
+     */
+    public void updateIndexVersion(String id, int indexVersion) {
+        // 直接读取（表结构不写入配置信息，避免循环引用写入Mongo）
+        EsSyncConfig config = mongoTemplate.findById(id, EsSyncConfig.class, collection);
+        Update update = Update.update("indexVersion", indexVersion).unset("rebuildIndex").unset("rebuildMasterTable").set("updateTime", new Date());
+        if (config != null && config.getRebuildMasterTable() != null) {
+            update.set("masterTable", config.getRebuildMasterTable());
+        }
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(id)), update, collection);
+    }
+
     /**
      * 表配置写入映射信息
      *
@@ -156,6 +196,7 @@ public class EsMappingDao {
             // 写入配置信息
             table.setConfigInfo(config);
         });
+        config.getRebuildTableList().forEach(table -> table.setConfigInfo(config));
         return config;
     }
 
@@ -134,6 +134,16 @@ public class LoadRecordDao {
         return stats;
     }
 
+    /**
+     * 删除映射的初始化记录（重新全量导入前清除，避免已完成分页被跳过）
+     *
+     * @param target    目标
+     * @param mappingId 映射ID
+     */
+    public void removeRecords(String target, String mappingId) {
+        mongoTemplate.remove(Query.query(Criteria.where("mappingId").is(mappingId).and("target").is(target)), collection);
+    }
+
     /**
      * 更新MQID和已发送状态
      *
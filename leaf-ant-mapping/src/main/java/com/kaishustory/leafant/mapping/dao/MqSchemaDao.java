@@ -0,0 +1,56 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.mapping.dao;
+
+import com.kaishustory.leafant.common.model.MqSchema;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+
+/**
+ * MQ二进制格式结构登记
+ **/
+@Component
+public class MqSchemaDao {
+
+    /**
+     * Mongo集合
+     */
+    private final String collection = "mq_schema";
+
+    /**
+     * MongoDB
+     */
+    @Resource(name = "mappingMongoTemplate")
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * 登记结构（结构ID为内容摘要，重复登记覆盖为相同内容）
+     *
+     * @param schema 结构描述
+     */
+    public void save(MqSchema schema) {
+        mongoTemplate.save(schema, collection);
+    }
+
+    /**
+     * 查询结构
+     *
+     * @param id 结构ID
+     * @return 结构描述
+     */
+    public MqSchema findById(String id) {
+        return mongoTemplate.findById(id, MqSchema.class, collection);
+    }
+}
@@ -14,6 +14,7 @@ package com.kaishustory.leafant.mapping.dao;
 
 import com.kaishustory.leafant.common.model.LoadStatus;
 import com.kaishustory.leafant.common.model.MySQLSyncConfig;
+import com.kaishustory.leafant.common.model.SyncDataSourceConfig;
 import com.kaishustory.leafant.common.model.SyncStatus;
 import com.kaishustory.leafant.common.utils.Log;
 import com.kaishustory.leafant.common.utils.Option;
@@ -27,6 +28,7 @@ import org.springframework.stereotype.Component;
 import javax.annotation.Resource;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -125,5 +127,23 @@ public class MySQLMappingDao {
         mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(syncStatus.getMappingId())), Update.update("sync", syncStatus.isSync()), collection);
     }
 
+    /**
+     * 更改分表规则
+     *
+     * @param id                    映射ID
+     * @param shardingStrategy      分表策略
+     * @param targetDataSource      目标数据源
+     * @param migrateFromStrategy   迁移前分表策略（迁移完成为 null）
+     * @param migrateFromDataSource 迁移前目标数据源（迁移完成为 null）
+     */
+    public void updateSharding(String id, String shardingStrategy, Map<Long, SyncDataSourceConfig> targetDataSource, String migrateFromStrategy, Map<Long, SyncDataSourceConfig> migrateFromDataSource) {
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(id)),
+                Update.update("isSharding", targetDataSource.size() > 1)
+                        .set("shardingStrategy", shardingStrategy)
+                        .set("targetDataSource", targetDataSource)
+                        .set("migrateFromStrategy", migrateFromStrategy)
+                        .set("migrateFromDataSource", migrateFromDataSource)
+                        .set("updateTime", new Date()), collection);
+    }
 
 }
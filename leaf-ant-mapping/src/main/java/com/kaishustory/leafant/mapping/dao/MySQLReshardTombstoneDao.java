@@ -0,0 +1,68 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.mapping.dao;
+
+import com.kaishustory.leafant.common.model.MySQLReshardTombstone;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.List;
+
+/**
+ * MySQL重新分表删除记录
+ **/
+@Component
+public class MySQLReshardTombstoneDao {
+
+    /**
+     * Mongo集合
+     */
+    private final String collection = "mysql_reshard_tombstone";
+
+    /**
+     * MongoDB
+     */
+    @Resource(name = "mappingMongoTemplate")
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * 保存删除记录（同一主键重复删除覆盖）
+     *
+     * @param tombstones 删除记录
+     */
+    public void save(List<MySQLReshardTombstone> tombstones) {
+        tombstones.forEach(tombstone -> mongoTemplate.save(tombstone, collection));
+    }
+
+    /**
+     * 查询映射的删除记录
+     *
+     * @param mappingId 映射ID
+     * @return 删除记录
+     */
+    public List<MySQLReshardTombstone> findByMappingId(String mappingId) {
+        return mongoTemplate.find(Query.query(Criteria.where("mappingId").is(mappingId)), MySQLReshardTombstone.class, collection);
+    }
+
+    /**
+     * 清除映射的删除记录
+     *
+     * @param mappingId 映射ID
+     */
+    public void removeByMappingId(String mappingId) {
+        mongoTemplate.remove(Query.query(Criteria.where("mappingId").is(mappingId)), collection);
+    }
+}
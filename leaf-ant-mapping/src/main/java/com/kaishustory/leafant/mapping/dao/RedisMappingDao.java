@@ -125,5 +125,16 @@ public class RedisMappingDao {
         mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(syncStatus.getMappingId())), Update.update("sync", syncStatus.isSync()), collection);
     }
 
+    /**
+     * 更改分片
+     *
+     * @param id                映射ID
+     * @param shards            分片
+     * @param migrateFromShards 迁移前分片（迁移完成为 null）
+     */
+    public void updateShards(String id, List<RedisSyncConfig.RedisDataSourceConfig> shards, List<RedisSyncConfig.RedisDataSourceConfig> migrateFromShards) {
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(id)), Update.update("shards", shards).set("migrateFromShards", migrateFromShards).set("updateTime", new Date()), collection);
+    }
+
 
 }
@@ -17,14 +17,17 @@ import com.kaishustory.leafant.common.utils.Log;
 import com.kaishustory.leafant.common.utils.Option;
 import com.kaishustory.leafant.common.utils.StringUtils;
 import com.kaishustory.leafant.mapping.dao.EsMappingDao;
+import com.kaishustory.leafant.mapping.dao.LoadRecordDao;
+import com.kaishustory.leafant.mapping.model.LoadStats;
 import com.kaishustory.leafant.mapping.service.interfaces.IMappingService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
-import static com.kaishustory.leafant.common.constants.EventConstants.LOAD_STATUS_NO;
+import static com.kaishustory.leafant.common.constants.EventConstants.*;
 import static com.kaishustory.leafant.common.constants.MappingConstants.TYPE_ES;
+import static com.kaishustory.leafant.common.constants.MappingConstants.TYPE_LOCAL;
 import static com.kaishustory.leafant.common.constants.MappingConstants.TYPE_REDIS;
 
 /**
@@ -46,6 +49,12 @@ public class EsMappingService implements IMappingService {
     @Autowired
     private RedisMappingService redisMappingService;
 
+    /**
+     * 初始化记录管理
+     */
+    @Autowired
+    private LoadRecordDao loadRecordDao;
+
     /**
      * 配置同步管理
      */
@@ -70,6 +79,12 @@ public class EsMappingService implements IMappingService {
     @Value("${redis.database}")
     private int redisDatabase;
 
+    /**
+     * 是否启用本地副本广播消费（未启用时本地副本无数据，不允许创建本地副本子表）
+     */
+    @Value("${mq.local-copy.enable:false}")
+    private boolean localCopyEnable;
+
     /**
      * Es映射转Es子表独立映射
      *
@@ -108,8 +123,15 @@ public class EsMappingService implements IMappingService {
      */
     public Option<String> createIndex(EsSyncConfig esSyncConfig, CreateEsMapping createEsMapping) {
 
-        // 创建ES索引
+        // 本地副本子表依赖广播消费写入各节点（不写入ES副本索引）
+        if (esSyncConfig.isMult() && TYPE_LOCAL.equals(esSyncConfig.getCopyChildType()) && !localCopyEnable) {
+            Log.error("未启用本地副本广播消费（mq.local-copy.enable），无法创建本地副本子表！index：{}", esSyncConfig.getIndex());
+            return Option.error("未启用本地副本广播消费，无法创建本地副本子表！");
+        }
+
+        // 创建ES索引（托管索引：别名 index 指向物理索引 index_v1，便于后续重建切换）
         if (esSyncConfig.isEsIndexManager()) {
+            esSyncConfig.setIndexVersion(1);
             boolean index = createEsMapping.handle(esSyncConfig);
             if (!index) {
                 Log.error("保存ES索引失败！index：{}", esSyncConfig.getIndex());
@@ -143,6 +165,151 @@ public class EsMappingService implements IMappingService {
         return mapping;
     }
 
+    /**
+     * 重建ES索引（按新映射创建新版本物理索引，实时数据双写，待全量导入完成后切换）
+     * <p>
+     * 重建期间原映射保持不变（原索引按原映射写入），新映射单独保存，切换索引时替换原映射。
+     *
+     * @param esSyncConfig    新同步映射
+     * @param createEsMapping ES映射创建处理（创建 rebuildIndex 物理索引）
+     */
+    public Option<String> rebuildIndex(EsSyncConfig esSyncConfig, CreateEsMapping createEsMapping) {
+
+        EsSyncConfig current = esMappingDao.findById(esSyncConfig.getId());
+        if (current == null) {
+            Log.error("重建ES索引失败，映射不存在！mappingId：{}", esSyncConfig.getId());
+            return Option.error("映射不存在！");
+        }
+        if (!current.isEsIndexManager()) {
+            Log.error("重建ES索引失败，非托管索引！index：{}", current.getIndex());
+            return Option.error("非托管索引，无法重建！");
+        }
+        if (current.isRebuilding()) {
+            Log.error("重建ES索引失败，索引重建中！index：{}，rebuildIndex：{}", current.getIndex(), current.getRebuildIndex());
+            return Option.error("索引重建中！");
+        }
+
+        // 索引名称、地址、同步状态、多表结构保持不变，新版本物理索引待导入
+        esSyncConfig.setIndex(current.getIndex());
+        esSyncConfig.setType(current.getType());
+        esSyncConfig.setEsAddr(current.getEsAddr());
+        esSyncConfig.setEsIndexManager(true);
+        esSyncConfig.setSync(current.isSync());
+        esSyncConfig.setMult(current.isMult());
+        esSyncConfig.setIndexVersion(current.getIndexVersion());
+        esSyncConfig.setRebuildIndex(current.getVersionIndex(current.getIndexVersion() + 1));
+        esSyncConfig.setInit(LOAD_STATUS_NO);
+
+        // 创建新版本物理索引
+        if (!createEsMapping.handle(esSyncConfig)) {
+            Log.error("重建ES索引失败！index：{}，rebuildIndex：{}", esSyncConfig.getIndex(), esSyncConfig.getRebuildIndex());
+            return Option.error("创建新版本索引失败！");
+        }
+
+        // 清除原初始化记录，重新全量导入
+        loadRecordDao.removeRecords(TYPE_ES, esSyncConfig.getId());
+
+        // 记录新版本映射（投影变更时原映射保持不变：实时数据按原映射写入原索引，按新映射双写新版本索引，切换时替换；
+        // 投影未变更时新映射直接生效，实时数据不经转换双写新版本索引）
+        boolean reproject = !current.getMasterTable().sameProjection(esSyncConfig.getMasterTable());
+        try {
+            esMappingDao.startRebuild(current.getId(), esSyncConfig.getRebuildIndex(), esSyncConfig.getMasterTable(), reproject, esSyncConfig.getNumberOfShards(), esSyncConfig.getNumberOfReplicas());
+        } catch (Exception e) {
+            Log.error("保存Mongo映射失败！index：{}", esSyncConfig.getIndex(), e);
+            return Option.error("保存Mongo映射失败！");
+        }
+
+        // 通知同步映射更新（开始双写）
+        if (!mappingSyncService.sync(TYPE_ES)) {
+            Log.error("同步索引映射配置失败！index：{}", esSyncConfig.getIndex());
+            return Option.error("同步索引映射配置失败！");
+        }
+        Log.info("重建ES索引开始！index：{}，rebuildIndex：{}，reproject：{}", esSyncConfig.getIndex(), esSyncConfig.getRebuildIndex(), reproject);
+        return Option.of(current.getId());
+    }
+
+    /**
+     * 复制ES索引（重建索引时，从现有索引复制数据到新版本物理索引，代替从MySQL全量导入）
+     * <p>
+     * 复制在后台执行，立即返回；复制结果记录在初始化状态中。
+     *
+     * @param mappingId   映射ID
+     * @param copyEsIndex ES索引复制处理
+     */
+    public Option<String> copyIndex(String mappingId, CreateEsMapping copyEsIndex) {
+
+        EsSyncConfig config = esMappingDao.findById(mappingId);
+        if (config == null || !config.isRebuilding()) {
+            Log.error("复制ES索引失败，未在重建中！mappingId：{}", mappingId);
+            return Option.error("索引未在重建中！");
+        }
+
+        if (LOAD_STATUS_INITING.equals(config.getInit())) {
+            Log.error("复制ES索引失败，复制进行中！mappingId：{}", mappingId);
+            return Option.error("索引复制进行中！");
+        }
+
+        // 新版本映射需要现有索引中没有的列（或多表结构投影变更），只能从MySQL全量导入
+        if (!config.isRebuildCopyable()) {
+            Log.error("复制ES索引失败，映射字段已变更，需从MySQL全量导入！index：{}，rebuildIndex：{}", config.getIndex(), config.getRebuildIndex());
+            return Option.error("映射字段已变更，需从MySQL全量导入！");
+        }
+
+        // 初始化中（后台复制，完成后更新初始化结果，调用方按初始化状态等待）
+        updateInitialized(new LoadStatus(TYPE_ES, mappingId, LOAD_STATUS_INITING));
+        new Thread(() -> {
+            boolean success = false;
+            try {
+                success = copyEsIndex.handle(config);
+            } catch (Exception e) {
+                Log.error("复制ES索引异常！index：{}，rebuildIndex：{}", config.getIndex(), config.getRebuildIndex(), e);
+            }
+            // 初始化结果
+            updateInitialized(new LoadStatus(TYPE_ES, mappingId, success ? LOAD_STATUS_COMPLETE : LOAD_STATUS_FAIL));
+            if (!success) {
+                Log.error("复制ES索引失败！index：{}，rebuildIndex：{}", config.getIndex(), config.getRebuildIndex());
+            }
+        }, "es-index-copy-thread").start();
+        return Option.of(mappingId);
+    }
+
+    /**
+     * 切换ES索引（重建索引全量导入完成后，别名原子切换到新版本物理索引）
+     *
+     * @param mappingId     映射ID
+     * @param switchEsIndex ES索引切换处理
+     */
+    public Option<String> switchIndex(String mappingId, CreateEsMapping switchEsIndex) {
+
+        EsSyncConfig config = esMappingDao.findById(mappingId);
+        if (config == null || !config.isRebuilding()) {
+            Log.error("切换ES索引失败，未在重建中！mappingId：{}", mappingId);
+            return Option.error("索引未在重建中！");
+        }
+
+        // 全量导入完成，且无待处理记录
+        LoadStats stats = loadRecordDao.findLoadStats(TYPE_ES, mappingId, config.getMasterTable().getDataSourceConfig().getTable());
+        if (!LOAD_STATUS_COMPLETE.equals(config.getInit()) || stats.getWait() > 0 || stats.getSend() > 0 || stats.getFail() > 0) {
+            Log.info("切换ES索引等待，全量导入未完成。index：{}，init：{}，wait：{}，send：{}，fail：{}", config.getIndex(), config.getInit(), stats.getWait(), stats.getSend(), stats.getFail());
+            return Option.error("全量导入未完成！");
+        }
+
+        // 恢复索引设置，切换别名
+        if (!switchEsIndex.handle(config)) {
+            Log.error("切换ES索引失败！index：{}，rebuildIndex：{}", config.getIndex(), config.getRebuildIndex());
+            return Option.error("切换ES索引失败！");
+        }
+
+        // 更新索引版本（停止双写）
+        esMappingDao.updateIndexVersion(mappingId, config.getIndexVersion() + 1);
+        if (!mappingSyncService.sync(TYPE_ES)) {
+            Log.error("同步索引映射配置失败！index：{}", config.getIndex());
+            return Option.error("同步索引映射配置失败！");
+        }
+        Log.info("切换ES索引成功！index：{}，{} -> {}（原索引保留，确认后手动删除）", config.getIndex(), config.getPhysicalIndex(), config.getRebuildIndex());
+        return Option.of(mappingId);
+    }
+
     /**
      * 创建副本子表
      *
@@ -205,6 +372,39 @@ public class EsMappingService implements IMappingService {
                         }
                     })
                     .orElse(Option.empty());
+
+            // 本地副本子表（各转换节点本地存储，仅支持叶子子表）
+        } else if (TYPE_LOCAL.equals(esSyncConfig.getCopyChildType())) {
+
+            return esSyncConfig.getMasterTable().getChildTable().stream().map(child -> {
+                if (child.getChildTable() != null && child.getChildTable().size() > 0) {
+                    Log.error("本地副本不支持多级子表！table：{}", child.getSourceTable());
+                    return Option.<String>error("本地副本不支持多级子表：" + child.getSourceTable());
+                }
+                // 子表转单独配置（不创建ES索引）
+                EsSyncConfig childEsConfig = toChildEsConfig(child, esSyncConfig.getIndex(), esSyncConfig.getEsAddr());
+                childEsConfig.setEsIndexManager(false);
+                childEsConfig.setLocalCopy(true);
+                Option<String> localResult = this.createIndex(childEsConfig, createEsMapping);
+                if (localResult.exist()) {
+                    // 记录本地副本信息
+                    child.setEsCopyMappingId(localResult.get());
+                    child.setEsCopyIndex(childEsConfig.getIndex());
+                } else {
+                    Log.error("为子表创建本地副本时发生异常！table：{}，errmsg：{}", child.getSourceTable(), localResult.getErrmsg());
+                }
+                return localResult;
+            })
+                    .reduce((a, b) -> {
+                        if (a.error()) {
+                            return a;
+                        } else if (b.error()) {
+                            return b;
+                        } else {
+                            return a;
+                        }
+                    })
+                    .orElse(Option.empty());
         }
         return Option.empty();
     }
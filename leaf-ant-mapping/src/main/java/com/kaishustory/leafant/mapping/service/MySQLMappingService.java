@@ -13,11 +13,14 @@
 package com.kaishustory.leafant.mapping.service;
 
 import com.kaishustory.leafant.common.model.LoadStatus;
+import com.kaishustory.leafant.common.model.MySQLReshardChange;
 import com.kaishustory.leafant.common.model.MySQLSyncConfig;
 import com.kaishustory.leafant.common.model.SyncStatus;
 import com.kaishustory.leafant.common.utils.Log;
 import com.kaishustory.leafant.common.utils.Option;
+import com.kaishustory.leafant.mapping.dao.LoadRecordDao;
 import com.kaishustory.leafant.mapping.dao.MySQLMappingDao;
+import com.kaishustory.leafant.mapping.dao.MySQLReshardTombstoneDao;
 import com.kaishustory.leafant.mapping.service.interfaces.IMappingService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -44,6 +47,18 @@ public class MySQLMappingService implements IMappingService {
     @Autowired
     private MappingSyncService mappingSyncService;
 
+    /**
+     * 初始化记录管理
+     */
+    @Autowired
+    private LoadRecordDao loadRecordDao;
+
+    /**
+     * 重新分表删除记录
+     */
+    @Autowired
+    private MySQLReshardTombstoneDao tombstoneDao;
+
     /**
      * 创建MySQL索引
      *
@@ -95,4 +110,60 @@ public class MySQLMappingService implements IMappingService {
         Log.info("MySQL 更新同步状态成功！mappingId：{}，syncStatus：{}", syncStatus.getMappingId(), syncStatus.isSync());
         return Option.of("OK");
     }
+
+    /**
+     * 重新分表（新分表规则生效，迁移期间同步写入同时写入原分表）
+     *
+     * @param reshardChange 分表变更
+     * @return 映射ID
+     */
+    public Option<String> reshard(MySQLReshardChange reshardChange) {
+
+        MySQLSyncConfig config = mysqlMappingDao.findById(reshardChange.getMappingId());
+        if (config == null) {
+            return Option.error("MySQL 映射不存在！");
+        }
+        if (config.isMigrating()) {
+            Log.error("MySQL 重新分表失败，上次分表迁移未完成！mappingId：{}", config.getId());
+            return Option.error("上次分表迁移未完成！");
+        }
+        if (reshardChange.getTargetDataSource() == null || reshardChange.getTargetDataSource().isEmpty()) {
+            return Option.error("MySQL 目标数据源为空！");
+        }
+
+        // 新分表规则生效，原分表规则用于同时写入及计算迁移记录
+        mysqlMappingDao.updateSharding(config.getId(), reshardChange.getShardingStrategy(), reshardChange.getTargetDataSource(), config.getShardingStrategy(), config.getTargetDataSource());
+        // 清除原初始化记录，重新加载迁移记录
+        loadRecordDao.removeRecords(TYPE_MYSQL, config.getId());
+        tombstoneDao.removeByMappingId(config.getId());
+        if (!mappingSyncService.sync(TYPE_MYSQL)) {
+            return Option.error("MySQL 同步映射配置失败！");
+        }
+        Log.info("MySQL 重新分表，开始迁移。table：{}，strategy：{} -> {}，shards：{} -> {}", config.getSourceTable(), config.getShardingStrategy(), reshardChange.getShardingStrategy(), config.getTargetDataSource().size(), reshardChange.getTargetDataSource().size());
+        return Option.of(config.getId());
+    }
+
+    /**
+     * 重新分表完成（停止写入原分表）
+     *
+     * @param mappingId 映射ID
+     * @return 映射ID
+     */
+    public Option<String> finishReshard(String mappingId) {
+
+        MySQLSyncConfig config = mysqlMappingDao.findById(mappingId);
+        if (config == null) {
+            return Option.error("MySQL 映射不存在！");
+        }
+        if (!config.isMigrating()) {
+            return Option.of(config.getId());
+        }
+        mysqlMappingDao.updateSharding(config.getId(), config.getShardingStrategy(), config.getTargetDataSource(), null, null);
+        if (!mappingSyncService.sync(TYPE_MYSQL)) {
+            return Option.error("MySQL 同步映射配置失败！");
+        }
+        tombstoneDao.removeByMappingId(config.getId());
+        Log.info("MySQL 重新分表完成！table：{}，shards：{}", config.getSourceTable(), config.getTargetDataSource().size());
+        return Option.of(config.getId());
+    }
 }
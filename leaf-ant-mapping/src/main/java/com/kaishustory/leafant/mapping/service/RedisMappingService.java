@@ -13,6 +13,7 @@
 package com.kaishustory.leafant.mapping.service;
 
 import com.kaishustory.leafant.common.model.LoadStatus;
+import com.kaishustory.leafant.common.model.RedisShardChange;
 import com.kaishustory.leafant.common.model.RedisSyncConfig;
 import com.kaishustory.leafant.common.model.SyncStatus;
 import com.kaishustory.leafant.common.utils.Log;
@@ -23,6 +24,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 import static com.kaishustory.leafant.common.constants.MappingConstants.TYPE_REDIS;
 
 /**
@@ -44,6 +51,11 @@ public class RedisMappingService implements IMappingService {
     @Autowired
     private MappingSyncService mappingSyncService;
 
+    /**
+     * 迁移中的映射ID
+     */
+    private final Set<String> migrating = ConcurrentHashMap.newKeySet();
+
     /**
      * 创建Redis索引
      *
@@ -52,6 +64,11 @@ public class RedisMappingService implements IMappingService {
      */
     public Option<String> createIndex(RedisSyncConfig redisSyncConfig) {
 
+        // 过期数据不能清除索引成员，不支持同时配置
+        if (redisSyncConfig.getExpireSeconds() > 0 && redisSyncConfig.hasIndex()) {
+            Log.error("Redis 创建映射失败，过期时间不能与二级索引同时配置！key_prefix：{}", redisSyncConfig.getRedisKeyPrefix());
+            return Option.error("Redis 过期时间不能与二级索引同时配置！");
+        }
         // 保存同步映射配置
         Option<String> mappingId = redisMappingDao.saveConfig(redisSyncConfig);
         if (!mappingId.exist()) {
@@ -95,4 +112,114 @@ public class RedisMappingService implements IMappingService {
         Log.info("Redis 更新同步状态成功！mappingId：{}，syncStatus：{}", syncStatus.getMappingId(), syncStatus.isSync());
         return Option.of("OK");
     }
+
+    /**
+     * 增加分片
+     * <p>
+     * 1、保存新分片列表及迁移前分片，通知映射更新（新写入按新分片路由）；
+     * 2、后台迁移新分片负责的Key（立即返回）；
+     * 3、迁移完成后清除迁移前分片；迁移失败时保留迁移前分片，可通过继续迁移重新执行。
+     *
+     * @param shardChange  分片变更
+     * @param migrateShard 分片迁移处理
+     * @return 映射ID
+     */
+    public Option<String> addShard(RedisShardChange shardChange, MigrateRedisShard migrateShard) {
+
+        RedisSyncConfig config = redisMappingDao.findById(shardChange.getMappingId());
+        if (config == null) {
+            return Option.error("Redis 映射不存在！");
+        }
+        if (config.getMigrateFromShards() != null && !config.getMigrateFromShards().isEmpty()) {
+            Log.error("Redis 增加分片失败，上次分片迁移未完成！mappingId：{}", config.getId());
+            return Option.error("上次分片迁移未完成！");
+        }
+        // 未分片时，原数据源作为第一个分片
+        List<RedisSyncConfig.RedisDataSourceConfig> fromShards = config.getShards() != null && !config.getShards().isEmpty() ?
+                config.getShards() : Collections.singletonList(config.getRedisDataSourceConfig());
+        if (fromShards.contains(shardChange.getShard())) {
+            return Option.error("Redis 分片已存在！");
+        }
+        List<RedisSyncConfig.RedisDataSourceConfig> shards = new ArrayList<>(fromShards);
+        shards.add(shardChange.getShard());
+
+        // 新分片生效
+        redisMappingDao.updateShards(config.getId(), shards, fromShards);
+        if (!mappingSyncService.sync(TYPE_REDIS)) {
+            return Option.error("Redis 同步映射配置失败！");
+        }
+        config.setShards(shards);
+        config.setMigrateFromShards(fromShards);
+        Log.info("Redis 增加分片，开始迁移。key_prefix：{}，shards：{}", config.getRedisKeyPrefix(), shards.size());
+
+        // 后台迁移
+        startMigrate(config, migrateShard);
+        return Option.of(config.getId());
+    }
+
+    /**
+     * 继续分片迁移（上次迁移失败或中断后重新执行，迁移可重复执行）
+     *
+     * @param mappingId    映射ID
+     * @param migrateShard 分片迁移处理
+     * @return 映射ID
+     */
+    public Option<String> resumeShard(String mappingId, MigrateRedisShard migrateShard) {
+        RedisSyncConfig config = redisMappingDao.findById(mappingId);
+        if (config == null) {
+            return Option.error("Redis 映射不存在！");
+        }
+        if (config.getMigrateFromShards() == null || config.getMigrateFromShards().isEmpty()) {
+            Log.info("Redis 无未完成的分片迁移。mappingId：{}", mappingId);
+            return Option.of(mappingId);
+        }
+        if (migrating.contains(mappingId)) {
+            return Option.error("Redis 分片迁移进行中！");
+        }
+        Log.info("Redis 继续分片迁移。key_prefix：{}，shards：{}", config.getRedisKeyPrefix(), config.getShards().size());
+        startMigrate(config, migrateShard);
+        return Option.of(mappingId);
+    }
+
+    /**
+     * 后台迁移，完成后清除迁移前分片
+     *
+     * @param config       Redis映射（shards：新分片，migrateFromShards：迁移前分片）
+     * @param migrateShard 分片迁移处理
+     */
+    private void startMigrate(RedisSyncConfig config, MigrateRedisShard migrateShard) {
+        if (!migrating.add(config.getId())) {
+            return;
+        }
+        new Thread(() -> {
+            try {
+                // 迁移
+                if (!migrateShard.handle(config)) {
+                    Log.error("Redis 分片迁移失败，可继续迁移！key_prefix：{}", config.getRedisKeyPrefix());
+                    return;
+                }
+                // 迁移完成
+                redisMappingDao.updateShards(config.getId(), config.getShards(), null);
+                if (!mappingSyncService.sync(TYPE_REDIS)) {
+                    Log.error("Redis 同步映射配置失败！key_prefix：{}", config.getRedisKeyPrefix());
+                    return;
+                }
+                Log.info("Redis 分片迁移完成！key_prefix：{}，shards：{}", config.getRedisKeyPrefix(), config.getShards().size());
+            } catch (Exception e) {
+                Log.error("Redis 分片迁移异常，可继续迁移！key_prefix：{}", config.getRedisKeyPrefix(), e);
+            } finally {
+                migrating.remove(config.getId());
+            }
+        }, "redis-shard-migrate-thread").start();
+    }
+
+    public interface MigrateRedisShard {
+        /**
+         * Redis分片迁移处理
+         *
+         * @param redisSyncConfig Redis映射（shards：新分片，migrateFromShards：迁移前分片）
+         * @return 是否成功
+         */
+        boolean handle(RedisSyncConfig redisSyncConfig);
+    }
 }
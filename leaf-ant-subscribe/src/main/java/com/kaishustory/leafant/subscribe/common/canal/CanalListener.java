@@ -24,6 +24,8 @@ import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ConfigurableApplicationContext;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -45,6 +47,11 @@ public class CanalListener implements Runnable {
      */
     private ICanalMessageHandle canalMessageHandle;
 
+    /**
+     * 等待源事务结束的批次（源事务结束后按顺序确认）
+     */
+    private final List<Long> pendingBatchIds = new ArrayList<>();
+
     /**
      * 运行锁
      */
@@ -92,11 +99,11 @@ public class CanalListener implements Runnable {
                             // 变更数量（只统计ROWDATA记录）
                             long size = message.getEntries().stream().filter(entry -> entry.getEntryType() == CanalEntry.EntryType.ROWDATA).count();
 
-                            //判断是否有可处理消息
-                            if (batchId == -1 || size == 0) {
+                            //判断是否有可处理消息（源事务未结束时，继续处理事务结束等非行数据条目）
+                            if (batchId == -1 || (size == 0 && !canalMessageHandle.hasPendingTransaction())) {
                                 // 回应处理成功
                                 if (batchId != -1) {
-                                    conn.ack(batchId);
+                                    ack(conn, batchId);
                                 }
                                 //无更新消息，
 //                                Thread.sleep(3);
@@ -112,16 +119,16 @@ public class CanalListener implements Runnable {
                                     boolean handleResult = canalMessageHandle.handle(message);
                                     if (handleResult) {
                                         //确认处理成功
-                                        conn.ack(batchId);
-                                        log.info("任务处理成功！数据库实例：{}，BatchId：{}", server, batchId);
+                                        ack(conn, batchId);
+                                        log.info("任务处理成功！数据库实例：{}，BatchId：{}，源事务未结束：{}", server, batchId, canalMessageHandle.hasPendingTransaction());
                                     } else {
                                         //处理失败，回滚数据
-                                        conn.rollback(batchId);
+                                        rollback(conn);
                                         log.error("任务处理失败！数据库实例：{}，BatchId：{}", server, batchId);
                                     }
                                 } catch (Throwable t) {
                                     //处理失败，回滚数据
-                                    conn.rollback(batchId);
+                                    rollback(conn);
                                     log.error("任务处理发生异常！数据库实例：{}，BatchId：{}", server, batchId, t);
                                 } finally {
                                     time.end();
@@ -129,7 +136,9 @@ public class CanalListener implements Runnable {
                             }
                         } catch (Exception e) {
                             log.error("canal 消息订阅异常！数据库实例：{}", server, e);
-                            //尝试重连
+                            //尝试重连（未确认批次由Canal重新投递）
+                            pendingBatchIds.clear();
+                            canalMessageHandle.reset();
                             try {
                                 conn.disconnect();
                                 Thread.sleep(500);
@@ -167,6 +176,33 @@ public class CanalListener implements Runnable {
         runlock.unlock();
     }
 
+    /**
+     * 确认批次（源事务未结束时延迟确认，结束后按顺序确认等待中的批次）
+     *
+     * @param conn    Canal连接
+     * @param batchId 批处理ID
+     */
+    private void ack(CanalConnector conn, long batchId) {
+        pendingBatchIds.add(batchId);
+        if (!canalMessageHandle.hasPendingTransaction()) {
+            for (long id : pendingBatchIds) {
+                conn.ack(id);
+            }
+            pendingBatchIds.clear();
+        }
+    }
+
+    /**
+     * 回滚全部未确认批次（包括等待源事务结束的批次），清除暂存的源事务
+     *
+     * @param conn Canal连接
+     */
+    private void rollback(CanalConnector conn) {
+        pendingBatchIds.clear();
+        canalMessageHandle.reset();
+        conn.rollback();
+    }
+
     /**
      * 获得Canal连接
      */
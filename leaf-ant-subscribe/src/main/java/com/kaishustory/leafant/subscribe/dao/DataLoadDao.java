@@ -445,9 +445,9 @@ public class DataLoadDao {
                     ).isPresent();
                 }).collect(Collectors.toList());
 
-                if (rows.size() > 0) {
-                    // 分页处理
-                    List<String> mqid = dataLoadHandle.run(rows, loadRecord.getPage(), loadRecord.getPageSize());
+                // 分页处理（过滤后无发送消息时，直接标记成功）
+                List<String> mqid = rows.size() > 0 ? dataLoadHandle.run(rows, loadRecord.getPage(), loadRecord.getPageSize()) : null;
+                if (mqid != null && mqid.size() > 0) {
                     // 更新已发送状态
                     loadRecordDao.updateRecordSendMqidById(loadRecord.getId(), mqid, rows.size());
                 } else {
@@ -477,9 +477,9 @@ public class DataLoadDao {
                 // 截取MQ分页
                 List<List<EventColumn>> rows = allRows.stream().skip(i * mqSize).limit(mqSize).collect(Collectors.toList());
 
-                if (rows.size() > 0) {
-                    // 分页处理
-                    List<String> mqid = dataLoadHandle.run(rows, loadRecord.getPage(), loadRecord.getPageSize());
+                // 分页处理（过滤后无发送消息时，直接标记成功）
+                List<String> mqid = rows.size() > 0 ? dataLoadHandle.run(rows, loadRecord.getPage(), loadRecord.getPageSize()) : null;
+                if (mqid != null && mqid.size() > 0) {
                     // 更新已发送状态
                     loadRecordDao.updateRecordSendMqidById(loadRecord.getId(), mqid, rows.size());
                 } else {
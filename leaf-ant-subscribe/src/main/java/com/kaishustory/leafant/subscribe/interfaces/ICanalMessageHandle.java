@@ -26,4 +26,16 @@ public interface ICanalMessageHandle {
      * @return 是否处理成功
      */
     boolean handle(Message message);
+
+    /**
+     * 是否有未结束的源事务（所在批次需延迟确认）
+     *
+     * @return 是否有未结束的源事务
+     */
+    boolean hasPendingTransaction();
+
+    /**
+     * 清除未结束的源事务（批次回滚后调用）
+     */
+    void reset();
 }
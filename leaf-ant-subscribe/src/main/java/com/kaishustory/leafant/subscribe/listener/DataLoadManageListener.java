@@ -15,6 +15,9 @@ package com.kaishustory.leafant.subscribe.listener;
 import com.kaishustory.leafant.common.model.*;
 import com.kaishustory.leafant.common.utils.JsonUtils;
 import com.kaishustory.leafant.common.utils.Log;
+import com.kaishustory.leafant.common.utils.Option;
+import com.kaishustory.leafant.common.utils.ShardingUtils;
+import com.kaishustory.leafant.mapping.dao.MySQLMappingDao;
 import com.kaishustory.leafant.mapping.service.EsMappingService;
 import com.kaishustory.leafant.subscribe.dao.DataLoadDao;
 import com.kaishustory.leafant.subscribe.service.MqSendService;
@@ -28,6 +31,8 @@ import org.springframework.stereotype.Service;
 import javax.annotation.PostConstruct;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static com.kaishustory.leafant.common.constants.EventConstants.*;
@@ -52,6 +57,12 @@ public class DataLoadManageListener {
     @Autowired
     private DataLoadDao dataLoadDao;
 
+    /**
+     * MySQL映射配置
+     */
+    @Autowired
+    private MySQLMappingDao mysqlMappingDao;
+
     /**
      * 同步消息Group
      */
@@ -148,10 +159,12 @@ public class DataLoadManageListener {
         }
         Log.info("{} 初始化数据开始。database：{}，table：{}", initLoadInfo.getTarget(), initLoadInfo.getDataSourceConfig().getDatabase(), initLoadInfo.getDataSourceConfig().getTable());
         try {
+            // 重新分表只加载目标分表变更的记录
+            Predicate<List<EventColumn>> rowFilter = initLoadInfo.isReshard() ? reshardFilter(initLoadInfo.getMappingId()) : row -> true;
             // 同步数据
             boolean loadSuccess = dataLoadDao.queryAllDataHandle(initLoadInfo, (rows, page, pageSize) -> {
                 Log.info("初始化全量数据：RdsKey：{}，Database：{}，Table：{}，Page：{}/{}，Size：{}", initLoadInfo.getDataSourceConfig().getRds(), initLoadInfo.getDataSourceConfig().getDatabase(), initLoadInfo.getDataSourceConfig().getTable(), page, pageSize, rows == null ? 0 : rows.size());
-                return mqSendService.send(rows.stream().map(row -> new Event("MYSQL", SOURCE_INIT, initLoadInfo.getTarget(), initLoadInfo.getMappingId(), initLoadInfo.getDataSourceConfig().getRds(), initLoadInfo.getDataSourceConfig().getDatabase(), initLoadInfo.getDataSourceConfig().getTable(), 1, "INSERT", getPrimaryKey(row), new ArrayList<>(), row, System.currentTimeMillis())).collect(Collectors.toList()));
+                return mqSendService.send(rows.stream().filter(rowFilter).map(row -> new Event("MYSQL", SOURCE_INIT, initLoadInfo.getTarget(), initLoadInfo.getMappingId(), initLoadInfo.getDataSourceConfig().getRds(), initLoadInfo.getDataSourceConfig().getDatabase(), initLoadInfo.getDataSourceConfig().getTable(), 1, "INSERT", getPrimaryKey(row), new ArrayList<>(), row, System.currentTimeMillis())).collect(Collectors.toList()));
             });
             if (loadSuccess) {
                 // 初始化成功
@@ -171,6 +184,28 @@ public class DataLoadManageListener {
         }
     }
 
+    /**
+     * 重新分表记录过滤（新、原分表规则计算的目标分表不同的记录）
+     *
+     * @param mappingId MySQL映射ID
+     * @return 记录过滤
+     */
+    private Predicate<List<EventColumn>> reshardFilter(String mappingId) {
+        MySQLSyncConfig config = mysqlMappingDao.findById(mappingId);
+        if (config == null || !config.isMigrating()) {
+            Log.errorThrow("MySQL 重新分表加载失败，映射不在迁移中！mappingId：{}", mappingId);
+        }
+        return row -> {
+            EventColumn shardingCol = row.stream().filter(col -> col.getName().equals(config.getShardingCol())).findFirst().orElse(null);
+            if (shardingCol == null) {
+                return true;
+            }
+            Option<SyncDataSourceConfig> from = ShardingUtils.route(config.getMigrateFromStrategy(), config.getMigrateFromDataSource(), shardingCol);
+            Option<SyncDataSourceConfig> to = ShardingUtils.route(config.getShardingStrategy(), config.getTargetDataSource(), shardingCol);
+            return !from.exist() || !to.exist() || !Objects.equals(from.get(), to.get());
+        };
+    }
+
     /**
      * 初始化子表副本数据
      *
@@ -190,8 +225,8 @@ public class DataLoadManageListener {
                 return commonInitLoad(new InitLoadInfo(TYPE_REDIS, table.getRedisMappingId(), table.getDataSourceConfig()), false);
             }).reduce((a, b) -> a && b).orElse(true);
 
-        } else if (TYPE_ES.equals(esSyncConfig.getCopyChildType())) {
-            // 初始化ES 副本数据
+        } else if (TYPE_ES.equals(esSyncConfig.getCopyChildType()) || TYPE_LOCAL.equals(esSyncConfig.getCopyChildType())) {
+            // 初始化ES 副本数据（本地副本同样按副本配置导入，由各转换节点写入本地存储）
             return esSyncConfig.getMasterTable().getChildTable().stream().map(table -> {
                 // ES副本，初始数据消息
                 return esInitLoad(new EsInitLoadInfo(EsMappingService.toChildEsConfig(table, esSyncConfig.getIndex(), esSyncConfig.getEsAddr())));
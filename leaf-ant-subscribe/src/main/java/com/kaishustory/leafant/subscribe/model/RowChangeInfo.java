@@ -29,6 +29,10 @@ public class RowChangeInfo {
      * 变更信息
      */
     private CanalEntry.RowChange rowChange;
+    /**
+     * 源事务标识
+     */
+    private String transactionId;
 
     public RowChangeInfo() {
     }
@@ -37,4 +41,10 @@ public class RowChangeInfo {
         this.header = header;
         this.rowChange = rowChange;
     }
+
+    public RowChangeInfo(CanalEntry.Header header, CanalEntry.RowChange rowChange, String transactionId) {
+        this.header = header;
+        this.rowChange = rowChange;
+        this.transactionId = transactionId;
+    }
 }
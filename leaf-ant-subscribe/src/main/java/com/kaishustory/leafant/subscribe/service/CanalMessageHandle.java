@@ -20,20 +20,25 @@ import com.kaishustory.leafant.common.model.EventColumn;
 import com.kaishustory.leafant.common.utils.Log;
 import com.kaishustory.leafant.common.utils.StringUtils;
 import com.kaishustory.leafant.mapping.cache.AllMappingCache;
+import com.kaishustory.leafant.subscribe.Application;
 import com.kaishustory.leafant.subscribe.common.utils.BeanFactory;
 import com.kaishustory.leafant.subscribe.interfaces.ICanalMessageHandle;
 import com.kaishustory.leafant.subscribe.model.RowChangeInfo;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.kaishustory.leafant.common.constants.MappingConstants.SOURCE_CANAL;
 
 /**
  * Canal订阅消息处理
+ * <p>
+ * 源事务可能跨多个Canal批次：未结束的源事务事件暂存，收到事务结束后与所在批次一起发送（MQ消息不拆分源事务），
+ * 并标记各表最后一个事件为事务结束；暂存期间不确认批次（由监听方延迟确认），处理失败时清除暂存（Canal回滚后重新投递）。
+ * 暂存超过上限时拆分发送（避免Canal未确认缓冲区占满），该源事务不再保证原子性。
  **/
 @Slf4j
 public class CanalMessageHandle implements ICanalMessageHandle {
@@ -53,6 +58,31 @@ public class CanalMessageHandle implements ICanalMessageHandle {
      */
     private AllMappingCache allMappingCache = BeanFactory.getBean(AllMappingCache.class);
 
+    /**
+     * 当前源事务标识（事务可能跨多个消息，事务结束后清除）
+     */
+    private String transactionId;
+
+    /**
+     * 当前源事务暂存事件（等待事务结束）
+     */
+    private final List<Event> pending = new ArrayList<>();
+
+    /**
+     * 当前源事务暂存期间的行数据条目数（包括未配置的表）
+     */
+    private int pendingEntries;
+
+    /**
+     * 当前源事务是否已拆分发送
+     */
+    private boolean split;
+
+    /**
+     * 源事务暂存上限（行数据条目数或事件数）
+     */
+    private int transactionMaxSize = Application.getConfig().getEnvironment().getProperty("canal.transaction.max-size", Integer.class, 2000);
+
 
     public CanalMessageHandle(String server) {
         this.server = server;
@@ -85,59 +115,133 @@ public class CanalMessageHandle implements ICanalMessageHandle {
     }
 
     /**
-     * 数据修改操作列表
+     * 是否有未结束的源事务（暂存中，所在批次需延迟确认）
+     *
+     * @return 是否有未结束的源事务
+     */
+    @Override
+    public boolean hasPendingTransaction() {
+        return (transactionId != null && !split) || !pending.isEmpty();
+    }
+
+    /**
+     * 清除暂存的源事务（Canal回滚后从未确认批次重新投递）
+     */
+    @Override
+    public void reset() {
+        transactionId = null;
+        pending.clear();
+        pendingEntries = 0;
+        split = false;
+    }
+
+    /**
+     * 数据修改操作列表（只包含已结束的源事务及拆分发送的部分）
      *
      * @param message 消息
      * @return 事件列表
      */
     private List<Event> getEventList(Message message) {
-
-        return message.getEntries().stream().filter(entry -> entry.getEntryType() == CanalEntry.EntryType.ROWDATA).map(entry -> {
-            try {
-                // 事务提取
-                /** 数据变更 **/
-                //解析数据变更信息
-                val rowChange = CanalEntry.RowChange.parseFrom(entry.getStoreValue());
-                //事件类型
-                val eventType = rowChange.getEventType();
-
-                //数据修改命令（非查询命令、非表结构修改命令）
-                if (eventType != CanalEntry.EventType.QUERY && !rowChange.getIsDdl()) {
-                    //记录数据变更
-                    return new RowChangeInfo(entry.getHeader(), rowChange);
+        List<Event> events = new ArrayList<>();
+        for (CanalEntry.Entry entry : message.getEntries()) {
+            if (entry.getEntryType() == CanalEntry.EntryType.TRANSACTIONBEGIN) {
+                /** 事务开始，记录事务标识 **/
+                transactionId = entry.getHeader().getLogfileName() + ":" + entry.getHeader().getLogfileOffset();
+                pendingEntries = 0;
+                split = false;
+            } else if (entry.getEntryType() == CanalEntry.EntryType.TRANSACTIONEND) {
+                /** 事务结束，标记各表最后一个事件，随本批次发送 **/
+                if (!split) {
+                    markTransactionEnd(pending);
+                }
+                events.addAll(pending);
+                reset();
+            } else if (entry.getEntryType() == CanalEntry.EntryType.ROWDATA) {
+                /** 数据变更（事务中暂存，等待事务结束） **/
+                List<Event> rows = toEventList(entry);
+                if (transactionId != null && !split) {
+                    pending.addAll(rows);
+                    pendingEntries++;
                 } else {
-                    return null;
+                    events.addAll(rows);
                 }
+            }
+        }
+        if (transactionId != null && !split && (pendingEntries >= transactionMaxSize || pending.size() >= transactionMaxSize)) {
+            // 暂存超过上限，拆分发送（不再保证该源事务原子性）
+            Log.warn("源事务超过暂存上限，拆分发送！server：{}，transaction：{}，entries：{}，events：{}", server, transactionId, pendingEntries, pending.size());
+            events.addAll(pending);
+            pending.clear();
+            split = true;
+        }
+        return events;
+    }
+
+    /**
+     * 标记源事务结束（各表最后一个事件）
+     *
+     * @param events 源事务事件列表（binlog顺序）
+     */
+    private void markTransactionEnd(List<Event> events) {
+        Set<String> tables = new HashSet<>();
+        for (int i = events.size() - 1; i >= 0; i--) {
+            if (tables.add(events.get(i).getTableKey())) {
+                events.get(i).setTransactionEnd(true);
+            }
+        }
+    }
 
-            } catch (InvalidProtocolBufferException e) {
-                log.error("ProtocolBuffer 解码异常！", e);
-                throw new RuntimeException(e);
+    /**
+     * 行数据条目转为事件列表
+     *
+     * @param entry 行数据条目
+     * @return 事件列表（查询命令、表结构修改命令、未配置的表返回空）
+     */
+    private List<Event> toEventList(CanalEntry.Entry entry) {
+        RowChangeInfo rowChangeInfo;
+        try {
+            //解析数据变更信息
+            val rowChange = CanalEntry.RowChange.parseFrom(entry.getStoreValue());
+            //事件类型
+            val eventType = rowChange.getEventType();
+
+            //数据修改命令（非查询命令、非表结构修改命令）
+            if (eventType == CanalEntry.EventType.QUERY || rowChange.getIsDdl()) {
+                return Collections.emptyList();
             }
+            //记录数据变更
+            rowChangeInfo = new RowChangeInfo(entry.getHeader(), rowChange, transactionId);
+
+        } catch (InvalidProtocolBufferException e) {
+            log.error("ProtocolBuffer 解码异常！", e);
+            throw new RuntimeException(e);
+        }
 
-        })
-                // 过滤无效事务
-                .filter(Objects::nonNull)
+        return Stream.of(rowChangeInfo)
                 // 过滤未配置的事件
                 .filter(event -> allMappingCache.has(server, event.getHeader().getSchemaName(), event.getHeader().getTableName()))
                 // 将事务拆分为事件列表
-                .flatMap(event -> event.getRowChange().getRowDatasList().stream().map(row ->
-                        // 转为事件
-                        new Event(
-                                event.getHeader().getSourceType().name(), // 数据库类型
-                                SOURCE_CANAL, // 来源 Canal
-                                server, // 数据库实例名称
-                                event.getHeader().getSchemaName(), // 数据库
-                                event.getHeader().getTableName(), // 表
-                                event.getRowChange().getEventType().getNumber(), // 操作类型（1：新增，2：修改，3：删除）
-                                event.getRowChange().getEventType().getValueDescriptor().getName(), // 操作类型名称
-                                getPrimaryKey(row), // 主键值
-                                toColumnList(row.getBeforeColumnsList()), // 之前字段内容
-                                toColumnList(row.getAfterColumnsList()), // 之后字段内容
-                                event.getHeader().getExecuteTime(), // 发生时间
-                                event.getHeader().getServerId(),
-                                event.getHeader().getLogfileName(),
-                                event.getHeader().getLogfileOffset()
-                        )))
+                .flatMap(event -> event.getRowChange().getRowDatasList().stream().map(row -> {
+                    // 转为事件
+                    Event e = new Event(
+                            event.getHeader().getSourceType().name(), // 数据库类型
+                            SOURCE_CANAL, // 来源 Canal
+                            server, // 数据库实例名称
+                            event.getHeader().getSchemaName(), // 数据库
+                            event.getHeader().getTableName(), // 表
+                            event.getRowChange().getEventType().getNumber(), // 操作类型（1：新增，2：修改，3：删除）
+                            event.getRowChange().getEventType().getValueDescriptor().getName(), // 操作类型名称
+                            getPrimaryKey(row), // 主键值
+                            toColumnList(row.getBeforeColumnsList()), // 之前字段内容
+                            toColumnList(row.getAfterColumnsList()), // 之后字段内容
+                            event.getHeader().getExecuteTime(), // 发生时间
+                            event.getHeader().getServerId(),
+                            event.getHeader().getLogfileName(),
+                            event.getHeader().getLogfileOffset()
+                    );
+                    e.setTransactionId(event.getTransactionId());
+                    return e;
+                }))
                 .collect(Collectors.toList());
     }
 
@@ -24,7 +24,6 @@ import javax.annotation.Resource;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
-import java.util.stream.Collectors;
 
 import static com.kaishustory.leafant.common.constants.MappingConstants.SOURCE_INIT;
 
@@ -72,17 +71,12 @@ public class MqSendService {
         List<String> mqid = new ArrayList<>();
         // 每条MQ包含记录条数
         int size = 100;
-        // 计划发送MQ条数
-        int pageSize = (int) Math.ceil(eventLists.size() / (float) size);
 
         Event simple = eventLists.get(0);
 
         // 分页发送MQ
-        for (int i = 0; i < pageSize; i++) {
+        for (List<Event> eventList : split(eventLists, size)) {
 
-            // 分组ID
-            // 提取当前MQ，发送记录列表
-            List<Event> eventList = eventLists.stream().skip(i * size).limit(size).collect(Collectors.toList());
             try {
                 // 首个事件
                 Event firstEvent = eventList.get(0);
@@ -117,6 +111,36 @@ public class MqSendService {
         return mqid;
     }
 
+    /**
+     * 分页（每页至少 size 条记录，只在源事务边界拆分，同一源事务在同一条MQ中）
+     *
+     * @param eventLists 事件列表（binlog顺序）
+     * @param size       每页记录条数
+     * @return 分页列表
+     */
+    private List<List<Event>> split(List<Event> eventLists, int size) {
+        List<List<Event>> pages = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i <= eventLists.size(); i++) {
+            if (i == eventLists.size() || (i - start >= size && isTransactionBoundary(eventLists.get(i - 1), eventLists.get(i)))) {
+                pages.add(eventLists.subList(start, i));
+                start = i;
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * 是否为源事务边界（无事务标识时，每个事件独立）
+     *
+     * @param prev 前一事件
+     * @param next 后一事件
+     * @return 是否为源事务边界
+     */
+    private boolean isTransactionBoundary(Event prev, Event next) {
+        return prev.getTransactionId() == null || !prev.getTransactionId().equals(next.getTransactionId());
+    }
+
     /**
      * 获得MQ 发送者
      *
@@ -87,7 +87,7 @@ public class JdbcConf {
             // 创建连接池
             HikariDataSource dataSource = new HikariDataSource();
             dataSource.setPoolName(database);
-            dataSource.setJdbcUrl(String.format("jdbc:mysql://%s:%s/%s?characterEncoding=UTF-8&serverTimezone=Asia/Shanghai", host, port, database));
+            dataSource.setJdbcUrl(String.format("jdbc:mysql://%s:%s/%s?characterEncoding=UTF-8&serverTimezone=Asia/Shanghai&rewriteBatchedStatements=true&cachePrepStmts=true&prepStmtCacheSize=500&prepStmtCacheSqlLimit=4096", host, port, database));
             dataSource.setUsername(user);
             dataSource.setPassword(password);
             dataSource.setConnectionTimeout(5000);
@@ -13,15 +13,18 @@
 package com.kaishustory.leafant.transform.common.conf;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisPassword;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 import redis.clients.jedis.JedisPoolConfig;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Redis配置
@@ -40,32 +43,61 @@ public class RedisConf {
     @Value("${redis-timeout:5000}")
     int timeout;
 
-    private Map<String, StringRedisTemplate> factoryPool = new HashMap<>();
+    /**
+     * 连接池 <地址/数据库/密码，连接>
+     */
+    private final Map<String, StringRedisTemplate> factoryPool = new ConcurrentHashMap<>();
 
     /**
      * 获得Redis连接
+     * <p>
+     * 地址为逗号分隔的多个节点时，按 Redis Cluster 连接（数据库固定为0）。
      *
-     * @param addr     Redis地址（IP:端口）
+     * @param addr     Redis地址（IP:端口，集群：IP:端口,IP:端口...）
      * @param password 密码
      * @param database 数据库
      * @return 连接
      */
     public StringRedisTemplate getConnection(String addr, String password, int database) {
-        if (!factoryPool.containsKey(addr)) {
-            synchronized (this) {
-                if (!factoryPool.containsKey(addr)) {
-                    StringRedisTemplate temple = new StringRedisTemplate();
-                    String[] addrs = addr.split(":");
-                    String host = addrs[0];
-                    int port = addrs.length > 1 ? Integer.parseInt(addrs[1]) : 6379;
-                    temple.setConnectionFactory(connectionFactory(host, port, password, database,
-                            maxIdle, minIdle, maxActive, maxWaitMillis, timeout));
-                    temple.afterPropertiesSet();
-                    factoryPool.put(addr, temple);
-                }
+        // 按完整配置区分连接（同一地址不同数据库、密码，使用不同连接）
+        String key = addr + "/" + database + "/" + (password != null ? password : "");
+        return factoryPool.computeIfAbsent(key, k -> {
+            StringRedisTemplate temple = new StringRedisTemplate();
+            if (isCluster(addr)) {
+                temple.setConnectionFactory(clusterConnectionFactory(addr, password,
+                        maxIdle, minIdle, maxActive, maxWaitMillis, timeout));
+            } else {
+                String[] addrs = addr.split(":");
+                String host = addrs[0];
+                int port = addrs.length > 1 ? Integer.parseInt(addrs[1]) : 6379;
+                temple.setConnectionFactory(connectionFactory(host, port, password, database,
+                        maxIdle, minIdle, maxActive, maxWaitMillis, timeout));
             }
+            temple.afterPropertiesSet();
+            return temple;
+        });
+    }
+
+    /**
+     * 是否集群地址
+     *
+     * @param addr Redis地址
+     * @return 是否集群
+     */
+    public boolean isCluster(String addr) {
+        return addr.contains(",");
+    }
+
+    private RedisConnectionFactory clusterConnectionFactory(String addr, String password, int maxIdle, int minIdle, int maxActive,
+                                                            long maxWaitMillis, int timeout) {
+        RedisClusterConfiguration cluster = new RedisClusterConfiguration(Arrays.asList(addr.split(",")));
+        if (!StringUtils.isEmpty(password)) {
+            cluster.setPassword(RedisPassword.of(password));
         }
-        return factoryPool.get(addr);
+        JedisConnectionFactory jedis = new JedisConnectionFactory(cluster, poolConfig(maxIdle, minIdle, maxActive, maxWaitMillis, true));
+        jedis.setTimeout(timeout);
+        jedis.afterPropertiesSet();
+        return jedis;
     }
 
     private RedisConnectionFactory connectionFactory(String hostName, int port,
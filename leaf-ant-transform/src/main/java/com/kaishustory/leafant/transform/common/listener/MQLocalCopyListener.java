@@ -0,0 +1,88 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.common.listener;
+
+import com.kaishustory.leafant.common.model.Event;
+import com.kaishustory.leafant.common.utils.JsonUtils;
+import com.kaishustory.leafant.common.utils.Log;
+import com.kaishustory.leafant.transform.route.EventRouteService;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.MQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
+import org.apache.rocketmq.common.consumer.ConsumeFromWhere;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.protocol.heartbeat.MessageModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * 本地副本MQ消息监听（广播消费同步及初始化消息，各节点写入本地副本）
+ **/
+@Configuration
+public class MQLocalCopyListener {
+
+    /**
+     * 事件路由
+     */
+    @Autowired
+    private EventRouteService eventRouteService;
+
+    /**
+     * 创建MQ广播消费者
+     */
+    @Bean
+    @ConditionalOnProperty(name = "mq.local-copy.enable", havingValue = "true")
+    public MQPushConsumer createLocalCopyMqConsumer(@Value("${mq.local-copy.groupId:GID_LOCAL_SYNC_COPY}") String group, @Value("${mq.sync.topic}") String syncTopic, @Value("${mq.load.topic}") String loadTopic, @Value("${mq.addr}") String addr) {
+
+        DefaultMQPushConsumer consumer = new DefaultMQPushConsumer(group);
+        try {
+            consumer.setNamesrvAddr(addr);
+            // 广播消费：每个节点均接收全部消息
+            consumer.setMessageModel(MessageModel.BROADCASTING);
+            consumer.setConsumeFromWhere(ConsumeFromWhere.CONSUME_FROM_FIRST_OFFSET);
+            consumer.subscribe(syncTopic, "*");
+            consumer.subscribe(loadTopic, "*");
+            consumer.registerMessageListener(new MessageListenerOrderly() {
+                @Override
+                public ConsumeOrderlyStatus consumeMessage(List<MessageExt> msgs, ConsumeOrderlyContext context) {
+                    for (MessageExt message : msgs) {
+                        // MQID
+                        String mqid = message.getProperty("UNIQ_KEY");
+                        try {
+                            Event[] events = JsonUtils.fromJson(new String(message.getBody()), Event[].class);
+                            if (events != null && events.length > 0) {
+                                eventRouteService.routeLocalCopy(events);
+                            }
+                        } catch (Exception e) {
+                            // 本地写入失败（如磁盘空间不足），暂停后重试，保证副本顺序
+                            Log.error("本地副本MQ消息处理异常，稍后重试！{}", mqid, e);
+                            return ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
+                        }
+                    }
+                    return ConsumeOrderlyStatus.SUCCESS;
+                }
+            });
+            consumer.start();
+        } catch (Exception e) {
+            Log.error("创建本地副本MQ监听失败！", e);
+        }
+        return consumer;
+    }
+}
@@ -12,6 +12,7 @@
 
 package com.kaishustory.leafant.transform.es.dao;
 
+import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -19,6 +20,7 @@ import com.kaishustory.leafant.common.utils.Log;
 import com.kaishustory.leafant.common.utils.Time;
 import com.kaishustory.leafant.transform.common.conf.ElasticSearchConf;
 import com.kaishustory.leafant.transform.es.model.ChildQueryInfo;
+import com.kaishustory.leafant.transform.es.model.EsBulkBody;
 import com.kaishustory.leafant.transform.es.model.EsMapping;
 import io.searchbox.action.Action;
 import io.searchbox.action.BulkableAction;
@@ -26,10 +28,17 @@ import io.searchbox.client.JestClient;
 import io.searchbox.client.JestResult;
 import io.searchbox.core.Bulk;
 import io.searchbox.core.BulkResult;
+import io.searchbox.core.ClearScroll;
 import io.searchbox.core.MultiGet;
 import io.searchbox.core.Search;
+import io.searchbox.core.SearchScroll;
 import io.searchbox.indices.CreateIndex;
+import io.searchbox.indices.aliases.AddAliasMapping;
+import io.searchbox.indices.aliases.ModifyAliases;
+import io.searchbox.indices.aliases.RemoveAliasMapping;
 import io.searchbox.indices.mapping.PutMapping;
+import io.searchbox.indices.settings.UpdateSettings;
+import io.searchbox.params.Parameters;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -37,6 +46,7 @@ import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -48,6 +58,11 @@ import java.util.stream.Collectors;
 @Component
 public class ElasticSearchDao {
 
+    /**
+     * 滚动读取上下文保持时间
+     */
+    private static final String SCROLL_KEEP_ALIVE = "5m";
+
     /**
      * ElasticSearch连接
      */
@@ -161,23 +176,111 @@ public class ElasticSearchDao {
         }
     }
 
+    /**
+     * 批量命令（预先写好的 NDJSON 请求体）
+     *
+     * @param esAddr ES地址
+     * @param index  索引
+     * @param type   类型
+     * @param body   批处理请求体
+     */
+    public boolean bulk(String esAddr, String index, String type, EsBulkBody body) {
+        return bulk(esAddr, index, type, body, false);
+    }
+
+    /**
+     * 批量命令（预先写好的 NDJSON 请求体）
+     *
+     * @param esAddr         ES地址
+     * @param index          索引
+     * @param type           类型
+     * @param body           批处理请求体
+     * @param ignoreConflict 是否忽略文档已存在冲突（重建索引时，create 命令遇到已由实时数据写入的文档）
+     */
+    public boolean bulk(String esAddr, String index, String type, EsBulkBody body, boolean ignoreConflict) {
+        if (!body.isEmpty()) {
+            int size = body.size();
+            String data = body.build();
+            return execr(esAddr, client -> {
+                Time time = new Time("【ES】ES批处理命令");
+                BulkResult result = client.execute(new RawBulk(new Bulk.Builder().defaultIndex(index).defaultType(type), data));
+                time.end();
+                if (result.isSucceeded()) {
+                    Log.info("【ES】批处理成功！es：{}，index：{}，type：{}，size：{}，bytes：{}", esAddr, index, type, size, data.length());
+                    return true;
+                } else if (ignoreConflict && isOnlyFailed(result, 409)) {
+                    Log.info("【ES】批处理成功，已存在文档跳过！es：{}，index：{}，type：{}，size：{}，skip：{}", esAddr, index, type, size, result.getFailedItems().size());
+                    return true;
+                } else {
+                    Log.errorThrow("【ES】批处理失败！es：{}，index：{}，type：{}，error：{}", esAddr, index, type, result.getJsonString());
+                    return false;
+                }
+            });
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * 批量命令（重建索引双写，失败只记录日志，不影响实时同步）
+     *
+     * @param esAddr ES地址
+     * @param index  重建索引
+     * @param type   类型
+     * @param body   批处理请求体
+     */
+    public void shadowBulk(String esAddr, String index, String type, EsBulkBody body) {
+        if (!body.isEmpty()) {
+            int size = body.size();
+            String data = body.build();
+            exec(esAddr, client -> {
+                BulkResult result = client.execute(new RawBulk(new Bulk.Builder().defaultIndex(index).defaultType(type), data));
+                // 文档不存在（尚未初始化导入）、文档已存在，均属重建过程中的正常情况
+                if (result.isSucceeded() || isOnlyFailed(result, 404, 409)) {
+                    Log.info("【ES】重建索引双写完成。es：{}，index：{}，type：{}，size：{}，skip：{}", esAddr, index, type, size, result.getFailedItems().size());
+                } else {
+                    Log.error("【ES】重建索引双写失败！es：{}，index：{}，type：{}，error：{}", esAddr, index, type, result.getErrorMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * 批处理是否仅有指定状态的失败项
+     *
+     * @param result 批处理结果
+     * @param status 允许的失败状态
+     */
+    private boolean isOnlyFailed(BulkResult result, int... status) {
+        if (result.getResponseCode() != 200 || result.getFailedItems().isEmpty()) {
+            return false;
+        }
+        return result.getFailedItems().stream().allMatch(item -> Arrays.stream(status).anyMatch(s -> s == item.status));
+    }
+
     /**
      * 创建索引
      *
      * @param index     索引
      * @param type      类型
      * @param esMapping 字段映射
+     * @param shards    分片数
+     * @param replicas  副本数
+     * @param bulkLoad  是否批量导入模式（关闭刷新，不建副本，导入完成后由 finishBulkLoad 恢复）
      * @return 是否成功
      */
-    public boolean createIndex(String esAddr, String index, String type, EsMapping esMapping) {
+    public boolean createIndex(String esAddr, String index, String type, EsMapping esMapping, int shards, int replicas, boolean bulkLoad) {
         return execr(esAddr, client -> {
             // 创建索引
-            Map<String, Object> settings = new HashMap<>(2);
-            settings.put("number_of_shards", 5);
-            settings.put("number_of_replicas", 1);
+            Map<String, Object> settings = new HashMap<>(4);
+            settings.put("number_of_shards", shards);
+            settings.put("number_of_replicas", bulkLoad ? 0 : replicas);
+            if (bulkLoad) {
+                settings.put("refresh_interval", "-1");
+            }
             JestResult jestResult = client.execute(new CreateIndex.Builder(index).settings(settings).build());
             if (jestResult.isSucceeded()) {
-                Log.info("ES创建索引成功！index：{}，type：{}", index, type);
+                Log.info("ES创建索引成功！index：{}，type：{}，shards：{}，replicas：{}，bulkLoad：{}", index, type, shards, replicas, bulkLoad);
             } else {
                 Log.error("ES创建索引失败！index：{}，type：{}，error：{}", index, type, jestResult.getErrorMessage());
             }
@@ -197,6 +300,71 @@ public class ElasticSearchDao {
         });
     }
 
+    /**
+     * 结束批量导入模式（恢复刷新间隔及副本数）
+     *
+     * @param esAddr   ES地址
+     * @param index    索引
+     * @param replicas 副本数
+     * @return 是否成功
+     */
+    public boolean finishBulkLoad(String esAddr, String index, int replicas) {
+        Boolean success = execr(esAddr, client -> {
+            JestResult result = client.execute(new UpdateSettings.Builder(
+                    String.format("{\"index\":{\"refresh_interval\":\"1s\",\"number_of_replicas\":%d}}", replicas)
+            ).addIndex(index).build());
+            if (result.isSucceeded()) {
+                Log.info("ES恢复索引设置成功！index：{}，replicas：{}", index, replicas);
+            } else {
+                Log.error("ES恢复索引设置失败！index：{}，error：{}", index, result.getErrorMessage());
+            }
+            return result.isSucceeded();
+        });
+        return success != null && success;
+    }
+
+    /**
+     * 索引别名指向物理索引
+     *
+     * @param esAddr   ES地址
+     * @param alias    别名
+     * @param oldIndex 原物理索引（为空表示无原索引；与别名相同表示原索引为固定名称索引，同一请求内删除）
+     * @param newIndex 新物理索引
+     * @return 是否成功
+     */
+    public boolean switchAlias(String esAddr, String alias, String oldIndex, String newIndex) {
+        Boolean success = execr(esAddr, client -> {
+            ModifyAliases.Builder modify = new ModifyAliases.Builder(new AddAliasMapping.Builder(newIndex, alias).build());
+            JestResult result;
+            if (alias.equals(oldIndex)) {
+                // 固定名称索引与别名冲突，同一请求内删除原索引并建立别名（remove_index），原子切换，无不可查询间隔
+                Log.warn("ES原索引为固定名称索引，删除并建立别名。alias：{}，index：{}", alias, newIndex);
+                StringBuilder actions = new StringBuilder(128);
+                actions.append("{\"actions\":[{\"add\":{\"index\":");
+                EsBulkBody.writeString(actions, newIndex);
+                actions.append(",\"alias\":");
+                EsBulkBody.writeString(actions, alias);
+                actions.append("}},{\"remove_index\":{\"index\":");
+                EsBulkBody.writeString(actions, oldIndex);
+                actions.append("}}]}");
+                result = client.execute(new RawModifyAliases(modify, actions.toString()));
+            } else {
+                if (oldIndex != null) {
+                    // 同一请求内移除原别名，原子切换
+                    modify.addAlias(new RemoveAliasMapping.Builder(oldIndex, alias).build());
+                }
+                result = client.execute(modify.build());
+            }
+            if (result.isSucceeded()) {
+                Log.info("ES索引别名切换成功！alias：{}，{} -> {}", alias, oldIndex, newIndex);
+            } else {
+                Log.error("ES索引别名切换失败！alias：{}，{} -> {}，error：{}", alias, oldIndex, newIndex, result.getErrorMessage());
+            }
+            return result.isSucceeded();
+        });
+        return success != null && success;
+    }
+
     /**
      * 查询
      *
@@ -233,6 +401,108 @@ public class ElasticSearchDao {
         return docs;
     }
 
+    /**
+     * 滚动读取索引全部文档（切片滚动，各切片可并行读取）
+     *
+     * @param esAddr ES地址
+     * @param index  索引
+     * @param query  查询条件JSON（为空时读取全部）
+     * @param slice  切片序号
+     * @param slices 切片总数
+     * @param size   每批条数
+     * @param handle 每批文档处理（返回 false 时停止读取）
+     * @return 读取文档数（读取失败返回 -1）
+     */
+    public long scroll(String esAddr, String index, String query, int slice, int slices, int size, ScrollHandle handle) {
+        return scroll(esAddr, index, query, slice, slices, size, true, handle);
+    }
+
+    /**
+     * 滚动读取索引全部文档（切片滚动，各切片可并行读取）
+     *
+     * @param esAddr ES地址
+     * @param index  索引
+     * @param query  查询条件JSON（为空时读取全部）
+     * @param slice  切片序号
+     * @param slices 切片总数
+     * @param size   每批条数
+     * @param source 是否读取文档原文（仅需文档ID时不读取）
+     * @param handle 每批文档处理（返回 false 时停止读取）
+     * @return 读取文档数（读取失败返回 -1）
+     */
+    public long scroll(String esAddr, String index, String query, int slice, int slices, int size, boolean source, ScrollHandle handle) {
+        Long total = execr(esAddr, client -> {
+            StringBuilder body = new StringBuilder(128);
+            body.append("{\"size\":").append(size).append(",\"sort\":[\"_doc\"]");
+            if (!source) {
+                body.append(",\"_source\":false");
+            }
+            if (query != null) {
+                body.append(",\"query\":").append(query);
+            }
+            if (slices > 1) {
+                body.append(",\"slice\":{\"id\":").append(slice).append(",\"max\":").append(slices).append('}');
+            }
+            body.append('}');
+
+            JestResult result = client.execute(new Search.Builder(body.toString()).addIndex(index).setParameter(Parameters.SCROLL, SCROLL_KEEP_ALIVE).build());
+            String scrollId = null;
+            long count = 0;
+            try {
+                while (true) {
+                    if (!result.isSucceeded()) {
+                        Log.error("ES滚动读取失败！index：{}，slice：{}/{}，error：{}", index, slice, slices, result.getErrorMessage());
+                        return -1L;
+                    }
+                    scrollId = result.getJsonObject().get("_scroll_id").getAsString();
+                    JsonArray hits = result.getJsonObject().getAsJsonObject("hits").getAsJsonArray("hits");
+                    if (hits.size() == 0) {
+                        return count;
+                    }
+                    List<JsonObject> docs = new ArrayList<>(hits.size());
+                    hits.forEach(hit -> docs.add(hit.getAsJsonObject()));
+                    count += docs.size();
+                    if (!handle.handle(docs)) {
+                        return -1L;
+                    }
+                    result = client.execute(new SearchScroll.Builder(scrollId, SCROLL_KEEP_ALIVE).build());
+                }
+            } finally {
+                if (scrollId != null) {
+                    client.execute(new ClearScroll.Builder().addScrollId(scrollId).build());
+                }
+            }
+        });
+        return total != null ? total : -1L;
+    }
+
+    /**
+     * 按ID批量查询文档原文
+     *
+     * @param esAddr ES地址
+     * @param index  索引
+     * @param type   类型
+     * @param ids    文档ID列表
+     * @return 文档原文 <文档ID，_source JSON>（文档不存在时无此ID；查询失败返回 null）
+     */
+    public Map<String, String> multiGetSource(String esAddr, String index, String type, List<String> ids) {
+        return execr(esAddr, client -> {
+            JestResult result = client.execute(new MultiGet.Builder.ById(index, type).addId(ids).build());
+            if (!result.isSucceeded()) {
+                Log.error("ES批量查询失败！index：{}，error：{}", index, result.getErrorMessage());
+                return null;
+            }
+            Map<String, String> docs = new HashMap<>(ids.size() * 2);
+            result.getJsonObject().getAsJsonArray("docs").forEach(doc -> {
+                JsonObject d = doc.getAsJsonObject();
+                if (d.has("found") && d.get("found").getAsBoolean()) {
+                    docs.put(d.get("_id").getAsString(), d.getAsJsonObject("_source").toString());
+                }
+            });
+            return docs;
+        });
+    }
+
     /**
      * 解析查询结果
      *
@@ -254,6 +524,59 @@ public class ElasticSearchDao {
         return source;
     }
 
+    /**
+     * 批处理命令（直接发送已写好的请求体，不再由 Gson 序列化命令列表）
+     */
+    private static class RawBulk extends Bulk {
+
+        /**
+         * 请求体
+         */
+        private final String body;
+
+        RawBulk(Bulk.Builder builder, String body) {
+            super(builder);
+            this.body = body;
+        }
+
+        @Override
+        public String getData(Gson gson) {
+            return body;
+        }
+    }
+
+    /**
+     * 别名修改命令（直接发送已写好的请求体，用于 Jest 不支持的 remove_index 操作）
+     */
+    private static class RawModifyAliases extends ModifyAliases {
+
+        /**
+         * 请求体
+         */
+        private final String body;
+
+        RawModifyAliases(ModifyAliases.Builder builder, String body) {
+            super(builder);
+            this.body = body;
+        }
+
+        @Override
+        public String getData(Gson gson) {
+            return body;
+        }
+    }
+
+    public interface ScrollHandle {
+
+        /**
+         * 处理一批文档
+         *
+         * @param hits 文档（包括 _id、_source）
+         * @return 是否继续读取
+         */
+        boolean handle(List<JsonObject> hits) throws IOException;
+    }
+
     public interface ExecReturn {
 
         Object handle(JestClient client) throws IOException;
@@ -0,0 +1,510 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.es.dao;
+
+import com.kaishustory.leafant.common.utils.Log;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * 本地副本存储（内存映射文件，记录内容在堆外，仅Key索引在堆内）
+ * <p>
+ * 1、记录追加写入段文件：Key长度(int) + 值长度(int，-1表示删除) + 校验和(int，CRC32) + Key(UTF-8) + 值；
+ * 2、索引记录每个Key最新记录位置（段序号<<32 | 段内偏移），读取时直接从映射内存截取；
+ * 3、段文件即快照：重启时顺序扫描段文件重建索引，无需重新导入；遇到长度越界或校验失败的记录（未刷盘的半条记录）时，
+ *    从该记录起截断（清零段内剩余部分，删除后续段文件）；
+ * 4、失效记录超过一半时压缩为新一代段文件（CURRENT 记录当前代数）：复制快照时不阻塞写入，切换前补写复制期间追加的记录。
+ **/
+public class LocalCopyStore {
+
+    /**
+     * 当前代数文件
+     */
+    private static final String CURRENT = "CURRENT";
+
+    /**
+     * 记录头长度（Key长度 + 值长度 + 校验和）
+     */
+    private static final int HEADER = 12;
+
+    /**
+     * 删除标志
+     */
+    private static final int TOMBSTONE = -1;
+
+    /**
+     * 存储目录
+     */
+    private final Path dir;
+
+    /**
+     * 段文件大小（字节）
+     */
+    private final int segmentSize;
+
+    /**
+     * 当前段文件及索引（压缩时整体替换，读取时取同一份，保证位置与段文件对应）
+     */
+    private volatile State state = new State();
+
+    /**
+     * 当前代数
+     */
+    private int generation;
+
+    /**
+     * 写入位置（最后一个段内偏移）
+     */
+    private int writePos;
+
+    /**
+     * 已写入字节数、有效记录字节数
+     */
+    private long totalBytes;
+    private long liveBytes;
+
+    /**
+     * 未刷盘段序号（自该段起）
+     */
+    private int dirtyFrom = -1;
+
+    /**
+     * 是否压缩中
+     */
+    private final AtomicBoolean compacting = new AtomicBoolean(false);
+
+    public LocalCopyStore(Path dir, int segmentSize) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * 打开存储（按段文件重建索引）
+     */
+    public synchronized void open() throws IOException {
+        Files.createDirectories(dir);
+        Path current = dir.resolve(CURRENT);
+        generation = Files.exists(current) ? Integer.parseInt(new String(Files.readAllBytes(current), StandardCharsets.UTF_8).trim()) : 0;
+        List<MappedByteBuffer> segments = state.segments;
+        Map<String, Long> index = state.index;
+        for (int seg = 0; Files.exists(segmentPath(generation, seg)); seg++) {
+            segments.add(map(segmentPath(generation, seg)));
+        }
+        if (segments.isEmpty()) {
+            segments.add(map(segmentPath(generation, 0)));
+        }
+        // 顺序扫描，重建索引
+        boolean truncated = false;
+        for (int seg = 0; seg < segments.size() && !truncated; seg++) {
+            ByteBuffer buf = segments.get(seg).duplicate();
+            int pos = 0;
+            while (pos + HEADER <= segmentSize) {
+                int keyLen = buf.getInt(pos);
+                if (keyLen == 0) {
+                    break;
+                }
+                int valueLen = buf.getInt(pos + 4);
+                if (!isValid(buf, pos, keyLen, valueLen)) {
+                    // 记录损坏（未完整刷盘），截断
+                    truncate(segments, seg, pos);
+                    truncated = true;
+                    break;
+                }
+                byte[] key = new byte[keyLen];
+                buf.position(pos + HEADER);
+                buf.get(key);
+                int recordLen = recordLength(keyLen, valueLen);
+                Long old = valueLen == TOMBSTONE ?
+                        index.remove(new String(key, StandardCharsets.UTF_8)) :
+                        index.put(new String(key, StandardCharsets.UTF_8), location(seg, pos));
+                if (old != null) {
+                    liveBytes -= recordLength(segments, old);
+                }
+                if (valueLen != TOMBSTONE) {
+                    liveBytes += recordLen;
+                }
+                totalBytes += recordLen;
+                pos += recordLen;
+            }
+            writePos = pos;
+        }
+    }
+
+    /**
+     * 读取
+     *
+     * @param key Key
+     * @return 值（不存在返回 null）
+     */
+    public byte[] get(String key) {
+        State current = state;
+        Long location = current.index.get(key);
+        if (location == null) {
+            return null;
+        }
+        ByteBuffer buf = current.segments.get((int) (location >>> 32)).duplicate();
+        int pos = (int) (long) location;
+        int keyLen = buf.getInt(pos);
+        int valueLen = buf.getInt(pos + 4);
+        byte[] value = new byte[valueLen];
+        buf.position(pos + HEADER + keyLen);
+        buf.get(value);
+        return value;
+    }
+
+    /**
+     * 写入
+     *
+     * @param key   Key
+     * @param value 值
+     */
+    public synchronized void put(String key, byte[] value) throws IOException {
+        if (key.isEmpty()) {
+            // Key长度为0视为段结束标志，不写入
+            return;
+        }
+        long location = append(key.getBytes(StandardCharsets.UTF_8), value);
+        Long old = state.index.put(key, location);
+        if (old != null) {
+            liveBytes -= recordLength(state.segments, old);
+        }
+        liveBytes += recordLength(state.segments, location);
+    }
+
+    /**
+     * 删除
+     *
+     * @param key Key
+     */
+    public synchronized void remove(String key) throws IOException {
+        Long old = state.index.remove(key);
+        if (old != null) {
+            liveBytes -= recordLength(state.segments, old);
+            // 写入删除标志，重启扫描时删除
+            append(key.getBytes(StandardCharsets.UTF_8), null);
+        }
+    }
+
+    /**
+     * 刷盘（未刷盘的段）
+     */
+    public synchronized void flush() {
+        if (dirtyFrom >= 0) {
+            for (int seg = dirtyFrom; seg < state.segments.size(); seg++) {
+                state.segments.get(seg).force();
+            }
+            dirtyFrom = -1;
+        }
+    }
+
+    /**
+     * 是否需要压缩（失效记录超过一半）
+     */
+    public synchronized boolean needsCompact() {
+        return totalBytes >= segmentSize && liveBytes * 2 <= totalBytes;
+    }
+
+    /**
+     * 失效记录超过一半时压缩（有效记录写入新一代段文件）
+     * <p>
+     * 复制快照期间不阻塞读写，仅切换前补写复制期间追加的记录时阻塞更新；同一时间只执行一个压缩。
+     *
+     * @return 是否执行压缩
+     */
+    public boolean compactIfNeeded() throws IOException {
+        if (!needsCompact() || !compacting.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            compact();
+            return true;
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    /**
+     * 压缩
+     */
+    private void compact() throws IOException {
+        long begin = System.currentTimeMillis();
+        // 快照（索引及当前写入位置）
+        State old;
+        Map<String, Long> snapshot;
+        int markSeg;
+        int markPos;
+        int newGeneration;
+        synchronized (this) {
+            old = state;
+            snapshot = new HashMap<>(old.index);
+            markSeg = old.segments.size() - 1;
+            markPos = writePos;
+            newGeneration = generation + 1;
+        }
+
+        // 复制快照中的有效记录（快照位置之前的记录不再变化，无需加锁）
+        CompactTarget target = new CompactTarget(newGeneration);
+        for (Map.Entry<String, Long> entry : snapshot.entrySet()) {
+            target.copy(old.segments, entry.getValue(), entry.getKey());
+        }
+
+        synchronized (this) {
+            // 补写复制期间追加的记录（包括删除标志）
+            for (int seg = markSeg; seg < old.segments.size(); seg++) {
+                ByteBuffer buf = old.segments.get(seg).duplicate();
+                int end = seg == old.segments.size() - 1 ? writePos : segmentSize;
+                int pos = seg == markSeg ? markPos : 0;
+                while (pos + HEADER <= end) {
+                    int keyLen = buf.getInt(pos);
+                    if (keyLen == 0) {
+                        break;
+                    }
+                    byte[] key = new byte[keyLen];
+                    buf.position(pos + HEADER);
+                    buf.get(key);
+                    target.copy(old.segments, location(seg, pos), new String(key, StandardCharsets.UTF_8));
+                    pos += recordLength(keyLen, buf.getInt(pos + 4));
+                }
+            }
+            target.state.segments.forEach(MappedByteBuffer::force);
+
+            // 切换当前代数（原子替换）
+            Path tmp = dir.resolve(CURRENT + ".tmp");
+            Files.write(tmp, String.valueOf(newGeneration).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, dir.resolve(CURRENT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            // 整体替换段文件及索引（读取中的旧映射在回收前保持可读），删除旧段文件
+            int oldGeneration = generation;
+            state = target.state;
+            generation = newGeneration;
+            writePos = target.pos;
+            totalBytes = target.totalBytes;
+            liveBytes = target.liveBytes;
+            dirtyFrom = -1;
+            for (int seg = 0; seg < old.segments.size(); seg++) {
+                Files.deleteIfExists(segmentPath(oldGeneration, seg));
+            }
+        }
+        Log.info("【本地副本】压缩完成。dir：{}，size：{}，bytes：{}，time：{}ms", dir, target.state.index.size(), target.totalBytes, System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 记录数
+     */
+    public int size() {
+        return state.index.size();
+    }
+
+    /**
+     * 有效记录字节数
+     */
+    public synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * 追加记录
+     *
+     * @param key   Key
+     * @param value 值（为空表示删除标志）
+     * @return 记录位置
+     */
+    private long append(byte[] key, byte[] value) throws IOException {
+        int recordLen = HEADER + key.length + (value != null ? value.length : 0);
+        if (recordLen > segmentSize) {
+            throw new IOException("记录超过段文件大小！bytes：" + recordLen);
+        }
+        List<MappedByteBuffer> segments = state.segments;
+        if (writePos + recordLen > segmentSize) {
+            // 当前段剩余空间不足，新建段（段尾保留为0，扫描时视为结束）
+            segments.add(map(segmentPath(generation, segments.size())));
+            writePos = 0;
+        }
+        int seg = segments.size() - 1;
+        ByteBuffer buf = segments.get(seg).duplicate();
+        buf.position(writePos);
+        buf.putInt(key.length);
+        buf.putInt(value != null ? value.length : TOMBSTONE);
+        buf.putInt(0);
+        buf.put(key);
+        if (value != null) {
+            buf.put(value);
+        }
+        buf.putInt(writePos + 8, checksum(buf, writePos, recordLen));
+        long location = location(seg, writePos);
+        writePos += recordLen;
+        totalBytes += recordLen;
+        if (dirtyFrom < 0) {
+            dirtyFrom = seg;
+        }
+        return location;
+    }
+
+    /**
+     * 记录长度（按位置读取记录头）
+     */
+    private static int recordLength(List<MappedByteBuffer> segments, long location) {
+        ByteBuffer buf = segments.get((int) (location >>> 32));
+        int pos = (int) location;
+        return recordLength(buf.getInt(pos), buf.getInt(pos + 4));
+    }
+
+    private static int recordLength(int keyLen, int valueLen) {
+        return HEADER + keyLen + (valueLen == TOMBSTONE ? 0 : valueLen);
+    }
+
+    /**
+     * 记录是否完整（长度在段内且校验和一致）
+     */
+    private boolean isValid(ByteBuffer buf, int pos, int keyLen, int valueLen) {
+        if (keyLen < 0 || valueLen < TOMBSTONE) {
+            return false;
+        }
+        long recordLen = (long) HEADER + keyLen + (valueLen == TOMBSTONE ? 0 : valueLen);
+        return pos + recordLen <= segmentSize && buf.getInt(pos + 8) == checksum(buf, pos, (int) recordLen);
+    }
+
+    /**
+     * 记录校验和（CRC32，覆盖Key长度、值长度、Key及值，不含校验和字段）
+     */
+    private static int checksum(ByteBuffer buf, int pos, int recordLen) {
+        CRC32 crc = new CRC32();
+        ByteBuffer view = buf.duplicate();
+        view.limit(pos + 8).position(pos);
+        crc.update(view);
+        view.limit(pos + recordLen).position(pos + HEADER);
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 从指定位置截断（清零段内剩余部分，删除后续段文件）
+     */
+    private void truncate(List<MappedByteBuffer> segments, int seg, int pos) throws IOException {
+        Log.warn("【本地副本】段文件记录不完整，截断。dir：{}，segment：{}，pos：{}，discard segments：{}", dir, seg, pos, segments.size() - seg - 1);
+        MappedByteBuffer segment = segments.get(seg);
+        ByteBuffer buf = segment.duplicate();
+        buf.position(pos);
+        byte[] zeros = new byte[4096];
+        while (buf.hasRemaining()) {
+            buf.put(zeros, 0, Math.min(zeros.length, buf.remaining()));
+        }
+        segment.force();
+        while (segments.size() > seg + 1) {
+            segments.remove(segments.size() - 1);
+            Files.deleteIfExists(segmentPath(generation, segments.size()));
+        }
+    }
+
+    private static long location(int seg, int pos) {
+        return ((long) seg << 32) | (pos & 0xFFFFFFFFL);
+    }
+
+    private Path segmentPath(int generation, int seg) {
+        return dir.resolve(String.format("g%d-%05d.dat", generation, seg));
+    }
+
+    /**
+     * 段文件及索引
+     */
+    private static class State {
+
+        /**
+         * 段文件（读取时复制缓冲区视图，不影响写入位置）
+         */
+        private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+
+        /**
+         * 索引 <Key，段序号<<32 | 段内偏移>
+         */
+        private final Map<String, Long> index = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 压缩目标（新一代段文件及索引）
+     */
+    private class CompactTarget {
+
+        private final State state = new State();
+
+        private final int generation;
+
+        /**
+         * 写入位置、已写入字节数、有效记录字节数
+         */
+        private int pos;
+        private long totalBytes;
+        private long liveBytes;
+
+        CompactTarget(int generation) throws IOException {
+            this.generation = generation;
+            // 清除上次未完成压缩遗留的段文件
+            for (int seg = 0; Files.exists(segmentPath(generation, seg)); seg++) {
+                Files.delete(segmentPath(generation, seg));
+            }
+            state.segments.add(map(segmentPath(generation, 0)));
+        }
+
+        /**
+         * 复制记录
+         *
+         * @param segments 原段文件
+         * @param location 原记录位置
+         * @param key      Key
+         */
+        void copy(List<MappedByteBuffer> segments, long location, String key) throws IOException {
+            ByteBuffer src = segments.get((int) (location >>> 32)).duplicate();
+            int srcPos = (int) location;
+            int valueLen = src.getInt(srcPos + 4);
+            int recordLen = recordLength(src.getInt(srcPos), valueLen);
+            if (pos + recordLen > segmentSize) {
+                state.segments.add(map(segmentPath(generation, state.segments.size())));
+                pos = 0;
+            }
+            src.limit(srcPos + recordLen).position(srcPos);
+            ByteBuffer dst = state.segments.get(state.segments.size() - 1).duplicate();
+            dst.position(pos);
+            dst.put(src);
+            Long old = valueLen == TOMBSTONE ?
+                    state.index.remove(key) :
+                    state.index.put(key, location(state.segments.size() - 1, pos));
+            if (old != null) {
+                liveBytes -= recordLength(state.segments, old);
+            }
+            if (valueLen != TOMBSTONE) {
+                liveBytes += recordLen;
+            }
+            pos += recordLen;
+            totalBytes += recordLen;
+        }
+    }
+
+    private MappedByteBuffer map(Path path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw"); FileChannel channel = file.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+}
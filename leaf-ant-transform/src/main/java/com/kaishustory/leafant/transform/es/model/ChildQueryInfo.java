@@ -16,6 +16,7 @@ import com.kaishustory.leafant.common.model.EsSyncMappingTable;
 import lombok.Data;
 
 import static com.kaishustory.leafant.common.constants.MappingConstants.TYPE_ES;
+import static com.kaishustory.leafant.common.constants.MappingConstants.TYPE_LOCAL;
 import static com.kaishustory.leafant.common.constants.MappingConstants.TYPE_REDIS;
 
 /**
@@ -25,7 +26,7 @@ import static com.kaishustory.leafant.common.constants.MappingConstants.TYPE_RED
 public class ChildQueryInfo {
 
     /**
-     * 子表数据源（支持：redis、es）
+     * 子表数据源（支持：redis、es、local）
      */
     private String childSouce;
 
@@ -81,4 +82,25 @@ public class ChildQueryInfo {
         this.esIndex = esIndex;
         this.esQueryId = esQueryId;
     }
+
+    private ChildQueryInfo() {
+    }
+
+    /**
+     * 本地副本查询信息
+     *
+     * @param esEvent      Es事件信息
+     * @param mappingTable 映射信息
+     * @param mappingId    副本配置ID
+     * @param esQueryId    副本ID
+     */
+    public static ChildQueryInfo ofLocal(EsEvent esEvent, EsSyncMappingTable mappingTable, String mappingId, String esQueryId) {
+        ChildQueryInfo info = new ChildQueryInfo();
+        info.childSouce = TYPE_LOCAL;
+        info.esEvent = esEvent;
+        info.mappingId = mappingId;
+        info.mappingTable = mappingTable;
+        info.esQueryId = esQueryId;
+        return info;
+    }
 }
@@ -0,0 +1,41 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.es.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 子表副本缓存失效通知（各节点收到后清除本地缓存）
+ **/
+@Data
+@NoArgsConstructor
+public class CopyCacheInvalidation {
+
+    /**
+     * 表Key
+     */
+    private String tableKey;
+
+    /**
+     * 副本ID列表
+     */
+    private List<String> ids;
+
+    public CopyCacheInvalidation(String tableKey, List<String> ids) {
+        this.tableKey = tableKey;
+        this.ids = ids;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.es.model;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * 子表副本存在过滤器（布隆过滤器，按副本索引全部ID构建，定期轮换）
+ * <p>
+ * 判断为不存在的ID一定不存在，可直接返回空；判断为存在的ID需继续查询（存在一定误判率）。
+ * 删除的ID无法从过滤器移除，在下次轮换时清除。
+ **/
+public class CopyExistFilter {
+
+    /**
+     * 表Key
+     */
+    private final String tableKey;
+
+    /**
+     * 误判率
+     */
+    private final double fpp;
+
+    /**
+     * 当前过滤器（构建完成前为空）
+     */
+    private BloomFilter<CharSequence> current;
+
+    /**
+     * 构建中的过滤器（轮换期间新增ID同时写入）
+     */
+    private BloomFilter<CharSequence> building;
+
+    /**
+     * 当前过滤器构建时间
+     */
+    private volatile long buildTime;
+
+    /**
+     * 上次开始构建时间
+     */
+    private volatile long startTime;
+
+    /**
+     * 上次构建读取ID数
+     */
+    private volatile long lastCount;
+
+    public CopyExistFilter(String tableKey, double fpp) {
+        this.tableKey = tableKey;
+        this.fpp = fpp;
+    }
+
+    /**
+     * 开始构建（已在构建中返回 false）
+     *
+     * @param expectedInsertions 预计ID数
+     * @return 是否开始构建
+     */
+    public synchronized boolean startBuild(int expectedInsertions) {
+        if (building != null) {
+            return false;
+        }
+        building = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), expectedInsertions, fpp);
+        startTime = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * 构建中写入ID
+     *
+     * @param ids 副本ID
+     */
+    public synchronized void build(Collection<String> ids) {
+        if (building != null) {
+            ids.forEach(building::put);
+        }
+    }
+
+    /**
+     * 结束构建（成功时替换当前过滤器，失败时保留原过滤器）
+     *
+     * @param success 是否成功
+     * @param count   读取ID数
+     */
+    public synchronized void finishBuild(boolean success, long count) {
+        if (success && building != null) {
+            current = building;
+            buildTime = System.currentTimeMillis();
+            lastCount = count;
+        }
+        building = null;
+    }
+
+    /**
+     * 新增ID（同时写入当前及构建中的过滤器）
+     *
+     * @param ids 副本ID
+     */
+    public synchronized void put(Collection<String> ids) {
+        ids.forEach(id -> {
+            if (current != null) {
+                current.put(id);
+            }
+            if (building != null) {
+                building.put(id);
+            }
+        });
+    }
+
+    /**
+     * 是否可能存在（过滤器未构建完成时，均视为可能存在）
+     *
+     * @param id 副本ID
+     * @return 是否可能存在
+     */
+    public synchronized boolean mightContain(String id) {
+        return current == null || current.mightContain(id);
+    }
+
+    /**
+     * 是否可用
+     */
+    public synchronized boolean isReady() {
+        return current != null;
+    }
+
+    /**
+     * 是否构建中
+     */
+    public synchronized boolean isBuilding() {
+        return building != null;
+    }
+
+    /**
+     * 当前估算误判率（写入ID超过预计数量时升高）
+     */
+    public synchronized double expectedFpp() {
+        return current != null ? current.expectedFpp() : 1.0;
+    }
+
+    public String getTableKey() {
+        return tableKey;
+    }
+
+    public long getBuildTime() {
+        return buildTime;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getLastCount() {
+        return lastCount;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.es.model;
+
+import com.kaishustory.leafant.common.utils.JsonUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 子表副本缓存记录编码（二进制，替代 JSON 字符串）
+ * <p>
+ * 格式：版本(1字节) + 字段数(varint) + [名称长度(varint) + 名称(UTF-8) + 值长度+1(varint，0表示null) + 值(UTF-8)]...
+ * <p>
+ * 解码无需词法分析，按长度前缀直接截取；首字节为 '{' 时按原 JSON 格式解析（兼容升级前写入的缓存）；
+ * 未知版本、记录不完整或长度不一致时抛出 IllegalArgumentException（格式升级后旧节点不会误解析新格式）。
+ **/
+public final class CopyRecord {
+
+    /**
+     * 格式版本
+     */
+    private static final byte VERSION = 1;
+
+    private CopyRecord() {
+    }
+
+    /**
+     * 编码
+     *
+     * @param columns 列值 <列，值>
+     * @return 二进制记录
+     */
+    public static byte[] encode(Map<String, String> columns) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + columns.size() * 24);
+        out.write(VERSION);
+        writeVarint(out, columns.size());
+        columns.forEach((name, value) -> {
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, nameBytes.length);
+            out.write(nameBytes, 0, nameBytes.length);
+            if (value == null) {
+                writeVarint(out, 0);
+            } else {
+                byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+                writeVarint(out, valueBytes.length + 1);
+                out.write(valueBytes, 0, valueBytes.length);
+            }
+        });
+        return out.toByteArray();
+    }
+
+    /**
+     * 解码（未知版本、记录不完整或长度不一致时抛出 IllegalArgumentException）
+     *
+     * @param data 二进制记录
+     * @return 列值 <列，值>
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, String> decode(byte[] data) {
+        require(data, 0, 1);
+        if (data[0] == '{') {
+            return JsonUtils.fromJson(new String(data, StandardCharsets.UTF_8), HashMap.class);
+        }
+        if (data[0] != VERSION) {
+            throw new IllegalArgumentException("不支持的副本记录版本：" + data[0]);
+        }
+        int[] pos = {1};
+        int count = readVarint(data, pos);
+        // 每个字段至少包含 名称长度 + 值长度
+        if (count < 0 || count > (data.length - pos[0]) / 2) {
+            throw new IllegalArgumentException(String.format("副本记录字段数与长度不一致！count：%d，bytes：%d", count, data.length));
+        }
+        Map<String, String> columns = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            int nameLen = readVarint(data, pos);
+            require(data, pos[0], nameLen);
+            String name = new String(data, pos[0], nameLen, StandardCharsets.UTF_8);
+            pos[0] += nameLen;
+            int valueLen = readVarint(data, pos);
+            if (valueLen == 0) {
+                columns.put(name, null);
+            } else {
+                require(data, pos[0], valueLen - 1);
+                columns.put(name, new String(data, pos[0], valueLen - 1, StandardCharsets.UTF_8));
+                pos[0] += valueLen - 1;
+            }
+        }
+        if (pos[0] != data.length) {
+            throw new IllegalArgumentException(String.format("副本记录长度不一致！read：%d，bytes：%d", pos[0], data.length));
+        }
+        return columns;
+    }
+
+    /**
+     * 校验剩余长度
+     */
+    private static void require(byte[] data, int pos, int len) {
+        if (len < 0 || pos > data.length - len) {
+            throw new IllegalArgumentException(String.format("副本记录不完整！pos：%d，need：%d，bytes：%d", pos, len, data.length));
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] data, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            require(data, pos[0], 1);
+            if (shift > 28) {
+                throw new IllegalArgumentException("副本记录长度前缀无效！pos：" + pos[0]);
+            }
+            byte b = data[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+}
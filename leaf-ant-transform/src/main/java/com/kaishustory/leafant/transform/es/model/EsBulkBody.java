@@ -0,0 +1,364 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.es.model;
+
+import java.util.Map;
+
+/**
+ * ElasticSearch批处理请求体（NDJSON）
+ * <p>
+ * 直接由字段值写入线程复用的缓冲区，不经过 Jest 命令对象及 Gson 序列化。
+ **/
+public class EsBulkBody {
+
+    /**
+     * 缓冲区初始容量
+     */
+    private static final int INIT_CAPACITY = 64 * 1024;
+
+    /**
+     * 缓冲区最大保留容量（超过后释放，避免线程长期持有大内存）
+     */
+    private static final int MAX_RETAIN_CAPACITY = 4 * 1024 * 1024;
+
+    /**
+     * 线程复用缓冲区
+     */
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(INIT_CAPACITY));
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * 缓冲区
+     */
+    private final StringBuilder buf;
+
+    /**
+     * 命令数量
+     */
+    private int size = 0;
+
+    private EsBulkBody(StringBuilder buf) {
+        this.buf = buf;
+    }
+
+    /**
+     * 开始写入批处理请求体（复用当前线程缓冲区）
+     *
+     * @return 请求体
+     */
+    public static EsBulkBody open() {
+        StringBuilder buf = BUFFER.get();
+        buf.setLength(0);
+        return new EsBulkBody(buf);
+    }
+
+    /**
+     * 新增（覆盖）文档
+     *
+     * @param index  索引
+     * @param type   类型
+     * @param id     文档ID
+     * @param source 文档内容 <ES字段，值>
+     */
+    public EsBulkBody index(String index, String type, String id, Map<String, Object> source) {
+        writeAction("index", index, type, id);
+        writeObject(buf, source);
+        buf.append('\n');
+        size++;
+        return this;
+    }
+
+    /**
+     * 新增文档（文档已存在时不覆盖，返回冲突）
+     *
+     * @param index  索引
+     * @param type   类型
+     * @param id     文档ID
+     * @param source 文档内容 <ES字段，值>
+     */
+    public EsBulkBody create(String index, String type, String id, Map<String, Object> source) {
+        writeAction("create", index, type, id);
+        writeObject(buf, source);
+        buf.append('\n');
+        size++;
+        return this;
+    }
+
+    /**
+     * 补充文档字段（只写入文档中不存在的字段，文档不存在时插入）
+     *
+     * @param index  索引
+     * @param type   类型
+     * @param id     文档ID
+     * @param source 文档内容 <ES字段，值>
+     */
+    public EsBulkBody fill(String index, String type, String id, Map<String, Object> source) {
+        writeAction("update", index, type, id);
+        buf.append("{\"script\":{\"source\":\"for (def e : params.entrySet()) { if (!ctx._source.containsKey(e.getKey())) { ctx._source[e.getKey()] = e.getValue(); } }\",\"lang\":\"painless\",\"params\":");
+        writeObject(buf, source);
+        buf.append("},\"upsert\":");
+        writeObject(buf, source);
+        buf.append("}\n");
+        size++;
+        return this;
+    }
+
+    /**
+     * 新增（覆盖）文档，文档内容为已有JSON（如从其他索引读取的 _source）
+     *
+     * @param index  索引
+     * @param type   类型
+     * @param id     文档ID
+     * @param source 文档JSON（单行）
+     */
+    public EsBulkBody indexRaw(String index, String type, String id, String source) {
+        writeAction("index", index, type, id);
+        buf.append(source).append('\n');
+        size++;
+        return this;
+    }
+
+    /**
+     * 新增文档（文档已存在时不覆盖），文档内容为已有JSON（如从其他索引读取的 _source）
+     *
+     * @param index  索引
+     * @param type   类型
+     * @param id     文档ID
+     * @param source 文档JSON（单行）
+     */
+    public EsBulkBody createRaw(String index, String type, String id, String source) {
+        writeAction("create", index, type, id);
+        buf.append(source).append('\n');
+        size++;
+        return this;
+    }
+
+    /**
+     * 按ID更新文档字段（脚本更新，不存在时插入）
+     *
+     * @param index  索引
+     * @param type   类型
+     * @param id     文档ID
+     * @param fields 更新字段 <ES字段，值>
+     */
+    public EsBulkBody update(String index, String type, String id, Map<String, Object> fields) {
+        return update(index, type, id, fields, true);
+    }
+
+    /**
+     * 按ID更新文档字段（脚本更新）
+     *
+     * @param index  索引
+     * @param type   类型
+     * @param id     文档ID
+     * @param fields 更新字段 <ES字段，值>
+     * @param upsert 文档不存在时是否插入
+     */
+    public EsBulkBody update(String index, String type, String id, Map<String, Object> fields, boolean upsert) {
+        if (fields.isEmpty()) {
+            return this;
+        }
+        writeAction("update", index, type, id);
+        buf.append('{');
+        writeScript(buf, fields);
+        if (upsert) {
+            buf.append(",\"upsert\":");
+            writeObject(buf, fields);
+        }
+        buf.append("}\n");
+        size++;
+        return this;
+    }
+
+    /**
+     * 删除文档
+     *
+     * @param index 索引
+     * @param type  类型
+     * @param id    文档ID
+     */
+    public EsBulkBody delete(String index, String type, String id) {
+        writeAction("delete", index, type, id);
+        size++;
+        return this;
+    }
+
+    /**
+     * 命令数量
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 是否为空
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 生成请求体，并释放过大的缓冲区
+     *
+     * @return NDJSON
+     */
+    public String build() {
+        String body = buf.toString();
+        if (buf.capacity() > MAX_RETAIN_CAPACITY) {
+            BUFFER.set(new StringBuilder(INIT_CAPACITY));
+        } else {
+            buf.setLength(0);
+        }
+        return body;
+    }
+
+    /**
+     * 写入命令行
+     */
+    private void writeAction(String action, String index, String type, String id) {
+        buf.append("{\"").append(action).append("\":{\"_index\":");
+        writeString(buf, index);
+        buf.append(",\"_type\":");
+        writeString(buf, type);
+        buf.append(",\"_id\":");
+        writeString(buf, id);
+        buf.append("}}\n");
+    }
+
+    /**
+     * 写入更新脚本（"script":{...}）
+     *
+     * @param buf    缓冲区
+     * @param fields 更新字段（值为 delete 时删除字段）
+     */
+    public static void writeScript(StringBuilder buf, Map<String, Object> fields) {
+        buf.append("\"script\":{\"source\":\"");
+        boolean first = true;
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            if (!first) {
+                buf.append("; ");
+            }
+            first = false;
+            if ("delete".equals(field.getValue())) {
+                buf.append("ctx._source.remove('");
+                escape(buf, field.getKey());
+                buf.append("')");
+            } else {
+                buf.append("ctx._source.");
+                escape(buf, field.getKey());
+                buf.append(" = params.");
+                escape(buf, field.getKey());
+            }
+        }
+        buf.append("\",\"lang\":\"painless\",\"params\":");
+        writeObject(buf, fields);
+        buf.append('}');
+    }
+
+    /**
+     * 写入JSON对象
+     *
+     * @param buf    缓冲区
+     * @param fields 字段 <字段，值>
+     */
+    public static void writeObject(StringBuilder buf, Map<String, ?> fields) {
+        buf.append('{');
+        boolean first = true;
+        for (Map.Entry<String, ?> field : fields.entrySet()) {
+            if (!first) {
+                buf.append(',');
+            }
+            first = false;
+            writeString(buf, field.getKey());
+            buf.append(':');
+            writeValue(buf, field.getValue());
+        }
+        buf.append('}');
+    }
+
+    /**
+     * 写入JSON值（字符串超过ES长度限制时截断）
+     *
+     * @param buf   缓冲区
+     * @param value 值
+     */
+    public static void writeValue(StringBuilder buf, Object value) {
+        if (value == null) {
+            buf.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            buf.append(value);
+        } else if (value instanceof Map) {
+            writeObject(buf, (Map<String, ?>) value);
+        } else {
+            writeString(buf, EsProjectionPlan.truncate(value.toString()));
+        }
+    }
+
+    /**
+     * 写入JSON字符串
+     *
+     * @param buf   缓冲区
+     * @param value 字符串
+     */
+    public static void writeString(StringBuilder buf, String value) {
+        if (value == null) {
+            buf.append("null");
+            return;
+        }
+        buf.append('"');
+        escape(buf, value);
+        buf.append('"');
+    }
+
+    /**
+     * JSON字符串转义
+     *
+     * @param buf   缓冲区
+     * @param value 字符串
+     */
+    private static void escape(StringBuilder buf, String value) {
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    buf.append("\\\"");
+                    break;
+                case '\\':
+                    buf.append("\\\\");
+                    break;
+                case '\n':
+                    buf.append("\\n");
+                    break;
+                case '\r':
+                    buf.append("\\r");
+                    break;
+                case '\t':
+                    buf.append("\\t");
+                    break;
+                case '\b':
+                    buf.append("\\b");
+                    break;
+                case '\f':
+                    buf.append("\\f");
+                    break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        buf.append("\\u").append(HEX[(c >> 12) & 0xF]).append(HEX[(c >> 8) & 0xF]).append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+                    } else {
+                        buf.append(c);
+                    }
+            }
+        }
+    }
+}
@@ -12,7 +12,6 @@
 
 package com.kaishustory.leafant.transform.es.model;
 
-import com.kaishustory.leafant.common.model.EsSyncMappingField;
 import com.kaishustory.leafant.common.model.EsSyncMappingTable;
 import com.kaishustory.leafant.common.model.Event;
 import com.kaishustory.leafant.common.model.EventColumn;
@@ -21,7 +20,6 @@ import lombok.Data;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import static com.kaishustory.leafant.common.constants.EventConstants.TYPE_DELETE;
 
@@ -40,13 +38,13 @@ public class EsEvent {
      */
     private EsSyncMappingTable mapping;
     /**
-     * Es字段内容 <ES字段，值>
+     * 字段投影计划
      */
-    private Map<String, Object> esData = new HashMap<>();
+    private EsProjectionPlan plan;
     /**
-     * MySQL字段内容 <MySQL列，值>
+     * Es字段内容 <ES字段，值>
      */
-    private Map<String, Object> mysqlData = new HashMap<>();
+    private Map<String, Object> esData;
 
     /**
      * 同步事件
@@ -57,6 +55,8 @@ public class EsEvent {
     public EsEvent(Event event, EsSyncMappingTable mapping) {
         this.event = event;
         this.mapping = mapping;
+        this.plan = EsProjectionPlan.of(mapping);
+        this.esData = new HashMap<>(plan.getDocFieldCount() * 4 / 3 + 1);
 
         addEventData(event.getType() == TYPE_DELETE ? event.getBeforeColumns() : event.getAfterColumns(), mapping);
     }
@@ -68,13 +68,8 @@ public class EsEvent {
      * @param mappingTable 映射配置
      */
     public void addEventData(List<EventColumn> columnList, EsSyncMappingTable mappingTable) {
-        // 提取数据库值 <MySQL列，值>
-        mysqlData.putAll(columnList.stream().collect(Collectors.toMap(EventColumn::getName, e -> e.getValue() != null ? e.getValue() : "")));
-        // 转换为ES字段值 <ES字段，值>
-        mappingTable.getFieldMapping().stream().filter(EsSyncMappingField::isSync).forEach(field -> {
-            Object value = mysqlData.get(field.getSourceColumn());
-            esData.put(field.getField(), convertEsValue(value));
-        });
+        // 按投影计划，转换为ES字段值 <ES字段，值>
+        EsProjectionPlan.of(mappingTable).project(columnList, esData);
     }
 
     /**
@@ -84,52 +79,15 @@ public class EsEvent {
      * @param mappingTable 映射配置
      */
     public void addEventData(Map<String, String> columnList, EsSyncMappingTable mappingTable) {
-        // 提取数据库值 <MySQL列，值>
-        mysqlData.putAll(columnList);
-        // 转换为ES字段值 <ES字段，值>
-        mappingTable.getFieldMapping().stream().filter(EsSyncMappingField::isSync).forEach(field -> {
-            Object value = mysqlData.get(field.getSourceColumn());
-            esData.put(field.getField(), convertEsValue(value));
-        });
+        // 按投影计划，转换为ES字段值 <ES字段，值>
+        EsProjectionPlan.of(mappingTable).project(columnList, esData);
     }
 
     /**
      * 子表层级数量
      */
     public int getChildLevel() {
-        return findChildLevel(0, mapping);
-    }
-
-    private int findChildLevel(int level, EsSyncMappingTable mapping) {
-        if (mapping.getChildTable().size() > 0) {
-            return mapping.getChildTable().stream().map(child -> findChildLevel(level, child)).reduce(Math::max).orElse(level) + 1;
-        } else {
-            return level;
-        }
-    }
-
-    /**
-     * 转换Es字段内容
-     *
-     * @param value 内容
-     * @return Es内容
-     */
-    private Object convertEsValue(Object value) {
-        if (value != null) {
-            if (value instanceof String) {
-                // ES 限制字符串最大长度
-                if (((String) value).getBytes().length >= 32766) {
-                    return value.toString().substring(0, 32766 / 4);
-                } else {
-                    return value;
-                }
-            } else {
-                return value;
-            }
-        } else {
-            return null;
-        }
-
+        return plan.getChildLevel();
     }
 
 }
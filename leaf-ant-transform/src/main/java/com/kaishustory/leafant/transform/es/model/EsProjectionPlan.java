@@ -0,0 +1,283 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.es.model;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.kaishustory.leafant.common.model.EsSyncMappingField;
+import com.kaishustory.leafant.common.model.EsSyncMappingTable;
+import com.kaishustory.leafant.common.model.EventColumn;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ElasticSearch字段投影计划（每个映射表编译一次，映射重新加载后自动失效）
+ **/
+public class EsProjectionPlan {
+
+    /**
+     * ES 限制字符串最大字节数
+     */
+    public static final int MAX_STRING_BYTES = 32766;
+
+    /**
+     * 投影计划缓存（弱引用，按映射对象实例区分，映射重新加载后旧计划随旧映射回收）
+     */
+    private static final Cache<EsSyncMappingTable, EsProjectionPlan> PLAN_CACHE = Caffeine.newBuilder().weakKeys().build();
+
+    /**
+     * ES字段（按槽位）
+     */
+    private final String[] fields;
+
+    /**
+     * MySQL源列（按槽位）
+     */
+    private final String[] sourceColumns;
+
+    /**
+     * 值转换器（按槽位）
+     */
+    private final Converter[] converters;
+
+    /**
+     * 源列 -> 槽位列表 <MySQL列，槽位>
+     */
+    private final Map<String, int[]> columnSlots;
+
+    /**
+     * 源列 -> ES字段（同一列映射多个字段时，取第一个）<MySQL列，ES字段>
+     */
+    private final Map<String, String> columnFields;
+
+    /**
+     * 关联主表字段（子表字段）
+     */
+    private final EsSyncMappingField[] joinKeyFields;
+
+    /**
+     * 子表层级数量
+     */
+    private final int childLevel;
+
+    /**
+     * 文档字段总数（包括子表）
+     */
+    private final int docFieldCount;
+
+    private EsProjectionPlan(EsSyncMappingTable mapping) {
+        List<EsSyncMappingField> syncFields = new ArrayList<>();
+        List<EsSyncMappingField> joinKeys = new ArrayList<>();
+        for (EsSyncMappingField field : mapping.getFieldMapping()) {
+            if (field.isSync()) {
+                syncFields.add(field);
+            }
+            if (field.isJoinKey()) {
+                joinKeys.add(field);
+            }
+        }
+
+        int size = syncFields.size();
+        this.fields = new String[size];
+        this.sourceColumns = new String[size];
+        this.converters = new Converter[size];
+        Map<String, List<Integer>> slots = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            EsSyncMappingField field = syncFields.get(i);
+            fields[i] = field.getField();
+            sourceColumns[i] = field.getSourceColumn();
+            converters[i] = Converter.of(field.getEsTypeName());
+            slots.computeIfAbsent(field.getSourceColumn(), c -> new ArrayList<>(1)).add(i);
+        }
+        this.columnSlots = new HashMap<>(slots.size() * 2);
+        slots.forEach((column, list) -> columnSlots.put(column, list.stream().mapToInt(Integer::intValue).toArray()));
+
+        this.columnFields = new HashMap<>(mapping.getFieldMapping().size() * 2);
+        mapping.getFieldMapping().forEach(field -> columnFields.putIfAbsent(field.getSourceColumn(), field.getField()));
+
+        this.joinKeyFields = joinKeys.toArray(new EsSyncMappingField[0]);
+        this.childLevel = findChildLevel(0, mapping);
+        this.docFieldCount = countDocFields(mapping);
+    }
+
+    /**
+     * 获得映射表投影计划
+     *
+     * @param mapping 映射表
+     * @return 投影计划
+     */
+    public static EsProjectionPlan of(EsSyncMappingTable mapping) {
+        return PLAN_CACHE.get(mapping, EsProjectionPlan::new);
+    }
+
+    /**
+     * 投影列值到ES文档（单次遍历）
+     *
+     * @param columnList 列值列表
+     * @param esData     ES文档 <ES字段，值>
+     */
+    public void project(List<EventColumn> columnList, Map<String, Object> esData) {
+        boolean[] filled = new boolean[fields.length];
+        for (int c = 0, n = columnList.size(); c < n; c++) {
+            EventColumn column = columnList.get(c);
+            int[] slots = columnSlots.get(column.getName());
+            if (slots != null) {
+                String value = column.getValue() != null ? column.getValue() : "";
+                for (int slot : slots) {
+                    esData.put(fields[slot], converters[slot].convert(value));
+                    filled[slot] = true;
+                }
+            }
+        }
+        // 未出现的列，写入空值
+        for (int i = 0; i < fields.length; i++) {
+            if (!filled[i]) {
+                esData.put(fields[i], null);
+            }
+        }
+    }
+
+    /**
+     * 投影列值到ES文档
+     *
+     * @param columnValues 列值 <列，值>
+     * @param esData       ES文档 <ES字段，值>
+     */
+    public void project(Map<String, String> columnValues, Map<String, Object> esData) {
+        for (int i = 0; i < fields.length; i++) {
+            esData.put(fields[i], converters[i].convert(columnValues.get(sourceColumns[i])));
+        }
+    }
+
+    /**
+     * 投影列值到ES文档（只写入出现的列，未出现的列对应字段不写入）
+     *
+     * @param columnValues 列值 <列，值>
+     * @param esData       ES文档 <ES字段，值>
+     */
+    public void projectPresent(Map<String, String> columnValues, Map<String, Object> esData) {
+        for (int i = 0; i < fields.length; i++) {
+            if (columnValues.containsKey(sourceColumns[i])) {
+                esData.put(fields[i], converters[i].convert(columnValues.get(sourceColumns[i])));
+            }
+        }
+    }
+
+    /**
+     * 投影更新列（仅变更列）
+     *
+     * @param columnList 列值列表
+     * @return 更新字段 <ES字段，值>
+     */
+    public Map<String, Object> projectUpdated(List<EventColumn> columnList) {
+        Map<String, Object> updateCols = new HashMap<>();
+        for (int c = 0, n = columnList.size(); c < n; c++) {
+            EventColumn column = columnList.get(c);
+            if (column.isUpdated()) {
+                updateCols.put(columnFields.getOrDefault(column.getName(), column.getName()), column.getValue());
+            }
+        }
+        return updateCols;
+    }
+
+    /**
+     * 关联主表字段（子表字段）
+     */
+    public EsSyncMappingField[] getJoinKeyFields() {
+        return joinKeyFields;
+    }
+
+    /**
+     * 子表层级数量
+     */
+    public int getChildLevel() {
+        return childLevel;
+    }
+
+    /**
+     * 文档字段总数（包括子表），用于预估文档容量
+     */
+    public int getDocFieldCount() {
+        return docFieldCount;
+    }
+
+    private static int findChildLevel(int level, EsSyncMappingTable mapping) {
+        if (mapping.getChildTable() != null && mapping.getChildTable().size() > 0) {
+            return mapping.getChildTable().stream().map(child -> findChildLevel(level, child)).reduce(Math::max).orElse(level) + 1;
+        } else {
+            return level;
+        }
+    }
+
+    private static int countDocFields(EsSyncMappingTable mapping) {
+        int count = mapping.getFieldMapping().size();
+        if (mapping.getChildTable() != null) {
+            for (EsSyncMappingTable child : mapping.getChildTable()) {
+                count += countDocFields(child);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 字段值转换器
+     */
+    enum Converter {
+
+        /**
+         * 文本（keyword、text），超过ES长度限制时截断
+         */
+        TEXT {
+            @Override
+            Object convert(String value) {
+                return truncate(value);
+            }
+        },
+
+        /**
+         * 其他类型，原值写入
+         */
+        PLAIN {
+            @Override
+            Object convert(String value) {
+                return value;
+            }
+        };
+
+        static Converter of(String esTypeName) {
+            return "keyword".equals(esTypeName) || "text".equals(esTypeName) ? TEXT : PLAIN;
+        }
+
+        abstract Object convert(String value);
+    }
+
+    /**
+     * 截断超长字符串（UTF-8每个字符最多3字节，长度不足上限1/3时无需计算字节数）
+     *
+     * @param value 内容
+     * @return ES内容
+     */
+    public static String truncate(String value) {
+        if (value == null || value.length() < MAX_STRING_BYTES / 3) {
+            return value;
+        }
+        if (value.getBytes().length >= MAX_STRING_BYTES) {
+            return value.substring(0, MAX_STRING_BYTES / 4);
+        } else {
+            return value;
+        }
+    }
+}
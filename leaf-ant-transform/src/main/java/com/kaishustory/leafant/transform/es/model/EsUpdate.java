@@ -12,7 +12,6 @@
 
 package com.kaishustory.leafant.transform.es.model;
 
-import com.kaishustory.leafant.common.utils.JsonUtils;
 import lombok.Data;
 
 import java.util.Map;
@@ -23,45 +22,26 @@ import java.util.Map;
 @Data
 public class EsUpdate {
 
-    private Script script;
-
-    private Map<String, Object> upsert;
+    /**
+     * 更新字段 <ES字段，值>（值为 delete 时删除字段）
+     */
+    private Map<String, Object> fields;
 
     public EsUpdate(Map<String, Object> fields) {
-        this.script = new Script(genScript(fields), fields);
-        this.upsert = fields;
+        this.fields = fields;
     }
 
     /**
-     * 更新脚本
-     *
-     * @param fields 更新字段
-     * @return 脚本
+     * 生成更新命令 {"script":{...},"upsert":{...}}
      */
-    protected static String genScript(Map<String, Object> fields) {
-        return fields.entrySet().stream().map(field -> {
-            if ("delete".equals(field.getValue())) {
-                return "ctx._source.remove('" + field.getKey() + "')";
-            } else {
-                return "ctx._source." + field.getKey() + " = params." + field.getKey();
-            }
-        }).reduce((a, b) -> a + "; " + b).get();
-    }
-
     @Override
     public String toString() {
-        return JsonUtils.toJson(this);
-    }
-
-    @Data
-    protected static class Script {
-        private String source;
-        private String lang = "painless";
-        private Map<String, Object> params;
-
-        public Script(String source, Map<String, Object> params) {
-            this.source = source;
-            this.params = params;
-        }
+        StringBuilder buf = new StringBuilder(64 + fields.size() * 48);
+        buf.append('{');
+        EsBulkBody.writeScript(buf, fields);
+        buf.append(",\"upsert\":");
+        EsBulkBody.writeObject(buf, fields);
+        buf.append('}');
+        return buf.toString();
     }
 }
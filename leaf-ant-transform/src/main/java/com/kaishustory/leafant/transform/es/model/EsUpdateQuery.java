@@ -12,43 +12,60 @@
 
 package com.kaishustory.leafant.transform.es.model;
 
-import com.google.gson.JsonObject;
-import com.kaishustory.leafant.common.utils.JsonUtils;
 import lombok.Data;
 
 import java.util.Map;
 
-import static com.kaishustory.leafant.transform.es.model.EsUpdate.genScript;
-
 /**
  * ElasticSearch更新结构
  **/
 @Data
 public class EsUpdateQuery {
 
-    private EsUpdate.Script script;
+    /**
+     * 查询条件 <ES字段，值>
+     */
+    private Map<String, Object> querys;
 
-    private JsonObject query;
+    /**
+     * 更新字段 <ES字段，值>（值为 delete 时删除字段）
+     */
+    private Map<String, Object> fields;
 
     public EsUpdateQuery(Map<String, Object> querys, Map<String, Object> fields) {
-        this.script = new EsUpdate.Script(genScript(fields), fields);
-        this.query = genQuery(querys);
+        this.querys = querys;
+        this.fields = fields;
     }
 
+    /**
+     * 生成更新命令 {"script":{...},"query":{"query_string":{...}}}
+     */
     @Override
     public String toString() {
-        return JsonUtils.toJson(this);
+        StringBuilder buf = new StringBuilder(96 + fields.size() * 48);
+        buf.append('{');
+        EsBulkBody.writeScript(buf, fields);
+        buf.append(",\"query\":{\"query_string\":{\"query\":");
+        EsBulkBody.writeString(buf, genQuery(querys));
+        buf.append("}}}");
+        return buf.toString();
     }
 
     /**
-     * 查询脚本
+     * 查询语句
      *
      * @param querys 查询条件
-     * @return 脚本
+     * @return 查询语句
      */
-    private JsonObject genQuery(Map<String, Object> querys) {
-        String queryString = querys.entrySet().stream().map(field -> field.getKey() + ": " + field.getValue() + "").reduce((a, b) -> a + " AND " + b).get();
-        return JsonUtils.toJsonObject("{\"query_string\": {\"query\": \"" + queryString + "\"}}");
+    private String genQuery(Map<String, Object> querys) {
+        StringBuilder query = new StringBuilder();
+        querys.forEach((field, value) -> {
+            if (query.length() > 0) {
+                query.append(" AND ");
+            }
+            query.append(field).append(": ").append(value);
+        });
+        return query.toString();
     }
 
 }
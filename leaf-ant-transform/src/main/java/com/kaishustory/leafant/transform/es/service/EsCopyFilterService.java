@@ -0,0 +1,203 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.es.service;
+
+import com.kaishustory.leafant.common.utils.Log;
+import com.kaishustory.leafant.common.utils.Time;
+import com.kaishustory.leafant.transform.es.dao.ElasticSearchDao;
+import com.kaishustory.leafant.transform.es.model.CopyExistFilter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 子表副本存在过滤服务（不存在的子表ID在本地判断，不再查询Redis、ES）
+ * <p>
+ * 1、首次查询子表时，从副本索引滚动读取全部ID构建布隆过滤器，构建完成前不过滤；
+ * 2、副本新增（Canal事件、初始化导入）写入各节点过滤器；
+ * 3、超过轮换间隔后后台重新构建，清除已删除ID，并按上次ID数调整容量；
+ * 4、新增通知订阅断开、重新订阅时清除全部过滤器（断开期间的新增通知已丢失），重新订阅后按副本索引重新构建；
+ *    订阅正常时，过滤器判断不存在即不存在。
+ **/
+@Service
+public class EsCopyFilterService {
+
+    /**
+     * 等待索引刷新（毫秒），保证构建开始前写入的文档可被滚动读取
+     */
+    private static final long REFRESH_WAIT = 2000L;
+
+    /**
+     * 构建失败重试间隔（毫秒）
+     */
+    private static final long RETRY_INTERVAL = 60 * 1000L;
+
+    /**
+     * ElasticSearch操作
+     */
+    @Autowired
+    private ElasticSearchDao elasticSearchDao;
+
+    /**
+     * 是否启用
+     */
+    @Value("${es.copy.filter.enable:true}")
+    private boolean enable;
+
+    /**
+     * 预计ID数（首次构建；之后按上次ID数两倍）
+     */
+    @Value("${es.copy.filter.expected:1000000}")
+    private int expected;
+
+    /**
+     * 误判率
+     */
+    @Value("${es.copy.filter.fpp:0.01}")
+    private double fpp;
+
+    /**
+     * 轮换间隔（分钟）
+     */
+    @Value("${es.copy.filter.rotate-minutes:60}")
+    private long rotateMinutes;
+
+    /**
+     * 滚动读取每批条数
+     */
+    @Value("${es.rebuild.size:1000}")
+    private int size;
+
+    /**
+     * 过滤器 <表Key，过滤器>
+     */
+    private final Map<String, CopyExistFilter> filters = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor threadPool;
+
+    private ThreadPoolExecutor getThreadPool() {
+        synchronized (this) {
+            if (threadPool == null) {
+                threadPool = new ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(Integer.MAX_VALUE));
+            }
+        }
+        return threadPool;
+    }
+
+    /**
+     * 过滤可能存在的ID（过滤器未就绪或需轮换时，后台构建）
+     *
+     * @param tableKey 表Key
+     * @param esAddr   ES地址
+     * @param esIndex  副本索引
+     * @param ids      副本ID
+     * @return 可能存在的ID
+     */
+    public List<String> mightContain(String tableKey, String esAddr, String esIndex, List<String> ids) {
+        if (!enable) {
+            return ids;
+        }
+        CopyExistFilter filter = filters.computeIfAbsent(tableKey, key -> new CopyExistFilter(key, fpp));
+        long now = System.currentTimeMillis();
+        if ((!filter.isReady() || now - filter.getBuildTime() > TimeUnit.MINUTES.toMillis(rotateMinutes)) && now - filter.getStartTime() > RETRY_INTERVAL) {
+            rebuild(filter, esAddr, esIndex);
+        }
+        if (!filter.isReady()) {
+            return ids;
+        }
+        List<String> exists = new ArrayList<>(ids.size());
+        ids.forEach(id -> {
+            if (filter.mightContain(id)) {
+                exists.add(id);
+            }
+        });
+        return exists;
+    }
+
+    /**
+     * 副本新增（写入过滤器；未查询过的表无过滤器，首次查询时构建）
+     *
+     * @param tableKey 表Key
+     * @param ids      副本ID
+     */
+    public void put(String tableKey, Collection<String> ids) {
+        CopyExistFilter filter = filters.get(tableKey);
+        if (filter != null) {
+            filter.put(ids);
+        }
+    }
+
+    /**
+     * 清除全部过滤器（新增通知订阅断开或重新订阅，之后首次查询时重新构建，构建完成前不过滤）
+     */
+    public void reset() {
+        if (!filters.isEmpty()) {
+            Log.info("【ES】清除子表副本过滤器。tables：{}", filters.keySet());
+            filters.clear();
+        }
+    }
+
+    /**
+     * 后台构建过滤器
+     *
+     * @param filter  过滤器
+     * @param esAddr  ES地址
+     * @param esIndex 副本索引
+     */
+    private void rebuild(CopyExistFilter filter, String esAddr, String esIndex) {
+        int expectedInsertions = (int) Math.min(Integer.MAX_VALUE, Math.max(expected, filter.getLastCount() * 2));
+        if (!filter.startBuild(expectedInsertions)) {
+            return;
+        }
+        getThreadPool().execute(() -> {
+            Time time = new Time("【ES】构建子表副本过滤器");
+            long count = -1;
+            try {
+                Thread.sleep(REFRESH_WAIT);
+                count = elasticSearchDao.scroll(esAddr, esIndex, null, 0, 1, size, false, hits -> {
+                    List<String> ids = new ArrayList<>(hits.size());
+                    hits.forEach(hit -> ids.add(hit.get("_id").getAsString()));
+                    filter.build(ids);
+                    return true;
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                Log.error("【ES】构建子表副本过滤器异常！table：{}，index：{}", filter.getTableKey(), esIndex, e);
+            } finally {
+                filter.finishBuild(count >= 0, count);
+                time.end();
+            }
+            if (count >= 0) {
+                Log.info("【ES】构建子表副本过滤器完成。table：{}，index：{}，size：{}，expected：{}，fpp：{}", filter.getTableKey(), esIndex, count, expectedInsertions, String.format("%.4f", filter.expectedFpp()));
+            } else {
+                Log.error("【ES】构建子表副本过滤器失败！table：{}，index：{}", filter.getTableKey(), esIndex);
+            }
+        });
+    }
+
+    /**
+     * 过滤器统计 <表Key，[ID数，估算误判率]>
+     */
+    public Map<String, String> getStats() {
+        Map<String, String> stats = new TreeMap<>();
+        filters.forEach((tableKey, filter) -> stats.put(tableKey, filter.isReady() ? filter.getLastCount() + "/" + String.format("%.4f", filter.expectedFpp()) : "building"));
+        return stats;
+    }
+}
@@ -14,33 +14,88 @@ package com.kaishustory.leafant.transform.es.service;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.google.gson.JsonObject;
 import com.kaishustory.leafant.common.model.EsSyncMappingField;
-import com.kaishustory.leafant.common.model.EventColumn;
 import com.kaishustory.leafant.common.model.RedisSyncConfig;
 import com.kaishustory.leafant.common.utils.JsonUtils;
 import com.kaishustory.leafant.common.utils.Log;
 import com.kaishustory.leafant.common.utils.Time;
 import com.kaishustory.leafant.transform.es.dao.ElasticSearchDao;
 import com.kaishustory.leafant.transform.es.model.ChildQueryInfo;
+import com.kaishustory.leafant.transform.es.model.CopyCacheInvalidation;
+import com.kaishustory.leafant.transform.es.model.CopyRecord;
 import com.kaishustory.leafant.transform.redis.dao.RedisDao;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 /**
  * ES查询服务
+ * <p>
+ * 子表副本查询：存在过滤器（布隆过滤器） -> 本地缓存（L1） -> Redis缓存（L2） -> ES。
+ * 副本数据变更时（Canal事件），更新Redis缓存并通过 Redis 发布失效通知，各节点清除本地缓存、写入存在过滤器。
+ * 回填本地缓存时按失效版本校验，读取期间已失效的记录不回填；未订阅失效通知（Redis不可用）时不使用本地缓存，定期重试订阅。
  **/
 @Service
 public class EsQueryService {
 
+    /**
+     * 副本缓存失效通知频道
+     */
+    private static final String INVALIDATE_CHANNEL = "LA:CP_INV";
+
+    /**
+     * 副本缓存 Key 前缀
+     */
+    private static final String COPY_KEY_PREFIX = "LA:CP:";
+
+    /**
+     * 空值缓存 Key 前缀
+     */
+    private static final String EMPTY_KEY_PREFIX = "LA:CP_EP:";
+
+    /**
+     * 副本缓存有效期（秒）
+     */
+    private static final int COPY_CACHE_SECONDS = 60;
+
+    /**
+     * 空值缓存有效期（秒，仅本地缓存，用于过滤器误判的ID）
+     */
+    private static final int EMPTY_CACHE_SECONDS = 10;
+
+    /**
+     * 缓存记录编码抽样间隔（每N条抽样对比二进制与JSON格式）
+     */
+    private static final int CODEC_SAMPLE = 1000;
+
+    /**
+     * 缓存命中统计日志间隔（毫秒）
+     */
+    private static final long STATS_LOG_INTERVAL = 60 * 1000L;
+
+    /**
+     * 失效版本分段数（按缓存Key散列）
+     */
+    private static final int VERSION_STRIPES = 1024;
+
+    /**
+     * 订阅失效通知重试间隔（毫秒）
+     */
+    private static final long SUBSCRIBE_RETRY_INTERVAL = 30 * 1000L;
+
     /**
      * ES处理
      */
@@ -53,6 +108,12 @@ public class EsQueryService {
     @Autowired
     private RedisDao redisDao;
 
+    /**
+     * 子表副本存在过滤
+     */
+    @Autowired
+    private EsCopyFilterService esCopyFilterService;
+
     /**
      * Redis地址
      */
@@ -72,14 +133,163 @@ public class EsQueryService {
     private int redisDatabase;
 
     /**
-     * ES事件缓存
+     * 本地缓存最大容量（估算字节数）
+     */
+    @Value("${es.cache.l1.max-weight:67108864}")
+    private long l1MaxWeight;
+
+    /**
+     * ES事件缓存（L1，按估算字节数限制容量）
+     */
+    private Cache<String, Map<String, String>> esEventCache;
+
+    /**
+     * ES不存在缓存（仅本地）
+     */
+    private Cache<String, String> emptyEventCache = Caffeine.newBuilder().expireAfterWrite(EMPTY_CACHE_SECONDS, TimeUnit.SECONDS).maximumSize(50000).recordStats().build();
+
+    /**
+     * 存在过滤器判断不存在数
+     */
+    private final LongAdder filterSkip = new LongAdder();
+
+    /**
+     * Redis缓存（L2）命中数
+     */
+    private final LongAdder l2Hit = new LongAdder();
+
+    /**
+     * Redis缓存（L2）未命中数
+     */
+    private final LongAdder l2Miss = new LongAdder();
+
+    /**
+     * ES查询数
+     */
+    private final LongAdder esQuery = new LongAdder();
+
+    /**
+     * ES查询存在数
+     */
+    private final LongAdder esFound = new LongAdder();
+
+    /**
+     * 缓存记录编码数
+     */
+    private final AtomicLong encodeCount = new AtomicLong();
+
+    /**
+     * 抽样：记录数、二进制字节数、JSON字节数、二进制解码耗时、JSON解码耗时（纳秒）
+     */
+    private final LongAdder codecSamples = new LongAdder();
+    private final LongAdder binaryBytes = new LongAdder();
+    private final LongAdder jsonBytes = new LongAdder();
+    private final LongAdder binaryDecodeNanos = new LongAdder();
+    private final LongAdder jsonDecodeNanos = new LongAdder();
+
+    /**
+     * 上次统计日志时间
+     */
+    private volatile long lastStatsTime = System.currentTimeMillis();
+
+    /**
+     * 失效版本（按缓存Key分段，清除本地缓存前递增，回填时校验）
+     */
+    private final AtomicLongArray invalidateVersions = new AtomicLongArray(VERSION_STRIPES);
+
+    /**
+     * 失效通知监听容器（未订阅成功时为 null）
+     */
+    private volatile RedisMessageListenerContainer invalidateContainer;
+
+    /**
+     * 上次订阅失效通知时间
      */
-    private Cache<String, Map<String, String>> esEventCache = Caffeine.newBuilder().expireAfterWrite(1, TimeUnit.MINUTES).maximumSize(5000).build();
+    private volatile long lastSubscribeTime;
+
+    /**
+     * 初始化本地缓存，订阅缓存失效通知（Redis不可用时不影响启动，查询时重试）
+     */
+    @PostConstruct
+    public void init() {
+        esEventCache = Caffeine.newBuilder()
+                .expireAfterWrite(COPY_CACHE_SECONDS, TimeUnit.SECONDS)
+                .maximumWeight(l1MaxWeight)
+                .weigher((String key, Map<String, String> value) -> weigh(key, value))
+                .recordStats()
+                .build();
+        subscribe();
+    }
+
+    /**
+     * 停止订阅缓存失效通知
+     */
+    @PreDestroy
+    public void destroy() {
+        RedisMessageListenerContainer container = invalidateContainer;
+        invalidateContainer = null;
+        close(container);
+    }
+
+    /**
+     * 失效通知订阅断开（断开期间的通知已丢失）：停止使用本地缓存及存在过滤器，按间隔重新订阅
+     *
+     * @param container 断开的监听容器
+     */
+    private synchronized void onSubscribeDrop(RedisMessageListenerContainer container) {
+        if (invalidateContainer == container) {
+            invalidateContainer = null;
+        }
+        esEventCache.invalidateAll();
+        emptyEventCache.invalidateAll();
+        esCopyFilterService.reset();
+        close(container);
+    }
+
+    /**
+     * 关闭监听容器
+     */
+    private void close(RedisMessageListenerContainer container) {
+        if (container != null) {
+            try {
+                container.stop();
+                container.destroy();
+            } catch (Exception e) {
+                Log.error("【ES】停止副本缓存失效通知订阅失败！", e);
+            }
+        }
+    }
+
+    /**
+     * 订阅缓存失效通知（订阅成功前本地缓存未接收失效通知，订阅成功后清空本地缓存、存在过滤器）
+     */
+    private synchronized void subscribe() {
+        if (invalidateContainer != null || (lastSubscribeTime > 0 && System.currentTimeMillis() - lastSubscribeTime < SUBSCRIBE_RETRY_INTERVAL)) {
+            return;
+        }
+        lastSubscribeTime = System.currentTimeMillis();
+        try {
+            RedisMessageListenerContainer[] subscribed = new RedisMessageListenerContainer[1];
+            subscribed[0] = redisDao.subscribe(getRedisSource(), INVALIDATE_CHANNEL, this::onInvalidate, () -> onSubscribeDrop(subscribed[0]));
+            esEventCache.invalidateAll();
+            emptyEventCache.invalidateAll();
+            // 订阅前的新增通知未接收，过滤器重新构建
+            esCopyFilterService.reset();
+            invalidateContainer = subscribed[0];
+        } catch (Exception e) {
+            Log.error("【ES】订阅副本缓存失效通知失败，暂不使用本地缓存！channel：{}", INVALIDATE_CHANNEL, e);
+        }
+    }
 
     /**
-     * ES不存在缓存
+     * 本地缓存是否可用（已订阅失效通知；未订阅时按间隔重试）
      */
-    private Cache<String, String> emptyEventCache = Caffeine.newBuilder().expireAfterWrite(10, TimeUnit.SECONDS).maximumSize(5000).build();
+    private boolean isLocalCacheEnable() {
+        if (invalidateContainer == null && System.currentTimeMillis() - lastSubscribeTime >= SUBSCRIBE_RETRY_INTERVAL) {
+            subscribe();
+        }
+        return invalidateContainer != null;
+    }
 
     /**
      * 批量查询ES 子表内容
@@ -98,6 +308,10 @@ public class EsQueryService {
             if (noCacheQueryList.size() > 0) {
                 Time time = new Time("【ES】从ES批量查询子表数据。");
                 Log.info("【ES】从ES批量查询子表数据。esAddr：{}，index：{}，ids：{}", noCacheQueryList.get(0).getEsAddr(), noCacheQueryList.get(0).getEsIndex(), noCacheQueryList.stream().map(ChildQueryInfo::getEsQueryId).distinct().reduce((a, b) -> a + "," + b).orElse(""));
+                // 查询前的失效版本（回填本地缓存时校验）
+                String queryTableKey = noCacheQueryList.get(0).getMappingTable().getTableKey();
+                Map<String, Long> versions = new HashMap<>(noCacheQueryList.size() * 2);
+                noCacheQueryList.forEach(query -> versions.put(query.getEsQueryId(), getVersion(getCopyRedisKey(queryTableKey, query.getEsQueryId()))));
                 // 批量查询
                 List<JsonObject> values = elasticSearchDao.multChildQuery(noCacheQueryList.get(0).getEsAddr(), noCacheQueryList.get(0).getEsIndex(), noCacheQueryList);
 
@@ -120,13 +334,16 @@ public class EsQueryService {
                         noCacheList.add(queryInfo.getEsQueryId());
                     }
                 }
+                esQuery.add(noCacheQueryList.size());
+                esFound.add(cacheList.size());
 
                 // 批量写入缓存
-                saveEventCache(noCacheQueryList.get(0).getMappingTable().getTableKey(), cacheList, true);
+                saveEventCache(queryTableKey, cacheList, versions);
                 // 批量写入无缓存标志
-                saveEmpty(noCacheQueryList.get(0).getMappingTable().getTableKey(), noCacheList);
+                saveEmpty(queryTableKey, noCacheList, versions);
                 time.end();
             }
+            logStats();
             return keyValues;
         } else {
             return new HashMap<>(0);
@@ -141,26 +358,30 @@ public class EsQueryService {
      * @return 未缓存结果
      */
     private List<ChildQueryInfo> findCacheQuery(List<ChildQueryInfo> childQueryInfoList, Map<String, Map<String, String>> keyValues) {
-        Time time = new Time("【ES】从Redis批量查询子表数据。");
         // 表名
         String tableKey = childQueryInfoList.get(0).getMappingTable().getTableKey();
-        List<String> ids = childQueryInfoList.stream().map(ChildQueryInfo::getEsQueryId).collect(Collectors.toList());
+        List<String> ids = childQueryInfoList.stream().map(ChildQueryInfo::getEsQueryId).distinct().collect(Collectors.toList());
+        // 存在过滤（判断为不存在的ID，不再查询缓存及ES；未订阅新增通知时不过滤）
+        List<String> exists = !isLocalCacheEnable() ? ids : esCopyFilterService.mightContain(tableKey, childQueryInfoList.get(0).getEsAddr(), childQueryInfoList.get(0).getEsIndex(), ids);
+        filterSkip.add(ids.size() - exists.size());
         // 缓存批量查询
-        Map<String, Map<String, String>> cacheList = getEventCache(tableKey, ids);
-        // 查询是否为空
-        Map<String, Boolean> isEmptys = isEmpty(tableKey, ids);
+        Map<String, Map<String, String>> cacheList = getEventCache(tableKey, exists);
+        // 查询是否为空（仅查询缓存未命中记录）
+        Set<String> empties = findEmpty(tableKey, exists.stream().filter(id -> !cacheList.containsKey(id)).collect(Collectors.toList()));
+        if (exists.size() < ids.size()) {
+            Set<String> existSet = new HashSet<>(exists);
+            ids.stream().filter(id -> !existSet.contains(id)).forEach(empties::add);
+        }
 
         // 过滤未缓存记录
         List<ChildQueryInfo> noCacheQueryList = childQueryInfoList.stream().filter(query -> {
             Map<String, String> values = cacheList.get(query.getEsQueryId());
-            // 缓存、ES均不存在，直接返回为空
-            // 缓存不存在，不确定ES是否存在
             if (values != null) {
                 // 直接缓存查询到，返回
                 keyValues.put(query.getEsQueryId(), values);
                 return false;
 
-            } else if (isEmptys.getOrDefault(query.getEsQueryId(), false)) {
+            } else if (empties.contains(query.getEsQueryId())) {
                 // 缓存、ES均不存在，直接返回为空
                 return false;
             } else {
@@ -170,116 +391,318 @@ public class EsQueryService {
         }).collect(Collectors.toList());
 
         if (keyValues.keySet().size() > 0) {
-            Log.info("【ES】从Redis批量查询子表数据，命中缓存缓存。table：{}，id：{}", childQueryInfoList.get(0).getMappingTable().getTableKey(), keyValues.keySet());
+            Log.info("【ES】批量查询子表数据，命中缓存。table：{}，id：{}", tableKey, keyValues.keySet());
         }
-        time.end();
         return noCacheQueryList;
     }
 
     /**
-     * 保存本地缓存
+     * 副本数据变更（Canal事件）：更新Redis缓存，通知各节点清除本地缓存
      *
-     * @param eventColumns 列
+     * @param tableKey     表名
+     * @param id           副本ID
+     * @param eventColumns 列值
      */
     protected void saveEventCache(String tableKey, String id, Map<String, String> eventColumns) {
-        Map<String, Map<String, String>> map = new HashMap<>(1);
-        map.put(id, eventColumns);
-        saveEventCache(tableKey, map, false);
+        // 写入Redis缓存
+        redisDao.batch(getRedisSource(), Collections.singletonList(id),
+                (RedisDao.RedisHandle<String>) (connection, param) ->
+                        connection.setEx(getCopyRedisKey(tableKey, param).getBytes(), COPY_CACHE_SECONDS, encode(eventColumns)));
+        // 通知清除本地缓存
+        invalidate(tableKey, Collections.singletonList(id));
     }
 
     /**
-     * 保存副本缓存
+     * 副本数据导入（初始化事件）：通知各节点写入存在过滤器
      *
-     * @param tableKey     tableKey 表名
-     * @param eventColumns 列值
+     * @param tableKey 表名
+     * @param ids      副本ID
+     */
+    protected void saveExists(String tableKey, List<String> ids) {
+        if (!ids.isEmpty()) {
+            invalidate(tableKey, ids);
+        }
+    }
+
+    /**
+     * 副本数据删除或部分更新（Canal事件）：删除Redis缓存，通知各节点清除本地缓存
+     *
+     * @param tableKey 表名
+     * @param id       副本ID
+     */
+    protected void removeEventCache(String tableKey, String id) {
+        // 删除Redis缓存
+        redisDao.batch(getRedisSource(), Collections.singletonList(id),
+                (RedisDao.RedisHandle<String>) (connection, param) -> connection.del(getCopyRedisKey(tableKey, param).getBytes()));
+        // 通知清除本地缓存
+        invalidate(tableKey, Collections.singletonList(id));
+    }
+
+    /**
+     * 保存ES查询结果缓存（本地缓存及Redis缓存）
+     *
+     * @param tableKey     表名
+     * @param eventColumns 列值 <副本ID，列值>
+     * @param versions     查询前的失效版本 <副本ID，版本>
      */
-    private void saveEventCache(String tableKey, Map<String, Map<String, String>> eventColumns, boolean saveLocal) {
-        if (saveLocal) {
-            // 写入本地缓存
-//            eventColumns.entrySet().forEach(entry -> esEventCache.put(getCopyRedisKey(tableKey, entry.getKey()), entry.getValue()));
+    private void saveEventCache(String tableKey, Map<String, Map<String, String>> eventColumns, Map<String, Long> versions) {
+        if (eventColumns.isEmpty()) {
+            return;
+        }
+        // 写入本地缓存
+        if (isLocalCacheEnable()) {
+            eventColumns.forEach((id, columns) -> backfill(esEventCache, getCopyRedisKey(tableKey, id), columns, versions.get(id)));
         }
         // 写入Redis缓存
         redisDao.batch(getRedisSource(), new ArrayList<>(eventColumns.entrySet()),
-                (RedisDao.RedisHandle<Map.Entry<String, List<EventColumn>>>) (connection, param) ->
-                        connection.setEx(getCopyRedisKey(tableKey, param.getKey()).getBytes(), 60, JsonUtils.toJson(param.getValue()).getBytes()
-                        ));
+                (RedisDao.RedisHandle<Map.Entry<String, Map<String, String>>>) (connection, param) ->
+                        connection.setEx(getCopyRedisKey(tableKey, param.getKey()).getBytes(), COPY_CACHE_SECONDS, encode(param.getValue())));
     }
 
     /**
-     * 查询本地缓存
+     * 查询缓存（本地缓存未命中时，查询Redis缓存）
      *
      * @param tableKey 表名
      * @param ids      主键值
-     * @return 事件
+     * @return 缓存命中记录 <副本ID，列值>
      */
     private Map<String, Map<String, String>> getEventCache(String tableKey, List<String> ids) {
         if (ids.size() == 0) {
             return new HashMap<>(0);
         }
-        Map<String, Map<String, String>> events = new HashMap<>(ids.size());
-
-//        // 本地缓存查询
-//        List<String> l2_ids = ids.stream().filter(id -> {
-//            Map<String, String> value = esEventCache.getIfPresent(getCopyRedisKey(tableKey, id));
-//            if(value!=null){
-//                events.put(id, value);
-//                return false;
-//            }else {
-//                return true;
-//            }
-//        }).collect(Collectors.toList());
+        Map<String, Map<String, String>> events = new HashMap<>(ids.size() * 2);
+        boolean localCache = isLocalCacheEnable();
+
+        // 本地缓存查询
+        List<String> l2Ids = !localCache ? ids : ids.stream().filter(id -> {
+            Map<String, String> value = esEventCache.getIfPresent(getCopyRedisKey(tableKey, id));
+            if (value != null) {
+                events.put(id, value);
+                return false;
+            } else {
+                return true;
+            }
+        }).collect(Collectors.toList());
 
         // Redis缓存查询
-        List<String> rs = redisDao.multGet(getRedisSource(), ids.stream().map(id -> getCopyRedisKey(tableKey, id)).collect(Collectors.toList()));
-        for (int i = 0; i < ids.size(); i++) {
-            events.put(ids.get(i), rs.get(i) != null ? JsonUtils.fromJson(rs.get(i), HashMap.class) : null);
+        if (l2Ids.size() > 0) {
+            List<String> keys = l2Ids.stream().map(id -> getCopyRedisKey(tableKey, id)).collect(Collectors.toList());
+            // 查询前的失效版本（回填本地缓存时校验）
+            long[] versions = keys.stream().mapToLong(this::getVersion).toArray();
+            List<byte[]> rs = redisDao.multGetBytes(getRedisSource(), keys);
+            for (int i = 0; i < l2Ids.size(); i++) {
+                Map<String, String> value = decodeCache(keys.get(i), rs.get(i));
+                if (value != null) {
+                    events.put(l2Ids.get(i), value);
+                    // 回填本地缓存（读取期间已失效时不回填）
+                    if (localCache) {
+                        backfill(esEventCache, keys.get(i), value, versions[i]);
+                    }
+                    l2Hit.increment();
+                } else {
+                    l2Miss.increment();
+                }
+            }
         }
         return events;
     }
 
     /**
-     * 保存空内容
+     * 保存空内容（存在过滤器误判或尚未构建完成的ID，仅本地缓存）
      *
      * @param tableKey 表名
      * @param ids      主键值
+     * @param versions 查询前的失效版本 <副本ID，版本>
      */
-    private void saveEmpty(String tableKey, List<String> ids) {
-        // 写入本地缓存
-//        ids.forEach(id -> emptyEventCache.put(getEmptyRedisKey(tableKey, id), "empty"));
+    private void saveEmpty(String tableKey, List<String> ids, Map<String, Long> versions) {
+        if (isLocalCacheEnable()) {
+            ids.forEach(id -> backfill(emptyEventCache, getEmptyKey(tableKey, id), "empty", versions.get(id)));
+        }
+    }
 
-        // 写入Redis缓存
-        redisDao.batch(getRedisSource(), ids,
-                (RedisDao.RedisHandle<String>) (connection, id) ->
-                        connection.setEx(getEmptyRedisKey(tableKey, id).getBytes(), 10, "empty".getBytes())
-        );
+    /**
+     * 回填本地缓存（读取后失效版本已变化时不回填，与清除操作在同一Key上互斥）
+     *
+     * @param cache   本地缓存
+     * @param key     缓存Key
+     * @param value   缓存内容
+     * @param version 读取前的失效版本
+     */
+    private <V> void backfill(Cache<String, V> cache, String key, V value, long version) {
+        int stripe = getStripe(key);
+        cache.asMap().compute(key, (k, old) -> invalidateVersions.get(stripe) == version ? value : old);
+    }
+
+    /**
+     * 读取失效版本
+     */
+    private long getVersion(String key) {
+        return invalidateVersions.get(getStripe(key));
+    }
+
+    /**
+     * 失效版本分段（空值缓存按对应副本Key分段，保证与副本缓存一同失效）
+     */
+    private int getStripe(String key) {
+        String copyKey = key.startsWith(EMPTY_KEY_PREFIX) ? COPY_KEY_PREFIX + key.substring(EMPTY_KEY_PREFIX.length()) : key;
+        return (copyKey.hashCode() & Integer.MAX_VALUE) % VERSION_STRIPES;
     }
 
     /**
-     * 读取空内容
+     * 查询不存在记录
      *
      * @param tableKey 表名
      * @param ids      主键值
-     * @return 是否为空
+     * @return 不存在的主键值
      */
-    private Map<String, Boolean> isEmpty(String tableKey, List<String> ids) {
-        Map<String, Boolean> isEmptys = new HashMap<>(ids.size());
+    private Set<String> findEmpty(String tableKey, List<String> ids) {
+        Set<String> empties = new HashSet<>();
+        if (!isLocalCacheEnable()) {
+            return empties;
+        }
+        ids.forEach(id -> {
+            if (emptyEventCache.getIfPresent(getEmptyKey(tableKey, id)) != null) {
+                empties.add(id);
+            }
+        });
+        return empties;
+    }
 
-        // 本地缓存查询
-//        List<String> l2_ids = ids.stream().filter(id -> {
-//            if(emptyEventCache.getIfPresent(getEmptyRedisKey(tableKey, id))!=null){
-//                isEmptys.put(id, true);
-//                return false;
-//            }else {
-//                return true;
-//            }
-//        }).collect(Collectors.toList());
+    /**
+     * 解码缓存记录（记录无法解析时视为未缓存，查询ES）
+     *
+     * @param key  缓存Key
+     * @param data 缓存记录
+     * @return 列值（未缓存或无法解析时为空）
+     */
+    private Map<String, String> decodeCache(String key, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            return CopyRecord.decode(data);
+        } catch (IllegalArgumentException e) {
+            Log.error("【ES】副本缓存记录无法解析，按未缓存处理！key：{}，bytes：{}", key, data.length, e);
+            return null;
+        }
+    }
 
-        // Redis缓存查询
-        List<String> rs = redisDao.multGet(getRedisSource(), ids.stream().map(id -> getEmptyRedisKey(tableKey, id)).collect(Collectors.toList()));
-        for (int i = 0; i < ids.size(); i++) {
-            isEmptys.put(ids.get(i), rs.get(i) != null);
+    /**
+     * 编码缓存记录（按间隔抽样，对比二进制与JSON格式的大小及解码耗时）
+     *
+     * @param eventColumns 列值
+     * @return 二进制记录
+     */
+    private byte[] encode(Map<String, String> eventColumns) {
+        byte[] data = CopyRecord.encode(eventColumns);
+        if (encodeCount.incrementAndGet() % CODEC_SAMPLE == 0) {
+            String json = JsonUtils.toJson(eventColumns);
+            long begin = System.nanoTime();
+            CopyRecord.decode(data);
+            long binaryNanos = System.nanoTime() - begin;
+            begin = System.nanoTime();
+            JsonUtils.fromJson(json, HashMap.class);
+            long jsonNanos = System.nanoTime() - begin;
+
+            codecSamples.increment();
+            binaryBytes.add(data.length);
+            jsonBytes.add(json.getBytes(StandardCharsets.UTF_8).length);
+            binaryDecodeNanos.add(binaryNanos);
+            jsonDecodeNanos.add(jsonNanos);
+        }
+        return data;
+    }
+
+    /**
+     * 发布本地缓存失效通知（包括本节点，同时写入存在过滤器）
+     *
+     * @param tableKey 表名
+     * @param ids      副本ID
+     */
+    private void invalidate(String tableKey, List<String> ids) {
+        // 本节点立即清除，不等待通知
+        evict(tableKey, ids);
+        try {
+            redisDao.publish(getRedisSource(), INVALIDATE_CHANNEL, JsonUtils.toJson(new CopyCacheInvalidation(tableKey, ids)));
+        } catch (Exception e) {
+            // 其他节点未收到新增通知时过滤器会误判不存在，抛出异常由MQ重试
+            Log.errorThrow("【ES】发布副本缓存失效通知失败！table：{}，ids：{}", tableKey, ids, e);
+        }
+    }
+
+    /**
+     * 收到本地缓存失效通知
+     *
+     * @param message 通知内容
+     */
+    private void onInvalidate(String message) {
+        CopyCacheInvalidation invalidation = JsonUtils.fromJson(message, CopyCacheInvalidation.class);
+        evict(invalidation.getTableKey(), invalidation.getIds());
+    }
+
+    /**
+     * 清除本地缓存，写入存在过滤器（删除、部分更新同样写入，只增加误判，不影响正确性）
+     */
+    private void evict(String tableKey, List<String> ids) {
+        ids.forEach(id -> {
+            String key = getCopyRedisKey(tableKey, id);
+            // 先递增失效版本，读取中的回填不再写入
+            invalidateVersions.incrementAndGet(getStripe(key));
+            esEventCache.invalidate(key);
+            emptyEventCache.invalidate(getEmptyKey(tableKey, id));
+        });
+        esCopyFilterService.put(tableKey, ids);
+    }
+
+    /**
+     * 缓存命中统计 <指标，值>
+     */
+    public Map<String, Object> getCacheStats() {
+        CacheStats l1 = esEventCache.stats();
+        CacheStats l1Empty = emptyEventCache.stats();
+        long l2Total = l2Hit.sum() + l2Miss.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("l1HitRate", String.format("%.4f", l1.hitRate()));
+        stats.put("l1Hit", l1.hitCount());
+        stats.put("l1Miss", l1.missCount());
+        stats.put("l1Eviction", l1.evictionCount());
+        stats.put("l1Weight", esEventCache.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L));
+        stats.put("l1EmptyHitRate", String.format("%.4f", l1Empty.hitRate()));
+        stats.put("filterSkip", filterSkip.sum());
+        stats.put("filters", esCopyFilterService.getStats());
+        stats.put("l2HitRate", String.format("%.4f", l2Total == 0 ? 1.0 : l2Hit.sum() / (double) l2Total));
+        stats.put("l2Hit", l2Hit.sum());
+        stats.put("l2Miss", l2Miss.sum());
+        stats.put("esQuery", esQuery.sum());
+        stats.put("esFound", esFound.sum());
+        long samples = codecSamples.sum();
+        if (samples > 0) {
+            stats.put("recordBytes", binaryBytes.sum() / samples + "/" + jsonBytes.sum() / samples + "(json)");
+            stats.put("recordDecodeNanos", binaryDecodeNanos.sum() / samples + "/" + jsonDecodeNanos.sum() / samples + "(json)");
+        }
+        return stats;
+    }
+
+    /**
+     * 定期输出缓存命中统计
+     */
+    private void logStats() {
+        long now = System.currentTimeMillis();
+        if (now - lastStatsTime >= STATS_LOG_INTERVAL) {
+            lastStatsTime = now;
+            Log.info("【ES】子表副本缓存统计：{}", getCacheStats());
+        }
+    }
+
+    /**
+     * 估算缓存条目字节数（字符按2字节，每个字段额外计算对象开销）
+     */
+    private static int weigh(String key, Map<String, String> value) {
+        long weight = 64 + key.length() * 2L;
+        for (Map.Entry<String, String> entry : value.entrySet()) {
+            weight += 96 + entry.getKey().length() * 2L + (entry.getValue() != null ? entry.getValue().length() * 2L : 0);
         }
-        return isEmptys;
+        return (int) Math.min(weight, Integer.MAX_VALUE);
     }
 
     /**
@@ -297,18 +720,18 @@ public class EsQueryService {
      * @return
      */
     private String getCopyRedisKey(String tableKey, String id) {
-        return String.format("LA:CP:%s:%s", tableKey, id);
+        return COPY_KEY_PREFIX + tableKey + ":" + id;
     }
 
     /**
-     * 空值Redis Key
+     * 空值缓存 Key
      *
      * @param tableKey
      * @param id
      * @return
      */
-    private String getEmptyRedisKey(String tableKey, String id) {
-        return String.format("LA:CP_EP:%s:%s", tableKey, id);
+    private String getEmptyKey(String tableKey, String id) {
+        return EMPTY_KEY_PREFIX + tableKey + ":" + id;
     }
 
 }
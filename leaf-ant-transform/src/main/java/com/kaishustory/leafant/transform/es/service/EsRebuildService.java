@@ -0,0 +1,527 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.es.service;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.kaishustory.leafant.common.model.EsSyncConfig;
+import com.kaishustory.leafant.common.model.EsSyncMappingTable;
+import com.kaishustory.leafant.common.model.RedisSyncConfig;
+import com.kaishustory.leafant.common.utils.JsonUtils;
+import com.kaishustory.leafant.common.utils.Log;
+import com.kaishustory.leafant.common.utils.Time;
+import com.kaishustory.leafant.transform.es.dao.ElasticSearchDao;
+import com.kaishustory.leafant.transform.es.model.EsBulkBody;
+import com.kaishustory.leafant.transform.es.model.EsProjectionPlan;
+import com.kaishustory.leafant.transform.redis.dao.RedisDao;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * ElasticSearch索引重建服务
+ * <p>
+ * 1、从现有索引切片滚动读取，并行写入新版本索引（不重新读取MySQL）；
+ * 2、重建期间实时变更的文档记录在Redis，切换前按现有索引补写，消除快照读取与实时双写之间的差异；
+ * 3、映射已变更时，复制及补写按新版本映射转换现有索引中的字段（新增列需从MySQL全量导入）；
+ * 4、切换时在Redis设置切换标记，暂停实时写入并等待进行中的写入完成，最终补写与别名切换在标记内完成，切换后实时数据只写入新版本索引。
+ **/
+@Service
+public class EsRebuildService {
+
+    /**
+     * 重建期间变更文档记录 Redis key 前缀
+     */
+    private static final String TOUCHED_KEY = "LA:RB:";
+
+    /**
+     * 变更记录：按文档ID
+     */
+    private static final String TOUCHED_ID = "id:";
+
+    /**
+     * 变更记录：按查询条件（子表按外键更新）
+     */
+    private static final String TOUCHED_QUERY = "q:";
+
+    /**
+     * 变更记录保留时间（秒）
+     */
+    private static final long TOUCHED_TIMEOUT = 7 * 24 * 60 * 60L;
+
+    /**
+     * 切换标记 Redis key 前缀
+     */
+    private static final String SWITCH_KEY = "LA:RB:SW:";
+
+    /**
+     * 进行中写入计数 Redis key 前缀
+     */
+    private static final String WRITING_KEY = "LA:RB:W:";
+
+    /**
+     * 切换标记：切换中（暂停实时写入）
+     */
+    private static final String SWITCH_STATUS_SWITCHING = "switching";
+
+    /**
+     * 切换标记：已切换（实时数据只写入新版本索引）
+     */
+    private static final String SWITCH_STATUS_SWITCHED = "switched";
+
+    /**
+     * 切换中标记过期时间（秒，切换节点异常退出时自动恢复写入）
+     */
+    private static final long SWITCHING_TIMEOUT = 10 * 60L;
+
+    /**
+     * 进行中写入计数过期时间（秒，写入节点异常退出时计数自动失效）
+     */
+    private static final long WRITING_TIMEOUT = 5 * 60L;
+
+    /**
+     * 等待进行中写入完成最长时间（毫秒）
+     */
+    private static final long WRITING_WAIT = 2 * 60 * 1000L;
+
+    /**
+     * 切换标记检查间隔（毫秒）
+     */
+    private static final long SWITCH_CHECK_INTERVAL = 100;
+
+    /**
+     * ElasticSearch操作
+     */
+    @Autowired
+    private ElasticSearchDao elasticSearchDao;
+
+    /**
+     * Redis操作
+     */
+    @Autowired
+    private RedisDao redisDao;
+
+    /**
+     * 滚动读取切片数（并行读取线程数）
+     */
+    @Value("${es.rebuild.slices:4}")
+    private int slices;
+
+    /**
+     * 滚动读取每批条数
+     */
+    @Value("${es.rebuild.size:1000}")
+    private int size;
+
+    /**
+     * Redis地址
+     */
+    @Value("${redis.url}")
+    private String redisAddr;
+
+    /**
+     * Redis密码
+     */
+    @Value("${redis.password}")
+    private String redisPassword;
+
+    /**
+     * Redis数据库
+     */
+    @Value("${redis.database}")
+    private int redisDatabase;
+
+    private ThreadPoolExecutor threadPool;
+
+    private ThreadPoolExecutor getThreadPool() {
+        synchronized (this) {
+            if (threadPool == null) {
+                threadPool = new ThreadPoolExecutor(slices, slices, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(slices), new ThreadPoolExecutor.CallerRunsPolicy());
+            }
+        }
+        return threadPool;
+    }
+
+    /**
+     * 从现有索引复制到重建索引（切片滚动并行读取，已存在文档由实时数据写入，不覆盖）
+     * <p>
+     * 投影未变更（仅ES索引、分词设置变更）时原样复制；投影已变更时，按新版本映射转换现有文档（同补写）；
+     * 新版本映射需要现有索引中没有的列时，需从MySQL全量导入。
+     *
+     * @param config ES映射配置（重建中）
+     * @return 是否成功
+     */
+    public boolean copyFromIndex(EsSyncConfig config) {
+        if (!config.isRebuildCopyable()) {
+            Log.error("【ES】重建索引无法复制，映射字段已变更，需从MySQL全量导入！index：{}，rebuildIndex：{}", config.getIndex(), config.getRebuildIndex());
+            return false;
+        }
+        Time time = new Time("【ES】重建索引复制");
+        String rebuildIndex = config.getRebuildIndex();
+        Log.info("【ES】重建索引复制开始。index：{} -> {}，slices：{}", config.getIndex(), rebuildIndex, slices);
+
+        List<Future<Long>> results = new ArrayList<>(slices);
+        for (int i = 0; i < slices; i++) {
+            int slice = i;
+            results.add(getThreadPool().submit(() ->
+                    elasticSearchDao.scroll(config.getEsAddr(), config.getIndex(), null, slice, slices, size, hits -> {
+                        EsBulkBody body = EsBulkBody.open();
+                        hits.forEach(hit -> {
+                            String id = hit.get("_id").getAsString();
+                            if (config.getRebuildMasterTable() == null) {
+                                body.createRaw(rebuildIndex, config.getType(), id, hit.getAsJsonObject("_source").toString());
+                            } else {
+                                body.create(rebuildIndex, config.getType(), id, reproject(config, hit.getAsJsonObject("_source")));
+                            }
+                        });
+                        return elasticSearchDao.bulk(config.getEsAddr(), rebuildIndex, config.getType(), body, true);
+                    })
+            ));
+        }
+
+        long total = 0;
+        boolean success = true;
+        for (Future<Long> result : results) {
+            try {
+                long count = result.get();
+                if (count < 0) {
+                    success = false;
+                } else {
+                    total += count;
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                Log.error("【ES】重建索引复制异常！index：{}", rebuildIndex, e);
+                success = false;
+            }
+        }
+        time.end();
+        if (success) {
+            Log.info("【ES】重建索引复制成功。index：{} -> {}，total：{}", config.getIndex(), rebuildIndex, total);
+        } else {
+            Log.error("【ES】重建索引复制失败！index：{} -> {}，total：{}", config.getIndex(), rebuildIndex, total);
+        }
+        return success;
+    }
+
+    /**
+     * 记录重建期间实时变更的文档（记录失败时抛出异常，由MQ重试，避免切换前补写遗漏）
+     *
+     * @param mapping 映射表
+     * @param ids     文档ID
+     * @param querys  查询条件（子表按外键更新）
+     */
+    public void recordTouched(EsSyncMappingTable mapping, Collection<String> ids, Collection<String> querys) {
+        if (ids.isEmpty() && querys.isEmpty()) {
+            return;
+        }
+        List<String> members = new ArrayList<>(ids.size() + querys.size());
+        ids.forEach(id -> members.add(TOUCHED_ID + id));
+        querys.forEach(query -> members.add(TOUCHED_QUERY + query));
+        try {
+            redisDao.addMembers(getRedisSource(), getTouchedKey(mapping.getConfigId(), mapping.getRebuildIndex()), members, TOUCHED_TIMEOUT);
+        } catch (Exception e) {
+            Log.errorThrow("【ES】记录重建期间变更文档失败！index：{}", mapping.getRebuildIndex(), e);
+        }
+    }
+
+    /**
+     * 开始实时写入（切换中时等待切换完成；未切换时登记进行中写入，写入完成后调用 {@link #endWrite}）
+     *
+     * @param mapping 映射表
+     * @return 是否写入现有索引（false：已切换到新版本索引，只写入新版本索引，无需调用 endWrite）
+     */
+    public boolean beginWrite(EsSyncMappingTable mapping) {
+        String switchKey = getSwitchKey(mapping.getConfigId(), mapping.getRebuildIndex());
+        String writingKey = getWritingKey(mapping.getConfigId(), mapping.getRebuildIndex());
+        try {
+            while (true) {
+                String status = redisDao.get(getRedisSource(), switchKey);
+                if (SWITCH_STATUS_SWITCHED.equals(status)) {
+                    return false;
+                }
+                if (status == null) {
+                    // 登记后再次确认，避免与切换标记设置交错
+                    redisDao.increment(getRedisSource(), writingKey, 1, WRITING_TIMEOUT);
+                    status = redisDao.get(getRedisSource(), switchKey);
+                    if (status == null) {
+                        return true;
+                    }
+                    redisDao.increment(getRedisSource(), writingKey, -1, WRITING_TIMEOUT);
+                    continue;
+                }
+                // 切换中，等待切换完成
+                Thread.sleep(SWITCH_CHECK_INTERVAL);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Log.errorThrow("【ES】等待索引切换被中断！index：{}", mapping.getRebuildIndex(), e);
+            return false;
+        } catch (Exception e) {
+            // Redis不可用时继续写入现有索引（变更记录同样依赖Redis，切换前需确认Redis恢复）
+            Log.error("【ES】登记重建期间写入失败！index：{}", mapping.getRebuildIndex(), e);
+            return true;
+        }
+    }
+
+    /**
+     * 结束实时写入
+     *
+     * @param mapping 映射表
+     */
+    public void endWrite(EsSyncMappingTable mapping) {
+        try {
+            redisDao.increment(getRedisSource(), getWritingKey(mapping.getConfigId(), mapping.getRebuildIndex()), -1, WRITING_TIMEOUT);
+        } catch (Exception e) {
+            Log.error("【ES】注销重建期间写入失败！index：{}", mapping.getRebuildIndex(), e);
+        }
+    }
+
+    /**
+     * 切换到新版本索引
+     * <p>
+     * 1、补写重建期间变更文档（实时写入不暂停）；
+     * 2、设置切换中标记，暂停实时写入，等待进行中的写入完成；
+     * 3、最终补写，执行切换（恢复索引设置、别名切换）；
+     * 4、设置已切换标记，实时数据只写入新版本索引（直到映射配置同步停止双写）；失败时清除标记，恢复写入。
+     *
+     * @param config       ES映射配置（重建中）
+     * @param switchHandle 切换处理
+     * @return 是否成功
+     */
+    public boolean switchOver(EsSyncConfig config, Supplier<Boolean> switchHandle) {
+        String switchKey = getSwitchKey(config.getId(), config.getRebuildIndex());
+        // 已切换（更新映射配置失败后重试）
+        if (SWITCH_STATUS_SWITCHED.equals(redisDao.get(getRedisSource(), switchKey))) {
+            Log.info("【ES】索引已切换。index：{}", config.getRebuildIndex());
+            return true;
+        }
+        // 预先补写，缩短暂停写入时间
+        if (!catchUp(config)) {
+            return false;
+        }
+        if (!redisDao.saveIfAbsent(getRedisSource(), switchKey, SWITCH_STATUS_SWITCHING, SWITCHING_TIMEOUT)) {
+            Log.error("【ES】索引切换中或已切换！index：{}，status：{}", config.getRebuildIndex(), redisDao.get(getRedisSource(), switchKey));
+            return false;
+        }
+        boolean success = false;
+        try {
+            success = waitWriting(config) && catchUp(config) && switchHandle.get();
+        } catch (Exception e) {
+            Log.error("【ES】索引切换异常！index：{}", config.getRebuildIndex(), e);
+        } finally {
+            if (success) {
+                redisDao.save(getRedisSource(), switchKey, SWITCH_STATUS_SWITCHED, TOUCHED_TIMEOUT);
+            } else {
+                redisDao.delete(getRedisSource(), switchKey);
+            }
+        }
+        return success;
+    }
+
+    /**
+     * 等待进行中的实时写入完成
+     */
+    private boolean waitWriting(EsSyncConfig config) {
+        String writingKey = getWritingKey(config.getId(), config.getRebuildIndex());
+        long deadline = System.currentTimeMillis() + WRITING_WAIT;
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                String writing = redisDao.get(getRedisSource(), writingKey);
+                if (writing == null || Long.parseLong(writing) <= 0) {
+                    return true;
+                }
+                Thread.sleep(SWITCH_CHECK_INTERVAL);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        Log.error("【ES】等待实时写入完成超时！index：{}", config.getRebuildIndex());
+        return false;
+    }
+
+    /**
+     * 补写重建期间实时变更的文档（按现有索引当前内容覆盖重建索引，现有索引中已删除的文档同步删除）
+     *
+     * @param config ES映射配置（重建中）
+     * @return 是否成功
+     */
+    public boolean catchUp(EsSyncConfig config) {
+        String key = getTouchedKey(config.getId(), config.getRebuildIndex());
+        long total = 0;
+        while (true) {
+            List<String> members = redisDao.popMembers(getRedisSource(), key, size);
+            if (members.isEmpty()) {
+                break;
+            }
+            if (!replay(config, members)) {
+                // 补写失败，放回变更记录，下次切换时重试
+                redisDao.addMembers(getRedisSource(), key, members, TOUCHED_TIMEOUT);
+                return false;
+            }
+            total += members.size();
+        }
+        Log.info("【ES】重建期间变更文档补写完成。index：{}，size：{}", config.getRebuildIndex(), total);
+        return true;
+    }
+
+    /**
+     * 按现有索引补写变更文档
+     *
+     * @param config  ES映射配置（重建中）
+     * @param members 变更记录
+     * @return 是否成功
+     */
+    private boolean replay(EsSyncConfig config, List<String> members) {
+        String rebuildIndex = config.getRebuildIndex();
+        List<String> ids = new ArrayList<>(members.size());
+        List<String> querys = new ArrayList<>();
+        members.forEach(member -> {
+            if (member.startsWith(TOUCHED_ID)) {
+                ids.add(member.substring(TOUCHED_ID.length()));
+            } else if (member.startsWith(TOUCHED_QUERY)) {
+                querys.add(member.substring(TOUCHED_QUERY.length()));
+            }
+        });
+
+        // 按ID补写
+        if (!ids.isEmpty()) {
+            Map<String, String> docs = elasticSearchDao.multiGetSource(config.getEsAddr(), config.getIndex(), config.getType(), ids);
+            if (docs == null) {
+                return false;
+            }
+            EsBulkBody body = EsBulkBody.open();
+            ids.forEach(id -> {
+                if (docs.containsKey(id)) {
+                    writeTouched(body, config, id, docs.get(id));
+                } else {
+                    body.delete(rebuildIndex, config.getType(), id);
+                }
+            });
+            if (!bulk(config, body)) {
+                return false;
+            }
+        }
+
+        // 按查询条件补写
+        for (String query : querys) {
+            long count = elasticSearchDao.scroll(config.getEsAddr(), config.getIndex(), toQueryString(query), 0, 1, size, hits -> {
+                EsBulkBody body = EsBulkBody.open();
+                hits.forEach(hit -> writeTouched(body, config, hit.get("_id").getAsString(), hit.getAsJsonObject("_source").toString()));
+                return bulk(config, body);
+            });
+            if (count < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 补写变更文档（映射未变更时覆盖写入；映射已变更时，按新版本映射转换原映射字段后更新，新增列保留导入及双写内容）
+     *
+     * @param body   批处理请求体
+     * @param config ES映射配置（重建中）
+     * @param id     文档ID
+     * @param source 现有索引文档JSON
+     */
+    private void writeTouched(EsBulkBody body, EsSyncConfig config, String id, String source) {
+        if (config.getRebuildMasterTable() == null) {
+            body.indexRaw(config.getRebuildIndex(), config.getType(), id, source);
+        } else {
+            body.update(config.getRebuildIndex(), config.getType(), id, reproject(config, JsonUtils.toJsonObject(source)));
+        }
+    }
+
+    /**
+     * 按新版本映射转换文档字段（原映射字段 -> MySQL列 -> 新版本映射字段）
+     *
+     * @param config ES映射配置（重建中）
+     * @param source 现有索引文档
+     * @return 新版本文档字段 <ES字段，值>
+     */
+    private Map<String, Object> reproject(EsSyncConfig config, JsonObject source) {
+        Map<String, Object> fields = new HashMap<>();
+        config.getTableList().forEach(table -> {
+            EsSyncMappingTable rebuildTable = config.getRebuildTable(table);
+            if (rebuildTable == null) {
+                return;
+            }
+            Map<String, String> columnValues = new HashMap<>();
+            table.getFieldMapping().forEach(field -> {
+                JsonElement value = source.get(field.getField());
+                if (field.isSync() && value != null) {
+                    columnValues.put(field.getSourceColumn(), value.isJsonNull() ? null : value.isJsonPrimitive() ? value.getAsString() : value.toString());
+                }
+            });
+            EsProjectionPlan.of(rebuildTable).projectPresent(columnValues, fields);
+        });
+        return fields;
+    }
+
+    /**
+     * 写入重建索引
+     */
+    private boolean bulk(EsSyncConfig config, EsBulkBody body) {
+        try {
+            return body.isEmpty() || elasticSearchDao.bulk(config.getEsAddr(), config.getRebuildIndex(), config.getType(), body);
+        } catch (Exception e) {
+            Log.error("【ES】重建索引补写失败！index：{}", config.getRebuildIndex(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 查询条件（query_string）
+     */
+    private String toQueryString(String query) {
+        StringBuilder buf = new StringBuilder(query.length() + 32);
+        buf.append("{\"query_string\":{\"query\":");
+        EsBulkBody.writeString(buf, query);
+        buf.append("}}");
+        return buf.toString();
+    }
+
+    /**
+     * 变更记录 Redis key
+     */
+    private String getTouchedKey(String mappingId, String rebuildIndex) {
+        return TOUCHED_KEY + mappingId + ":" + rebuildIndex;
+    }
+
+    /**
+     * 切换标记 Redis key
+     */
+    private String getSwitchKey(String mappingId, String rebuildIndex) {
+        return SWITCH_KEY + mappingId + ":" + rebuildIndex;
+    }
+
+    /**
+     * 进行中写入计数 Redis key
+     */
+    private String getWritingKey(String mappingId, String rebuildIndex) {
+        return WRITING_KEY + mappingId + ":" + rebuildIndex;
+    }
+
+    private RedisSyncConfig.RedisDataSourceConfig getRedisSource() {
+        return new RedisSyncConfig.RedisDataSourceConfig(redisAddr, redisPassword, redisDatabase);
+    }
+}
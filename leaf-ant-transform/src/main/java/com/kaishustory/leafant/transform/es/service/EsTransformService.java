@@ -20,21 +20,19 @@ import com.kaishustory.leafant.common.utils.JsonUtils;
 import com.kaishustory.leafant.common.utils.Log;
 import com.kaishustory.leafant.transform.es.dao.ElasticSearchDao;
 import com.kaishustory.leafant.transform.es.model.ChildQueryInfo;
+import com.kaishustory.leafant.transform.es.model.EsBulkBody;
 import com.kaishustory.leafant.transform.es.model.EsEvent;
-import com.kaishustory.leafant.transform.es.model.EsUpdate;
+import com.kaishustory.leafant.transform.es.model.EsProjectionPlan;
 import com.kaishustory.leafant.transform.es.model.EsUpdateQuery;
 import com.kaishustory.leafant.transform.redis.service.RedisQueryService;
-import io.searchbox.action.AbstractAction;
-import io.searchbox.action.BulkableAction;
-import io.searchbox.core.Delete;
-import io.searchbox.core.Index;
-import io.searchbox.core.Update;
 import io.searchbox.core.UpdateByQuery;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 import static com.kaishustory.leafant.common.constants.MappingConstants.*;
@@ -64,6 +62,45 @@ public class EsTransformService {
     @Autowired
     private EsQueryService esQueryService;
 
+    /**
+     * ES索引重建
+     */
+    @Autowired
+    private EsRebuildService esRebuildService;
+
+    /**
+     * 本地副本
+     */
+    @Autowired
+    private LocalCopyService localCopyService;
+
+    /**
+     * 子表字段补充线程数
+     */
+    @Value("${es.enrich.max-pool:8}")
+    private int enrichMaxPool;
+
+    /**
+     * 子表字段补充线程池
+     */
+    private ThreadPoolExecutor enrichPool;
+
+    /**
+     * 文档日志采样比例（每N条记录1条，1为全部记录，0为不记录）
+     */
+    @Value("${es.log-sample:100}")
+    private int logSample;
+
+    private ThreadPoolExecutor getEnrichPool() {
+        synchronized (this) {
+            if (enrichPool == null) {
+                // 线程池满时由调用线程执行，不丢弃查询
+                enrichPool = new ThreadPoolExecutor(enrichMaxPool, enrichMaxPool, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(enrichMaxPool * 64), new ThreadPoolExecutor.CallerRunsPolicy());
+            }
+        }
+        return enrichPool;
+    }
+
     /**
      * ElasticSearch同步事件处理（单表事件处理）
      *
@@ -74,31 +111,114 @@ public class EsTransformService {
     public void singleEventHandle(String esAddr, List<EsEvent> esEvents, String source) {
 
         EsEvent esEvent = esEvents.get(0);
-        // 批量命令
-        elasticSearchDao.bulk(esAddr, esEvent.getMapping().getIndex(), esEvent.getMapping().getType(),
-                esEvents.stream().map(event -> {
-                    // 事件转换处理
-                    switch (event.getEvent().getType()) {
+        String index = esEvent.getMapping().getIndex();
+        String type = esEvent.getMapping().getType();
+        // 重建中的新版本索引
+        String rebuildIndex = esEvent.getMapping().getRebuildIndex();
+
+        // 重建索引中，初始化数据只导入新版本索引（按新版本映射，已存在字段由实时数据写入，不覆盖）
+        if (rebuildIndex != null && SOURCE_INIT.equals(source)) {
+            EsBulkBody body = EsBulkBody.open();
+            toRebuildEvents(esEvents).forEach(event -> singleEvent(body, rebuildIndex, event, source, true));
+            elasticSearchDao.bulk(esAddr, rebuildIndex, type, body);
+            return;
+        }
+
+        // 重建索引中，登记进行中写入（切换中等待，已切换只写入新版本索引）
+        boolean live = rebuildIndex == null || esRebuildService.beginWrite(esEvent.getMapping());
+        try {
+            if (live) {
+                // 批量命令（直接写入批处理请求体）
+                EsBulkBody body = EsBulkBody.open();
+                esEvents.forEach(event -> singleEvent(body, index, event, source, false));
+                elasticSearchDao.bulk(esAddr, index, type, body);
+            }
+
+            // 副本子表初始化导入，通知各节点写入存在过滤器（Canal事件在更新副本缓存时通知）
+            if (esEvent.getMapping().isCopyChild() && SOURCE_INIT.equals(source)) {
+                esQueryService.saveExists(esEvent.getMapping().getTableKey(), esEvents.stream()
+                        .filter(event -> event.getEvent().getType() != EventConstants.TYPE_DELETE)
+                        .map(this::getId).collect(Collectors.toList()));
+            }
+
+            // 重建索引中，实时数据按新版本映射双写新版本索引
+            if (rebuildIndex != null) {
+                EsBulkBody shadow = EsBulkBody.open();
+                toRebuildEvents(esEvents).forEach(event -> singleEvent(shadow, rebuildIndex, event, source, true));
+                if (live) {
+                    elasticSearchDao.shadowBulk(esAddr, rebuildIndex, type, shadow);
+                    // 记录变更文档，切换前补写
+                    recordTouched(esEvents);
+                } else {
+                    // 已切换，新版本索引即线上索引（写入失败抛出异常，由MQ重试）
+                    elasticSearchDao.bulk(esAddr, rebuildIndex, type, shadow);
+                }
+            }
+        } finally {
+            if (rebuildIndex != null && live) {
+                esRebuildService.endWrite(esEvent.getMapping());
+            }
+        }
+    }
+
+    /**
+     * 本地副本事件处理（广播消费，各节点写入本地存储）
+     *
+     * @param esEvents 事件列表
+     * @param source   来源（canal：数据变更事件，init：数据初始化）
+     */
+    public void localCopyEventHandle(List<EsEvent> esEvents, String source) {
+        String mappingId = esEvents.get(0).getMapping().getConfigId();
+        try {
+            for (EsEvent event : esEvents) {
+                String id = getId(event);
+                if (event.getEvent().getType() == EventConstants.TYPE_DELETE) {
+                    localCopyService.remove(mappingId, id);
+                } else {
+                    localCopyService.put(mappingId, id, toColumnMap(event));
+                }
+            }
+            localCopyService.maintain(mappingId);
+            if (SOURCE_CANAL.equals(source)) {
+                Log.info("【本地副本】写入完成 {}，mappingId：{}，size：{}，delay：{}", esEvents.get(0).getMapping().getTableKey(), mappingId, esEvents.size(), (System.currentTimeMillis() - esEvents.get(esEvents.size() - 1).getEvent().getExecuteTime()) + "/ms");
+            }
+        } catch (Exception e) {
+            Log.errorThrow("【本地副本】写入失败！table：{}，mappingId：{}", esEvents.get(0).getMapping().getTableKey(), mappingId, e);
+        }
+    }
+
+    /**
+     * 单表事件转换
+     *
+     * @param body    批处理请求体
+     * @param index   写入索引
+     * @param event   事件
+     * @param source  来源（canal：数据变更事件，init：数据初始化）
+     * @param rebuild 是否写入重建索引
+     */
+    private void singleEvent(EsBulkBody body, String index, EsEvent event, String source, boolean rebuild) {
+        // 事件转换处理
+        switch (event.getEvent().getType()) {
 
-                        /** 新增操作 **/
-                        case EventConstants.TYPE_INSERT:
-                            return addAll(event, source);
+            /** 新增操作 **/
+            case EventConstants.TYPE_INSERT:
+                addAll(body, index, event, source, rebuild);
+                break;
 
-                        /** 修改操作 **/
-                        case EventConstants.TYPE_UPDATE:
-                            return updateAll(event);
+            /** 修改操作 **/
+            case EventConstants.TYPE_UPDATE:
+                updateAll(body, index, event, rebuild);
+                break;
 
-                        /** 删除操作 **/
-                        case EventConstants.TYPE_DELETE:
-                            return deleteAll(event);
+            /** 删除操作 **/
+            case EventConstants.TYPE_DELETE:
+                deleteAll(body, index, event, rebuild);
+                break;
 
-                        default:
-                            Log.error("未知事件类型。type：{}", event.getEvent().getType());
-                            return null;
+            default:
+                Log.error("未知事件类型。type：{}", event.getEvent().getType());
 
-                    }
-                }).filter(Objects::nonNull).collect(Collectors.toList())
-        );
+        }
     }
 
     /**
@@ -111,178 +231,359 @@ public class EsTransformService {
     public void multEventHandle(String esAddr, List<EsEvent> esEvents, String source) {
 
         EsEvent esEvent = esEvents.get(0);
+        String index = esEvent.getMapping().getIndex();
+        String type = esEvent.getMapping().getType();
+        // 重建中的新版本索引
+        String rebuildIndex = esEvent.getMapping().getRebuildIndex();
+
+        // 重建索引中，初始化数据只导入新版本索引（按新版本映射，已存在字段由实时数据写入，不覆盖）
+        if (rebuildIndex != null && SOURCE_INIT.equals(source)) {
+            List<EsEvent> rebuildEvents = toRebuildEvents(esEvents);
+            extChildField(rebuildEvents);
+            EsBulkBody body = EsBulkBody.open();
+            List<UpdateByQuery> queryActions = new ArrayList<>();
+            rebuildEvents.forEach(event -> multEvent(body, queryActions, rebuildIndex, event, source, true));
+            elasticSearchDao.bulk(esAddr, rebuildIndex, type, body);
+            queryActions.forEach(action -> elasticSearchDao.execr(esAddr, rebuildIndex, type, action));
+            return;
+        }
 
-        // 补充子表字段
-        extChildField(esEvents);
-
-        List<AbstractAction> actions = esEvents.stream().map(event -> {
-            // 事件转换处理
-            switch (event.getEvent().getType()) {
-
-                /** 新增操作 **/
-                case EventConstants.TYPE_INSERT: {
-                    if (event.getMapping().isMaster()) {
-                        // ES：新增数据
-                        return addAll(event, source);
-                    } else {
-                        // ES：按外键查询更新，updateByQuery
-                        return addChild(event);
-                    }
+        // 重建索引中，登记进行中写入（切换中等待，已切换只写入新版本索引）
+        boolean live = rebuildIndex == null || esRebuildService.beginWrite(esEvent.getMapping());
+        try {
+            if (live) {
+                // 补充子表字段
+                extChildField(esEvents);
+
+                // 批量命令（直接写入批处理请求体）
+                EsBulkBody body = EsBulkBody.open();
+                // 逐条命令（子表按外键查询更新）
+                List<UpdateByQuery> queryActions = new ArrayList<>();
+                esEvents.forEach(event -> multEvent(body, queryActions, index, event, source, false));
+
+                // 批量处理命令
+                elasticSearchDao.bulk(esAddr, index, type, body);
+
+                // 逐条执行命令
+                queryActions.forEach(action ->
+                        elasticSearchDao.execr(esAddr, index, type, action)
+                );
+            }
+
+            // 重建索引中，实时数据按新版本映射双写新版本索引
+            if (rebuildIndex != null) {
+                List<EsEvent> rebuildEvents = toRebuildEvents(esEvents);
+                if (rebuildEvents != esEvents || !live) {
+                    // 新版本映射（或未写入现有索引），按新版本子表结构补充子表字段
+                    extChildField(rebuildEvents);
                 }
-                /** 修改操作 **/
-                case EventConstants.TYPE_UPDATE: {
-                    if (event.getMapping().isMaster()) {
-                        // ES：按ID，更新字段
-                        return update(event);
-                    } else {
-                        // ES：按外键查询更新，updateByQuery
-                        return updateChild(event);
-                    }
+                EsBulkBody shadow = EsBulkBody.open();
+                List<UpdateByQuery> shadowActions = new ArrayList<>();
+                rebuildEvents.forEach(event -> multEvent(shadow, shadowActions, rebuildIndex, event, source, true));
+                if (live) {
+                    elasticSearchDao.shadowBulk(esAddr, rebuildIndex, type, shadow);
+                } else {
+                    // 已切换，新版本索引即线上索引（写入失败抛出异常，由MQ重试）
+                    elasticSearchDao.bulk(esAddr, rebuildIndex, type, shadow);
                 }
-                /** 删除操作 **/
-                case EventConstants.TYPE_DELETE: {
-                    if (event.getMapping().isMaster()) {
-                        // ES：按ID，删除文档
-                        return deleteAll(event);
-                    } else {
-                        // ES：按外键查询更新为空，updateByQuery
-                        return deleteChild(event);
-                    }
+                shadowActions.forEach(action -> elasticSearchDao.execr(esAddr, rebuildIndex, type, action));
+                if (live) {
+                    // 记录变更文档，切换前补写
+                    recordTouched(esEvents);
                 }
-                default:
-                    Log.error("未知事件类型。type：{}", event.getEvent().getType());
-                    return null;
             }
-        }).filter(Objects::nonNull).collect(Collectors.toList());
+        } finally {
+            if (rebuildIndex != null && live) {
+                esRebuildService.endWrite(esEvent.getMapping());
+            }
+        }
+    }
 
-        // 批量处理命令
-        elasticSearchDao.bulk(esAddr, esEvent.getMapping().getIndex(), esEvent.getMapping().getType(), actions.stream().filter(action -> action instanceof BulkableAction).map(action -> (BulkableAction) action).collect(Collectors.toList()));
+    /**
+     * 按新版本映射转换事件（原映射未变更时返回原事件，新版本中已移除的表不写入）
+     *
+     * @param esEvents 事件列表（原映射）
+     * @return 事件列表（新版本映射）
+     */
+    private List<EsEvent> toRebuildEvents(List<EsEvent> esEvents) {
+        EsSyncMappingTable mapping = esEvents.get(0).getMapping();
+        EsSyncMappingTable rebuildMapping = mapping.getRebuildTable();
+        if (rebuildMapping == mapping) {
+            return esEvents;
+        }
+        if (rebuildMapping == null) {
+            return Collections.emptyList();
+        }
+        List<EsEvent> rebuildEvents = new ArrayList<>(esEvents.size());
+        esEvents.forEach(event -> rebuildEvents.add(new EsEvent(event.getEvent(), rebuildMapping)));
+        return rebuildEvents;
+    }
 
-        // 逐条执行命令
-        actions.stream().filter(action -> !(action instanceof BulkableAction)).forEach(action ->
-                elasticSearchDao.execr(esAddr, esEvent.getMapping().getIndex(), esEvent.getMapping().getType(), action)
-        );
+    /**
+     * 记录重建期间实时变更的文档（主表按文档ID，子表按外键查询条件）
+     *
+     * @param esEvents 事件列表
+     */
+    private void recordTouched(List<EsEvent> esEvents) {
+        Set<String> ids = new HashSet<>();
+        Set<String> querys = new HashSet<>();
+        esEvents.forEach(event -> {
+            if (event.getMapping().isMaster()) {
+                ids.add(getId(event));
+            } else {
+                getUpdateQuery(event).forEach((field, value) -> querys.add(field + ": " + value));
+            }
+        });
+        esRebuildService.recordTouched(esEvents.get(0).getMapping(), ids, querys);
+    }
+
+    /**
+     * 多表事件转换
+     *
+     * @param body         批处理请求体
+     * @param queryActions 子表按外键查询更新命令
+     * @param index        写入索引
+     * @param event        事件
+     * @param source       来源（canal：数据变更事件，init：数据初始化）
+     * @param rebuild      是否写入重建索引
+     */
+    private void multEvent(EsBulkBody body, List<UpdateByQuery> queryActions, String index, EsEvent event, String source, boolean rebuild) {
+        // 事件转换处理
+        switch (event.getEvent().getType()) {
+
+            /** 新增操作 **/
+            case EventConstants.TYPE_INSERT: {
+                if (event.getMapping().isMaster()) {
+                    // ES：新增数据
+                    addAll(body, index, event, source, rebuild);
+                } else {
+                    // ES：按外键查询更新，updateByQuery
+                    queryActions.add(addChild(index, event, rebuild));
+                }
+                break;
+            }
+            /** 修改操作 **/
+            case EventConstants.TYPE_UPDATE: {
+                if (event.getMapping().isMaster()) {
+                    // ES：按ID，更新字段
+                    update(body, index, event, rebuild);
+                } else {
+                    // ES：按外键查询更新，updateByQuery
+                    queryActions.add(updateChild(index, event, rebuild));
+                }
+                break;
+            }
+            /** 删除操作 **/
+            case EventConstants.TYPE_DELETE: {
+                if (event.getMapping().isMaster()) {
+                    // ES：按ID，删除文档
+                    deleteAll(body, index, event, rebuild);
+                } else {
+                    // ES：按外键查询更新为空，updateByQuery
+                    queryActions.add(deleteChild(index, event, rebuild));
+                }
+                break;
+            }
+            default:
+                Log.error("未知事件类型。type：{}", event.getEvent().getType());
+        }
     }
 
     /**
      * 新增操作
+     * <p>
+     * 写入重建索引时，初始化数据以 create 写入（不覆盖实时数据），且不逐条记录日志。
      *
-     * @param event  事件
-     * @param source 来源（canal：数据变更事件，init：数据初始化）
-     * @return 新增处理
+     * @param body    批处理请求体
+     * @param index   写入索引
+     * @param event   事件
+     * @param source  来源（canal：数据变更事件，init：数据初始化）
+     * @param rebuild 是否写入重建索引
      */
-    private Index addAll(EsEvent event, String source) {
+    private void addAll(EsBulkBody body, String index, EsEvent event, String source, boolean rebuild) {
         // 文档ID
         String id = getId(event);
-        // 保存本地缓存
+        if (rebuild) {
+            if (SOURCE_INIT.equals(source)) {
+                // 初始化导入：只补充文档中不存在的字段（实时双写字段较新，不覆盖）
+                body.fill(index, event.getMapping().getType(), id, event.getEsData());
+            } else {
+                body.index(index, event.getMapping().getType(), id, event.getEsData());
+            }
+            return;
+        }
+        // 更新副本缓存
         if (event.getMapping().isCopyChild() && SOURCE_CANAL.equals(source)) {
-            esQueryService.saveEventCache(event.getMapping().getTableKey(), id, event.getEvent().getAllColumns().stream().filter(e -> e.getName() != null).collect(Collectors.toMap(EventColumn::getName, e -> e.getValue() != null ? e.getValue() : "")));
+            saveCopyCache(event, id);
         }
         // 更新ES文档
-        Log.info("【ES】新增文档 {}, index：{}，type：{}, id：{}，delay：{}，insert：{}", event.getMapping().getTableKey(), event.getMapping().getIndex(), event.getMapping().getType(), id, (System.currentTimeMillis() - event.getEvent().getExecuteTime()) + "/ms", JsonUtils.toJson(event.getEsData()));
-        return new Index.Builder(event.getEsData()).index(event.getMapping().getIndex()).type(event.getMapping().getType()).id(id).build();
+        if (logSampled()) {
+            Log.info("【ES】新增文档 {}, index：{}，type：{}, id：{}，delay：{}，insert：{}", event.getMapping().getTableKey(), index, event.getMapping().getType(), id, (System.currentTimeMillis() - event.getEvent().getExecuteTime()) + "/ms", JsonUtils.toJson(event.getEsData()));
+        }
+        body.index(index, event.getMapping().getType(), id, event.getEsData());
     }
 
     /**
      * 更新操作
      *
-     * @param event 事件
-     * @return 更新处理
+     * @param body    批处理请求体
+     * @param index   写入索引
+     * @param event   事件
+     * @param rebuild 是否写入重建索引
      */
-    private Index updateAll(EsEvent event) {
+    private void updateAll(EsBulkBody body, String index, EsEvent event, boolean rebuild) {
         // 文档ID
         String id = getId(event);
+        // 更新副本缓存
+        if (!rebuild && event.getMapping().isCopyChild()) {
+            saveCopyCache(event, id);
+        }
         // 更新ES文档
-        Log.info("【ES】更新文档 {}, index：{}，type：{}, id：{}，delay：{}，update：{}", event.getMapping().getTableKey(), event.getMapping().getIndex(), event.getMapping().getType(), id, (System.currentTimeMillis() - event.getEvent().getExecuteTime()) + "/ms", JsonUtils.toJson(event.getEsData()));
-        return new Index.Builder(event.getEsData()).index(event.getMapping().getIndex()).type(event.getMapping().getType()).id(id).build();
+        if (!rebuild && logSampled()) {
+            Log.info("【ES】更新文档 {}, index：{}，type：{}, id：{}，delay：{}，update：{}", event.getMapping().getTableKey(), index, event.getMapping().getType(), id, (System.currentTimeMillis() - event.getEvent().getExecuteTime()) + "/ms", JsonUtils.toJson(event.getEsData()));
+        }
+        body.index(index, event.getMapping().getType(), id, event.getEsData());
     }
 
     /**
      * 新增子表操作
      *
-     * @param event 事件
+     * @param index   写入索引
+     * @param event   事件
+     * @param rebuild 是否写入重建索引
      * @return 新增处理
      */
-    private UpdateByQuery addChild(EsEvent event) {
+    private UpdateByQuery addChild(String index, EsEvent event, boolean rebuild) {
 
         // 更新条件
         Map<String, Object> query = getUpdateQuery(event);
         // 转为Es更新命令
         String updateCmd = new EsUpdateQuery(query, event.getEsData()).toString();
         // 更新ES文档
-        Log.info("【ES】新增子文档 {}, index：{}，type：{}, query：{}，delay：{}，insert：{}", event.getMapping().getTableKey(), event.getMapping().getIndex(), event.getMapping().getType(), query, (System.currentTimeMillis() - event.getEvent().getExecuteTime()) + "/ms", JsonUtils.toJson(event.getEsData()));
-        return new UpdateByQuery.Builder(updateCmd).addIndex(event.getMapping().getIndex()).addType(event.getMapping().getType()).build();
+        if (!rebuild && logSampled()) {
+            Log.info("【ES】新增子文档 {}, index：{}，type：{}, query：{}，delay：{}，insert：{}", event.getMapping().getTableKey(), index, event.getMapping().getType(), query, (System.currentTimeMillis() - event.getEvent().getExecuteTime()) + "/ms", JsonUtils.toJson(event.getEsData()));
+        }
+        return new UpdateByQuery.Builder(updateCmd).addIndex(index).addType(event.getMapping().getType()).build();
     }
 
     /**
      * 更新操作
+     * <p>
+     * 文档不存在时插入更新字段（写入重建索引时，文档尚未导入，更新不丢失；其余字段由初始化导入补充，或切换前补写）。
      *
-     * @param event 事件
-     * @return 更新处理
+     * @param body    批处理请求体
+     * @param index   写入索引
+     * @param event   事件
+     * @param rebuild 是否写入重建索引
      */
-    private Update update(EsEvent event) {
-        // 提取 MySQL -> ES 字段映射 <MySQL列，ES字段>
-        Map<String, String> col2FieldMap = event.getMapping().getFieldMapping().stream().collect(Collectors.toMap(EsSyncMappingField::getSourceColumn, EsSyncMappingField::getField));
-        // 更新字段 <ES字段，值>
-        Map<String, Object> updateCols = event.getEvent().getAfterColumns().stream().filter(EventColumn::isUpdated).collect(Collectors.toMap(col -> col2FieldMap.getOrDefault(col.getName(), col.getName()), EventColumn::getValue));
-        // 转为Es更新命令
-        String updateCmd = new EsUpdate(updateCols).toString();
+    private void update(EsBulkBody body, String index, EsEvent event, boolean rebuild) {
+        // 更新字段，按投影计划映射 MySQL -> ES 字段 <ES字段，值>
+        Map<String, Object> updateCols = event.getPlan().projectUpdated(event.getEvent().getAfterColumns());
 
         // 文档ID
         String id = getId(event);
+        // 清除副本缓存（部分字段更新，下次查询时从ES读取）
+        if (!rebuild && event.getMapping().isCopyChild()) {
+            esQueryService.removeEventCache(event.getMapping().getTableKey(), id);
+        }
         // 更新ES文档
-        Log.info("【ES】修改文档 {}, index：{}，type：{}, id：{}，delay：{}，update：{}", event.getMapping().getTableKey(), event.getMapping().getIndex(), event.getMapping().getType(), id, (System.currentTimeMillis() - event.getEvent().getExecuteTime()) + "/ms", JsonUtils.toJson(updateCols));
-        return new Update.Builder(updateCmd).index(event.getMapping().getIndex()).type(event.getMapping().getType()).id(id).build();
+        if (!rebuild && logSampled()) {
+            Log.info("【ES】修改文档 {}, index：{}，type：{}, id：{}，delay：{}，update：{}", event.getMapping().getTableKey(), index, event.getMapping().getType(), id, (System.currentTimeMillis() - event.getEvent().getExecuteTime()) + "/ms", JsonUtils.toJson(updateCols));
+        }
+        body.update(index, event.getMapping().getType(), id, updateCols);
     }
 
     /**
      * 更新子表操作
      *
-     * @param event 事件
+     * @param index   写入索引
+     * @param event   事件
+     * @param rebuild 是否写入重建索引
      * @return 更新处理
      */
-    private UpdateByQuery updateChild(EsEvent event) {
+    private UpdateByQuery updateChild(String index, EsEvent event, boolean rebuild) {
         // 更新条件
         Map<String, Object> query = getUpdateQuery(event);
-        // 提取 MySQL -> ES 字段映射 <MySQL列，ES字段>
-        Map<String, String> col2FieldMap = event.getMapping().getFieldMapping().stream().collect(Collectors.toMap(EsSyncMappingField::getSourceColumn, EsSyncMappingField::getField));
-        // 更新字段 <ES字段，值>
-        Map<String, Object> updateCols = event.getEvent().getAfterColumns().stream().filter(EventColumn::isUpdated).collect(Collectors.toMap(col -> col2FieldMap.getOrDefault(col.getName(), col.getName()), EventColumn::getValue));
+        // 更新字段，按投影计划映射 MySQL -> ES 字段 <ES字段，值>
+        Map<String, Object> updateCols = event.getPlan().projectUpdated(event.getEvent().getAfterColumns());
         // 转为Es更新命令
         String updateCmd = new EsUpdateQuery(query, updateCols).toString();
         // 更新ES文档
-        Log.info("【ES】修改子文档 {}, index：{}，type：{}, query：{}，delay：{}，update：{}", event.getMapping().getTableKey(), event.getMapping().getIndex(), event.getMapping().getType(), query, (System.currentTimeMillis() - event.getEvent().getExecuteTime()) + "/ms", JsonUtils.toJson(updateCols));
-        return new UpdateByQuery.Builder(updateCmd).addIndex(event.getMapping().getIndex()).addType(event.getMapping().getType()).build();
+        if (!rebuild && logSampled()) {
+            Log.info("【ES】修改子文档 {}, index：{}，type：{}, query：{}，delay：{}，update：{}", event.getMapping().getTableKey(), index, event.getMapping().getType(), query, (System.currentTimeMillis() - event.getEvent().getExecuteTime()) + "/ms", JsonUtils.toJson(updateCols));
+        }
+        return new UpdateByQuery.Builder(updateCmd).addIndex(index).addType(event.getMapping().getType()).build();
     }
 
     /**
      * 全部删除操作
      *
-     * @param event 事件
-     * @return 删除处理
+     * @param body    批处理请求体
+     * @param index   写入索引
+     * @param event   事件
+     * @param rebuild 是否写入重建索引
      */
-    private Delete deleteAll(EsEvent event) {
+    private void deleteAll(EsBulkBody body, String index, EsEvent event, boolean rebuild) {
         // 文档ID
         String id = getId(event);
+        // 清除副本缓存
+        if (!rebuild && event.getMapping().isCopyChild()) {
+            esQueryService.removeEventCache(event.getMapping().getTableKey(), id);
+        }
         // 删除ES文档
-        Log.info("【ES】删除文档 {}, index：{}，type：{}, id：{}，delay：{}", event.getMapping().getTableKey(), event.getMapping().getIndex(), event.getMapping().getType(), id, (System.currentTimeMillis() - event.getEvent().getExecuteTime()) + "/ms");
-        return new Delete.Builder(id).index(event.getMapping().getIndex()).type(event.getMapping().getType()).id(id).build();
+        if (!rebuild && logSampled()) {
+            Log.info("【ES】删除文档 {}, index：{}，type：{}, id：{}，delay：{}", event.getMapping().getTableKey(), index, event.getMapping().getType(), id, (System.currentTimeMillis() - event.getEvent().getExecuteTime()) + "/ms");
+        }
+        body.delete(index, event.getMapping().getType(), id);
     }
 
     /**
      * 删除子表操作
      *
-     * @param event 事件
+     * @param index   写入索引
+     * @param event   事件
+     * @param rebuild 是否写入重建索引
      * @return 删除操作
      */
-    private UpdateByQuery deleteChild(EsEvent event) {
+    private UpdateByQuery deleteChild(String index, EsEvent event, boolean rebuild) {
         // 更新条件
         Map<String, Object> query = getUpdateQuery(event);
         // 转为Es更新命令
         String updateCmd = new EsUpdateQuery(query, convertDeleteField(event.getMapping())).toString();
         // 更新ES文档
-        Log.info("【ES】删除子文档 {}, index：{}，type：{}, query：{}，delay：{}，remove：{}", event.getMapping().getTableKey(), event.getMapping().getIndex(), event.getMapping().getType(), query, (System.currentTimeMillis() - event.getEvent().getExecuteTime()) + "/ms", JsonUtils.toJson(event.getEsData()));
-        return new UpdateByQuery.Builder(updateCmd).addIndex(event.getMapping().getIndex()).addType(event.getMapping().getType()).build();
+        if (!rebuild && logSampled()) {
+            Log.info("【ES】删除子文档 {}, index：{}，type：{}, query：{}，delay：{}，remove：{}", event.getMapping().getTableKey(), index, event.getMapping().getType(), query, (System.currentTimeMillis() - event.getEvent().getExecuteTime()) + "/ms", JsonUtils.toJson(event.getEsData()));
+        }
+        return new UpdateByQuery.Builder(updateCmd).addIndex(index).addType(event.getMapping().getType()).build();
+    }
+
+    /**
+     * 是否打印文档日志（按比例采样，避免每条事件序列化文档内容）
+     *
+     * @return 是否打印
+     */
+    private boolean logSampled() {
+        return logSample > 0 && (logSample == 1 || ThreadLocalRandom.current().nextInt(logSample) == 0);
+    }
+
+    /**
+     * 更新副本缓存（Canal事件，各节点本地缓存同时失效）
+     *
+     * @param event 事件
+     * @param id    副本ID
+     */
+    private void saveCopyCache(EsEvent event, String id) {
+        esQueryService.saveEventCache(event.getMapping().getTableKey(), id, toColumnMap(event));
+    }
+
+    /**
+     * 事件列值（副本内容）
+     *
+     * @param event 事件
+     * @return 列值 <列，值>
+     */
+    private Map<String, String> toColumnMap(EsEvent event) {
+        return event.getEvent().getAllColumns().stream().filter(e -> e.getName() != null).collect(Collectors.toMap(EventColumn::getName, e -> e.getValue() != null ? e.getValue() : ""));
     }
 
     /**
@@ -296,9 +597,9 @@ public class EsTransformService {
         // 副本子表，以关联主表字段作为主键
         if (event.getMapping().isCopyChild()) {
             // 提取关键主表字段作为主键
-            Optional<EsSyncMappingField> joinKey = event.getMapping().getFieldMapping().stream().filter(EsSyncMappingField::isJoinKey).findFirst();
-            if (joinKey.isPresent()) {
-                Object key = event.getEsData().get(joinKey.get().getField());
+            EsSyncMappingField[] joinKeys = event.getPlan().getJoinKeyFields();
+            if (joinKeys.length > 0) {
+                Object key = event.getEsData().get(joinKeys[0].getField());
                 if (key != null) {
                     return key.toString();
                 } else {
@@ -322,21 +623,21 @@ public class EsTransformService {
      * @return 子表更新条件
      */
     private Map<String, Object> getUpdateQuery(EsEvent event) {
-        return event.getMapping().getFieldMapping().stream().filter(EsSyncMappingField::isJoinKey).map(field -> {
-            Map<String, Object> q = new HashMap<>(1);
-            q.put(field.getJoinMasterEsFieldName(), event.getEsData().get(field.getField()));
-            return q;
-        }).findFirst().get();
+        EsSyncMappingField field = event.getPlan().getJoinKeyFields()[0];
+        Map<String, Object> q = new HashMap<>(1);
+        q.put(field.getJoinMasterEsFieldName(), event.getEsData().get(field.getField()));
+        return q;
     }
 
     /**
      * 补充子表字段内容
+     * <p>
+     * 按子表结构树并行查询：同级子表互不依赖，同时查询；孙表依赖子表补充的关联字段，在子表完成后立即开始。
      *
      * @param esEvents 事件列表
      */
     private void extChildField(List<EsEvent> esEvents) {
 
-        // 按子表层级分组（true：一级子表，false：多级子表）
         List<EsEvent> eventList = esEvents.stream()
                 // 仅主表新增操作
                 .filter(event -> EventConstants.TYPE_INSERT == event.getEvent().getType() && event.getMapping().isMaster())
@@ -344,36 +645,46 @@ public class EsTransformService {
                 .filter(event -> event.getChildLevel() > 0)
                 .collect(Collectors.toList());
 
-        // 按子表层级不同，采用不同处理方式
         if (eventList.size() > 0) {
-            eventList.get(0).getMapping().getChildTable().forEach(child -> {
-                // 补充子表内容
-                extChildField(eventList, child);
-            });
+            long begin = System.currentTimeMillis();
+            // 各子表耗时 <子表，耗时>
+            Map<String, Long> costs = new ConcurrentHashMap<>();
+            CompletableFuture.allOf(eventList.get(0).getMapping().getChildTable().stream()
+                    // 补充子表内容
+                    .map(child -> extChildField(eventList, child, costs))
+                    .toArray(CompletableFuture[]::new)
+            ).join();
+            Log.info("【ES】补充子表字段完成。size：{}，total：{}/ms，tables：{}", eventList.size(), System.currentTimeMillis() - begin, costs);
         }
     }
 
     /**
-     * 补充子表字段内容（使用Redis批量处理，性能更高）
+     * 补充子表字段内容（异步，子表完成后开始孙表）
      *
      * @param esEvents 事件列表
+     * @param child    子表
+     * @param costs    各子表耗时 <子表，耗时>
+     * @return 子表及其下级子表全部完成
      */
-    private void extChildField(List<EsEvent> esEvents, EsSyncMappingTable child) {
-        // 主表新增查询
-        List<ChildQueryInfo> childQueryInfoList = new ArrayList<>();
-        esEvents.forEach(event -> {
-            // 补充主表数据
-            findChildQueryInfo(childQueryInfoList, event, child);
-        });
-
-        // 补充子表字段内容
-        if (childQueryInfoList.size() > 0) {
-            extEventData(childQueryInfoList);
-        }
+    private CompletableFuture<Void> extChildField(List<EsEvent> esEvents, EsSyncMappingTable child, Map<String, Long> costs) {
+        return CompletableFuture.runAsync(() -> {
+            long begin = System.currentTimeMillis();
+            // 主表新增查询
+            List<ChildQueryInfo> childQueryInfoList = new ArrayList<>();
+            esEvents.forEach(event -> {
+                // 补充主表数据
+                findChildQueryInfo(childQueryInfoList, event, child);
+            });
 
-        if (child.getChildTable().size() > 0) {
-            child.getChildTable().forEach(grandson -> extChildField(esEvents, grandson));
-        }
+            // 补充子表字段内容
+            if (childQueryInfoList.size() > 0) {
+                extEventData(childQueryInfoList);
+            }
+            costs.put(child.getTableKey(), System.currentTimeMillis() - begin);
+        }, getEnrichPool()).thenCompose(v -> CompletableFuture.allOf(child.getChildTable().stream()
+                .map(grandson -> extChildField(esEvents, grandson, costs))
+                .toArray(CompletableFuture[]::new)
+        ));
     }
 
     /**
@@ -394,7 +705,10 @@ public class EsTransformService {
                     // 补充子表字段内容
                     queryList.forEach(queryInfo -> {
                         if (childColsCollection.containsKey(queryInfo.getRedisKey()) && childColsCollection.get(queryInfo.getRedisKey()) != null && childColsCollection.get(queryInfo.getRedisKey()).length > 0) {
-                            queryInfo.getEsEvent().addEventData(Arrays.asList(childColsCollection.get(queryInfo.getRedisKey())), queryInfo.getMappingTable());
+                            // 同级子表并行补充，同一事件写入需互斥
+                            synchronized (queryInfo.getEsEvent()) {
+                                queryInfo.getEsEvent().addEventData(Arrays.asList(childColsCollection.get(queryInfo.getRedisKey())), queryInfo.getMappingTable());
+                            }
                         }
                     });
                 });
@@ -408,14 +722,29 @@ public class EsTransformService {
                     // 补充子表字段内容
                     queryList.forEach(queryInfo -> {
                         if (childColsCollection.containsKey(queryInfo.getEsQueryId()) && childColsCollection.get(queryInfo.getEsQueryId()) != null && childColsCollection.get(queryInfo.getEsQueryId()).size() > 0) {
-                            // 补充子表字段
-                            queryInfo.getEsEvent().addEventData(
-                                    childColsCollection.get(queryInfo.getEsQueryId())
-                                    , queryInfo.getMappingTable()
-                            );
+                            // 补充子表字段（同级子表并行补充，同一事件写入需互斥）
+                            synchronized (queryInfo.getEsEvent()) {
+                                queryInfo.getEsEvent().addEventData(
+                                        childColsCollection.get(queryInfo.getEsQueryId())
+                                        , queryInfo.getMappingTable()
+                                );
+                            }
                         }
                     });
                 });
+
+                // 本地副本
+            } else if (TYPE_LOCAL.equals(simple.getChildSouce())) {
+                Map<String, Map<String, String>> childColsCollection = localCopyService.findKeyValues(childQueryInfoList);
+                childQueryInfoList.forEach(queryInfo -> {
+                    Map<String, String> columns = childColsCollection.get(queryInfo.getEsQueryId());
+                    if (columns != null && columns.size() > 0) {
+                        // 补充子表字段（同级子表并行补充，同一事件写入需互斥）
+                        synchronized (queryInfo.getEsEvent()) {
+                            queryInfo.getEsEvent().addEventData(columns, queryInfo.getMappingTable());
+                        }
+                    }
+                });
             }
         }
     }
@@ -429,17 +758,24 @@ public class EsTransformService {
      * @param child              子表定义
      */
     private void findChildQueryInfo(List<ChildQueryInfo> childQueryInfoList, EsEvent event, EsSyncMappingTable child) {
-        // 提取所有外连表，字段内容
-        child.getFieldMapping().stream()
-                // 过滤非外键
-                .filter(EsSyncMappingField::isJoinKey)
-                // 提取外键字段
+        // 提取所有外连表，字段内容（外键字段）
+        Arrays.stream(EsProjectionPlan.of(child).getJoinKeyFields())
                 .forEach(field -> {
                     String joinField = field.getJoinMasterEsFieldName();
-                    // 获得外键值
-                    Object foreignId = event.getEsData().get(joinField);
+                    // 获得外键值（同级子表并行补充，读取需与写入互斥）
+                    Object foreignId;
+                    synchronized (event) {
+                        foreignId = event.getEsData().get(joinField);
+                    }
                     if (foreignId != null) {
-                        if (child.getEsCopyMappingId() != null) {
+                        if (child.getEsCopyMappingId() != null && TYPE_LOCAL.equals(child.getConfig().getCopyChildType())) {
+                            // 本地副本：按外键ID读取，子表数据（本地副本无ES副本索引，不可用时失败，由MQ重试）
+                            if (!localCopyService.isAvailable(child.getEsCopyMappingId())) {
+                                Log.errorThrow("【本地副本】本地副本不可用，无法补充子表字段！table：{}，mappingId：{}", child.getTableKey(), child.getEsCopyMappingId());
+                            }
+                            childQueryInfoList.add(ChildQueryInfo.ofLocal(event, child, child.getEsCopyMappingId(), foreignId.toString()));
+
+                        } else if (child.getEsCopyMappingId() != null) {
                             // ES：按外键ID查询，子表数据
                             childQueryInfoList.add(new ChildQueryInfo(event, child, child.getEsCopyMappingId(), child.getEsAddr(), child.getEsCopyIndex(), foreignId.toString()));
 
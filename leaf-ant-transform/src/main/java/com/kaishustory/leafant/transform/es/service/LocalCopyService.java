@@ -0,0 +1,227 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.es.service;
+
+import com.kaishustory.leafant.common.utils.Log;
+import com.kaishustory.leafant.transform.es.dao.LocalCopyStore;
+import com.kaishustory.leafant.transform.es.model.ChildQueryInfo;
+import com.kaishustory.leafant.transform.es.model.CopyRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地副本服务（子表副本存储在各转换节点的内存映射文件中，补充子表字段无需网络查询）
+ * <p>
+ * 副本数据由广播消费写入（各节点均接收全部子表事件及初始化事件），按副本配置ID分别存储。
+ * 本地副本子表不写入ES副本索引，未启用广播消费或存储打开失败时，本地副本不可用，补充子表字段失败（由MQ重试）。
+ **/
+@Service
+public class LocalCopyService {
+
+    /**
+     * 打开失败重试间隔（毫秒）
+     */
+    private static final long OPEN_RETRY_INTERVAL = 60 * 1000L;
+
+    /**
+     * 存储目录
+     */
+    @Value("${es.local-copy.dir:data/local-copy}")
+    private String dir;
+
+    /**
+     * 段文件大小（MB）
+     */
+    @Value("${es.local-copy.segment-mb:64}")
+    private int segmentMb;
+
+    /**
+     * 刷盘间隔（毫秒）
+     */
+    @Value("${es.local-copy.flush-interval:5000}")
+    private long flushInterval;
+
+    /**
+     * 是否启用广播消费（未启用时本地副本无数据）
+     */
+    @Value("${mq.local-copy.enable:false}")
+    private boolean enable;
+
+    /**
+     * 存储 <副本配置ID，存储>
+     */
+    private final Map<String, LocalCopyStore> stores = new ConcurrentHashMap<>();
+
+    /**
+     * 上次刷盘时间
+     */
+    private volatile long lastFlushTime = System.currentTimeMillis();
+
+    /**
+     * 是否已提示未启用
+     */
+    private volatile boolean disabledWarned = false;
+
+    /**
+     * 打开失败的存储 <副本配置ID，失败时间>（间隔重试）
+     */
+    private final Map<String, Long> openFailures = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor compactPool;
+
+    private ThreadPoolExecutor getCompactPool() {
+        synchronized (this) {
+            if (compactPool == null) {
+                compactPool = new ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(1), new ThreadPoolExecutor.DiscardPolicy());
+            }
+        }
+        return compactPool;
+    }
+
+    /**
+     * 写入副本
+     *
+     * @param mappingId 副本配置ID
+     * @param id        副本ID
+     * @param columns   列值
+     */
+    public void put(String mappingId, String id, Map<String, String> columns) throws IOException {
+        getStore(mappingId).put(id, CopyRecord.encode(columns));
+    }
+
+    /**
+     * 删除副本
+     *
+     * @param mappingId 副本配置ID
+     * @param id        副本ID
+     */
+    public void remove(String mappingId, String id) throws IOException {
+        getStore(mappingId).remove(id);
+    }
+
+    /**
+     * 按间隔刷盘，失效记录过多时后台压缩
+     *
+     * @param mappingId 副本配置ID
+     */
+    public void maintain(String mappingId) {
+        LocalCopyStore store = getStore(mappingId);
+        if (store.needsCompact()) {
+            getCompactPool().execute(() -> {
+                try {
+                    store.compactIfNeeded();
+                } catch (Exception e) {
+                    Log.error("【本地副本】压缩失败！mappingId：{}", mappingId, e);
+                }
+            });
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastFlushTime >= flushInterval) {
+            lastFlushTime = now;
+            stores.values().forEach(LocalCopyStore::flush);
+        }
+    }
+
+    /**
+     * 本地副本是否可用（已启用广播消费且存储可打开）
+     *
+     * @param mappingId 副本配置ID
+     * @return 是否可用
+     */
+    public boolean isAvailable(String mappingId) {
+        if (!enable) {
+            if (!disabledWarned) {
+                disabledWarned = true;
+                Log.error("【本地副本】未启用广播消费（mq.local-copy.enable），本地副本子表无数据！mappingId：{}", mappingId);
+            }
+            return false;
+        }
+        if (stores.containsKey(mappingId)) {
+            return true;
+        }
+        Long failTime = openFailures.get(mappingId);
+        if (failTime != null && System.currentTimeMillis() - failTime < OPEN_RETRY_INTERVAL) {
+            return false;
+        }
+        try {
+            getStore(mappingId);
+            openFailures.remove(mappingId);
+            return true;
+        } catch (RuntimeException e) {
+            openFailures.put(mappingId, System.currentTimeMillis());
+            return false;
+        }
+    }
+
+    /**
+     * 批量查询本地副本
+     *
+     * @param childQueryInfoList 查询列表
+     * @return 副本内容 <副本ID，列值>
+     */
+    public Map<String, Map<String, String>> findKeyValues(List<ChildQueryInfo> childQueryInfoList) {
+        Map<String, Map<String, String>> keyValues = new HashMap<>(childQueryInfoList.size() * 2);
+        childQueryInfoList.forEach(query -> {
+            if (!keyValues.containsKey(query.getEsQueryId())) {
+                byte[] data = getStore(query.getMappingId()).get(query.getEsQueryId());
+                if (data != null) {
+                    keyValues.put(query.getEsQueryId(), CopyRecord.decode(data));
+                }
+            }
+        });
+        return keyValues;
+    }
+
+    /**
+     * 获得存储（首次使用时打开，按段文件恢复）
+     *
+     * @param mappingId 副本配置ID
+     * @return 存储
+     */
+    private LocalCopyStore getStore(String mappingId) {
+        return stores.computeIfAbsent(mappingId, id -> {
+            long begin = System.currentTimeMillis();
+            LocalCopyStore store = new LocalCopyStore(Paths.get(dir, id), segmentMb * 1024 * 1024);
+            try {
+                store.open();
+            } catch (IOException | RuntimeException e) {
+                Log.error("【本地副本】打开存储失败！mappingId：{}，dir：{}", id, dir, e);
+                throw new IllegalStateException("打开本地副本存储失败：" + id, e);
+            }
+            Log.info("【本地副本】打开存储。mappingId：{}，size：{}，bytes：{}，time：{}ms", id, store.size(), store.getLiveBytes(), System.currentTimeMillis() - begin);
+            return store;
+        });
+    }
+
+    /**
+     * 关闭前刷盘
+     */
+    @PreDestroy
+    public void close() {
+        if (compactPool != null) {
+            compactPool.shutdown();
+        }
+        stores.values().forEach(LocalCopyStore::flush);
+    }
+}
@@ -22,6 +22,10 @@ import com.kaishustory.leafant.mapping.service.MySQLMappingService;
 import com.kaishustory.leafant.mapping.service.RedisMappingService;
 import com.kaishustory.leafant.transform.es.dao.ElasticSearchDao;
 import com.kaishustory.leafant.transform.es.model.EsMapping;
+import com.kaishustory.leafant.transform.es.service.EsRebuildService;
+import com.kaishustory.leafant.transform.mysql.service.MySQLReshardService;
+import com.kaishustory.leafant.transform.redis.service.RedisShardMigrateService;
+import com.kaishustory.leafant.transform.route.EventRouteService;
 import com.kaishustory.message.common.model.RpcRequest;
 import com.kaishustory.message.common.model.RpcResponse;
 import com.kaishustory.message.consumer.NettyConsumer;
@@ -31,6 +35,14 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 
+import static com.kaishustory.leafant.common.constants.EventConstants.ACTION_INDEX_COPY;
+import static com.kaishustory.leafant.common.constants.EventConstants.ACTION_INDEX_REBUILD;
+import static com.kaishustory.leafant.common.constants.EventConstants.ACTION_INDEX_SWITCH;
+import static com.kaishustory.leafant.common.constants.EventConstants.ACTION_MYSQL_RESHARD;
+import static com.kaishustory.leafant.common.constants.EventConstants.ACTION_MYSQL_RESHARD_FINISH;
+import static com.kaishustory.leafant.common.constants.EventConstants.ACTION_REDIS_ADD_SHARD;
+import static com.kaishustory.leafant.common.constants.EventConstants.ACTION_REDIS_RESUME_SHARD;
+import static com.kaishustory.leafant.common.constants.EventConstants.ACTION_ROUTE_STATS;
 import static com.kaishustory.leafant.common.constants.MappingConstants.*;
 
 /**
@@ -51,24 +63,48 @@ public class MappingManagerListener {
     @Autowired
     private ElasticSearchDao elasticSearchDao;
 
+    /**
+     * ES索引重建
+     */
+    @Autowired
+    private EsRebuildService esRebuildService;
+
     /**
      * Redis映射管理
      */
     @Autowired
     private RedisMappingService redisMappingService;
 
+    /**
+     * Redis分片迁移
+     */
+    @Autowired
+    private RedisShardMigrateService redisShardMigrateService;
+
     /**
      * MySQL映射管理
      */
     @Autowired
     private MySQLMappingService mysqlMappingService;
 
+    /**
+     * MySQL重新分表删除复核
+     */
+    @Autowired
+    private MySQLReshardService mysqlReshardService;
+
     /**
      * MQ映射管理
      */
     @Autowired
     private MqMappingService mqMappingService;
 
+    /**
+     * 事件路由
+     */
+    @Autowired
+    private EventRouteService eventRouteService;
+
     /**
      * Zookeeper地址
      */
@@ -102,6 +138,10 @@ public class MappingManagerListener {
         // 监听创建映射消息
         new NettyConsumer(messageGroup, mappingCreateType, zookeeper, rpcRequest -> {
             try {
+                // 查询事件路由目标队列深度
+                if (ACTION_ROUTE_STATS.equals(rpcRequest.getAction())) {
+                    return new RpcResponse("stats-callback", JsonUtils.toJson(eventRouteService.getQueueDepth()), RpcResponse.STATUS_SUCCESS);
+                }
                 // 创建映射
                 Option<String> result = createMapping(rpcRequest);
                 if (result.exist()) {
@@ -146,18 +186,58 @@ public class MappingManagerListener {
         if (TYPE_ES.equals(rpcRequest.getAction())) {
             // 创建ES索引
             return esMappingService.createIndex(JsonUtils.fromJson(rpcRequest.getData(), EsSyncConfig.class), (esSyncConfig) -> {
-                // 创建ES映射处理
-                return elasticSearchDao.createIndex(esSyncConfig.getEsAddr(), esSyncConfig.getIndex(), esSyncConfig.getType(), toEsMapping(esSyncConfig));
+                // 创建ES物理索引及映射
+                boolean index = elasticSearchDao.createIndex(esSyncConfig.getEsAddr(), esSyncConfig.getPhysicalIndex(), esSyncConfig.getType(), toEsMapping(esSyncConfig), esSyncConfig.getNumberOfShards(), esSyncConfig.getNumberOfReplicas(), false);
+                // 别名指向物理索引
+                return index && (esSyncConfig.getIndexVersion() == 0 || elasticSearchDao.switchAlias(esSyncConfig.getEsAddr(), esSyncConfig.getIndex(), null, esSyncConfig.getPhysicalIndex()));
             });
 
+            // ES 重建索引
+        } else if (ACTION_INDEX_REBUILD.equals(rpcRequest.getAction())) {
+            return esMappingService.rebuildIndex(JsonUtils.fromJson(rpcRequest.getData(), EsSyncConfig.class), (esSyncConfig) ->
+                    // 创建新版本物理索引（批量导入模式）
+                    elasticSearchDao.createIndex(esSyncConfig.getEsAddr(), esSyncConfig.getRebuildIndex(), esSyncConfig.getType(), toEsMapping(esSyncConfig), esSyncConfig.getNumberOfShards(), esSyncConfig.getNumberOfReplicas(), true)
+            );
+
+            // ES 复制索引（从现有索引重建）
+        } else if (ACTION_INDEX_COPY.equals(rpcRequest.getAction())) {
+            return esMappingService.copyIndex(rpcRequest.getData(), esRebuildService::copyFromIndex);
+
+            // ES 切换索引
+        } else if (ACTION_INDEX_SWITCH.equals(rpcRequest.getAction())) {
+            return esMappingService.switchIndex(rpcRequest.getData(), (esSyncConfig) ->
+                    // 暂停实时写入后最终补写重建期间变更文档，恢复刷新及副本设置，别名原子切换到新版本物理索引
+                    esRebuildService.switchOver(esSyncConfig, () ->
+                            elasticSearchDao.finishBulkLoad(esSyncConfig.getEsAddr(), esSyncConfig.getRebuildIndex(), esSyncConfig.getNumberOfReplicas())
+                                    && elasticSearchDao.switchAlias(esSyncConfig.getEsAddr(), esSyncConfig.getIndex(), esSyncConfig.getPhysicalIndex(), esSyncConfig.getRebuildIndex())
+                    )
+            );
+
             // Redis
         } else if (TYPE_REDIS.equals(rpcRequest.getAction())) {
             return redisMappingService.createIndex(JsonUtils.fromJson(rpcRequest.getData(), RedisSyncConfig.class));
 
+            // Redis 增加分片（迁移新分片负责的Key）
+        } else if (ACTION_REDIS_ADD_SHARD.equals(rpcRequest.getAction())) {
+            return redisMappingService.addShard(JsonUtils.fromJson(rpcRequest.getData(), RedisShardChange.class), redisShardMigrateService::migrate);
+
+            // Redis 继续分片迁移（上次迁移失败或中断）
+        } else if (ACTION_REDIS_RESUME_SHARD.equals(rpcRequest.getAction())) {
+            return redisMappingService.resumeShard(rpcRequest.getData(), redisShardMigrateService::migrate);
+
             // MySQL
         } else if (TYPE_MYSQL.equals(rpcRequest.getAction())) {
             return mysqlMappingService.createIndex(JsonUtils.fromJson(rpcRequest.getData(), MySQLSyncConfig.class));
 
+            // MySQL 重新分表（新分表生效，迁移期间同时写入原分表）
+        } else if (ACTION_MYSQL_RESHARD.equals(rpcRequest.getAction())) {
+            return mysqlMappingService.reshard(JsonUtils.fromJson(rpcRequest.getData(), MySQLReshardChange.class));
+
+            // MySQL 重新分表完成（复核补写期间删除的记录，停止写入原分表）
+        } else if (ACTION_MYSQL_RESHARD_FINISH.equals(rpcRequest.getAction())) {
+            Option<String> verify = mysqlReshardService.verifyDeletes(rpcRequest.getData());
+            return verify.exist() ? mysqlMappingService.finishReshard(rpcRequest.getData()) : verify;
+
             // MQ
         } else if (TYPE_MQ.equals(rpcRequest.getAction())) {
             return mqMappingService.createIndex(JsonUtils.fromJson(rpcRequest.getData(), MqSyncConfig.class));
@@ -0,0 +1,361 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.mq.dao;
+
+import com.kaishustory.leafant.common.utils.Log;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * MQ延迟任务存储（内存映射段文件，任务内容在堆外，时间轮只保存任务位置）
+ * <p>
+ * 1、任务追加写入段文件：内容长度(int，0表示段结束) + 状态(byte，0：待执行，1：已完成) + 执行时间(long) + 通道Key(int) + 校验和(int) + 内容；
+ * 2、任务位置为 段序号<<32 | 段内偏移，执行完成后原位置标记状态；
+ * 3、重启时顺序扫描段文件，恢复待执行任务（已完成状态未刷盘的任务可能重复执行）；
+ *    长度超出段、状态无效或校验和不一致的记录视为未写完整，段从该记录截断（清零段内剩余部分），后续段继续恢复；
+ * 4、段内任务全部完成后删除段文件（当前写入段除外）。
+ **/
+public class DelayWheelStore {
+
+    /**
+     * 记录头长度（内容长度 + 状态 + 执行时间 + 通道Key + 校验和）
+     */
+    private static final int HEADER = 21;
+
+    /**
+     * 记录头字段偏移
+     */
+    private static final int STATUS_OFFSET = 4;
+    private static final int RUN_TIME_OFFSET = 5;
+    private static final int LANE_OFFSET = 13;
+    private static final int CRC_OFFSET = 17;
+
+    /**
+     * 状态：待执行、已完成
+     */
+    private static final byte STATUS_PENDING = 0;
+    private static final byte STATUS_DONE = 1;
+
+    /**
+     * 存储目录
+     */
+    private final Path dir;
+
+    /**
+     * 段文件大小（字节）
+     */
+    private final int segmentSize;
+
+    /**
+     * 段文件 <段序号，映射内存>
+     */
+    private final Map<Integer, MappedByteBuffer> segments = new ConcurrentHashMap<>();
+
+    /**
+     * 段内待执行任务数 <段序号，任务数>
+     */
+    private final Map<Integer, Integer> pending = new HashMap<>();
+
+    /**
+     * 当前写入段序号、段内写入位置
+     */
+    private int writeSeg;
+    private int writePos;
+
+    /**
+     * 是否有未刷盘写入
+     */
+    private boolean dirty = false;
+
+    public DelayWheelStore(Path dir, int segmentSize) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * 打开存储（按段文件恢复待执行任务）
+     *
+     * @param recover 待执行任务处理（任务位置，执行时间）
+     */
+    public synchronized void open(TaskHandle recover) throws IOException {
+        Files.createDirectories(dir);
+        List<Integer> segs;
+        try (Stream<Path> files = Files.list(dir)) {
+            segs = files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith("delay-") && name.endsWith(".dat"))
+                    .map(name -> Integer.parseInt(name.substring(6, name.length() - 4)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (int seg : segs) {
+            MappedByteBuffer buf = map(seg);
+            segments.put(seg, buf);
+            int pos = 0;
+            int count = 0;
+            while (pos + HEADER <= segmentSize) {
+                int len = buf.getInt(pos);
+                if (len == 0) {
+                    break;
+                }
+                if (!isValid(buf, pos, len)) {
+                    truncate(seg, buf, pos);
+                    break;
+                }
+                if (buf.get(pos + STATUS_OFFSET) == STATUS_PENDING) {
+                    recover.handle(location(seg, pos), buf.getLong(pos + RUN_TIME_OFFSET));
+                    count++;
+                }
+                pos += HEADER + len;
+            }
+            pending.put(seg, count);
+            writeSeg = seg;
+            writePos = pos;
+        }
+        if (segments.isEmpty()) {
+            segments.put(0, map(0));
+            pending.put(0, 0);
+        }
+        // 清理已全部完成的段
+        for (int seg : segs) {
+            if (seg != writeSeg && pending.get(seg) == 0) {
+                release(seg);
+            }
+        }
+    }
+
+    /**
+     * 写入任务
+     *
+     * @param runTime 执行时间
+     * @param lane    通道Key（相同Key的任务按顺序转发）
+     * @param content 任务内容
+     * @return 任务位置
+     */
+    public synchronized long append(long runTime, int lane, byte[] content) throws IOException {
+        int recordLen = HEADER + content.length;
+        if (content.length == 0 || recordLen > segmentSize) {
+            throw new IOException("延迟任务大小超出段文件范围！bytes：" + recordLen);
+        }
+        if (writePos + recordLen > segmentSize) {
+            // 当前段剩余空间不足，新建段（段尾保留为0，扫描时视为结束）
+            int fullSeg = writeSeg;
+            writeSeg++;
+            writePos = 0;
+            segments.put(writeSeg, map(writeSeg));
+            pending.put(writeSeg, 0);
+            if (pending.get(fullSeg) == 0) {
+                release(fullSeg);
+            }
+        }
+        ByteBuffer buf = segments.get(writeSeg).duplicate();
+        buf.position(writePos + STATUS_OFFSET);
+        buf.put(STATUS_PENDING);
+        buf.putLong(runTime);
+        buf.putInt(lane);
+        buf.putInt(checksum(lane, content));
+        buf.put(content);
+        // 最后写入长度，扫描时不会读到未写完的记录（页面刷盘顺序不保证时由校验和识别）
+        buf.putInt(writePos, content.length);
+        long location = location(writeSeg, writePos);
+        writePos += recordLen;
+        pending.merge(writeSeg, 1, Integer::sum);
+        dirty = true;
+        return location;
+    }
+
+    /**
+     * 读取任务内容
+     *
+     * @param location 任务位置
+     * @return 任务内容
+     */
+    public byte[] read(long location) {
+        ByteBuffer buf = segments.get((int) (location >>> 32)).duplicate();
+        int pos = (int) location;
+        byte[] content = new byte[buf.getInt(pos)];
+        buf.position(pos + HEADER);
+        buf.get(content);
+        return content;
+    }
+
+    /**
+     * 读取执行时间
+     *
+     * @param location 任务位置
+     * @return 执行时间
+     */
+    public long runTime(long location) {
+        return segments.get((int) (location >>> 32)).getLong((int) location + RUN_TIME_OFFSET);
+    }
+
+    /**
+     * 读取通道Key
+     *
+     * @param location 任务位置
+     * @return 通道Key
+     */
+    public int lane(long location) {
+        return segments.get((int) (location >>> 32)).getInt((int) location + LANE_OFFSET);
+    }
+
+    /**
+     * 更改执行时间（失败重试）
+     *
+     * @param location 任务位置
+     * @param runTime  执行时间
+     */
+    public synchronized void reschedule(long location, long runTime) {
+        segments.get((int) (location >>> 32)).putLong((int) location + RUN_TIME_OFFSET, runTime);
+        dirty = true;
+    }
+
+    /**
+     * 任务完成
+     *
+     * @param location 任务位置
+     */
+    public synchronized void complete(long location) throws IOException {
+        int seg = (int) (location >>> 32);
+        segments.get(seg).put((int) location + STATUS_OFFSET, STATUS_DONE);
+        dirty = true;
+        int count = pending.merge(seg, -1, Integer::sum);
+        if (count == 0 && seg != writeSeg) {
+            release(seg);
+        }
+    }
+
+    /**
+     * 刷盘（锁内只复制段列表，刷盘时不阻塞写入及完成标记）
+     */
+    public void flush() {
+        List<MappedByteBuffer> buffers;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            buffers = new ArrayList<>(segments.values());
+        }
+        try {
+            buffers.forEach(MappedByteBuffer::force);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                dirty = true;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 待执行任务数
+     */
+    public synchronized int size() {
+        return pending.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * 段文件数
+     */
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * 删除已全部完成的段（读取中的映射在回收前保持可读）
+     */
+    private void release(int seg) throws IOException {
+        segments.remove(seg);
+        pending.remove(seg);
+        Files.deleteIfExists(segmentPath(seg));
+    }
+
+    /**
+     * 记录是否完整（长度在段内、状态有效且校验和一致）
+     */
+    private boolean isValid(ByteBuffer buf, int pos, int len) {
+        if (len < 0 || (long) pos + HEADER + len > segmentSize) {
+            return false;
+        }
+        byte status = buf.get(pos + STATUS_OFFSET);
+        if (status != STATUS_PENDING && status != STATUS_DONE) {
+            return false;
+        }
+        byte[] content = new byte[len];
+        ByteBuffer view = buf.duplicate();
+        view.position(pos + HEADER);
+        view.get(content);
+        return buf.getInt(pos + CRC_OFFSET) == checksum(buf.getInt(pos + LANE_OFFSET), content);
+    }
+
+    /**
+     * 记录校验和（CRC32，覆盖通道Key及内容；状态、执行时间原位置更新，不参与校验）
+     */
+    private static int checksum(int lane, byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(4).putInt(0, lane).array());
+        crc.update(content);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 从指定位置截断段（清零段内剩余部分）
+     */
+    private void truncate(int seg, MappedByteBuffer segment, int pos) {
+        Log.warn("【MQ】延迟任务段文件记录不完整，截断。dir：{}，segment：{}，pos：{}", dir, seg, pos);
+        ByteBuffer buf = segment.duplicate();
+        buf.position(pos);
+        byte[] zeros = new byte[4096];
+        while (buf.hasRemaining()) {
+            buf.put(zeros, 0, Math.min(zeros.length, buf.remaining()));
+        }
+        segment.force();
+    }
+
+    private static long location(int seg, int pos) {
+        return ((long) seg << 32) | (pos & 0xFFFFFFFFL);
+    }
+
+    private Path segmentPath(int seg) {
+        return dir.resolve(String.format("delay-%010d.dat", seg));
+    }
+
+    private MappedByteBuffer map(int seg) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segmentPath(seg).toFile(), "rw"); FileChannel channel = file.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    public interface TaskHandle {
+        /**
+         * 任务处理
+         *
+         * @param location 任务位置
+         * @param runTime  执行时间
+         */
+        void handle(long location, long runTime);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.mq.dao;
+
+import java.util.Arrays;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * 分层时间轮（4层，每层64格，第N层每格 64^N 个刻度）
+ * <p>
+ * 1、写入按剩余刻度选择层级，O(1) 放入对应格；
+ * 2、推进刻度时，高层格到期后按执行时间降级到低层，第0层格到期即为待执行任务；
+ * 3、格内只保存任务位置（long数组），执行时间从任务存储读取，百万级任务只占用少量堆内存；
+ * 4、超出最大范围的任务放入最高层，降级时重新计算。
+ **/
+public class TimingWheel {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    /**
+     * 最大刻度范围
+     */
+    private static final long MAX_SPAN = 1L << (BITS * LEVELS);
+
+    /**
+     * 时间格 [层级][格序号]
+     */
+    private final LongList[][] buckets = new LongList[LEVELS][SLOTS];
+
+    /**
+     * 刻度（毫秒）
+     */
+    private final long tickMs;
+
+    /**
+     * 任务执行时间（任务位置 -> 执行时间）
+     */
+    private final LongUnaryOperator runTimeOf;
+
+    /**
+     * 当前刻度
+     */
+    private long currentTick;
+
+    /**
+     * 待执行任务
+     */
+    private LongList due = new LongList();
+
+    /**
+     * 时间轮内任务数
+     */
+    private int size;
+
+    public TimingWheel(long tickMs, long startTime, LongUnaryOperator runTimeOf) {
+        this.tickMs = tickMs;
+        this.runTimeOf = runTimeOf;
+        this.currentTick = startTime / tickMs;
+        for (LongList[] level : buckets) {
+            for (int i = 0; i < SLOTS; i++) {
+                level[i] = new LongList();
+            }
+        }
+    }
+
+    /**
+     * 写入任务
+     *
+     * @param location 任务位置
+     * @param runTime  执行时间
+     */
+    public synchronized void add(long location, long runTime) {
+        place(location, (runTime + tickMs - 1) / tickMs);
+    }
+
+    /**
+     * 推进到当前时间
+     *
+     * @param now 当前时间
+     * @return 到期任务位置
+     */
+    public synchronized LongList advance(long now) {
+        long nowTick = now / tickMs;
+        while (currentTick < nowTick) {
+            currentTick++;
+            // 高层格到期，降级
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (BITS * level)) - 1)) == 0) {
+                    LongList bucket = buckets[level][(int) (currentTick >>> (BITS * level)) & MASK];
+                    if (bucket.size > 0) {
+                        long[] locations = Arrays.copyOf(bucket.values, bucket.size);
+                        size -= bucket.size;
+                        bucket.clear();
+                        for (long location : locations) {
+                            place(location, (runTimeOf.applyAsLong(location) + tickMs - 1) / tickMs);
+                        }
+                    }
+                }
+            }
+            // 第0层格到期
+            LongList bucket = buckets[0][(int) currentTick & MASK];
+            if (bucket.size > 0) {
+                size -= bucket.size;
+                due.addAll(bucket);
+                bucket.clear();
+            }
+        }
+        LongList result = due;
+        due = new LongList();
+        return result;
+    }
+
+    /**
+     * 时间轮内任务数（不含待执行）
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private void place(long location, long expireTick) {
+        long delta = expireTick - currentTick;
+        if (delta <= 0) {
+            due.add(location);
+            return;
+        }
+        if (delta >= MAX_SPAN) {
+            // 超出范围，放入最高层最远格，降级时重新计算
+            expireTick = currentTick + MAX_SPAN - 1;
+            delta = MAX_SPAN - 1;
+        }
+        int level = 0;
+        while (delta >= (1L << (BITS * (level + 1)))) {
+            level++;
+        }
+        buckets[level][(int) (expireTick >>> (BITS * level)) & MASK].add(location);
+        size++;
+    }
+
+    /**
+     * long列表
+     */
+    public static class LongList {
+
+        private long[] values = new long[8];
+
+        private int size;
+
+        public void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(LongList other) {
+            if (size + other.size > values.length) {
+                values = Arrays.copyOf(values, Math.max(size * 2, size + other.size));
+            }
+            System.arraycopy(other.values, 0, values, size, other.size);
+            size += other.size;
+        }
+
+        void clear() {
+            // 释放大数组
+            values = values.length > 64 ? new long[8] : values;
+            size = 0;
+        }
+
+        public long get(int i) {
+            return values[i];
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+}
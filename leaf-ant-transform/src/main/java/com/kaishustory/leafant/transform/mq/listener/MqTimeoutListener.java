@@ -1,18 +1,33 @@
 package com.kaishustory.leafant.transform.mq.listener;
 
+import com.kaishustory.leafant.common.utils.JsonUtils;
 import com.kaishustory.leafant.common.utils.Log;
+import com.kaishustory.leafant.transform.mq.dao.DelayWheelStore;
+import com.kaishustory.leafant.transform.mq.dao.TimingWheel;
 import com.kaishustory.leafant.transform.mq.model.MqEvent;
 import com.kaishustory.leafant.transform.mq.service.MqTransformService;
-import lombok.SneakyThrows;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
-import java.util.concurrent.DelayQueue;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * MQ转发延迟处理
+ * <p>
+ * 延迟任务写入内存映射段文件，分层时间轮只保存任务位置；到期任务按 Topic+表 分配转发通道（单线程、有界队列），
+ * 同一表的任务按顺序同步转发，发送成功后标记完成；重启时从段文件恢复。
  *
  * @author liguoyang
  * @create 2019-09-02 11:34
@@ -20,10 +35,6 @@ import java.util.concurrent.DelayQueue;
 @Component
 public class MqTimeoutListener {
 
-    /**
-     * 延迟队列
-     */
-    private DelayQueue<MqEvent> delayQueue = new DelayQueue<>();
     /**
      * 应用
      */
@@ -39,6 +50,51 @@ public class MqTimeoutListener {
      */
     @Value("${mq.timer.groupId}")
     private String groupId;
+    /**
+     * 存储目录
+     */
+    @Value("${mq.delay.dir:data/mq-delay}")
+    private String dir;
+    /**
+     * 段文件大小（MB）
+     */
+    @Value("${mq.delay.segment-mb:64}")
+    private int segmentMb;
+    /**
+     * 时间轮刻度（毫秒）
+     */
+    @Value("${mq.delay.tick-ms:1000}")
+    private long tickMs;
+    /**
+     * 转发通道数（每个通道一个线程）
+     */
+    @Value("${mq.delay.threads:8}")
+    private int threads;
+    /**
+     * 每个通道最多排队批次数（队列已满时时间轮等待）
+     */
+    @Value("${mq.delay.lane-queue:100}")
+    private int laneQueue;
+    /**
+     * 通道内转发失败重试次数（保持顺序，超出后按重试间隔重新放入时间轮）
+     */
+    @Value("${mq.delay.lane-retries:3}")
+    private int laneRetries;
+    /**
+     * 每批转发任务数
+     */
+    @Value("${mq.delay.batch:100}")
+    private int batchSize;
+    /**
+     * 刷盘间隔（毫秒）
+     */
+    @Value("${mq.delay.flush-interval:1000}")
+    private long flushInterval;
+    /**
+     * 转发失败重试间隔（秒）
+     */
+    @Value("${mq.delay.retry-seconds:5}")
+    private int retrySeconds;
     /**
      * MQ处理
      */
@@ -46,22 +102,59 @@ public class MqTimeoutListener {
     private MqTransformService mqTransformService;
 
     /**
-     * 写入延迟队列
-     *
-     * @param event
+     * 延迟任务存储
      */
-    public void addQueue(MqEvent event) {
-        delayQueue.add(event);
+    private DelayWheelStore store;
+
+    /**
+     * 时间轮
+     */
+    private TimingWheel wheel;
+
+    /**
+     * 时间轮推进线程
+     */
+    private Thread ticker;
+
+    /**
+     * 转发通道（单线程顺序执行）
+     */
+    private ThreadPoolExecutor[] lanes;
+
+    private ThreadPoolExecutor[] getLanes() {
+        synchronized (this) {
+            if (lanes == null) {
+                lanes = new ThreadPoolExecutor[threads];
+                for (int i = 0; i < threads; i++) {
+                    // 队列已满时等待（不能由调用线程执行，否则打乱通道顺序）
+                    lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(laneQueue), (task, executor) -> {
+                        try {
+                            executor.getQueue().put(task);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new RejectedExecutionException("转发通道等待中断！", e);
+                        }
+                    });
+                }
+            }
+        }
+        return lanes;
     }
 
     /**
-     * 读取延迟队列
+     * 写入延迟队列
      *
-     * @return
+     * @param event
      */
-    @SneakyThrows
-    public MqEvent takeQueue() {
-        return delayQueue.take();
+    public void addQueue(MqEvent event) {
+        try {
+            // 通道Key：Topic+表（同一表的任务在同一通道按顺序转发）
+            int lane = Objects.hash(event.getConfig().getTargetTopic(), event.getEvents().get(0).getTableKey());
+            long location = store.append(event.getRunTime(), lane, JsonUtils.toJson(event).getBytes(StandardCharsets.UTF_8));
+            wheel.add(location, event.getRunTime());
+        } catch (IOException e) {
+            Log.errorThrow("【MQ】写入延迟任务失败！topic：{}，err：{}", event.getConfig().getTargetTopic(), e.getMessage(), e);
+        }
     }
 
     /**
@@ -70,16 +163,151 @@ public class MqTimeoutListener {
     @PostConstruct
     public void listener() {
 
-        new Thread(() -> {
-            while (true) {
-                MqEvent event = takeQueue();
-                Log.info("【MQ】收到延迟处理通知。event：{}", event);
-                // 关闭延迟标志
-                event.getConfig().setTimeout(0);
-                // MQ转发处理
-                mqTransformService.eventHandle(event.getConfig(), event.getEvents());
+        // 打开存储，恢复待执行任务
+        long begin = System.currentTimeMillis();
+        store = new DelayWheelStore(Paths.get(dir), segmentMb * 1024 * 1024);
+        wheel = new TimingWheel(tickMs, begin, location -> store.runTime(location));
+        try {
+            store.open(wheel::add);
+        } catch (IOException e) {
+            Log.error("【MQ】打开延迟任务存储失败！dir：{}", dir, e);
+            throw new IllegalStateException("打开延迟任务存储失败：" + dir, e);
+        }
+        Log.info("【MQ】延迟任务恢复。dir：{}，pending：{}，segments：{}，time：{}ms", dir, store.size(), store.segmentCount(), System.currentTimeMillis() - begin);
+
+        ticker = new Thread(() -> {
+            long lastFlushTime = System.currentTimeMillis();
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(tickMs);
+                    dispatch(wheel.advance(System.currentTimeMillis()));
+                    long now = System.currentTimeMillis();
+                    if (now - lastFlushTime >= flushInterval) {
+                        lastFlushTime = now;
+                        store.flush();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Throwable t) {
+                    if (!Thread.currentThread().isInterrupted()) {
+                        Log.error("【MQ】延迟任务时间轮异常！", t);
+                    }
+                }
+            }
+        }, "mq-delay-wheel-thread");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    /**
+     * 到期任务按通道分组，按批次提交通道转发（保持到期顺序）
+     *
+     * @param due 到期任务位置
+     */
+    private void dispatch(TimingWheel.LongList due) {
+        ThreadPoolExecutor[] lanes = getLanes();
+        List<List<Long>> laneTasks = new ArrayList<>(lanes.length);
+        for (int i = 0; i < lanes.length; i++) {
+            laneTasks.add(new ArrayList<>());
+        }
+        for (int i = 0; i < due.size(); i++) {
+            long location = due.get(i);
+            int lane = (store.lane(location) & Integer.MAX_VALUE) % lanes.length;
+            List<Long> tasks = laneTasks.get(lane);
+            tasks.add(location);
+            if (tasks.size() >= batchSize) {
+                submit(lanes[lane], tasks);
+                laneTasks.set(lane, new ArrayList<>());
+            }
+        }
+        for (int i = 0; i < lanes.length; i++) {
+            if (!laneTasks.get(i).isEmpty()) {
+                submit(lanes[i], laneTasks.get(i));
+            }
+        }
+    }
+
+    private void submit(ThreadPoolExecutor lane, List<Long> tasks) {
+        lane.execute(() -> tasks.forEach(this::forward));
+    }
+
+    /**
+     * 转发到期任务（同步发送成功后标记完成；失败时在通道内重试，超出重试次数后按重试间隔重新放入时间轮）
+     *
+     * @param location 任务位置
+     */
+    private void forward(long location) {
+        MqEvent event = null;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                event = JsonUtils.fromJson(new String(store.read(location), StandardCharsets.UTF_8), MqEvent.class);
+                Log.info("【MQ】收到延迟处理通知。topic：{}，size：{}，delay：{}ms", event.getConfig().getTargetTopic(), event.getEvents().size(), System.currentTimeMillis() - event.getRunTime());
+                // MQ转发处理（同步发送，全部发送成功后返回；不经过延迟判断，不修改共享映射配置）
+                mqTransformService.forward(event.getConfig(), event.getEvents());
+                break;
+            } catch (Exception e) {
+                String topic = event != null ? event.getConfig().getTargetTopic() : "";
+                if (attempt < laneRetries) {
+                    Log.error("【MQ】延迟任务转发失败，{}秒后通道内重试（{}/{}）。topic：{}", retrySeconds, attempt + 1, laneRetries, topic, e);
+                    try {
+                        Thread.sleep(retrySeconds * 1000L);
+                        continue;
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                Log.error("【MQ】延迟任务转发失败，{}秒后重新执行（不再保证同一表顺序）。topic：{}", retrySeconds, topic, e);
+                long runTime = System.currentTimeMillis() + retrySeconds * 1000L;
+                store.reschedule(location, runTime);
+                wheel.add(location, runTime);
+                return;
             }
-        }).start();
+        }
+        try {
+            store.complete(location);
+        } catch (IOException e) {
+            // 已发送成功，不重新发送（未刷盘的完成状态重启后可能重复执行）
+            Log.error("【MQ】延迟任务完成标记失败。location：{}", location, e);
+        }
+    }
 
+    /**
+     * 停止时间轮推进线程及转发通道，关闭前刷盘（未转发的任务重启后恢复）
+     */
+    @PreDestroy
+    public void close() {
+        boolean interrupted = false;
+        if (ticker != null) {
+            // 中断推进线程（包括等待通道队列），等待退出后不再提交新任务、不再并发刷盘
+            ticker.interrupt();
+            while (ticker.isAlive()) {
+                try {
+                    ticker.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (lanes != null) {
+            for (ThreadPoolExecutor lane : lanes) {
+                lane.shutdown();
+            }
+            // 等待已提交的批次转发完成（完成标记随后刷盘）
+            for (ThreadPoolExecutor lane : lanes) {
+                try {
+                    if (!lane.awaitTermination(retrySeconds * (laneRetries + 1L), TimeUnit.SECONDS)) {
+                        Log.warn("【MQ】转发通道关闭超时，未完成的任务重启后重新执行。");
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (store != null) {
+            store.flush();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
     }
 }
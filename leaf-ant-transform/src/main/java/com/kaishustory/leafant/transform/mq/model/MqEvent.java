@@ -5,8 +5,6 @@ import com.kaishustory.leafant.common.model.MqSyncConfig;
 import lombok.Data;
 
 import java.util.List;
-import java.util.concurrent.Delayed;
-import java.util.concurrent.TimeUnit;
 
 /**
  * MQ消息
@@ -15,7 +13,7 @@ import java.util.concurrent.TimeUnit;
  * @create 2019-10-11 1:25 AM
  **/
 @Data
-public class MqEvent implements Delayed {
+public class MqEvent {
 
     /**
      * 执行时间
@@ -39,14 +37,4 @@ public class MqEvent implements Delayed {
         this.events = events;
     }
 
-    @Override
-    public long getDelay(TimeUnit unit) {
-        return runTime - System.currentTimeMillis();
-    }
-
-    @Override
-    public int compareTo(Delayed o) {
-        return Long.compare(this.runTime, ((MqEvent) o).runTime);
-    }
-
 }
@@ -12,32 +12,45 @@
 
 package com.kaishustory.leafant.transform.mq.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.kaishustory.leafant.common.model.Event;
+import com.kaishustory.leafant.common.model.MqSchema;
 import com.kaishustory.leafant.common.model.MqSyncConfig;
 import com.kaishustory.leafant.common.utils.DateUtils;
 import com.kaishustory.leafant.common.utils.JsonUtils;
 import com.kaishustory.leafant.common.utils.Log;
+import com.kaishustory.leafant.common.utils.MqEnvelopeCodec;
+import com.kaishustory.leafant.mapping.dao.MqSchemaDao;
 import com.kaishustory.leafant.transform.mq.listener.MqTimeoutListener;
 import com.kaishustory.leafant.transform.mq.model.MqEvent;
 import lombok.SneakyThrows;
 import org.apache.rocketmq.client.producer.MQProducer;
-import org.apache.rocketmq.client.producer.SendCallback;
 import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
 import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.List;
-import java.util.Objects;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
 
 import static com.kaishustory.leafant.common.constants.EventConstants.*;
+import static com.kaishustory.leafant.common.constants.MappingConstants.MQ_ENVELOPE_BINARY;
+import static com.kaishustory.leafant.common.constants.MappingConstants.MQ_ENVELOPE_COMPACT;
 
 /**
  * MQ转发处理
+ * <p>
+ * 1、事件按队列分组（默认按表选择队列；开启主键分区时按 表+主键 选择队列，同一主键保持顺序）；
+ * 2、同一队列的事件按转发格式生成消息（事件列表JSON按字节数拆分，精简JSON每行一条，二进制按结构及字节数合并），多条消息按字节数合并为批量发送；
+ * 3、各队列批量发送并行执行，全部完成后返回，任一失败时抛出异常（重新消费或延迟重试）；
+ * 4、逐条事件日志按比例采样。
  **/
 @Service
 public class MqTransformService {
@@ -60,15 +73,75 @@ public class MqTransformService {
     @Value("${spring.profiles.active}")
     private String env;
 
+    /**
+     * 是否按主键选择队列
+     */
+    @Value("${mq.forward.key-partition:false}")
+    private boolean keyPartition;
+
+    /**
+     * 单条消息最大字节数
+     */
+    @Value("${mq.forward.message-bytes:262144}")
+    private int messageBytes;
+
+    /**
+     * 单次批量发送最大字节数
+     */
+    @Value("${mq.forward.batch-bytes:1048576}")
+    private int batchBytes;
+
+    /**
+     * 发送线程数
+     */
+    @Value("${mq.forward.threads:16}")
+    private int threads;
+
+    /**
+     * 事件日志采样比例（每N条记录1条，1为全部记录，0为不记录）
+     */
+    @Value("${mq.forward.log-sample:100}")
+    private int logSample;
+
     @Autowired
     private MqTimeoutListener timeoutListener;
 
+    /**
+     * 二进制结构登记
+     */
+    @Autowired
+    private MqSchemaDao mqSchemaDao;
+
+    /**
+     * 已登记结构 <结构ID，结构描述>
+     */
+    private Cache<String, MqSchema> schemaCache = Caffeine.newBuilder().maximumSize(10000).build();
+
+    /**
+     * Topic队列缓存 <Topic，队列列表>
+     */
+    private Cache<String, List<MessageQueue>> queueCache = Caffeine.newBuilder().expireAfterWrite(30, TimeUnit.SECONDS).build();
+
+    /**
+     * 发送线程池
+     */
+    private ThreadPoolExecutor threadPool;
+
+    private ThreadPoolExecutor getThreadPool() {
+        synchronized (this) {
+            if (threadPool == null) {
+                // 队列已满时由调用线程执行
+                threadPool = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(threads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+            }
+        }
+        return threadPool;
+    }
+
     /**
      * MQ事件转发处理
      *
      * @param events MQ事件列表
      */
-    @SneakyThrows
     public void eventHandle(MqSyncConfig config, List<Event> events) {
 
         if (events != null && events.size() > 0) {
@@ -76,33 +149,7 @@ public class MqTransformService {
             Event e = events.get(0);
             if (config.getTimeout() == null || config.getTimeout() <= 0) {
                 // 立即处理
-                Message msg = new Message(config.getTargetTopic(), String.format("%s:%s", e.getDatabase(), e.getTable()), e.getTableKey(), JsonUtils.toJson(events).getBytes());
-                producer.send(msg,
-                        // Hash分片值【实例_数据库_表名】
-                        (mqs, msg1, key) -> mqs.get(Math.abs(Objects.hash(key)) % mqs.size()),
-                        e.getTableKey(),
-                        new SendCallback() {
-                            @Override
-                            public void onSuccess(SendResult sendResult) {
-                                Log.info("【MQ】事件转发成功 topic：{}，table：{}，MQID：{}", config.getTargetTopic(), e.getTableKey(), msg.getTransactionId());
-                            }
-
-                            @Override
-                            public void onException(Throwable context) {
-                                Log.error("【MQ】事件转发失败 topic：{}，table：{}，MQID：{}", config.getTargetTopic(), e.getTableKey(), msg.getTransactionId());
-                            }
-                        }
-                );
-                // 逐条打印日志
-                events.forEach(event -> {
-                    if (TYPE_INSERT == event.getType()) {
-                        Log.info("【MQ】新增文档 {}, id：{}，delay：{}，insert：{}", event.getTableKey(), event.getPrimaryKey(), (System.currentTimeMillis() - event.getExecuteTime()) + "/ms", JsonUtils.toJson(event.getUpdateColumnsBase()));
-                    } else if (TYPE_UPDATE == event.getType()) {
-                        Log.info("【MQ】更新文档 {}, id：{}，delay：{}，update：{}", event.getTableKey(), event.getPrimaryKey(), (System.currentTimeMillis() - event.getExecuteTime()) + "/ms", JsonUtils.toJson(event.getUpdateColumnsBase()));
-                    } else if (TYPE_DELETE == event.getType()) {
-                        Log.info("【MQ】删除文档 {}, id：{}，delay：{}", event.getTableKey(), event.getPrimaryKey(), (System.currentTimeMillis() - event.getExecuteTime()) + "/ms");
-                    }
-                });
+                forward(config, events);
             } else {
                 // 延迟处理
                 // 写入延迟队列
@@ -117,4 +164,221 @@ public class MqTransformService {
         }
 
     }
+
+    /**
+     * MQ事件立即转发（等待全部批量发送完成）
+     *
+     * @param config MQ映射配置
+     * @param events MQ事件列表
+     */
+    @SneakyThrows
+    public void forward(MqSyncConfig config, List<Event> events) {
+        Event e = events.get(0);
+        List<MessageQueue> queues = getQueues(config.getTargetTopic());
+
+        // 按队列分组（保持事件顺序）
+        Map<MessageQueue, List<Event>> queueEvents = new LinkedHashMap<>();
+        if (keyPartition) {
+            events.forEach(event -> queueEvents.computeIfAbsent(selectQueue(queues, event.getTableKey() + ":" + event.getPrimaryKey()), q -> new ArrayList<>()).add(event));
+        } else {
+            // Hash分片值【实例_数据库_表名】
+            queueEvents.put(selectQueue(queues, e.getTableKey()), events);
+        }
+
+        // 各队列并行批量发送
+        List<Future<?>> futures = new ArrayList<>(queueEvents.size());
+        queueEvents.forEach((queue, qEvents) -> futures.add(getThreadPool().submit(() -> sendQueue(config, queue, qEvents))));
+        Exception error = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException ex) {
+                error = ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+            }
+        }
+        if (error != null) {
+            Log.error("【MQ】事件转发失败 topic：{}，table：{}，size：{}", config.getTargetTopic(), e.getTableKey(), events.size());
+            throw error;
+        }
+
+        // 采样打印事件日志
+        if (logSample > 0) {
+            events.forEach(event -> {
+                if (logSample == 1 || ThreadLocalRandom.current().nextInt(logSample) == 0) {
+                    if (TYPE_INSERT == event.getType()) {
+                        Log.info("【MQ】新增文档 {}, id：{}，delay：{}，insert：{}", event.getTableKey(), event.getPrimaryKey(), (System.currentTimeMillis() - event.getExecuteTime()) + "/ms", JsonUtils.toJson(event.getUpdateColumnsBase()));
+                    } else if (TYPE_UPDATE == event.getType()) {
+                        Log.info("【MQ】更新文档 {}, id：{}，delay：{}，update：{}", event.getTableKey(), event.getPrimaryKey(), (System.currentTimeMillis() - event.getExecuteTime()) + "/ms", JsonUtils.toJson(event.getUpdateColumnsBase()));
+                    } else if (TYPE_DELETE == event.getType()) {
+                        Log.info("【MQ】删除文档 {}, id：{}，delay：{}", event.getTableKey(), event.getPrimaryKey(), (System.currentTimeMillis() - event.getExecuteTime()) + "/ms");
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * 发送队列事件（按字节数拆分消息，合并批量发送）
+     *
+     * @param config 映射配置
+     * @param queue  队列
+     * @param events 事件列表
+     */
+    @SneakyThrows
+    private void sendQueue(MqSyncConfig config, MessageQueue queue, List<Event> events) {
+        Event e = events.get(0);
+        String tags = String.format("%s:%s", e.getDatabase(), e.getTable());
+
+        // 按转发格式生成消息
+        List<Message> messages = new ArrayList<>();
+        List<Integer> messageEvents = new ArrayList<>();
+        if (MQ_ENVELOPE_COMPACT.equals(config.getEnvelope())) {
+            // 精简JSON，每条消息一行
+            events.forEach(event -> {
+                Message msg = new Message(config.getTargetTopic(), tags, event.getPrimaryKey(), MqEnvelopeCodec.encodeCompact(event));
+                msg.putUserProperty(MqEnvelopeCodec.PROPERTY_ENVELOPE, MQ_ENVELOPE_COMPACT);
+                messages.add(msg);
+                messageEvents.add(1);
+            });
+        } else if (MQ_ENVELOPE_BINARY.equals(config.getEnvelope())) {
+            // 二进制，同一结构的连续行按字节数合并
+            buildBinaryMessages(config, tags, events, messages, messageEvents);
+        } else {
+            // 事件列表JSON，按字节数拆分
+            buildEventMessages(config, tags, events, messages, messageEvents);
+        }
+
+        // 按字节数合并批量发送（按顺序）
+        int from = 0;
+        int bytes = 0;
+        int eventCount = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            int size = messages.get(i).getBody().length;
+            if (i > from && bytes + size > batchBytes) {
+                send(config, queue, messages.subList(from, i), eventCount);
+                from = i;
+                bytes = 0;
+                eventCount = 0;
+            }
+            bytes += size;
+            eventCount += messageEvents.get(i);
+        }
+        send(config, queue, messages.subList(from, messages.size()), eventCount);
+    }
+
+    /**
+     * 生成事件列表JSON消息（按字节数拆分，消息内容为事件JSON数组）
+     */
+    private void buildEventMessages(MqSyncConfig config, String tags, List<Event> events, List<Message> messages, List<Integer> messageEvents) {
+        String keys = events.get(0).getTableKey();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(Math.min(messageBytes, 64 * 1024));
+        int count = 0;
+        for (Event event : events) {
+            byte[] json = JsonUtils.toJson(event).getBytes(StandardCharsets.UTF_8);
+            if (count > 0 && body.size() + json.length + 2 > messageBytes) {
+                messages.add(toMessage(config.getTargetTopic(), tags, keys, body));
+                messageEvents.add(count);
+                body.reset();
+                count = 0;
+            }
+            body.write(count == 0 ? '[' : ',');
+            body.write(json, 0, json.length);
+            count++;
+        }
+        messages.add(toMessage(config.getTargetTopic(), tags, keys, body));
+        messageEvents.add(count);
+    }
+
+    /**
+     * 生成二进制消息（结构变化或超出字节数时拆分，结构ID写入消息属性）
+     */
+    private void buildBinaryMessages(MqSyncConfig config, String tags, List<Event> events, List<Message> messages, List<Integer> messageEvents) {
+        String keys = events.get(0).getTableKey();
+        MqSchema schema = null;
+        List<byte[]> rows = new ArrayList<>();
+        int bytes = 0;
+        for (Event event : events) {
+            MqSchema eventSchema = registerSchema(event);
+            byte[] row = MqEnvelopeCodec.encodeBinaryRow(eventSchema, event);
+            if (schema != null && (!schema.getId().equals(eventSchema.getId()) || bytes + row.length > messageBytes)) {
+                messages.add(toBinaryMessage(config.getTargetTopic(), tags, keys, schema, rows));
+                messageEvents.add(rows.size());
+                rows = new ArrayList<>();
+                bytes = 0;
+            }
+            schema = eventSchema;
+            rows.add(row);
+            bytes += row.length;
+        }
+        messages.add(toBinaryMessage(config.getTargetTopic(), tags, keys, schema, rows));
+        messageEvents.add(rows.size());
+    }
+
+    private Message toBinaryMessage(String topic, String tags, String keys, MqSchema schema, List<byte[]> rows) {
+        Message msg = new Message(topic, tags, keys, MqEnvelopeCodec.encodeBinary(rows));
+        msg.putUserProperty(MqEnvelopeCodec.PROPERTY_ENVELOPE, MQ_ENVELOPE_BINARY);
+        msg.putUserProperty(MqEnvelopeCodec.PROPERTY_SCHEMA_ID, schema.getId());
+        return msg;
+    }
+
+    /**
+     * 获得结构描述（首次出现时登记，消费方按结构ID查询）
+     *
+     * @param event 事件
+     * @return 结构描述
+     */
+    private MqSchema registerSchema(Event event) {
+        MqSchema schema = MqEnvelopeCodec.schemaOf(event);
+        MqSchema registered = schemaCache.getIfPresent(schema.getId());
+        if (registered == null) {
+            mqSchemaDao.save(schema);
+            schemaCache.put(schema.getId(), schema);
+            Log.info("【MQ】登记二进制结构 table：{}，schemaId：{}，fields：{}", schema.getTableKey(), schema.getId(), schema.getFields().size());
+            return schema;
+        }
+        return registered;
+    }
+
+    /**
+     * 批量发送（同一队列，同步发送，未写入成功时抛出异常）
+     */
+    private void send(MqSyncConfig config, MessageQueue queue, List<Message> batch, int eventCount) throws Exception {
+        SendResult result = batch.size() == 1 ? producer.send(batch.get(0), queue) : producer.send(batch, queue);
+        if (result.getSendStatus() != SendStatus.SEND_OK) {
+            Log.errorThrow("【MQ】事件转发未成功 topic：{}，queue：{}，messages：{}，status：{}", config.getTargetTopic(), queue.getQueueId(), batch.size(), result.getSendStatus());
+        }
+        Log.info("【MQ】事件转发成功 topic：{}，queue：{}，messages：{}，events：{}，MQID：{}", config.getTargetTopic(), queue.getQueueId(), batch.size(), eventCount, result.getMsgId());
+    }
+
+    private Message toMessage(String topic, String tags, String keys, ByteArrayOutputStream body) {
+        body.write(']');
+        return new Message(topic, tags, keys, body.toByteArray());
+    }
+
+    /**
+     * 选择队列
+     *
+     * @param queues 队列列表
+     * @param key    分片值
+     * @return 队列
+     */
+    private MessageQueue selectQueue(List<MessageQueue> queues, String key) {
+        return queues.get(Math.floorMod(Objects.hash(key), queues.size()));
+    }
+
+    /**
+     * 获得Topic队列
+     *
+     * @param topic Topic
+     * @return 队列列表
+     */
+    @SneakyThrows
+    private List<MessageQueue> getQueues(String topic) {
+        List<MessageQueue> queues = queueCache.getIfPresent(topic);
+        if (queues == null) {
+            queues = producer.fetchPublishMessageQueues(topic);
+            queueCache.put(topic, queues);
+        }
+        return queues;
+    }
 }
@@ -12,6 +12,8 @@
 
 package com.kaishustory.leafant.transform.mysql.dao;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.kaishustory.leafant.common.model.EventColumn;
 import com.kaishustory.leafant.common.model.SyncDataSourceConfig;
 import com.kaishustory.leafant.common.utils.Log;
@@ -20,14 +22,20 @@ import com.kaishustory.leafant.transform.common.conf.JdbcConf;
 import com.kaishustory.leafant.transform.mysql.model.MySQLEvent;
 import com.mysql.jdbc.PreparedStatement;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
-import java.sql.Types;
-import java.util.List;
-import java.util.Optional;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+import static com.kaishustory.leafant.common.constants.EventConstants.TYPE_DELETE;
+import static com.kaishustory.leafant.common.constants.EventConstants.TYPE_INSERT;
 
 /**
  * 数据库操作
@@ -42,26 +50,49 @@ public class MySQLDao {
     private JdbcConf jdbcConf;
 
     /**
-     * 判断是否为数字类型
-     *
-     * @param type 列类型
-     * @return 是否为数字类型
-     */
-    public static boolean isNum(int type) {
-        switch (type) {
-            case Types.INTEGER:
-            case Types.TINYINT:
-            case Types.SMALLINT:
-            case Types.BIT:
-            case Types.BIGINT:
-            case Types.FLOAT:
-            case Types.DOUBLE:
-            case Types.NUMERIC:
-            case Types.DECIMAL:
-                return true;
-            default:
-                return false;
+     * 管道缓冲大小
+     */
+    private static final int PIPE_SIZE = 64 * 1024;
+
+    /**
+     * 写入缓冲大小
+     */
+    private static final int WRITE_BUFFER = 16 * 1024;
+
+    /**
+     * 数据流写入线程池（每个 LOAD DATA 对应一个写入线程，线程数与连接池上限一致；线程池已满时由调用线程写入内存）
+     */
+    private ExecutorService threadPool;
+
+    /**
+     * 连接池最大连接数
+     */
+    @Value("${mysql.pool.max:10}")
+    private int poolMax;
+
+    /**
+     * 插入或更新语句缓存 <表+字段+变更字段，SQL>（驱动开启预编译语句缓存）
+     */
+    private Cache<String, String> upsertSqlCache = Caffeine.newBuilder().maximumSize(1000).build();
+
+    /**
+     * 删除语句缓存 <表+主键字段+分块大小，SQL>
+     */
+    private Cache<String, String> deleteSqlCache = Caffeine.newBuilder().maximumSize(1000).build();
+
+    /**
+     * 删除分块大小（每条语句主键数）
+     */
+    @Value("${mysql.delete.chunk:500}")
+    private int deleteChunkSize;
+
+    private ExecutorService getThreadPool() {
+        synchronized (this) {
+            if (threadPool == null) {
+                threadPool = new ThreadPoolExecutor(0, poolMax, 1, TimeUnit.MINUTES, new SynchronousQueue<>(), new ThreadPoolExecutor.CallerRunsPolicy());
+            }
         }
+        return threadPool;
     }
 
     /**
@@ -73,18 +104,26 @@ public class MySQLDao {
     public void batchUpdate(SyncDataSourceConfig targetDataSourceConfig, List<MySQLEvent> events) {
         Connection mysqlConn = null;
         PreparedStatement mysqlStatm = null;
+        PipedInputStream input = null;
         try {
             Time time = new Time(String.format("【MySQL】批量更新 table：%s，size：%d", targetDataSourceConfig.getTable(), events.size()));
             // 获得连接
             mysqlConn = jdbcConf.getConn(targetDataSourceConfig);
             List<EventColumn> simlpeCols = events.get(0).getEvent().getAllColumns();
             // 生产执行语句
-            String sql = String.format("LOAD DATA CONCURRENT LOCAL INFILE 'sql.csv' REPLACE INTO TABLE %s CHARACTER SET utf8mb4 FIELDS TERMINATED BY ' +o.o+ ' LINES TERMINATED BY ';xox\\n' (%s)", targetDataSourceConfig.getTable(), simlpeCols.stream().map(EventColumn::getName).reduce((a, b) -> a + "," + b).get());
+            // 重新分表补写时已存在记录（同步写入）不覆盖
+            String sql = String.format("LOAD DATA CONCURRENT LOCAL INFILE 'sql.csv' %s INTO TABLE %s CHARACTER SET utf8mb4 FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' (%s)", events.get(0).isBackfill() ? "IGNORE" : "REPLACE", targetDataSourceConfig.getTable(), simlpeCols.stream().map(EventColumn::getName).collect(Collectors.joining(",")));
             mysqlStatm = mysqlConn.prepareStatement(sql).unwrap(com.mysql.jdbc.PreparedStatement.class);
-            // 写入数据
-            mysqlStatm.setLocalInfileInputStream(getMySQLInputStream(simlpeCols, events));
+            // 写入数据（管道流式写入）
+            input = new PipedInputStream(PIPE_SIZE);
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            Future<?> writer = writeMySQLInputStream(simlpeCols, events, new PipedOutputStream(input), buffer);
+            // 线程池已满时调用线程已写入内存，由内存读取
+            mysqlStatm.setLocalInfileInputStream(buffer.size() > 0 ? new ByteArrayInputStream(buffer.toByteArray()) : input);
             // 执行
             mysqlStatm.execute();
+            // 确认数据全部写入
+            writer.get();
             events.forEach(event ->
                     Log.info("【MySQL】批量更新成功！rds：{}，database：{}，table：{}，id：{}，update：{}", targetDataSourceConfig.getRds(), targetDataSourceConfig.getDatabase(), targetDataSourceConfig.getTable(), event.getEvent().getPrimaryKey(), event.getEvent().getUpdateColumnsBase())
             );
@@ -96,6 +135,10 @@ public class MySQLDao {
             Log.errorThrow("【MySQL】批量更新异常！rds：{}，database：{}，table：{}，size：{}，err：{}", targetDataSourceConfig.getRds(), targetDataSourceConfig.getDatabase(), targetDataSourceConfig.getTable(), events.size(), e.getMessage(), e);
         } finally {
             try {
+                if (input != null) {
+                    // 关闭管道，执行失败时结束写入
+                    input.close();
+                }
                 if (mysqlStatm != null && !mysqlStatm.isClosed()) {
                     mysqlStatm.close();
                 }
@@ -108,6 +151,95 @@ public class MySQLDao {
         }
     }
 
+    /**
+     * 批量插入或更新操作（INSERT ... ON DUPLICATE KEY UPDATE，已存在记录只更新变更字段）
+     *
+     * @param targetDataSourceConfig 目标数据源
+     * @param events                 事件列表
+     */
+    public void batchUpsert(SyncDataSourceConfig targetDataSourceConfig, List<MySQLEvent> events) {
+        Connection mysqlConn = null;
+        try {
+            Time time = new Time(String.format("【MySQL】批量更新(upsert) table：%s，size：%d", targetDataSourceConfig.getTable(), events.size()));
+            // 获得连接
+            mysqlConn = jdbcConf.getConn(targetDataSourceConfig);
+            // 执行
+            upsert(mysqlConn, targetDataSourceConfig.getTable(), events);
+            events.forEach(event ->
+                    Log.info("【MySQL】批量更新成功！rds：{}，database：{}，table：{}，id：{}，update：{}", targetDataSourceConfig.getRds(), targetDataSourceConfig.getDatabase(), targetDataSourceConfig.getTable(), event.getEvent().getPrimaryKey(), event.getEvent().getUpdateColumnsBase())
+            );
+            time.end();
+        } catch (Exception e) {
+            events.forEach(event ->
+                    Log.error("【MySQL】批量更新失败记录！rds：{}，database：{}，table：{}，id：{}，update：{}", targetDataSourceConfig.getRds(), targetDataSourceConfig.getDatabase(), targetDataSourceConfig.getTable(), event.getEvent().getPrimaryKey(), event.getEvent().getUpdateColumnsBase())
+            );
+            Log.errorThrow("【MySQL】批量更新异常！rds：{}，database：{}，table：{}，size：{}，err：{}", targetDataSourceConfig.getRds(), targetDataSourceConfig.getDatabase(), targetDataSourceConfig.getTable(), events.size(), e.getMessage(), e);
+        } finally {
+            try {
+                if (mysqlConn != null && !mysqlConn.isClosed()) {
+                    mysqlConn.close();
+                }
+            } catch (Exception e) {
+                Log.error("关闭MySQL连接时发生异常！", e);
+            }
+        }
+    }
+
+    /**
+     * 获得插入或更新语句（按 表+字段+变更字段 缓存）
+     *
+     * @param table 表名
+     * @param row   插入或更新记录
+     * @return SQL
+     */
+    private String getUpsertSql(String table, UpsertRow row) {
+        String names = row.columns.stream().map(EventColumn::getName).collect(Collectors.joining(","));
+        String updates = String.join(",", row.updateNames);
+        return upsertSqlCache.get(table + "|" + names + "|" + updates, k -> String.format("INSERT INTO %s (%s) VALUES (%s) ON DUPLICATE KEY UPDATE %s",
+                table,
+                names,
+                row.columns.stream().map(col -> "?").collect(Collectors.joining(",")),
+                row.updateNames.stream().map(name -> String.format("%s=VALUES(%s)", name, name)).collect(Collectors.joining(","))
+        ));
+    }
+
+    /**
+     * 插入或更新记录
+     */
+    private static class UpsertRow {
+
+        /**
+         * 全部字段（最后一次变更后内容，记录不存在时完整插入）
+         */
+        private final List<EventColumn> columns;
+
+        /**
+         * 更新字段名称（记录已存在时只更新，不含主键）
+         */
+        private final TreeSet<String> updateNames = new TreeSet<>();
+
+        UpsertRow(MySQLEvent event) {
+            this.columns = event.getEvent().getAllColumns();
+            boolean insert = event.getEvent().getType() == TYPE_INSERT;
+            columns.stream().filter(col -> !col.isKey() && (insert || col.isUpdated())).forEach(col -> updateNames.add(col.getName()));
+            if (updateNames.isEmpty()) {
+                // 无变更字段，主键赋值为自身
+                columns.stream().filter(EventColumn::isKey).findFirst().ifPresent(col -> updateNames.add(col.getName()));
+            }
+        }
+
+        /**
+         * 合并后续变更
+         *
+         * @param next 后续变更
+         * @return 合并后记录
+         */
+        UpsertRow merge(UpsertRow next) {
+            next.updateNames.addAll(updateNames);
+            return next;
+        }
+    }
+
     /**
      * 批量删除操作
      *
@@ -116,25 +248,12 @@ public class MySQLDao {
      */
     public void batchDelete(SyncDataSourceConfig targetDataSourceConfig, List<MySQLEvent> events) {
         Connection mysqlConn = null;
-        PreparedStatement mysqlStatm = null;
         try {
             Time time = new Time(String.format("【MySQL】批量删除 table：%s，size：%d", targetDataSourceConfig.getTable(), events.size()));
-            // 主键
-            EventColumn pri = events.get(0).getEvent().getAllColumns().stream().filter(EventColumn::isKey).findFirst().get();
             // 获得连接
             mysqlConn = jdbcConf.getConn(targetDataSourceConfig);
-            // SQL
-            mysqlStatm = mysqlConn.prepareStatement(String.format("delete from %s where %s in (%s)",
-                    targetDataSourceConfig.getTable(),
-                    // 主键字段
-                    pri.getName(),
-                    // 主键值
-                    events.stream()
-                            .map(event -> isNum(pri.getSqlType()) ? event.getEvent().getPrimaryKey() : String.format("'%s'", event.getEvent().getPrimaryKey()))
-                            .reduce((a, b) -> a + "," + b).get()
-            )).unwrap(com.mysql.jdbc.PreparedStatement.class);
             // 执行命令
-            mysqlStatm.execute();
+            delete(mysqlConn, targetDataSourceConfig.getTable(), events);
             events.forEach(event ->
                     Log.info("【MySQL】批量删除成功！rds：{}，database：{}，table：{}，id：{}", targetDataSourceConfig.getRds(), targetDataSourceConfig.getDatabase(), targetDataSourceConfig.getTable(), event.getEvent().getPrimaryKey())
             );
@@ -146,9 +265,60 @@ public class MySQLDao {
             Log.errorThrow("【MySQL】批量删除异常！rds：{}，database：{}，table：{}，size：{}", targetDataSourceConfig.getRds(), targetDataSourceConfig.getDatabase(), targetDataSourceConfig.getTable(), events.size(), e);
         } finally {
             try {
-                if (mysqlStatm != null && !mysqlStatm.isClosed()) {
-                    mysqlStatm.close();
+                if (mysqlConn != null && !mysqlConn.isClosed()) {
+                    mysqlConn.close();
                 }
+            } catch (Exception e) {
+                Log.error("关闭MySQL连接时发生异常！", e);
+            }
+        }
+    }
+
+    /**
+     * 按源事务顺序批量执行（同一目标事务内，按binlog顺序执行连续的 新增/修改、删除 批次）
+     *
+     * @param targetDataSourceConfig 目标数据源
+     * @param events                 事件列表（binlog顺序，包含完整源事务）
+     */
+    public void batchTransaction(SyncDataSourceConfig targetDataSourceConfig, List<MySQLEvent> events) {
+        Connection mysqlConn = null;
+        try {
+            Time time = new Time(String.format("【MySQL】事务写入 table：%s，size：%d", targetDataSourceConfig.getTable(), events.size()));
+            // 获得连接
+            mysqlConn = jdbcConf.getConn(targetDataSourceConfig);
+            mysqlConn.setAutoCommit(false);
+            try {
+                int start = 0;
+                for (int i = 1; i <= events.size(); i++) {
+                    // 操作类型切换时执行前一批次（保持删除与新增、修改的先后顺序）
+                    boolean isDel = events.get(start).getEvent().getType() == TYPE_DELETE;
+                    if (i == events.size() || (events.get(i).getEvent().getType() == TYPE_DELETE) != isDel) {
+                        if (isDel) {
+                            delete(mysqlConn, targetDataSourceConfig.getTable(), events.subList(start, i));
+                        } else {
+                            upsert(mysqlConn, targetDataSourceConfig.getTable(), events.subList(start, i));
+                        }
+                        start = i;
+                    }
+                }
+                mysqlConn.commit();
+            } catch (Exception e) {
+                mysqlConn.rollback();
+                throw e;
+            } finally {
+                mysqlConn.setAutoCommit(true);
+            }
+            events.forEach(event ->
+                    Log.info("【MySQL】事务写入成功！rds：{}，database：{}，table：{}，type：{}，id：{}，update：{}", targetDataSourceConfig.getRds(), targetDataSourceConfig.getDatabase(), targetDataSourceConfig.getTable(), event.getEvent().getTypeName(), event.getEvent().getPrimaryKey(), event.getEvent().getUpdateColumnsBase())
+            );
+            time.end();
+        } catch (Exception e) {
+            events.forEach(event ->
+                    Log.error("【MySQL】事务写入失败记录！rds：{}，database：{}，table：{}，type：{}，id：{}，update：{}", targetDataSourceConfig.getRds(), targetDataSourceConfig.getDatabase(), targetDataSourceConfig.getTable(), event.getEvent().getTypeName(), event.getEvent().getPrimaryKey(), event.getEvent().getUpdateColumnsBase())
+            );
+            Log.errorThrow("【MySQL】事务写入异常！rds：{}，database：{}，table：{}，size：{}，err：{}", targetDataSourceConfig.getRds(), targetDataSourceConfig.getDatabase(), targetDataSourceConfig.getTable(), events.size(), e.getMessage(), e);
+        } finally {
+            try {
                 if (mysqlConn != null && !mysqlConn.isClosed()) {
                     mysqlConn.close();
                 }
@@ -159,33 +329,234 @@ public class MySQLDao {
     }
 
     /**
-     * 获得输入流
+     * 按源表复核删除记录：源表已不存在时，删除目标表记录
+     *
+     * @param sourceDataSource 源数据源
+     * @param targetDataSource 目标数据源
+     * @param keys             主键值 <主键字段，字段值>
+     * @return 是否删除
+     */
+    public boolean deleteIfAbsent(SyncDataSourceConfig sourceDataSource, SyncDataSourceConfig targetDataSource, Map<String, String> keys) {
+        String where = keys.keySet().stream().map(key -> key + "=?").collect(Collectors.joining(" AND "));
+        List<String> values = new ArrayList<>(keys.values());
+        try (Connection sourceConn = jdbcConf.getConn(sourceDataSource);
+             java.sql.PreparedStatement query = sourceConn.prepareStatement(String.format("SELECT 1 FROM %s WHERE %s", sourceDataSource.getTable(), where))) {
+            for (int i = 0; i < values.size(); i++) {
+                query.setString(i + 1, values.get(i));
+            }
+            try (ResultSet rs = query.executeQuery()) {
+                if (rs.next()) {
+                    // 源表存在（已重新写入）
+                    return false;
+                }
+            }
+            try (Connection targetConn = jdbcConf.getConn(targetDataSource);
+                 java.sql.PreparedStatement delete = targetConn.prepareStatement(String.format("DELETE FROM %s WHERE %s", targetDataSource.getTable(), where))) {
+                for (int i = 0; i < values.size(); i++) {
+                    delete.setString(i + 1, values.get(i));
+                }
+                return delete.executeUpdate() > 0;
+            }
+        } catch (SQLException e) {
+            Log.errorThrow("【MySQL】复核删除记录异常！rds：{}，database：{}，table：{}，keys：{}，err：{}", targetDataSource.getRds(), targetDataSource.getDatabase(), targetDataSource.getTable(), keys, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 插入或更新（同一主键合并为最后一条，合并变更字段，按 字段+变更字段 分组批量执行）
+     *
+     * @param mysqlConn MySQL连接
+     * @param table     表名
+     * @param events    事件列表（新增、修改）
+     */
+    private void upsert(Connection mysqlConn, String table, List<MySQLEvent> events) throws SQLException {
+        Map<String, UpsertRow> rows = new LinkedHashMap<>(events.size() * 2);
+        events.forEach(event -> rows.merge(event.getEvent().getPrimaryKey(), new UpsertRow(event), UpsertRow::merge));
+        Map<String, List<UpsertRow>> groups = rows.values().stream().collect(Collectors.groupingBy(row -> getUpsertSql(table, row), LinkedHashMap::new, Collectors.toList()));
+
+        for (Map.Entry<String, List<UpsertRow>> group : groups.entrySet()) {
+            try (java.sql.PreparedStatement mysqlStatm = mysqlConn.prepareStatement(group.getKey())) {
+                for (UpsertRow row : group.getValue()) {
+                    for (int i = 0; i < row.columns.size(); i++) {
+                        EventColumn column = row.columns.get(i);
+                        if (column.getValue() != null) {
+                            mysqlStatm.setString(i + 1, column.getValue());
+                        } else {
+                            mysqlStatm.setNull(i + 1, column.getSqlType());
+                        }
+                    }
+                    mysqlStatm.addBatch();
+                }
+                // 批量执行（驱动改写为多值语句）
+                mysqlStatm.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * 删除（按主键分块，预编译 IN 语句批量执行，复合主键使用 (k1,k2) IN ((?,?),...)）
      *
-     * @param events 事件列表
-     * @return 输入流
-     */
-    private InputStream getMySQLInputStream(List<EventColumn> simlpeCols, List<MySQLEvent> events) {
-
-        String fieldSQ = " +o.o+ ";
-        String lineSQ = ";xox\n";
-        String nullSQ = "\\N";
-
-        return new ByteArrayInputStream(
-                events.stream().map(event ->
-                                simlpeCols.stream().map(EventColumn::getName).map(col -> {
-                                    Optional<EventColumn> column = event.getEvent().getAllColumns().stream().filter(eventColumn -> eventColumn.getName().equals(col)).findFirst();
-                                    if (column.isPresent() && column.get().getValue() != null) {
-                                        // 提取字段内容
-                                        return column.get().getValue().replace(fieldSQ, "").replace(lineSQ, "");
-                                    } else {
-                                        // 空内容
-                                        return nullSQ;
-                                    }
-                                    // 字段分隔
-                                }).reduce((a, b) -> a + fieldSQ + b).get()
-                        // 行分隔
-                ).reduce((a, b) -> a + lineSQ + b).get().getBytes()
-        );
+     * @param mysqlConn MySQL连接
+     * @param table     表名
+     * @param events    事件列表（删除）
+     */
+    void delete(Connection mysqlConn, String table, List<MySQLEvent> events) throws SQLException {
+        // 主键字段（按字段顺序）
+        List<String> keys = events.get(0).getEvent().getAllColumns().stream().filter(EventColumn::isKey).map(EventColumn::getName).collect(Collectors.toList());
+        if (keys.isEmpty()) {
+            throw new SQLException("删除事件无主键字段！table：" + table);
+        }
+        // 主键值（去重）
+        Map<String, String[]> keyValues = new LinkedHashMap<>(events.size() * 2);
+        events.forEach(event -> keyValues.putIfAbsent(event.getEvent().getPrimaryKey(), getKeyValues(event.getEvent().getAllColumns(), keys)));
+        List<String[]> rows = new ArrayList<>(keyValues.values());
+
+        // 分块（少量主键时按2的幂取整，减少语句种类），最后一块以最后一个主键补齐，全部分块复用同一语句
+        int chunk = Math.min(deleteChunkSize, Integer.highestOneBit(rows.size() * 2 - 1));
+        try (java.sql.PreparedStatement mysqlStatm = mysqlConn.prepareStatement(getDeleteSql(table, keys, chunk))) {
+            for (int start = 0; start < rows.size(); start += chunk) {
+                int index = 1;
+                for (int i = start; i < start + chunk; i++) {
+                    for (String value : rows.get(Math.min(i, rows.size() - 1))) {
+                        mysqlStatm.setString(index++, value);
+                    }
+                }
+                mysqlStatm.addBatch();
+            }
+            // 执行命令
+            mysqlStatm.executeBatch();
+        }
+    }
+
+    /**
+     * 提取主键值
+     *
+     * @param columns 字段列表
+     * @param keys    主键字段
+     * @return 主键值（按主键字段顺序）
+     */
+    private static String[] getKeyValues(List<EventColumn> columns, List<String> keys) {
+        String[] values = new String[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            EventColumn column = findColumn(columns, keys.get(i));
+            values[i] = column != null ? column.getValue() : null;
+        }
+        return values;
+    }
+
+    /**
+     * 获得删除语句（按 表+主键字段+分块大小 缓存）
+     *
+     * @param table 表名
+     * @param keys  主键字段
+     * @param chunk 分块大小
+     * @return SQL
+     */
+    private String getDeleteSql(String table, List<String> keys, int chunk) {
+        return deleteSqlCache.get(table + "|" + String.join(",", keys) + "|" + chunk, k -> {
+            String placeholder = keys.size() == 1 ? "?" : keys.stream().map(key -> "?").collect(Collectors.joining(",", "(", ")"));
+            return String.format("delete from %s where %s in (%s)",
+                    table,
+                    // 主键字段
+                    keys.size() == 1 ? keys.get(0) : "(" + String.join(",", keys) + ")",
+                    // 主键值
+                    String.join(",", Collections.nCopies(chunk, placeholder)));
+        });
+    }
 
+    /**
+     * 写入数据流（按批次预先计算字段位置，逐行写入管道，由 LOAD DATA 同步读取）
+     * <p>
+     * 线程池已满时由调用线程执行，此时 LOAD DATA 尚未读取管道，改为写入内存缓冲。
+     *
+     * @param simlpeCols 字段列表
+     * @param events     事件列表
+     * @param pipe       管道输出流
+     * @param buffer     内存缓冲（调用线程执行时写入）
+     * @return 写入结果
+     */
+    private Future<?> writeMySQLInputStream(List<EventColumn> simlpeCols, List<MySQLEvent> events, PipedOutputStream pipe, ByteArrayOutputStream buffer) {
+        // 字段位置以第一条事件为准（同批次字段顺序一致），顺序不一致时按名称查找
+        String[] names = simlpeCols.stream().map(EventColumn::getName).toArray(String[]::new);
+        Thread caller = Thread.currentThread();
+
+        return getThreadPool().submit(() -> {
+            OutputStream output = Thread.currentThread() == caller ? buffer : pipe;
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), WRITE_BUFFER)) {
+                for (MySQLEvent event : events) {
+                    List<EventColumn> columns = event.getEvent().getAllColumns();
+                    for (int i = 0; i < names.length; i++) {
+                        if (i > 0) {
+                            // 字段分隔
+                            writer.write('\t');
+                        }
+                        EventColumn column = i < columns.size() && names[i].equals(columns.get(i).getName()) ? columns.get(i) : findColumn(columns, names[i]);
+                        if (column != null && column.getValue() != null) {
+                            // 提取字段内容
+                            writeEscaped(writer, column.getValue());
+                        } else {
+                            // 空内容
+                            writer.write("\\N");
+                        }
+                    }
+                    // 行分隔
+                    writer.write('\n');
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 按名称查找字段
+     *
+     * @param columns 字段列表
+     * @param name    字段名称
+     * @return 字段（不存在时为 null）
+     */
+    private static EventColumn findColumn(List<EventColumn> columns, String name) {
+        for (EventColumn column : columns) {
+            if (name.equals(column.getName())) {
+                return column;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 写入转义内容（LOAD DATA 默认转义规则）
+     *
+     * @param writer 输出
+     * @param value  字段内容
+     */
+    static void writeEscaped(Writer writer, String value) throws IOException {
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            String escape;
+            switch (value.charAt(i)) {
+                case '\\':
+                    escape = "\\\\";
+                    break;
+                case '\t':
+                    escape = "\\t";
+                    break;
+                case '\n':
+                    escape = "\\n";
+                    break;
+                case '\r':
+                    escape = "\\r";
+                    break;
+                case '\0':
+                    escape = "\\0";
+                    break;
+                default:
+                    continue;
+            }
+            writer.write(value, start, i - start);
+            writer.write(escape);
+            start = i + 1;
+        }
+        writer.write(value, start, value.length() - start);
     }
 }
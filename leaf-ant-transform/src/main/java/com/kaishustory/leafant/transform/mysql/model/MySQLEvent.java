@@ -18,12 +18,16 @@ import com.kaishustory.leafant.common.model.MySQLSyncConfig;
 import com.kaishustory.leafant.common.model.SyncDataSourceConfig;
 import com.kaishustory.leafant.common.utils.Log;
 import com.kaishustory.leafant.common.utils.Option;
+import com.kaishustory.leafant.common.utils.ShardingUtils;
 import lombok.Data;
 
-import java.sql.Types;
-import java.util.Objects;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import static com.kaishustory.leafant.common.constants.MappingConstants.SOURCE_INIT;
+
 /**
  * MySQL事件
  **/
@@ -40,6 +44,11 @@ public class MySQLEvent {
      */
     private SyncDataSourceConfig targetDataSource;
 
+    /**
+     * 是否为重新分表补写（已存在记录时不覆盖）
+     */
+    private boolean backfill = false;
+
     public MySQLEvent() {
     }
 
@@ -59,23 +68,39 @@ public class MySQLEvent {
         }
     }
 
+    private MySQLEvent(Event event, SyncDataSourceConfig targetDataSource, boolean backfill) {
+        this.event = event;
+        this.targetDataSource = targetDataSource;
+        this.backfill = backfill;
+    }
+
     /**
-     * 判断是否为数字类型
+     * 生成MySQL事件
+     * <p>
+     * 重新分表期间：初始化事件为补写，只写入新分表；同步事件同时写入新、原分表（分表不同时）。
      *
-     * @param type 列类型
-     * @return 是否为数字类型
+     * @param event           事件信息
+     * @param mysqlSyncConfig MySQL配置
+     * @return MySQL事件列表
      */
-    private static boolean isInt(int type) {
-        switch (type) {
-            case Types.INTEGER:
-            case Types.TINYINT:
-            case Types.SMALLINT:
-            case Types.BIT:
-            case Types.BIGINT:
-                return true;
-            default:
-                return false;
+    public static List<MySQLEvent> of(Event event, MySQLSyncConfig mysqlSyncConfig) {
+        List<MySQLEvent> events = new ArrayList<>(2);
+        MySQLEvent mysqlEvent = new MySQLEvent(event, mysqlSyncConfig);
+        events.add(mysqlEvent);
+        if (mysqlSyncConfig.isMigrating()) {
+            if (SOURCE_INIT.equals(event.getSource())) {
+                mysqlEvent.setBackfill(true);
+            } else {
+                Option<SyncDataSourceConfig> from = route(event, mysqlSyncConfig, mysqlSyncConfig.getMigrateFromStrategy(), mysqlSyncConfig.getMigrateFromDataSource());
+                if (!from.exist()) {
+                    Log.errorThrow("【MySQL】提取原分表时发生异常！table：{}，id：{}", mysqlSyncConfig.getSourceTable(), event.getPrimaryKey());
+                }
+                if (!from.get().equals(mysqlEvent.getTargetDataSource())) {
+                    events.add(new MySQLEvent(event, from.get(), false));
+                }
+            }
         }
+        return events;
     }
 
     /**
@@ -86,8 +111,21 @@ public class MySQLEvent {
      * @return 目标数据源
      */
     public Option<SyncDataSourceConfig> getTargetDataSource(Event event, MySQLSyncConfig mysqlSyncConfig) {
+        return route(event, mysqlSyncConfig, mysqlSyncConfig.getShardingStrategy(), mysqlSyncConfig.getTargetDataSource());
+    }
 
-        if (mysqlSyncConfig.isSharding()) {
+    /**
+     * 计算目标数据源
+     *
+     * @param event            事件信息
+     * @param mysqlSyncConfig  MySQL配置
+     * @param strategy         分表策略
+     * @param targetDataSource 目标数据源
+     * @return 目标数据源
+     */
+    private static Option<SyncDataSourceConfig> route(Event event, MySQLSyncConfig mysqlSyncConfig, String strategy, Map<Long, SyncDataSourceConfig> targetDataSource) {
+
+        if (mysqlSyncConfig.isSharding() && targetDataSource.size() > 1) {
             // 分表字段
             Optional<EventColumn> shardingCol = event.getAllColumns().stream().filter(e -> e.getName().equals(mysqlSyncConfig.getShardingCol())).findFirst();
             if (!shardingCol.isPresent()) {
@@ -96,36 +134,10 @@ public class MySQLEvent {
             }
 
             // 计算分片
-            long shardingIndex = sharding(shardingCol.get(), mysqlSyncConfig.getTargetDataSource().size());
-            if (mysqlSyncConfig.getTargetDataSource().containsKey(shardingIndex)) {
-                return Option.of(mysqlSyncConfig.getTargetDataSource().get(shardingIndex));
-            } else {
-                return Option.empty();
-            }
+            return ShardingUtils.route(strategy, targetDataSource, shardingCol.get());
         } else {
-            return Option.of(mysqlSyncConfig.getTargetDataSource().values().stream().findFirst());
+            return Option.of(targetDataSource.values().stream().findFirst());
         }
     }
 
-    /**
-     * 计算分片
-     *
-     * @param shardingCol 分片字段
-     * @param num         分片数量
-     * @return 分片序号
-     */
-    private long sharding(EventColumn shardingCol, int num) {
-        // 计算分片
-        long shardingValue = shardingCol.getValue() != null ?
-                (isInt(shardingCol.getSqlType()) ?
-                        // 整数取值
-                        Long.parseLong(shardingCol.getValue()) :
-                        // 字符串，小数取hash值
-                        Objects.hashCode(shardingCol.getValue()) & Integer.MAX_VALUE)
-                : 0L;
-        // 根据分片数取模
-        long shardingIndex = shardingValue % num;
-        return shardingIndex;
-    }
-
 }
@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.mysql.service;
+
+import com.kaishustory.leafant.common.model.Event;
+import com.kaishustory.leafant.common.model.EventColumn;
+import com.kaishustory.leafant.common.model.MySQLReshardTombstone;
+import com.kaishustory.leafant.common.model.MySQLSyncConfig;
+import com.kaishustory.leafant.common.model.SyncDataSourceConfig;
+import com.kaishustory.leafant.common.utils.Log;
+import com.kaishustory.leafant.common.utils.Option;
+import com.kaishustory.leafant.mapping.dao.MySQLMappingDao;
+import com.kaishustory.leafant.mapping.dao.MySQLReshardTombstoneDao;
+import com.kaishustory.leafant.transform.mysql.dao.MySQLDao;
+import com.kaishustory.leafant.transform.mysql.model.MySQLEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static com.kaishustory.leafant.common.constants.EventConstants.TYPE_DELETE;
+import static com.kaishustory.leafant.common.constants.MappingConstants.SOURCE_INIT;
+
+/**
+ * MySQL重新分表删除复核
+ * <p>
+ * 补写读取源表后、写入新分表前，同步删除先到达新分表时，补写会重新写入已删除的记录。
+ * 迁移期间记录同步删除的主键，补写完成后按源表复核，源表不存在的记录从新分表删除。
+ **/
+@Service
+public class MySQLReshardService {
+
+    /**
+     * MySQL Dao
+     */
+    @Autowired
+    private MySQLDao mysqlDao;
+
+    /**
+     * MySQL映射配置
+     */
+    @Autowired
+    private MySQLMappingDao mysqlMappingDao;
+
+    /**
+     * 删除记录
+     */
+    @Autowired
+    private MySQLReshardTombstoneDao tombstoneDao;
+
+    /**
+     * 记录迁移期间的同步删除（写入前记录）
+     *
+     * @param mapping MySQL配置
+     * @param events  事件列表
+     */
+    public void recordDeletes(MySQLSyncConfig mapping, List<Event> events) {
+        if (!mapping.isMigrating()) {
+            return;
+        }
+        List<MySQLReshardTombstone> tombstones = events.stream()
+                .filter(event -> event.getType() == TYPE_DELETE && !SOURCE_INIT.equals(event.getSource()))
+                .map(event -> new MySQLReshardTombstone(mapping.getId(), event.getPrimaryKey(), getKeys(event), getShard(mapping, new MySQLEvent(event, mapping).getTargetDataSource())))
+                .collect(Collectors.toList());
+        if (!tombstones.isEmpty()) {
+            tombstoneDao.save(tombstones);
+        }
+    }
+
+    /**
+     * 复核删除记录（补写完成后，完成迁移前执行）
+     *
+     * @param mappingId 映射ID
+     * @return 映射ID
+     */
+    public Option<String> verifyDeletes(String mappingId) {
+        MySQLSyncConfig config = mysqlMappingDao.findById(mappingId);
+        if (config == null) {
+            return Option.error("MySQL 映射不存在！");
+        }
+        if (!config.isMigrating()) {
+            return Option.of(mappingId);
+        }
+        try {
+            List<MySQLReshardTombstone> tombstones = tombstoneDao.findByMappingId(mappingId);
+            int deleted = 0;
+            for (MySQLReshardTombstone tombstone : tombstones) {
+                SyncDataSourceConfig target = config.getTargetDataSource().get(tombstone.getTargetShard());
+                if (target != null && mysqlDao.deleteIfAbsent(config.getSourceDataSource(), target, tombstone.getKeys())) {
+                    deleted++;
+                }
+            }
+            Log.info("MySQL 重新分表复核删除记录完成。table：{}，tombstones：{}，deleted：{}", config.getSourceTable(), tombstones.size(), deleted);
+            return Option.of(mappingId);
+        } catch (RuntimeException e) {
+            Log.error("MySQL 重新分表复核删除记录失败！table：{}", config.getSourceTable(), e);
+            return Option.error("MySQL 复核删除记录失败！");
+        }
+    }
+
+    /**
+     * 主键值 <主键字段，字段值>
+     */
+    private static Map<String, String> getKeys(Event event) {
+        Map<String, String> keys = new LinkedHashMap<>();
+        event.getAllColumns().stream().filter(EventColumn::isKey).forEach(col -> keys.put(col.getName(), col.getValue()));
+        return keys;
+    }
+
+    /**
+     * 目标数据源Key
+     */
+    private static Long getShard(MySQLSyncConfig mapping, SyncDataSourceConfig target) {
+        return mapping.getTargetDataSource().entrySet().stream().filter(entry -> entry.getValue().equals(target)).map(Map.Entry::getKey).findFirst().orElse(null);
+    }
+}
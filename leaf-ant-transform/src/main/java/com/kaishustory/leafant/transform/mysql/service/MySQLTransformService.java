@@ -12,15 +12,21 @@
 
 package com.kaishustory.leafant.transform.mysql.service;
 
+import com.kaishustory.leafant.common.model.SyncDataSourceConfig;
+import com.kaishustory.leafant.common.utils.Log;
 import com.kaishustory.leafant.transform.mysql.dao.MySQLDao;
 import com.kaishustory.leafant.transform.mysql.model.MySQLEvent;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 import static com.kaishustory.leafant.common.constants.EventConstants.TYPE_DELETE;
+import static com.kaishustory.leafant.common.constants.EventConstants.TYPE_UPDATE;
+import static com.kaishustory.leafant.common.constants.MappingConstants.SOURCE_INIT;
 
 /**
  * MySQL数据转换处理
@@ -34,6 +40,72 @@ public class MySQLTransformService {
     @Autowired
     private MySQLDao mysqlDao;
 
+    /**
+     * 写入方式：auto：按批次结构选择，load：LOAD DATA，upsert：INSERT ... ON DUPLICATE KEY UPDATE，transaction：按源事务顺序写入
+     */
+    @Value("${mysql.apply.mode:auto}")
+    private String applyMode;
+
+    /**
+     * 使用 LOAD DATA 的最小批次
+     */
+    @Value("${mysql.apply.load-min-batch:500}")
+    private int loadMinBatch;
+
+    /**
+     * 按源事务写入时，每个目标事务最多事件数（只在源事务边界拆分，不拆分源事务）
+     */
+    @Value("${mysql.apply.transaction.max-size:1000}")
+    private int transactionMaxSize;
+
+    private static final String APPLY_LOAD = "load";
+    private static final String APPLY_UPSERT = "upsert";
+    private static final String APPLY_TRANSACTION = "transaction";
+
+    /**
+     * 最大并行通道数（每个目标表）
+     */
+    @Value("${mysql.apply.lanes.max:8}")
+    private int maxLanes;
+
+    /**
+     * 每个通道最少事件数（事件较少时减少通道）
+     */
+    @Value("${mysql.apply.lanes.min-size:50}")
+    private int laneMinSize;
+
+    /**
+     * 通道目标耗时（毫秒），超过2倍时通道数减半，低于时逐个增加
+     */
+    @Value("${mysql.apply.lanes.target-ms:200}")
+    private long laneTargetMs;
+
+    /**
+     * 写入线程数
+     */
+    @Value("${mysql.apply.threads:32}")
+    private int threads;
+
+    /**
+     * 目标表通道状态 <目标数据源，通道状态>
+     */
+    private final Map<SyncDataSourceConfig, LaneState> laneStates = new ConcurrentHashMap<>();
+
+    /**
+     * 写入线程池
+     */
+    private ThreadPoolExecutor threadPool;
+
+    private ThreadPoolExecutor getThreadPool() {
+        synchronized (this) {
+            if (threadPool == null) {
+                // 队列已满时由调用线程执行，保证通道不丢失
+                threadPool = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(threads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+            }
+        }
+        return threadPool;
+    }
+
     /**
      * 事件转换处理
      *
@@ -41,21 +113,180 @@ public class MySQLTransformService {
      */
     public void eventHandle(List<MySQLEvent> eventList) {
 
-        // 按目标数据源分组
+        // 按目标数据源分组，按主键哈希拆分通道（同一主键在同一通道内按顺序执行），各通道使用独立连接并行执行
+        List<Future<?>> futures = new ArrayList<>();
+        // 已结束的源事务（订阅端标记的事务结束事件）
+        Set<String> endedTransactions = !APPLY_TRANSACTION.equals(applyMode) ? Collections.emptySet() : eventList.stream()
+                .filter(event -> event.getEvent().isTransactionEnd())
+                .map(event -> event.getEvent().getTransactionId())
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
         eventList.stream().collect(Collectors.groupingBy(MySQLEvent::getTargetDataSource)).forEach((target, targetGroupEvent) -> {
-            // 按操作类型分组
-            targetGroupEvent.stream().collect(Collectors.groupingBy(e -> e.getEvent().getType() == TYPE_DELETE)).forEach((isDel, events) -> {
-                if (!isDel) {
-                    /** 新增、修改处理 **/
-                    mysqlDao.batchUpdate(target, events);
+            if (APPLY_TRANSACTION.equals(applyMode) && !SOURCE_INIT.equals(targetGroupEvent.get(0).getEvent().getSource())) {
+                // 按源事务顺序写入（单通道，保持binlog顺序）
+                futures.add(getThreadPool().submit(() -> applyTransactions(target, targetGroupEvent, endedTransactions)));
+                return;
+            }
+            LaneState state = laneStates.computeIfAbsent(target, LaneState::new);
+            int lanes = Math.max(1, Math.min(state.lanes, targetGroupEvent.size() / Math.max(1, laneMinSize)));
+            Map<Integer, List<MySQLEvent>> laneEvents = targetGroupEvent.stream().collect(Collectors.groupingBy(event -> (Objects.hashCode(event.getEvent().getPrimaryKey()) & Integer.MAX_VALUE) % lanes));
+            laneEvents.values().forEach(events -> futures.add(getThreadPool().submit(() -> {
+                long start = System.currentTimeMillis();
+                applyLane(target, events);
+                state.record(System.currentTimeMillis() - start, lanes, events.size());
+            })));
+        });
+
+        // 等待全部通道完成，任一通道失败时抛出异常（重新消费）
+        RuntimeException error = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = new RuntimeException("MySQL写入中断！", e);
+            } catch (ExecutionException e) {
+                error = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * 按源事务写入：按binlog顺序，将连续的源事务合并为一个目标事务（达到事件数上限后，在源事务边界提交）
+     * <p>
+     * 订阅端在源事务结束后才发送其事件（MQ消息不拆分源事务），并标记各表最后一个事件为事务结束，批次末尾即为已结束的源事务边界；
+     * 超过订阅端暂存上限被拆分发送的源事务没有结束标识，无法等待后续批次，随批次提交并记录警告。
+     * 事件按源表路由，同一源事务涉及多个表时各表分别提交。
+     *
+     * @param target             目标数据源
+     * @param events             事件列表（binlog顺序）
+     * @param endedTransactions  已结束的源事务
+     */
+    private void applyTransactions(SyncDataSourceConfig target, List<MySQLEvent> events, Set<String> endedTransactions) {
+        String lastTransaction = events.get(events.size() - 1).getEvent().getTransactionId();
+        if (lastTransaction != null && !endedTransactions.contains(lastTransaction)) {
+            Log.warn("【MySQL】批次末尾源事务未结束（订阅端已拆分发送），随批次提交。rds：{}，table：{}，transaction：{}", target.getRds(), target.getTable(), lastTransaction);
+        }
+        int start = 0;
+        for (int i = 1; i <= events.size(); i++) {
+            if (i == events.size() || (i - start >= transactionMaxSize && isTransactionBoundary(events.get(i - 1), events.get(i)))) {
+                mysqlDao.batchTransaction(target, events.subList(start, i));
+                start = i;
+            }
+        }
+    }
 
+    /**
+     * 是否为源事务边界（无事务标识时，每个事件独立）
+     *
+     * @param prev 前一事件
+     * @param next 后一事件
+     * @return 是否为源事务边界
+     */
+    private boolean isTransactionBoundary(MySQLEvent prev, MySQLEvent next) {
+        String prevTransaction = prev.getEvent().getTransactionId();
+        return prevTransaction == null || !prevTransaction.equals(next.getEvent().getTransactionId());
+    }
+
+    /**
+     * 通道写入
+     *
+     * @param target 目标数据源
+     * @param events 事件列表
+     */
+    private void applyLane(SyncDataSourceConfig target, List<MySQLEvent> events) {
+        // 按操作类型分组
+        events.stream().collect(Collectors.groupingBy(e -> e.getEvent().getType() == TYPE_DELETE)).forEach((isDel, typeEvents) -> {
+            if (!isDel) {
+                /** 新增、修改处理 **/
+                if (isLoadBatch(typeEvents)) {
+                    mysqlDao.batchUpdate(target, typeEvents);
                 } else {
-                    /** 删除处理 **/
-                    mysqlDao.batchDelete(target, events);
+                    mysqlDao.batchUpsert(target, typeEvents);
                 }
-            });
+
+            } else {
+                /** 删除处理 **/
+                mysqlDao.batchDelete(target, typeEvents);
+            }
         });
     }
 
+    /**
+     * 按批次结构选择写入方式
+     * <p>
+     * 初始化、大批量整行写入使用 LOAD DATA（REPLACE）；
+     * 小批量、部分字段更新使用 INSERT ... ON DUPLICATE KEY UPDATE，避免删除重建记录及全部索引。
+     *
+     * @param events 事件列表
+     * @return 是否使用 LOAD DATA
+     */
+    private boolean isLoadBatch(List<MySQLEvent> events) {
+        if (events.get(0).isBackfill()) {
+            // 重新分表补写（IGNORE，不覆盖同步写入）
+            return true;
+        }
+        if (APPLY_LOAD.equals(applyMode)) {
+            return true;
+        }
+        if (APPLY_UPSERT.equals(applyMode)) {
+            return false;
+        }
+        if (SOURCE_INIT.equals(events.get(0).getEvent().getSource())) {
+            return true;
+        }
+        if (events.size() < loadMinBatch) {
+            return false;
+        }
+        // 部分字段更新（变更字段少于一半）占比未过半时，整行写入
+        long partial = events.stream().filter(event -> event.getEvent().getType() == TYPE_UPDATE
+                && event.getEvent().getUpdateColumns().size() * 2 < event.getEvent().getAllColumns().size()).count();
+        return partial * 2 < events.size();
+    }
+
+    /**
+     * 目标表通道状态（按通道耗时调整通道数：超过2倍目标耗时减半，通道饱和且低于目标耗时加1）
+     */
+    private class LaneState {
+
+        /**
+         * 目标数据源
+         */
+        private final SyncDataSourceConfig target;
+
+        /**
+         * 当前通道数
+         */
+        private volatile int lanes = 1;
 
+        /**
+         * 通道耗时（指数平均，毫秒）
+         */
+        private volatile double avgMs = 0;
+
+        LaneState(SyncDataSourceConfig target) {
+            this.target = target;
+        }
+
+        /**
+         * 记录通道耗时
+         *
+         * @param elapsed 耗时（毫秒）
+         * @param used    本批次通道数
+         * @param size    通道事件数
+         */
+        synchronized void record(long elapsed, int used, int size) {
+            avgMs = avgMs == 0 ? elapsed : avgMs * 0.8 + elapsed * 0.2;
+            if (avgMs > laneTargetMs * 2 && lanes > 1) {
+                lanes = Math.max(1, lanes / 2);
+                Log.info("【MySQL】目标耗时升高，减少通道。rds：{}，table：{}，lanes：{}，avg：{}ms", target.getRds(), target.getTable(), lanes, (long) avgMs);
+                avgMs = laneTargetMs;
+            } else if (avgMs < laneTargetMs && used == lanes && size >= laneMinSize && lanes < maxLanes) {
+                lanes++;
+            }
+        }
+    }
 }
@@ -17,12 +17,22 @@ import com.kaishustory.leafant.common.utils.Log;
 import com.kaishustory.leafant.transform.common.conf.RedisConf;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.HashOperations;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Redis操作
@@ -34,6 +44,10 @@ public class RedisDao {
      * 批量执行分页条数
      */
     private final int pageSize = 100;
+    /**
+     * 不存在时写入并设置过期时间（原子执行）
+     */
+    private static final byte[] SAVE_IF_ABSENT_SCRIPT = ("if redis.call('SET', KEYS[1], ARGV[1], 'EX', ARGV[2], 'NX') then return 1 else return 0 end").getBytes(StandardCharsets.UTF_8);
     /**
      * Redis
      */
@@ -66,6 +80,58 @@ public class RedisDao {
         return redisTemplate.opsForValue().multiGet(keys);
     }
 
+    /**
+     * 批量读取内容（二进制）
+     *
+     * @param redisDataSourceConfig redis配置
+     * @param keys                  key列表
+     * @return 内容列表（不存在时为 null）
+     */
+    public List<byte[]> multGetBytes(RedisSyncConfig.RedisDataSourceConfig redisDataSourceConfig, List<String> keys) {
+        // 获得连接
+        StringRedisTemplate redisTemplate = redisConf.getConnection(redisDataSourceConfig.getRedisAddr(), redisDataSourceConfig.getPassword(), redisDataSourceConfig.getDatabase());
+        return redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.mGet(keys.stream().map(key -> key.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new)));
+    }
+
+    /**
+     * 批量读取Hash全部字段
+     *
+     * @param redisDataSourceConfig redis配置
+     * @param keys                  key列表
+     * @return 字段列表 <字段名称，字段内容>（不存在时为空）
+     */
+    @SuppressWarnings("unchecked")
+    public List<Map<String, String>> multHashGetAll(RedisSyncConfig.RedisDataSourceConfig redisDataSourceConfig, List<String> keys) {
+        // 获得连接
+        StringRedisTemplate redisTemplate = redisConf.getConnection(redisDataSourceConfig.getRedisAddr(), redisDataSourceConfig.getPassword(), redisDataSourceConfig.getDatabase());
+        if (redisConf.isCluster(redisDataSourceConfig.getRedisAddr())) {
+            // 集群连接不支持管道，逐条读取
+            HashOperations<String, String, String> hashOps = redisTemplate.opsForHash();
+            return keys.stream().map(hashOps::entries).collect(Collectors.toList());
+        }
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            keys.forEach(key -> connection.hGetAll(key.getBytes(StandardCharsets.UTF_8)));
+            return null;
+        });
+        return results.stream().map(result -> (Map<String, String>) result).collect(Collectors.toList());
+    }
+
+    /**
+     * 读取Hash指定字段
+     *
+     * @param redisDataSourceConfig redis配置
+     * @param key                   key
+     * @param fields                字段列表
+     * @return 字段内容（与字段列表对应，不存在时为 null）
+     */
+    public List<String> hashGet(RedisSyncConfig.RedisDataSourceConfig redisDataSourceConfig, String key, List<String> fields) {
+        // 获得连接
+        StringRedisTemplate redisTemplate = redisConf.getConnection(redisDataSourceConfig.getRedisAddr(), redisDataSourceConfig.getPassword(), redisDataSourceConfig.getDatabase());
+        HashOperations<String, String, String> hashOps = redisTemplate.opsForHash();
+        return hashOps.multiGet(key, fields);
+    }
+
     /**
      * 单条写入内容
      *
@@ -79,6 +145,144 @@ public class RedisDao {
         redisTemplate.opsForValue().set(key, value);
     }
 
+    /**
+     * 单条写入内容（带过期时间）
+     *
+     * @param redisDataSourceConfig redis配置
+     * @param key                   key
+     * @param value                 value
+     * @param timeout               过期时间（秒）
+     */
+    public void save(RedisSyncConfig.RedisDataSourceConfig redisDataSourceConfig, String key, String value, long timeout) {
+        // 获得连接
+        StringRedisTemplate redisTemplate = redisConf.getConnection(redisDataSourceConfig.getRedisAddr(), redisDataSourceConfig.getPassword(), redisDataSourceConfig.getDatabase());
+        redisTemplate.opsForValue().set(key, value, timeout, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 不存在时写入内容（带过期时间）
+     *
+     * @param redisDataSourceConfig redis配置
+     * @param key                   key
+     * @param value                 value
+     * @param timeout               过期时间（秒）
+     * @return 是否写入（已存在时不写入）
+     */
+    public boolean saveIfAbsent(RedisSyncConfig.RedisDataSourceConfig redisDataSourceConfig, String key, String value, long timeout) {
+        // 获得连接
+        StringRedisTemplate redisTemplate = redisConf.getConnection(redisDataSourceConfig.getRedisAddr(), redisDataSourceConfig.getPassword(), redisDataSourceConfig.getDatabase());
+        Long result = redisTemplate.execute((RedisCallback<Long>) connection -> connection.eval(SAVE_IF_ABSENT_SCRIPT, ReturnType.INTEGER, 1,
+                key.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8), String.valueOf(timeout).getBytes(StandardCharsets.UTF_8)));
+        return result != null && result == 1;
+    }
+
+    /**
+     * 计数增减
+     *
+     * @param redisDataSourceConfig redis配置
+     * @param key                   key
+     * @param delta                 增减值
+     * @param timeout               过期时间（秒）
+     * @return 增减后的值
+     */
+    public long increment(RedisSyncConfig.RedisDataSourceConfig redisDataSourceConfig, String key, long delta, long timeout) {
+        // 获得连接
+        StringRedisTemplate redisTemplate = redisConf.getConnection(redisDataSourceConfig.getRedisAddr(), redisDataSourceConfig.getPassword(), redisDataSourceConfig.getDatabase());
+        Long value = redisTemplate.opsForValue().increment(key, delta);
+        redisTemplate.expire(key, timeout, TimeUnit.SECONDS);
+        return value != null ? value : 0;
+    }
+
+    /**
+     * 删除内容
+     *
+     * @param redisDataSourceConfig redis配置
+     * @param key                   key
+     */
+    public void delete(RedisSyncConfig.RedisDataSourceConfig redisDataSourceConfig, String key) {
+        // 获得连接
+        StringRedisTemplate redisTemplate = redisConf.getConnection(redisDataSourceConfig.getRedisAddr(), redisDataSourceConfig.getPassword(), redisDataSourceConfig.getDatabase());
+        redisTemplate.delete(key);
+    }
+
+    /**
+     * 写入集合成员
+     *
+     * @param redisDataSourceConfig redis配置
+     * @param key                   key
+     * @param members               成员列表
+     * @param timeout               过期时间（秒）
+     */
+    public void addMembers(RedisSyncConfig.RedisDataSourceConfig redisDataSourceConfig, String key, Collection<String> members, long timeout) {
+        // 获得连接
+        StringRedisTemplate redisTemplate = redisConf.getConnection(redisDataSourceConfig.getRedisAddr(), redisDataSourceConfig.getPassword(), redisDataSourceConfig.getDatabase());
+        redisTemplate.opsForSet().add(key, members.toArray(new String[0]));
+        redisTemplate.expire(key, timeout, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 取出集合成员（取出后从集合中移除）
+     *
+     * @param redisDataSourceConfig redis配置
+     * @param key                   key
+     * @param count                 最大数量
+     * @return 成员列表
+     */
+    public List<String> popMembers(RedisSyncConfig.RedisDataSourceConfig redisDataSourceConfig, String key, long count) {
+        // 获得连接
+        StringRedisTemplate redisTemplate = redisConf.getConnection(redisDataSourceConfig.getRedisAddr(), redisDataSourceConfig.getPassword(), redisDataSourceConfig.getDatabase());
+        List<String> members = redisTemplate.opsForSet().pop(key, count);
+        return members != null ? members : new ArrayList<>(0);
+    }
+
+    /**
+     * 发布消息
+     *
+     * @param redisDataSourceConfig redis配置
+     * @param channel               频道
+     * @param message               消息
+     */
+    public void publish(RedisSyncConfig.RedisDataSourceConfig redisDataSourceConfig, String channel, String message) {
+        // 获得连接
+        StringRedisTemplate redisTemplate = redisConf.getConnection(redisDataSourceConfig.getRedisAddr(), redisDataSourceConfig.getPassword(), redisDataSourceConfig.getDatabase());
+        redisTemplate.convertAndSend(channel, message);
+    }
+
+    /**
+     * 订阅消息（独占一个连接，持续监听；连接断开时不自动恢复，通知调用方重新订阅）
+     *
+     * @param redisDataSourceConfig redis配置
+     * @param channel               频道
+     * @param handle                消息处理
+     * @param onDrop                订阅断开处理（断开期间的消息已丢失）
+     * @return 监听容器
+     */
+    public RedisMessageListenerContainer subscribe(RedisSyncConfig.RedisDataSourceConfig redisDataSourceConfig, String channel, Consumer<String> handle, Runnable onDrop) {
+        // 获得连接
+        StringRedisTemplate redisTemplate = redisConf.getConnection(redisDataSourceConfig.getRedisAddr(), redisDataSourceConfig.getPassword(), redisDataSourceConfig.getDatabase());
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer() {
+            @Override
+            protected void handleSubscriptionException(Throwable ex) {
+                Log.error("Redis订阅断开！channel：{}", channel, ex);
+                // 包装为非连接异常：关闭连接，不在后台自动恢复（恢复前后的消息无法区分，由调用方重新订阅）
+                super.handleSubscriptionException(new IllegalStateException(ex));
+                onDrop.run();
+            }
+        };
+        container.setConnectionFactory(redisTemplate.getConnectionFactory());
+        container.addMessageListener((message, pattern) -> {
+            try {
+                handle.accept(new String(message.getBody(), StandardCharsets.UTF_8));
+            } catch (Exception e) {
+                Log.error("Redis订阅消息处理失败！channel：{}", channel, e);
+            }
+        }, new ChannelTopic(channel));
+        container.afterPropertiesSet();
+        container.start();
+        Log.info("Redis订阅消息。redis：{}，channel：{}", redisDataSourceConfig.getRedisAddr(), channel);
+        return container;
+    }
+
     /**
      * 批量处理
      *
@@ -94,11 +298,10 @@ public class RedisDao {
         try {
             // 执行批处理
             redisTemplate.execute((RedisCallback<Object>) redisConnection -> {
-                long total = params.size();
                 // 分页处理
-                for (int page = 0; page < Math.ceil(total / (double) pageSize); page++) {
+                for (int from = 0; from < params.size(); from += pageSize) {
                     redisConnection.openPipeline();
-                    params.stream().skip(page * pageSize).limit(pageSize).forEach(param -> {
+                    params.subList(from, Math.min(from + pageSize, params.size())).forEach(param -> {
                         // Redis处理
                         redisHandle.handle(redisConnection, param);
                     });
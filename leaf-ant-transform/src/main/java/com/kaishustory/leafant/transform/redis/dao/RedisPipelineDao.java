@@ -0,0 +1,356 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.redis.dao;
+
+import com.kaishustory.leafant.common.model.RedisSyncConfig;
+import com.kaishustory.leafant.common.utils.Log;
+import com.kaishustory.leafant.transform.common.conf.RedisConf;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Redis同步写入（按节点分组，多管道并行）
+ * <p>
+ * 1、集群地址按 Key 计算槽位，归属到主节点；单机地址为一个节点；
+ * 2、同一节点按 Key 哈希分为多个通道，各通道占用一个连接池连接并行执行管道，同一 Key 始终在同一通道内顺序执行；
+ * 3、集群拓扑变化（MOVED、ASK）时刷新槽位，失败通道通过集群连接逐条重试；
+ * 4、按节点统计命令数、管道耗时，定时输出。
+ **/
+@Component
+public class RedisPipelineDao {
+
+    /**
+     * 集群槽位数
+     */
+    private static final int SLOTS = 16384;
+
+    /**
+     * 统计输出间隔（毫秒）
+     */
+    private static final long STATS_INTERVAL = 60 * 1000L;
+
+    /**
+     * Redis
+     */
+    @Autowired
+    private RedisConf redisConf;
+
+    /**
+     * 管道每批条数
+     */
+    @Value("${redis.pipeline.size:100}")
+    private int pageSize;
+
+    /**
+     * 每个节点并行通道数
+     */
+    @Value("${redis.pipeline.lanes:4}")
+    private int lanes;
+
+    /**
+     * 并行线程数
+     */
+    @Value("${redis.pipeline.threads:16}")
+    private int threads;
+
+    /**
+     * 集群槽位 <集群地址，槽位主节点>
+     */
+    private final Map<String, String[]> slotCache = new ConcurrentHashMap<>();
+
+    /**
+     * 节点统计 <节点，统计>
+     */
+    private final Map<String, NodeStats> nodeStats = new ConcurrentHashMap<>();
+
+    /**
+     * 上次统计输出时间
+     */
+    private volatile long lastStatsTime = System.currentTimeMillis();
+
+    private ThreadPoolExecutor threadPool;
+
+    private ThreadPoolExecutor getThreadPool() {
+        synchronized (this) {
+            if (threadPool == null) {
+                // 队列已满时由调用线程执行，保证通道不丢失
+                threadPool = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(threads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+            }
+        }
+        return threadPool;
+    }
+
+    /**
+     * 批量写入
+     *
+     * @param redisDataSourceConfig Redis配置
+     * @param params                参数列表
+     * @param keyFunc               参数Key（计算槽位、通道）
+     * @param redisHandle           Redis处理
+     * @return 是否全部成功
+     */
+    public <T> boolean pipeline(RedisSyncConfig.RedisDataSourceConfig redisDataSourceConfig, List<T> params, Function<T, String> keyFunc, RedisDao.RedisHandle<T> redisHandle) {
+        return pipeline(Collections.singletonMap(redisDataSourceConfig, params), keyFunc, redisHandle);
+    }
+
+    /**
+     * 批量写入（多个Redis，如分片，全部并行执行）
+     *
+     * @param groups      参数列表 <Redis配置，参数列表>
+     * @param keyFunc     参数Key（计算槽位、通道）
+     * @param redisHandle Redis处理
+     * @return 是否全部成功
+     */
+    public <T> boolean pipeline(Map<RedisSyncConfig.RedisDataSourceConfig, List<T>> groups, Function<T, String> keyFunc, RedisDao.RedisHandle<T> redisHandle) {
+        List<Future<Boolean>> futures = new ArrayList<>();
+        groups.forEach((redisDataSourceConfig, params) -> {
+            if (!params.isEmpty()) {
+                submitLanes(redisDataSourceConfig, params, keyFunc, redisHandle, futures);
+            }
+        });
+        boolean success = true;
+        for (Future<Boolean> future : futures) {
+            try {
+                success &= future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                success = false;
+            } catch (ExecutionException e) {
+                Log.error("Redis管道执行异常！", e.getCause());
+                success = false;
+            }
+        }
+        logStats();
+        return success;
+    }
+
+    /**
+     * 按节点、通道分组，提交执行
+     *
+     * @param redisDataSourceConfig Redis配置
+     * @param params                参数列表
+     * @param keyFunc               参数Key
+     * @param redisHandle           Redis处理
+     * @param futures               执行结果
+     */
+    private <T> void submitLanes(RedisSyncConfig.RedisDataSourceConfig redisDataSourceConfig, List<T> params, Function<T, String> keyFunc, RedisDao.RedisHandle<T> redisHandle, List<Future<Boolean>> futures) {
+        String addr = redisDataSourceConfig.getRedisAddr();
+        boolean cluster = redisConf.isCluster(addr);
+
+        // 按节点、通道分组 <节点，[通道参数]>
+        String[] slotNodes = cluster ? getSlotNodes(redisDataSourceConfig, false) : null;
+        Map<String, List<List<T>>> nodeLanes = new LinkedHashMap<>();
+        int laneCount = Math.max(1, Math.min(lanes, (params.size() + pageSize - 1) / pageSize));
+        for (T param : params) {
+            String key = keyFunc.apply(param);
+            String node = cluster ? slotNodes[ClusterSlotHashUtil.calculateSlot(key)] : addr;
+            List<List<T>> nodeLane = nodeLanes.computeIfAbsent(node, n -> {
+                List<List<T>> list = new ArrayList<>(laneCount);
+                for (int i = 0; i < laneCount; i++) {
+                    list.add(new ArrayList<>());
+                }
+                return list;
+            });
+            nodeLane.get((key.hashCode() & Integer.MAX_VALUE) % laneCount).add(param);
+        }
+
+        // 各通道并行执行
+        nodeLanes.forEach((node, nodeLane) -> nodeLane.stream().filter(lane -> !lane.isEmpty()).forEach(lane ->
+                futures.add(getThreadPool().submit(() -> executeLane(redisDataSourceConfig, cluster, node, lane, redisHandle)))
+        ));
+    }
+
+    /**
+     * 执行通道（分批管道，顺序执行）
+     *
+     * @param redisDataSourceConfig Redis配置
+     * @param cluster               是否集群
+     * @param node                  节点
+     * @param lane                  通道参数
+     * @param redisHandle           Redis处理
+     * @return 是否成功
+     */
+    private <T> boolean executeLane(RedisSyncConfig.RedisDataSourceConfig redisDataSourceConfig, boolean cluster, String node, List<T> lane, RedisDao.RedisHandle<T> redisHandle) {
+        NodeStats stats = nodeStats.computeIfAbsent(node, NodeStats::new);
+        // 集群节点使用单机连接（集群连接不支持管道）
+        StringRedisTemplate redisTemplate = cluster ?
+                redisConf.getConnection(node, redisDataSourceConfig.getPassword(), 0) :
+                redisConf.getConnection(node, redisDataSourceConfig.getPassword(), redisDataSourceConfig.getDatabase());
+        int done = 0;
+        try {
+            for (int from = 0; from < lane.size(); from += pageSize) {
+                List<T> page = lane.subList(from, Math.min(from + pageSize, lane.size()));
+                long begin = System.nanoTime();
+                redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    page.forEach(param -> redisHandle.handle(connection, param));
+                    return null;
+                });
+                stats.record(page.size(), System.nanoTime() - begin);
+                done += page.size();
+            }
+            return true;
+        } catch (Exception e) {
+            stats.errors.increment();
+            if (!cluster) {
+                Log.error("Redis批处理失败！redis：{}，database：{}", node, redisDataSourceConfig.getDatabase(), e);
+                return false;
+            }
+            // 集群拓扑变化：刷新槽位，剩余命令通过集群连接逐条执行（自动重定向；写入、删除可重复执行）
+            Log.warn("Redis集群节点管道失败，刷新槽位后重试。node：{}，remain：{}，error：{}", node, lane.size() - done, e.getMessage());
+            getSlotNodes(redisDataSourceConfig, true);
+            List<T> remain = lane.subList(done, lane.size());
+            try {
+                redisConf.getConnection(redisDataSourceConfig.getRedisAddr(), redisDataSourceConfig.getPassword(), 0)
+                        .execute((RedisCallback<Object>) connection -> {
+                            remain.forEach(param -> redisHandle.handle(connection, param));
+                            return null;
+                        });
+                return true;
+            } catch (Exception retryError) {
+                Log.error("Redis集群批处理失败！redis：{}，node：{}", redisDataSourceConfig.getRedisAddr(), node, retryError);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 获得集群槽位主节点
+     *
+     * @param redisDataSourceConfig Redis配置
+     * @param refresh               是否刷新
+     * @return 槽位主节点（下标为槽位）
+     */
+    private String[] getSlotNodes(RedisSyncConfig.RedisDataSourceConfig redisDataSourceConfig, boolean refresh) {
+        String addr = redisDataSourceConfig.getRedisAddr();
+        if (refresh) {
+            slotCache.remove(addr);
+        }
+        return slotCache.computeIfAbsent(addr, a -> {
+            StringRedisTemplate redisTemplate = redisConf.getConnection(addr, redisDataSourceConfig.getPassword(), 0);
+            String[] slotNodes = new String[SLOTS];
+            RedisClusterConnection connection = redisTemplate.getConnectionFactory().getClusterConnection();
+            try {
+                for (RedisClusterNode node : connection.clusterGetNodes()) {
+                    if (node.isMaster()) {
+                        String nodeAddr = node.getHost() + ":" + node.getPort();
+                        node.getSlotRange().getSlots().forEach(slot -> slotNodes[slot] = nodeAddr);
+                    }
+                }
+            } finally {
+                connection.close();
+            }
+            // 未分配的槽位（迁移中），使用任一主节点，执行失败后重试
+            String any = Arrays.stream(slotNodes).filter(Objects::nonNull).findFirst().orElse(addr.split(",")[0]);
+            for (int slot = 0; slot < SLOTS; slot++) {
+                if (slotNodes[slot] == null) {
+                    slotNodes[slot] = any;
+                }
+            }
+            Log.info("Redis集群槽位加载。redis：{}，nodes：{}", addr, Arrays.stream(slotNodes).distinct().count());
+            return slotNodes;
+        });
+    }
+
+    /**
+     * 按间隔输出节点统计
+     */
+    private void logStats() {
+        long now = System.currentTimeMillis();
+        if (now - lastStatsTime >= STATS_INTERVAL) {
+            synchronized (this) {
+                if (now - lastStatsTime < STATS_INTERVAL) {
+                    return;
+                }
+                long seconds = Math.max(1, (now - lastStatsTime) / 1000);
+                lastStatsTime = now;
+                nodeStats.values().forEach(stats -> Log.info("【Redis】节点统计 node：{}，{}", stats.node, stats.snapshot(seconds)));
+            }
+        }
+    }
+
+    /**
+     * 节点统计 <节点，统计>
+     */
+    public Map<String, String> getStats() {
+        Map<String, String> stats = new TreeMap<>();
+        nodeStats.forEach((node, nodeStat) -> stats.put(node, nodeStat.toString()));
+        return stats;
+    }
+
+    /**
+     * 节点统计
+     */
+    private static class NodeStats {
+
+        private final String node;
+
+        /**
+         * 累计命令数、管道数、管道耗时（纳秒）、失败数
+         */
+        private final LongAdder commands = new LongAdder();
+        private final LongAdder pipelines = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        /**
+         * 统计周期内最大管道耗时（纳秒）
+         */
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        /**
+         * 上次输出时累计命令数
+         */
+        private long lastCommands;
+
+        private NodeStats(String node) {
+            this.node = node;
+        }
+
+        private void record(int count, long cost) {
+            commands.add(count);
+            pipelines.increment();
+            nanos.add(cost);
+            maxNanos.accumulate(cost);
+        }
+
+        /**
+         * 周期统计（吞吐量、平均、最大管道耗时），重置周期数据
+         *
+         * @param seconds 周期（秒）
+         */
+        private String snapshot(long seconds) {
+            long total = commands.sum();
+            long qps = (total - lastCommands) / seconds;
+            lastCommands = total;
+            return "qps：" + qps + "，" + this + "，max：" + maxNanos.getThenReset() / 1000 + "us";
+        }
+
+        @Override
+        public String toString() {
+            long count = pipelines.sum();
+            return "commands：" + commands.sum() + "，pipelines：" + count + "，avg：" + (count > 0 ? nanos.sum() / count / 1000 : 0) + "us，errors：" + errors.sum();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.redis.dao;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.kaishustory.leafant.common.model.RedisSyncConfig;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Redis分片一致性哈希环
+ * <p>
+ * 每个分片按 地址/数据库 生成虚拟节点，Key 归属顺时针第一个虚拟节点所在分片。
+ * 增加分片时，只有落在新分片虚拟节点区间的 Key 变更归属。
+ **/
+public class RedisShardRing {
+
+    /**
+     * 每个分片虚拟节点数
+     */
+    private static final int VIRTUAL_NODES = 160;
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    /**
+     * 哈希环缓存 <分片列表，哈希环>
+     */
+    private static final Map<List<RedisSyncConfig.RedisDataSourceConfig>, RedisShardRing> RINGS = new ConcurrentHashMap<>();
+
+    /**
+     * 哈希环 <虚拟节点哈希，分片>
+     */
+    private final TreeMap<Long, RedisSyncConfig.RedisDataSourceConfig> ring = new TreeMap<>();
+
+    private RedisShardRing(List<RedisSyncConfig.RedisDataSourceConfig> shards) {
+        shards.forEach(shard -> {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(shard.getRedisAddr() + "/" + shard.getDatabase() + "#" + i), shard);
+            }
+        });
+    }
+
+    /**
+     * 获得哈希环
+     *
+     * @param shards 分片列表
+     * @return 哈希环
+     */
+    public static RedisShardRing of(List<RedisSyncConfig.RedisDataSourceConfig> shards) {
+        return RINGS.computeIfAbsent(shards, RedisShardRing::new);
+    }
+
+    /**
+     * 定位Key所在分片
+     *
+     * @param key Redis Key
+     * @return 分片
+     */
+    public RedisSyncConfig.RedisDataSourceConfig locate(String key) {
+        Map.Entry<Long, RedisSyncConfig.RedisDataSourceConfig> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * 按分片分组
+     *
+     * @param params  参数列表
+     * @param keyFunc 参数Key
+     * @return 参数列表 <分片，参数列表>
+     */
+    public <T> Map<RedisSyncConfig.RedisDataSourceConfig, List<T>> group(List<T> params, Function<T, String> keyFunc) {
+        Map<RedisSyncConfig.RedisDataSourceConfig, List<T>> groups = new LinkedHashMap<>();
+        params.forEach(param -> groups.computeIfAbsent(locate(keyFunc.apply(param)), shard -> new ArrayList<>()).add(param));
+        return groups;
+    }
+
+    private static long hash(String key) {
+        return HASH.hashString(key, StandardCharsets.UTF_8).asLong();
+    }
+}
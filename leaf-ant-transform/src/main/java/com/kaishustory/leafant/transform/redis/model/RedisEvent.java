@@ -18,9 +18,17 @@ import com.kaishustory.leafant.common.model.RedisSyncConfig;
 import com.kaishustory.leafant.common.utils.JsonUtils;
 import lombok.Data;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 import static com.kaishustory.leafant.common.constants.EventConstants.TYPE_DELETE;
+import static com.kaishustory.leafant.common.constants.EventConstants.TYPE_INSERT;
+import static com.kaishustory.leafant.common.constants.EventConstants.TYPE_UPDATE;
 
 /**
  * Redis事件
@@ -43,11 +51,56 @@ public class RedisEvent {
      */
     private String body;
 
+    /**
+     * Redis写入内容（JSON或二进制，超过阈值时压缩）
+     */
+    private byte[] value;
+
+    /**
+     * 压缩前内容长度
+     */
+    private int rawSize;
+
+    /**
+     * 过期时间（秒，0：不过期）
+     */
+    private long expireSeconds;
+
     /**
      * 时间发生时间
      */
     private long executeTime;
 
+    /**
+     * 是否Hash存储
+     */
+    private boolean hashMode;
+
+    /**
+     * Hash写入字段 <字段名称，字段内容>（Hash存储，新增为全部字段，更新为变更字段）
+     */
+    private Map<String, String> hashFields;
+
+    /**
+     * Hash删除字段（Hash存储，值为空的字段）
+     */
+    private List<String> hashDeleteFields;
+
+    /**
+     * Hash完整字段 <字段名称，字段内容>（Hash存储的更新事件，Key不存在时写入完整变更后镜像，不包含空值）
+     */
+    private Map<String, String> hashAfterFields;
+
+    /**
+     * 事件来源
+     */
+    private String source;
+
+    /**
+     * 二级索引操作（按变更前、变更后字段值计算）
+     */
+    private List<RedisIndexOp> indexOps;
+
 
     /**
      * Redis 事件信息
@@ -57,9 +110,147 @@ public class RedisEvent {
      */
     public RedisEvent(Event event, RedisSyncConfig redisSyncConfig) {
         this.type = event.getType();
-        this.redisKey = redisSyncConfig.getRedisKeyPrefix() + ":" + getId(event, redisSyncConfig);
-        this.body = toBody(event, redisSyncConfig);
+        String id = getId(event, redisSyncConfig);
+        this.redisKey = redisSyncConfig.getRedisKeyPrefix() + ":" + id;
         this.executeTime = event.getExecuteTime();
+        this.source = event.getSource();
+        this.indexOps = toIndexOps(event, redisSyncConfig, id);
+        this.hashMode = redisSyncConfig.isHashMode();
+        if (hashMode) {
+            toHashFields(event);
+        } else if (event.getType() != TYPE_DELETE) {
+            toValue(event, redisSyncConfig);
+        }
+        this.expireSeconds = redisSyncConfig.getExpireSeconds();
+    }
+
+    /**
+     * 转换写入内容
+     *
+     * @param event           同步事件
+     * @param redisSyncConfig Redis同步配置
+     */
+    private void toValue(Event event, RedisSyncConfig redisSyncConfig) {
+        byte[] raw;
+        if (redisSyncConfig.isBinaryValue()) {
+            raw = RedisValueCodec.encodeColumns(event.getAfterColumns(), redisSyncConfig.isSimplifyField());
+        } else {
+            this.body = toBody(event, redisSyncConfig);
+            raw = body.getBytes(StandardCharsets.UTF_8);
+        }
+        this.rawSize = raw.length;
+        this.value = RedisValueCodec.compress(raw, redisSyncConfig.getCompressThreshold());
+    }
+
+    /**
+     * 转换Hash字段（更新只保留变更字段，同时保留完整变更后镜像）
+     *
+     * @param event 同步事件
+     */
+    private void toHashFields(Event event) {
+        if (event.getType() != TYPE_DELETE) {
+            this.hashFields = new HashMap<>(event.getAfterColumns().size() * 2);
+            this.hashDeleteFields = new ArrayList<>(0);
+            event.getAfterColumns().stream()
+                    .filter(col -> event.getType() != TYPE_UPDATE || col.isUpdated())
+                    .forEach(col -> {
+                        if (col.isNull() || col.getValue() == null) {
+                            hashDeleteFields.add(col.getName());
+                        } else {
+                            hashFields.put(col.getName(), col.getValue());
+                        }
+                    });
+            if (event.getType() == TYPE_UPDATE) {
+                this.hashAfterFields = toValueMap(event.getAfterColumns());
+            }
+        }
+    }
+
+    /**
+     * 计算二级索引操作
+     * <p>
+     * 字段值变更时，删除变更前索引（变更前镜像），写入变更后索引；空值不索引。
+     * 配置过期时间时不维护索引（过期数据无删除事件，索引成员无法清除，创建映射时已拒绝）。
+     *
+     * @param event           同步事件
+     * @param redisSyncConfig Redis同步配置
+     * @param id              主键值
+     * @return 索引操作
+     */
+    private List<RedisIndexOp> toIndexOps(Event event, RedisSyncConfig redisSyncConfig, String id) {
+        List<RedisIndexOp> ops = new ArrayList<>(0);
+        if (!redisSyncConfig.hasIndex() || redisSyncConfig.getExpireSeconds() > 0) {
+            return ops;
+        }
+        Map<String, String> before = event.getType() != TYPE_INSERT ? toValueMap(event.getBeforeColumns()) : new HashMap<>(0);
+        Map<String, String> after = event.getType() != TYPE_DELETE ? toValueMap(event.getAfterColumns()) : new HashMap<>(0);
+        String prefix = redisSyncConfig.getRedisKeyPrefix();
+
+        // 集合索引
+        if (!isEmpty(redisSyncConfig.getIndexColumns())) {
+            redisSyncConfig.getIndexColumns().forEach(column -> {
+                String oldValue = before.get(column);
+                String newValue = after.get(column);
+                if (!Objects.equals(oldValue, newValue)) {
+                    if (oldValue != null) {
+                        ops.add(new RedisIndexOp(false, false, prefix + ":idx:" + column + ":" + oldValue, id, null));
+                    }
+                    if (newValue != null) {
+                        ops.add(new RedisIndexOp(true, false, prefix + ":idx:" + column + ":" + newValue, id, null));
+                    }
+                }
+            });
+        }
+
+        // 范围索引（写入时覆盖分值，无需删除变更前索引）
+        if (!isEmpty(redisSyncConfig.getRangeIndexColumns())) {
+            redisSyncConfig.getRangeIndexColumns().forEach(column -> {
+                String oldValue = before.get(column);
+                String newValue = after.get(column);
+                if (!Objects.equals(oldValue, newValue)) {
+                    Double score = toScore(newValue);
+                    if (score != null) {
+                        ops.add(new RedisIndexOp(true, true, prefix + ":zidx:" + column, id, score));
+                    } else if (oldValue != null) {
+                        ops.add(new RedisIndexOp(false, true, prefix + ":zidx:" + column, id, null));
+                    }
+                }
+            });
+        }
+        return ops;
+    }
+
+    /**
+     * 字段值 <字段名称，字段内容>（不包含空值）
+     */
+    private static Map<String, String> toValueMap(List<EventColumn> columns) {
+        Map<String, String> values = new HashMap<>(columns != null ? columns.size() * 2 : 0);
+        if (columns != null) {
+            columns.forEach(col -> {
+                if (!col.isNull() && col.getValue() != null) {
+                    values.put(col.getName(), col.getValue());
+                }
+            });
+        }
+        return values;
+    }
+
+    /**
+     * 范围索引分值（非数值返回 null）
+     */
+    private static Double toScore(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean isEmpty(List<String> list) {
+        return list == null || list.isEmpty();
     }
 
     /**
@@ -0,0 +1,55 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.redis.model;
+
+import lombok.Data;
+
+/**
+ * Redis二级索引操作
+ **/
+@Data
+public class RedisIndexOp {
+
+    /**
+     * 是否新增（否：删除）
+     */
+    private boolean add;
+
+    /**
+     * 是否范围索引（有序集合；否：集合）
+     */
+    private boolean range;
+
+    /**
+     * 索引Key
+     */
+    private String key;
+
+    /**
+     * 成员（主键）
+     */
+    private String member;
+
+    /**
+     * 分值（范围索引新增）
+     */
+    private Double score;
+
+    public RedisIndexOp(boolean add, boolean range, String key, String member, Double score) {
+        this.add = add;
+        this.range = range;
+        this.key = key;
+        this.member = member;
+        this.score = score;
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.redis.model;
+
+import com.kaishustory.leafant.common.model.EventColumn;
+import com.kaishustory.leafant.common.utils.JsonUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Redis内容编码
+ * <p>
+ * 1、JSON：原格式，首字节为 '[' 或 '{'；
+ * 2、二进制：格式(1) + 简化标志(1字节) + 字段数(varint) + [名称 + 值 (+ 类型 + 类型编号 + 次序 + 标志位)]...，字符串为 长度+1(varint，0表示null) + UTF-8；
+ * 3、压缩：格式(2) + 原长度(varint) + Deflate(JSON或二进制内容)。
+ * <p>
+ * 读取时按首字节识别格式，兼容已写入的各格式内容；内容不完整、已损坏或解压长度与原长度不一致时抛出 IllegalArgumentException。
+ **/
+public final class RedisValueCodec {
+
+    /**
+     * 格式：二进制
+     */
+    private static final byte FORMAT_BINARY = 1;
+
+    /**
+     * 格式：压缩
+     */
+    private static final byte FORMAT_DEFLATE = 2;
+
+    /**
+     * 标志位：主键、变更、空值
+     */
+    private static final int FLAG_KEY = 1;
+    private static final int FLAG_UPDATED = 2;
+    private static final int FLAG_NULL = 4;
+
+    private RedisValueCodec() {
+    }
+
+    /**
+     * 二进制编码
+     *
+     * @param columns  列信息
+     * @param simplify 是否简化（只保留字段名和字段值）
+     * @return 二进制内容
+     */
+    public static byte[] encodeColumns(List<EventColumn> columns, boolean simplify) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + columns.size() * 32);
+        out.write(FORMAT_BINARY);
+        out.write(simplify ? 1 : 0);
+        writeVarint(out, columns.size());
+        columns.forEach(col -> {
+            writeString(out, col.getName());
+            writeString(out, col.getValue());
+            if (!simplify) {
+                writeString(out, col.getMysqlType());
+                writeVarint(out, col.getSqlType());
+                writeVarint(out, col.getIndex());
+                out.write((col.isKey() ? FLAG_KEY : 0) | (col.isUpdated() ? FLAG_UPDATED : 0) | (col.isNull() ? FLAG_NULL : 0));
+            }
+        });
+        return out.toByteArray();
+    }
+
+    /**
+     * 压缩（小于阈值或压缩后未变小时，返回原内容）
+     *
+     * @param data      内容
+     * @param threshold 压缩阈值（字节，0表示不压缩）
+     * @return 内容
+     */
+    public static byte[] compress(byte[] data, int threshold) {
+        if (threshold <= 0 || data.length < threshold) {
+            return data;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 8);
+            out.write(FORMAT_DEFLATE);
+            writeVarint(out, data.length);
+            byte[] buf = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+            }
+            return out.size() < data.length ? out.toByteArray() : data;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 解码
+     *
+     * @param data 内容（JSON、二进制、压缩）
+     * @return 列信息（简化格式只包含列名、列值）
+     * @throws IllegalArgumentException 内容不完整或已损坏
+     */
+    @SuppressWarnings("unchecked")
+    public static EventColumn[] decode(byte[] data) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        if (data[0] == FORMAT_DEFLATE) {
+            return decode(inflate(data));
+        }
+        if (data[0] == FORMAT_BINARY) {
+            return decodeColumns(data);
+        }
+        String json = new String(data, StandardCharsets.UTF_8);
+        if (data[0] == '{') {
+            // 简化结构 {"字段名称": "字段内容"}
+            Map<String, String> fields = JsonUtils.fromJson(json, HashMap.class);
+            return fields.entrySet().stream().map(field -> column(field.getKey(), field.getValue())).toArray(EventColumn[]::new);
+        }
+        return JsonUtils.fromJson(json, EventColumn[].class);
+    }
+
+    private static EventColumn[] decodeColumns(byte[] data) {
+        require(data, 1, 1);
+        boolean simplify = data[1] == 1;
+        int[] pos = {2};
+        int count = readVarint(data, pos);
+        // 每列至少包含名称、值两个长度前缀
+        if (count < 0 || count > (data.length - pos[0]) / 2) {
+            throw new IllegalArgumentException(String.format("Redis内容字段数与长度不一致！count：%d，bytes：%d", count, data.length));
+        }
+        EventColumn[] columns = new EventColumn[count];
+        for (int i = 0; i < columns.length; i++) {
+            EventColumn col = column(readString(data, pos), readString(data, pos));
+            if (!simplify) {
+                col.setMysqlType(readString(data, pos));
+                col.setSqlType(readVarint(data, pos));
+                col.setIndex(readVarint(data, pos));
+                require(data, pos[0], 1);
+                int flags = data[pos[0]++];
+                col.setKey((flags & FLAG_KEY) != 0);
+                col.setUpdated((flags & FLAG_UPDATED) != 0);
+                col.setNull((flags & FLAG_NULL) != 0);
+            }
+            columns[i] = col;
+        }
+        if (pos[0] != data.length) {
+            throw new IllegalArgumentException(String.format("Redis内容长度不一致！read：%d，bytes：%d", pos[0], data.length));
+        }
+        return columns;
+    }
+
+    private static byte[] inflate(byte[] data) {
+        int[] pos = {1};
+        int rawLen = readVarint(data, pos);
+        if (rawLen < 0) {
+            throw new IllegalArgumentException("Redis内容原长度无效！length：" + rawLen);
+        }
+        byte[] raw = new byte[rawLen];
+        // 原长度已写满后继续解压，用于识别超出原长度的内容
+        byte[] overflow = new byte[1];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, pos[0], data.length - pos[0]);
+            int len = 0;
+            while (!inflater.finished()) {
+                int n = len < raw.length ? inflater.inflate(raw, len, raw.length - len) : inflater.inflate(overflow);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    // 无输出且缺少输入：压缩内容被截断或已损坏
+                    throw new IllegalArgumentException(String.format("Redis内容解压失败，内容不完整！length：%d，inflated：%d", raw.length, len));
+                }
+                if (len == raw.length && n > 0) {
+                    throw new IllegalArgumentException("Redis内容解压长度超过原长度！length：" + raw.length);
+                }
+                len += n;
+            }
+            if (len != raw.length) {
+                throw new IllegalArgumentException(String.format("Redis内容解压长度不一致！length：%d，inflated：%d", raw.length, len));
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Redis内容解压失败！", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static EventColumn column(String name, String value) {
+        EventColumn col = new EventColumn();
+        col.setName(name);
+        col.setValue(value);
+        return col;
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        if (value == null) {
+            writeVarint(out, 0);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length + 1);
+            out.write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static String readString(byte[] data, int[] pos) {
+        int len = readVarint(data, pos);
+        if (len == 0) {
+            return null;
+        }
+        require(data, pos[0], len - 1);
+        String value = new String(data, pos[0], len - 1, StandardCharsets.UTF_8);
+        pos[0] += len - 1;
+        return value;
+    }
+
+    /**
+     * 校验剩余长度（内容不完整时抛出 IllegalArgumentException）
+     */
+    private static void require(byte[] data, int pos, int len) {
+        if (len < 0 || pos > data.length - len) {
+            throw new IllegalArgumentException(String.format("Redis内容不完整！pos：%d，need：%d，bytes：%d", pos, len, data.length));
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] data, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            require(data, pos[0], 1);
+            if (shift > 28) {
+                throw new IllegalArgumentException("Redis内容长度前缀无效！pos：" + pos[0]);
+            }
+            byte b = data[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.redis.model;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Redis内容长度分布统计
+ **/
+public class RedisValueStats {
+
+    /**
+     * 分布区间上限（字节）
+     */
+    private static final int[] BOUNDS = {256, 1024, 4096, 16384, 65536, 262144};
+
+    private static final String[] LABELS = {"<256B", "<1K", "<4K", "<16K", "<64K", "<256K", ">=256K"};
+
+    /**
+     * 写入内容长度分布（压缩后）
+     */
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+
+    /**
+     * 写入次数、压缩次数、压缩前字节数、写入字节数
+     */
+    private final LongAdder count = new LongAdder();
+    private final LongAdder compressed = new LongAdder();
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder storedBytes = new LongAdder();
+
+    public RedisValueStats() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录
+     *
+     * @param rawSize    压缩前长度
+     * @param storedSize 写入长度
+     */
+    public void record(int rawSize, int storedSize) {
+        int i = 0;
+        while (i < BOUNDS.length && storedSize >= BOUNDS[i]) {
+            i++;
+        }
+        buckets[i].increment();
+        count.increment();
+        rawBytes.add(rawSize);
+        storedBytes.add(storedSize);
+        if (storedSize < rawSize) {
+            compressed.increment();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        long total = count.sum();
+        long raw = rawBytes.sum();
+        long stored = storedBytes.sum();
+        sb.append("count：").append(total)
+                .append("，compressed：").append(compressed.sum())
+                .append("，avg：").append(total > 0 ? stored / total : 0).append("B")
+                .append("，ratio：").append(raw > 0 ? String.format("%.2f", stored / (double) raw) : "-")
+                .append("，dist：");
+        for (int i = 0; i < buckets.length; i++) {
+            sb.append(i > 0 ? " " : "").append(LABELS[i]).append("=").append(buckets[i].sum());
+        }
+        return sb.toString();
+    }
+}
@@ -16,16 +16,19 @@ import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.kaishustory.leafant.common.model.EventColumn;
 import com.kaishustory.leafant.common.model.RedisSyncConfig;
-import com.kaishustory.leafant.common.utils.JsonUtils;
 import com.kaishustory.leafant.mapping.dao.RedisMappingDao;
 import com.kaishustory.leafant.transform.redis.dao.RedisDao;
+import com.kaishustory.leafant.transform.redis.dao.RedisShardRing;
+import com.kaishustory.leafant.transform.redis.model.RedisValueCodec;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Redis查询服务
@@ -34,9 +37,9 @@ import java.util.concurrent.TimeUnit;
 public class RedisQueryService {
 
     /**
-     * Redis映射二级缓存
+     * Redis映射二级缓存（分片变更需在迁移开始前生效，见 RedisShardMigrateService.MAPPING_WAIT）
      */
-    private Cache<String, RedisSyncConfig> redisMapping2Cache = Caffeine.newBuilder().expireAfterWrite(5, TimeUnit.MINUTES).build();
+    private Cache<String, RedisSyncConfig> redisMapping2Cache = Caffeine.newBuilder().expireAfterWrite(30, TimeUnit.SECONDS).build();
 
     /**
      * Redis处理
@@ -59,12 +62,12 @@ public class RedisQueryService {
      */
     private Map<String, EventColumn[]> findKeyValues(RedisSyncConfig.RedisDataSourceConfig redisDataSourceConfig, List<String> keys) {
 
-        // 批量查询
-        List<String> values = redisDao.multGet(redisDataSourceConfig, keys);
+        // 批量查询（兼容JSON、二进制、压缩格式）
+        List<byte[]> values = redisDao.multGetBytes(redisDataSourceConfig, keys);
 
         Map<String, EventColumn[]> keyValues = new HashMap<>(keys.size());
         for (int i = 0; i < keys.size(); i++) {
-            keyValues.put(keys.get(i), JsonUtils.fromJson(values.get(i), EventColumn[].class));
+            keyValues.put(keys.get(i), RedisValueCodec.decode(values.get(i)));
         }
         return keyValues;
     }
@@ -78,7 +81,91 @@ public class RedisQueryService {
      */
     public Map<String, EventColumn[]> findKeyValues(String mappingId, List<String> keys) {
         RedisSyncConfig redisSyncConfig = findById(mappingId);
-        return findKeyValues(redisSyncConfig.getRedisDataSourceConfig(), keys);
+        if (redisSyncConfig.getShards() == null || redisSyncConfig.getShards().isEmpty()) {
+            return findKeyValues(redisSyncConfig, redisSyncConfig.getRedisDataSourceConfig(), keys);
+        }
+
+        // 按分片分组查询
+        Map<String, EventColumn[]> keyValues = new HashMap<>(keys.size() * 2);
+        RedisShardRing ring = RedisShardRing.of(redisSyncConfig.getShards());
+        ring.group(keys, key -> key).forEach((shard, shardKeys) -> keyValues.putAll(findKeyValues(redisSyncConfig, shard, shardKeys)));
+
+        // 迁移中：新分片不存在的Key，查询原分片
+        if (redisSyncConfig.getMigrateFromShards() != null && !redisSyncConfig.getMigrateFromShards().isEmpty()) {
+            RedisShardRing fromRing = RedisShardRing.of(redisSyncConfig.getMigrateFromShards());
+            List<String> missKeys = keys.stream().filter(key -> keyValues.get(key) == null && !fromRing.locate(key).equals(ring.locate(key))).collect(Collectors.toList());
+            fromRing.group(missKeys, key -> key).forEach((shard, shardKeys) -> findKeyValues(redisSyncConfig, shard, shardKeys).forEach((key, value) -> {
+                if (value != null) {
+                    keyValues.put(key, value);
+                }
+            }));
+        }
+        return keyValues;
+    }
+
+    /**
+     * 批量查询Redis内容（按存储方式）
+     *
+     * @param redisSyncConfig       Redis映射配置
+     * @param redisDataSourceConfig redis配置
+     * @param keys                  Key列表
+     * @return Redis 内容 <RedisKey,列信息>
+     */
+    private Map<String, EventColumn[]> findKeyValues(RedisSyncConfig redisSyncConfig, RedisSyncConfig.RedisDataSourceConfig redisDataSourceConfig, List<String> keys) {
+        if (redisSyncConfig.isHashMode()) {
+            return findHashValues(redisDataSourceConfig, keys);
+        }
+        return findKeyValues(redisDataSourceConfig, keys);
+    }
+
+    /**
+     * 批量查询Redis内容（Hash存储）
+     *
+     * @param redisDataSourceConfig redis配置
+     * @param keys                  Key列表
+     * @return Redis 内容 <RedisKey,列信息（只包含列名、列值）>
+     */
+    private Map<String, EventColumn[]> findHashValues(RedisSyncConfig.RedisDataSourceConfig redisDataSourceConfig, List<String> keys) {
+
+        // 批量查询
+        List<Map<String, String>> values = redisDao.multHashGetAll(redisDataSourceConfig, keys);
+
+        Map<String, EventColumn[]> keyValues = new HashMap<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            Map<String, String> fields = values.get(i);
+            if (fields != null && !fields.isEmpty()) {
+                keyValues.put(keys.get(i), fields.entrySet().stream().map(field -> {
+                    EventColumn column = new EventColumn();
+                    column.setName(field.getKey());
+                    column.setValue(field.getValue());
+                    return column;
+                }).toArray(EventColumn[]::new));
+            }
+        }
+        return keyValues;
+    }
+
+    /**
+     * 查询Redis指定字段（Hash存储）
+     *
+     * @param mappingId Redis映射ID
+     * @param key       key
+     * @param fields    字段列表
+     * @return 字段内容 <字段名称，字段内容>（不存在的字段不返回）
+     */
+    public Map<String, String> findFields(String mappingId, String key, List<String> fields) {
+        RedisSyncConfig redisSyncConfig = findById(mappingId);
+        if (!redisSyncConfig.isHashMode()) {
+            throw new IllegalArgumentException("Redis映射非Hash存储，不支持按字段查询：" + mappingId);
+        }
+        List<String> values = redisDao.hashGet(getShard(redisSyncConfig, key), key, fields);
+        Map<String, String> fieldValues = new HashMap<>(fields.size() * 2);
+        for (int i = 0; i < fields.size(); i++) {
+            if (values.get(i) != null) {
+                fieldValues.put(fields.get(i), values.get(i));
+            }
+        }
+        return fieldValues;
     }
 
     /**
@@ -89,13 +176,8 @@ public class RedisQueryService {
      * @return Redis 内容
      */
     public EventColumn[] findValue(RedisSyncConfig.RedisDataSourceConfig redisDataSourceConfig, String key) {
-        String value = redisDao.get(redisDataSourceConfig, key);
-        if (value != null) {
-            // 查询
-            return JsonUtils.fromJson(value, EventColumn[].class);
-        } else {
-            return new EventColumn[0];
-        }
+        EventColumn[] value = findKeyValues(redisDataSourceConfig, Collections.singletonList(key)).get(key);
+        return value != null ? value : new EventColumn[0];
     }
 
     /**
@@ -106,8 +188,23 @@ public class RedisQueryService {
      * @return Redis 内容
      */
     public EventColumn[] findValue(String mappingId, String key) {
-        // 查询
-        return findValue(findById(mappingId).getRedisDataSourceConfig(), key);
+        // 查询（按分片、存储方式）
+        EventColumn[] value = findKeyValues(mappingId, Collections.singletonList(key)).get(key);
+        return value != null ? value : new EventColumn[0];
+    }
+
+    /**
+     * 获得Key所在分片
+     *
+     * @param redisSyncConfig Redis映射配置
+     * @param key             key
+     * @return Redis配置
+     */
+    private RedisSyncConfig.RedisDataSourceConfig getShard(RedisSyncConfig redisSyncConfig, String key) {
+        if (redisSyncConfig.getShards() == null || redisSyncConfig.getShards().isEmpty()) {
+            return redisSyncConfig.getRedisDataSourceConfig();
+        }
+        return RedisShardRing.of(redisSyncConfig.getShards()).locate(key);
     }
 
     /**
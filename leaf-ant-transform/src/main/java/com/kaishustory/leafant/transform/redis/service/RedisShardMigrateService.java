@@ -0,0 +1,224 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.redis.service;
+
+import com.kaishustory.leafant.common.model.RedisSyncConfig;
+import com.kaishustory.leafant.common.utils.Log;
+import com.kaishustory.leafant.common.utils.Time;
+import com.kaishustory.leafant.transform.common.conf.RedisConf;
+import com.kaishustory.leafant.transform.redis.dao.RedisShardRing;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Redis分片迁移服务（增加分片后，迁移归属变更的Key）
+ * <p>
+ * 1、扫描原分片 {redisKeyPrefix}:* ，只迁移按新哈希环归属变更的Key；
+ * 2、原分片原子读取并删除（DUMP + DEL），新分片写入（RESTORE），已有新写入时保留新写入；
+ * 3、迁移期间同步写入先删除原分片数据，删除事件在新分片写入删除标记，迁移时跳过已删除Key；
+ * 4、索引Key（集合、有序集合）在新分片已存在时合并成员。
+ **/
+@Service
+public class RedisShardMigrateService {
+
+    /**
+     * 删除标记后缀
+     */
+    public static final String TOMBSTONE_SUFFIX = ":__del";
+
+    /**
+     * 合并临时Key后缀
+     */
+    private static final String MERGE_SUFFIX = ":__mv";
+
+    /**
+     * 等待映射配置刷新（毫秒），保证迁移开始前各节点已按新分片写入、查询（查询映射缓存30秒）
+     */
+    private static final long MAPPING_WAIT = 60 * 1000L;
+
+    /**
+     * 原分片：读取并删除（返回 [序列化内容，剩余毫秒]）
+     */
+    private static final byte[] TAKE_SCRIPT = ("local v = redis.call('DUMP', KEYS[1]) "
+            + "if not v then return nil end "
+            + "local t = redis.call('PTTL', KEYS[1]) "
+            + "redis.call('DEL', KEYS[1]) "
+            + "return {v, t}").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 新分片：写入（0：已删除，1：写入，2：已有新写入，3：合并成员）
+     */
+    private static final byte[] PUT_SCRIPT = ("if redis.call('EXISTS', KEYS[2]) == 1 then return 0 end "
+            + "if redis.call('EXISTS', KEYS[1]) == 0 then redis.call('RESTORE', KEYS[1], ARGV[1], ARGV[2]) return 1 end "
+            + "redis.call('DEL', KEYS[3]) "
+            + "redis.call('RESTORE', KEYS[3], 0, ARGV[2]) "
+            + "local t = redis.call('TYPE', KEYS[3]).ok "
+            + "local r = 2 "
+            + "if t == 'set' and redis.call('TYPE', KEYS[1]).ok == 'set' then "
+            + "  redis.call('SUNIONSTORE', KEYS[1], KEYS[1], KEYS[3]) r = 3 "
+            + "elseif t == 'zset' and redis.call('TYPE', KEYS[1]).ok == 'zset' then "
+            + "  local m = redis.call('ZRANGE', KEYS[3], 0, -1, 'WITHSCORES') "
+            + "  for i = 1, #m, 2 do redis.call('ZADD', KEYS[1], 'NX', m[i + 1], m[i]) end r = 3 "
+            + "end "
+            + "redis.call('DEL', KEYS[3]) "
+            + "return r").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Redis配置
+     */
+    @Autowired
+    private RedisConf redisConf;
+
+    /**
+     * 每批迁移Key数
+     */
+    @Value("${redis.shard.migrate.batch:100}")
+    private int batchSize;
+
+    /**
+     * 迁移归属变更的Key
+     *
+     * @param redisSyncConfig Redis映射（shards：新分片，migrateFromShards：迁移前分片）
+     * @return 是否成功
+     */
+    public boolean migrate(RedisSyncConfig redisSyncConfig) {
+        Time time = new Time("【Redis】分片迁移");
+        try {
+            Thread.sleep(MAPPING_WAIT);
+            RedisShardRing ring = RedisShardRing.of(redisSyncConfig.getShards());
+            long moved = 0;
+            for (RedisSyncConfig.RedisDataSourceConfig fromShard : redisSyncConfig.getMigrateFromShards()) {
+                moved += migrateShard(redisSyncConfig.getRedisKeyPrefix(), fromShard, ring);
+            }
+            Log.info("【Redis】分片迁移完成。key_prefix：{}，moved：{}", redisSyncConfig.getRedisKeyPrefix(), moved);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            Log.error("【Redis】分片迁移异常！key_prefix：{}", redisSyncConfig.getRedisKeyPrefix(), e);
+            return false;
+        } finally {
+            time.end();
+        }
+    }
+
+    /**
+     * 迁移原分片中归属变更的Key
+     *
+     * @param keyPrefix Key前缀
+     * @param fromShard 原分片
+     * @param ring      新哈希环
+     * @return 迁移Key数
+     */
+    private long migrateShard(String keyPrefix, RedisSyncConfig.RedisDataSourceConfig fromShard, RedisShardRing ring) {
+        StringRedisTemplate source = redisConf.getConnection(fromShard.getRedisAddr(), fromShard.getPassword(), fromShard.getDatabase());
+        ScanOptions options = ScanOptions.scanOptions().match(keyPrefix + ":*").count(batchSize).build();
+        return source.execute((RedisCallback<Long>) connection -> {
+            long moved = 0;
+            List<String> batch = new ArrayList<>(batchSize);
+            Cursor<byte[]> cursor = connection.scan(options);
+            try {
+                while (cursor.hasNext()) {
+                    String key = new String(cursor.next(), StandardCharsets.UTF_8);
+                    if (!key.endsWith(TOMBSTONE_SUFFIX) && !key.endsWith(MERGE_SUFFIX) && !fromShard.equals(ring.locate(key))) {
+                        batch.add(key);
+                    }
+                    if (batch.size() >= batchSize) {
+                        moved += moveBatch(connection, batch, ring);
+                        batch.clear();
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    moved += moveBatch(connection, batch, ring);
+                }
+            } finally {
+                try {
+                    cursor.close();
+                } catch (IOException e) {
+                    Log.error("【Redis】关闭扫描游标失败！redis：{}", fromShard.getRedisAddr(), e);
+                }
+            }
+            Log.info("【Redis】分片迁移。from：{}/{}，moved：{}", fromShard.getRedisAddr(), fromShard.getDatabase(), moved);
+            return moved;
+        });
+    }
+
+    /**
+     * 迁移一批Key（原分片使用扫描连接，在两次扫描之间执行管道）
+     *
+     * @param scanConnection 扫描连接（原分片）
+     * @param keys           Key列表
+     * @param ring           新哈希环
+     * @return 迁移Key数
+     */
+    @SuppressWarnings("unchecked")
+    private long moveBatch(RedisConnection scanConnection, List<String> keys, RedisShardRing ring) {
+        // 原分片读取并删除
+        scanConnection.openPipeline();
+        keys.forEach(key -> scanConnection.eval(TAKE_SCRIPT, ReturnType.MULTI, 1, key.getBytes(StandardCharsets.UTF_8)));
+        List<Object> taken = scanConnection.closePipeline();
+
+        // 按新分片分组写入
+        Map<RedisSyncConfig.RedisDataSourceConfig, List<Integer>> targets = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (taken.get(i) instanceof List) {
+                targets.computeIfAbsent(ring.locate(keys.get(i)), shard -> new ArrayList<>()).add(i);
+            }
+        }
+        long moved = 0;
+        for (Map.Entry<RedisSyncConfig.RedisDataSourceConfig, List<Integer>> target : targets.entrySet()) {
+            RedisSyncConfig.RedisDataSourceConfig shard = target.getKey();
+            try {
+                List<Object> results = redisConf.getConnection(shard.getRedisAddr(), shard.getPassword(), shard.getDatabase()).execute((RedisCallback<List<Object>>) connection -> {
+                    connection.openPipeline();
+                    target.getValue().forEach(i -> {
+                        List<Object> value = (List<Object>) taken.get(i);
+                        String key = keys.get(i);
+                        connection.eval(PUT_SCRIPT, ReturnType.INTEGER, 3,
+                                key.getBytes(StandardCharsets.UTF_8), (key + TOMBSTONE_SUFFIX).getBytes(StandardCharsets.UTF_8), (key + MERGE_SUFFIX).getBytes(StandardCharsets.UTF_8),
+                                String.valueOf(Math.max(0, (Long) value.get(1))).getBytes(StandardCharsets.UTF_8), (byte[]) value.get(0));
+                    });
+                    return connection.closePipeline();
+                });
+                moved += results.stream().filter(result -> result instanceof Long && (Long) result > 0).count();
+            } catch (Exception e) {
+                // 新分片写入失败，写回原分片（原分片已有新写入时忽略），迁移失败后可重新执行
+                Log.error("【Redis】分片迁移写入失败，写回原分片。to：{}/{}，keys：{}", shard.getRedisAddr(), shard.getDatabase(), target.getValue().size(), e);
+                scanConnection.openPipeline();
+                target.getValue().forEach(i -> {
+                    List<Object> value = (List<Object>) taken.get(i);
+                    scanConnection.restore(keys.get(i).getBytes(StandardCharsets.UTF_8), Math.max(0, (Long) value.get(1)), (byte[]) value.get(0));
+                });
+                try {
+                    scanConnection.closePipeline();
+                } catch (Exception restoreError) {
+                    Log.warn("【Redis】分片迁移写回原分片部分失败（已有新写入）。error：{}", restoreError.getMessage());
+                }
+                throw e;
+            }
+        }
+        return moved;
+    }
+}
@@ -15,12 +15,23 @@ package com.kaishustory.leafant.transform.redis.service;
 import com.kaishustory.leafant.common.constants.EventConstants;
 import com.kaishustory.leafant.common.model.RedisSyncConfig;
 import com.kaishustory.leafant.common.utils.Log;
-import com.kaishustory.leafant.transform.redis.dao.RedisDao;
+import com.kaishustory.leafant.transform.common.conf.RedisConf;
+import com.kaishustory.leafant.transform.redis.dao.RedisPipelineDao;
+import com.kaishustory.leafant.transform.redis.dao.RedisShardRing;
 import com.kaishustory.leafant.transform.redis.model.RedisEvent;
+import com.kaishustory.leafant.transform.redis.model.RedisIndexOp;
+import com.kaishustory.leafant.transform.redis.model.RedisValueStats;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.DefaultTuple;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static com.kaishustory.leafant.common.constants.MappingConstants.SOURCE_INIT;
 
 /**
  * Redis结构转换服务
@@ -32,7 +43,95 @@ public class RedisTransformService {
      * Redis处理
      */
     @Autowired
-    private RedisDao redisDao;
+    private RedisPipelineDao redisPipelineDao;
+
+    /**
+     * Redis配置
+     */
+    @Autowired
+    private RedisConf redisConf;
+
+    /**
+     * 迁移中删除标记过期时间（秒）
+     */
+    private static final long TOMBSTONE_EXPIRE = 600;
+
+    /**
+     * Hash更新脚本：Key存在时写入变更字段、删除空值字段；Key不存在（已过期、迁移中已从原分片删除）时写入完整变更后镜像，避免只有部分字段
+     * <p>
+     * 参数：过期时间，变更字段数，[字段，值]...，删除字段数，[字段]...，完整字段数，[字段，值]...
+     */
+    private static final byte[] HASH_UPDATE_SCRIPT = ("local i = 2 "
+            + "local n = tonumber(ARGV[i]) "
+            + "local d = tonumber(ARGV[i + 1 + n * 2]) "
+            + "local f = tonumber(ARGV[i + 2 + n * 2 + d]) "
+            + "if redis.call('EXISTS', KEYS[1]) == 1 then "
+            + "  if n > 0 then redis.call('HMSET', KEYS[1], unpack(ARGV, i + 1, i + n * 2)) end "
+            + "  if d > 0 then redis.call('HDEL', KEYS[1], unpack(ARGV, i + 2 + n * 2, i + 1 + n * 2 + d)) end "
+            + "elseif f > 0 then "
+            + "  redis.call('HMSET', KEYS[1], unpack(ARGV, i + 3 + n * 2 + d, i + 2 + n * 2 + d + f * 2)) "
+            + "end "
+            + "if tonumber(ARGV[1]) > 0 then redis.call('EXPIRE', KEYS[1], ARGV[1]) end "
+            + "return 1").getBytes();
+
+    /**
+     * 内容长度分布统计 <Key前缀，统计>
+     */
+    private final Map<String, RedisValueStats> valueStats = new ConcurrentHashMap<>();
+
+    /**
+     * 统计输出间隔（毫秒）
+     */
+    private static final long STATS_INTERVAL = 60 * 1000L;
+
+    /**
+     * 上次统计输出时间
+     */
+    private volatile long lastStatsTime = System.currentTimeMillis();
+
+    /**
+     * Redis 同步事件处理（按分片路由）
+     *
+     * @param redisSyncConfig Redis映射配置
+     * @param redisEvents     Redis事件列表
+     */
+    public void eventHandle(RedisSyncConfig redisSyncConfig, List<RedisEvent> redisEvents) {
+        recordStats(redisSyncConfig.getRedisKeyPrefix(), redisEvents);
+        if (redisSyncConfig.getShards() == null || redisSyncConfig.getShards().isEmpty()) {
+            eventHandle(redisSyncConfig.getRedisDataSourceConfig(), redisEvents);
+            return;
+        }
+        RedisShardRing ring = RedisShardRing.of(redisSyncConfig.getShards());
+        List<RedisIndexOp> indexOps = redisEvents.stream().flatMap(event -> event.getIndexOps().stream()).collect(Collectors.toList());
+        boolean migrating = redisSyncConfig.getMigrateFromShards() != null && !redisSyncConfig.getMigrateFromShards().isEmpty();
+
+        if (migrating) {
+            // 迁移中：归属变更的Key，先删除原分片数据、写入原分片索引，再写入新分片（迁移时不会覆盖新写入）
+            RedisShardRing fromRing = RedisShardRing.of(redisSyncConfig.getMigrateFromShards());
+            List<String> movedKeys = redisEvents.stream().map(RedisEvent::getRedisKey)
+                    .filter(key -> !fromRing.locate(key).equals(ring.locate(key))).distinct().collect(Collectors.toList());
+            redisPipelineDao.pipeline(fromRing.group(movedKeys, key -> key), key -> key, (connection, key) -> connection.del(key.getBytes()));
+            List<RedisIndexOp> movedIndexOps = indexOps.stream().filter(op -> !fromRing.locate(op.getKey()).equals(ring.locate(op.getKey()))).collect(Collectors.toList());
+            redisPipelineDao.pipeline(fromRing.group(movedIndexOps, RedisIndexOp::getKey), RedisIndexOp::getKey, this::indexHandle);
+        }
+
+        // 各分片并行写入（分片间无法同一事务写入，索引按索引Key所在分片写入）
+        redisPipelineDao.pipeline(ring.group(redisEvents, RedisEvent::getRedisKey), RedisEvent::getRedisKey, (connection, event) -> {
+            rowHandle(connection, event);
+            if (migrating && event.getType() == EventConstants.TYPE_DELETE) {
+                // 删除标记：迁移中的旧数据不再写入
+                connection.setEx((event.getRedisKey() + RedisShardMigrateService.TOMBSTONE_SUFFIX).getBytes(), TOMBSTONE_EXPIRE, "1".getBytes());
+            }
+        });
+        if (!indexOps.isEmpty()) {
+            if (SOURCE_INIT.equals(redisEvents.get(0).getSource())) {
+                List<List<RedisIndexOp>> indexGroups = new ArrayList<>(indexOps.stream().filter(RedisIndexOp::isAdd).collect(Collectors.groupingBy(RedisIndexOp::getKey, LinkedHashMap::new, Collectors.toList())).values());
+                redisPipelineDao.pipeline(ring.group(indexGroups, group -> group.get(0).getKey()), group -> group.get(0).getKey(), this::indexBulkHandle);
+            } else {
+                redisPipelineDao.pipeline(ring.group(indexOps, RedisIndexOp::getKey), RedisIndexOp::getKey, this::indexHandle);
+            }
+        }
+    }
 
     /**
      * Redis 同步事件处理
@@ -42,28 +141,193 @@ public class RedisTransformService {
      */
     public void eventHandle(RedisSyncConfig.RedisDataSourceConfig redisDataSourceConfig, List<RedisEvent> redisEvents) {
 
-        // 批量处理
-        redisDao.batch(redisDataSourceConfig, redisEvents, (RedisDao.RedisHandle<RedisEvent>) (connection, event) -> {
-                    switch (event.getType()) {
-                        // 新增、更新，写入数据
-                        case EventConstants.TYPE_INSERT:
-                        case EventConstants.TYPE_UPDATE:
-                            connection.set(event.getRedisKey().getBytes(), event.getBody().getBytes());
-                            Log.info("【Redis】更新文档 key：{}，delay：{}，body：{}", event.getRedisKey(), (System.currentTimeMillis() - event.getExecuteTime()) + "/ms", event.getBody());
-                            break;
-
-                        // 删除，删除数据
-                        case EventConstants.TYPE_DELETE:
-                            connection.del(event.getRedisKey().getBytes());
-                            Log.info("【Redis】删除文档 key：{}，delay：{}", event.getRedisKey(), (System.currentTimeMillis() - event.getExecuteTime()) + "/ms");
-                            break;
-
-                        default:
+        List<RedisIndexOp> indexOps = redisEvents.stream().flatMap(event -> event.getIndexOps().stream()).collect(Collectors.toList());
+        if (indexOps.isEmpty()) {
+            // 批量处理（按节点分组，多管道并行）
+            redisPipelineDao.pipeline(redisDataSourceConfig, redisEvents, RedisEvent::getRedisKey, this::rowHandle);
+
+        } else if (SOURCE_INIT.equals(redisEvents.get(0).getSource())) {
+            // 初始化：写入数据后，按索引Key合并批量写入索引
+            redisPipelineDao.pipeline(redisDataSourceConfig, redisEvents, RedisEvent::getRedisKey, this::rowHandle);
+            List<List<RedisIndexOp>> indexGroups = new ArrayList<>(indexOps.stream().filter(RedisIndexOp::isAdd).collect(Collectors.groupingBy(RedisIndexOp::getKey, LinkedHashMap::new, Collectors.toList())).values());
+            redisPipelineDao.pipeline(redisDataSourceConfig, indexGroups, group -> group.get(0).getKey(), this::indexBulkHandle);
+
+        } else if (!redisConf.isCluster(redisDataSourceConfig.getRedisAddr())) {
+            // 数据与索引在同一事务内写入
+            redisPipelineDao.pipeline(redisDataSourceConfig, redisEvents, RedisEvent::getRedisKey, (connection, event) -> {
+                if (event.getIndexOps().isEmpty()) {
+                    rowHandle(connection, event);
+                } else {
+                    connection.multi();
+                    rowHandle(connection, event);
+                    event.getIndexOps().forEach(op -> indexHandle(connection, op));
+                    connection.exec();
+                }
+            });
+
+        } else {
+            // 集群：索引Key与数据Key槽位不同，无法同一事务写入，写入数据后按索引Key写入索引
+            redisPipelineDao.pipeline(redisDataSourceConfig, redisEvents, RedisEvent::getRedisKey, this::rowHandle);
+            redisPipelineDao.pipeline(redisDataSourceConfig, indexOps, RedisIndexOp::getKey, this::indexHandle);
+        }
+    }
+
+    /**
+     * 记录内容长度分布
+     *
+     * @param keyPrefix   Key前缀
+     * @param redisEvents Redis事件列表
+     */
+    private void recordStats(String keyPrefix, List<RedisEvent> redisEvents) {
+        RedisValueStats stats = valueStats.computeIfAbsent(keyPrefix, prefix -> new RedisValueStats());
+        redisEvents.stream().filter(event -> event.getValue() != null).forEach(event -> stats.record(event.getRawSize(), event.getValue().length));
+        logStats();
+    }
+
+    /**
+     * 按间隔输出内容长度分布
+     */
+    private void logStats() {
+        long now = System.currentTimeMillis();
+        if (now - lastStatsTime >= STATS_INTERVAL) {
+            synchronized (this) {
+                if (now - lastStatsTime < STATS_INTERVAL) {
+                    return;
+                }
+                lastStatsTime = now;
+                valueStats.forEach((keyPrefix, stats) -> Log.info("【Redis】内容长度统计 key_prefix：{}，{}", keyPrefix, stats));
+            }
+        }
+    }
+
+    /**
+     * 获得内容长度分布统计
+     *
+     * @return 统计 <Key前缀，统计>
+     */
+    public Map<String, RedisValueStats> getStats() {
+        return valueStats;
+    }
+
+    /**
+     * 数据写入
+     *
+     * @param connection Redis连接
+     * @param event      Redis事件
+     */
+    private void rowHandle(RedisConnection connection, RedisEvent event) {
+        switch (event.getType()) {
+            // 新增、更新，写入数据
+            case EventConstants.TYPE_INSERT:
+            case EventConstants.TYPE_UPDATE:
+                if (event.isHashMode()) {
+                    // Hash存储，只写入变更字段（Key不存在时写入完整变更后镜像）
+                    hashHandle(connection, event);
+                } else {
+                    if (event.getExpireSeconds() > 0) {
+                        // 写入时刷新过期时间
+                        connection.setEx(event.getRedisKey().getBytes(), event.getExpireSeconds(), event.getValue());
+                    } else {
+                        connection.set(event.getRedisKey().getBytes(), event.getValue());
                     }
+                    Log.info("【Redis】更新文档 key：{}，delay：{}，body：{}", event.getRedisKey(), (System.currentTimeMillis() - event.getExecuteTime()) + "/ms", event.getBody() != null ? event.getBody() : event.getValue().length + "/bytes");
                 }
-        );
+                break;
+
+            // 删除，删除数据
+            case EventConstants.TYPE_DELETE:
+                connection.del(event.getRedisKey().getBytes());
+                Log.info("【Redis】删除文档 key：{}，delay：{}", event.getRedisKey(), (System.currentTimeMillis() - event.getExecuteTime()) + "/ms");
+                break;
 
+            default:
+        }
     }
 
+    /**
+     * 索引写入
+     *
+     * @param connection Redis连接
+     * @param op         索引操作
+     */
+    private void indexHandle(RedisConnection connection, RedisIndexOp op) {
+        byte[] key = op.getKey().getBytes();
+        byte[] member = op.getMember().getBytes();
+        if (op.isRange()) {
+            if (op.isAdd()) {
+                connection.zAdd(key, op.getScore(), member);
+            } else {
+                connection.zRem(key, member);
+            }
+        } else {
+            if (op.isAdd()) {
+                connection.sAdd(key, member);
+            } else {
+                connection.sRem(key, member);
+            }
+        }
+    }
+
+    /**
+     * 索引批量写入（同一索引Key）
+     *
+     * @param connection Redis连接
+     * @param ops        索引操作
+     */
+    private void indexBulkHandle(RedisConnection connection, List<RedisIndexOp> ops) {
+        byte[] key = ops.get(0).getKey().getBytes();
+        if (ops.get(0).isRange()) {
+            connection.zAdd(key, ops.stream().map(op -> new DefaultTuple(op.getMember().getBytes(), op.getScore())).collect(Collectors.toSet()));
+        } else {
+            connection.sAdd(key, ops.stream().map(op -> op.getMember().getBytes()).toArray(byte[][]::new));
+        }
+    }
 
+    /**
+     * Hash存储写入（写入变更字段，删除空值字段；更新时Key不存在则写入完整变更后镜像）
+     *
+     * @param connection Redis连接
+     * @param event      Redis事件
+     */
+    private void hashHandle(RedisConnection connection, RedisEvent event) {
+        byte[] key = event.getRedisKey().getBytes();
+        if (event.getHashAfterFields() != null) {
+            connection.eval(HASH_UPDATE_SCRIPT, ReturnType.INTEGER, 1, toHashUpdateArgs(key, event));
+        } else {
+            if (!event.getHashFields().isEmpty()) {
+                Map<byte[], byte[]> fields = new HashMap<>(event.getHashFields().size() * 2);
+                event.getHashFields().forEach((name, value) -> fields.put(name.getBytes(), value.getBytes()));
+                connection.hMSet(key, fields);
+            }
+            if (!event.getHashDeleteFields().isEmpty()) {
+                connection.hDel(key, event.getHashDeleteFields().stream().map(String::getBytes).toArray(byte[][]::new));
+            }
+            if (event.getExpireSeconds() > 0) {
+                connection.expire(key, event.getExpireSeconds());
+            }
+        }
+        Log.info("【Redis】更新文档 key：{}，delay：{}，fields：{}，delete：{}", event.getRedisKey(), (System.currentTimeMillis() - event.getExecuteTime()) + "/ms", event.getHashFields(), event.getHashDeleteFields());
+    }
+
+    /**
+     * Hash更新脚本参数（Key，过期时间，变更字段，删除字段，完整字段）
+     */
+    private static byte[][] toHashUpdateArgs(byte[] key, RedisEvent event) {
+        List<byte[]> args = new ArrayList<>(5 + (event.getHashFields().size() + event.getHashAfterFields().size()) * 2 + event.getHashDeleteFields().size());
+        args.add(key);
+        args.add(String.valueOf(event.getExpireSeconds()).getBytes());
+        args.add(String.valueOf(event.getHashFields().size()).getBytes());
+        event.getHashFields().forEach((name, value) -> {
+            args.add(name.getBytes());
+            args.add(value.getBytes());
+        });
+        args.add(String.valueOf(event.getHashDeleteFields().size()).getBytes());
+        event.getHashDeleteFields().forEach(name -> args.add(name.getBytes()));
+        args.add(String.valueOf(event.getHashAfterFields().size()).getBytes());
+        event.getHashAfterFields().forEach((name, value) -> {
+            args.add(name.getBytes());
+            args.add(value.getBytes());
+        });
+        return args.toArray(new byte[0][]);
+    }
 }
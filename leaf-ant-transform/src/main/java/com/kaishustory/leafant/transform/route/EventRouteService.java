@@ -13,6 +13,7 @@
 package com.kaishustory.leafant.transform.route;
 
 import com.kaishustory.leafant.common.model.*;
+import com.kaishustory.leafant.common.utils.Log;
 import com.kaishustory.leafant.common.utils.Option;
 import com.kaishustory.leafant.mapping.cache.EsMappingCache;
 import com.kaishustory.leafant.mapping.cache.MqMappingCache;
@@ -22,20 +23,30 @@ import com.kaishustory.leafant.transform.es.model.EsEvent;
 import com.kaishustory.leafant.transform.es.service.EsTransformService;
 import com.kaishustory.leafant.transform.mq.service.MqTransformService;
 import com.kaishustory.leafant.transform.mysql.model.MySQLEvent;
+import com.kaishustory.leafant.transform.mysql.service.MySQLReshardService;
 import com.kaishustory.leafant.transform.mysql.service.MySQLTransformService;
 import com.kaishustory.leafant.transform.redis.model.RedisEvent;
 import com.kaishustory.leafant.transform.redis.service.RedisTransformService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
 
 import static com.kaishustory.leafant.common.constants.MappingConstants.*;
 
 /**
  * 事件路由
+ * <p>
+ * 按表预先生成路由计划（同步目标及绑定映射的转换处理），映射重新加载后失效重建，事件按表分组后只需一次哈希查找。
+ * <p>
+ * 同步事件按目标类型（Redis、ES、MySQL、MQ）提交到各自的线程池并行执行（队列相互隔离），整批完成后返回：
+ * 1、批次耗时为最慢目标耗时，而不是各目标耗时之和；
+ * 2、同一消费线程的下一批次在本批次全部完成后执行，同表事件保持顺序；
+ * 3、目标队列已满时，该目标任务在其他目标提交后由调用线程执行，不阻塞其他目标；
+ * 4、任一目标失败时，等待其他目标完成后抛出异常（由消费方转为单条处理）。
  **/
 @Component
 public class EventRouteService {
@@ -88,6 +99,43 @@ public class EventRouteService {
     @Autowired
     private MySQLTransformService mysqlTransformService;
 
+    /**
+     * MySQL重新分表删除复核
+     */
+    @Autowired
+    private MySQLReshardService mysqlReshardService;
+
+    /**
+     * 每个目标类型线程数
+     */
+    @Value("${route.sink.threads:8}")
+    private int sinkThreads;
+
+    /**
+     * 每个目标类型队列长度
+     */
+    @Value("${route.sink.queue:200}")
+    private int sinkQueue;
+
+    /**
+     * 队列统计输出间隔（毫秒）
+     */
+    private static final long STATS_INTERVAL = 60 * 1000L;
+
+    /**
+     * 上次队列统计输出时间
+     */
+    private volatile long lastStatsTime = 0;
+
+    /**
+     * 目标线程池 <目标类型，线程池>
+     */
+    private final Map<String, ThreadPoolExecutor> sinkPools = new ConcurrentHashMap<>();
+
+    /**
+     * 路由计划表（映射版本变化时整体替换）
+     */
+    private volatile PlanTable planTable = new PlanTable(-1);
 
     /**
      * 事件路由转发
@@ -96,78 +144,324 @@ public class EventRouteService {
      */
     public void route(Event... allEventList) {
 
+        PlanTable table = getPlanTable();
+        // 同步事件任务 <同步目标，事件列表>
+        List<Map.Entry<RoutePlan.Target, List<Event>>> tasks = new ArrayList<>();
         // 按 数据库实例+数据库+表名+来源，分组处理
-        Arrays.stream(allEventList).collect(Collectors.groupingBy(e -> String.format("%s_%s_%s_%s", e.getServer(), e.getDatabase(), e.getTable(), e.getSource()))).values()
-                .forEach(eventList -> {
-                    if (eventList != null && eventList.size() > 0) {
-                        Event e = eventList.get(0);
-
-                        /** Redis数据转换处理 **/
-                        if (SOURCE_CANAL.equals(e.getSource()) || (SOURCE_INIT.equals(e.getSource()) && TYPE_REDIS.equals(e.getTarget()))) {
-                            // 查询事件是否有同步映射配置
-                            Option<List<RedisSyncConfig>> redisMappingList = redisMappingCache.getMapping(e.getServer(), e.getDatabase(), e.getTable());
-                            if (redisMappingList.exist()) {
-                                redisMappingList.get().stream()
-                                        // 初始化事件，只执行指定映射
-                                        .filter(mapping -> (!SOURCE_INIT.equals(e.getSource()) || mapping.getId().equals(e.getMappingId())))
-                                        .forEach(mapping -> {
-                                            // Redis事件处理
-                                            redisTransformService.eventHandle(mapping.getRedisDataSourceConfig(), eventList.stream().map(event -> new RedisEvent(event, mapping)).collect(Collectors.toList()));
-                                        });
-                            }
-                        }
-
-                        /** ElasticSearch数据转换处理 **/
-                        if (SOURCE_CANAL.equals(e.getSource()) || (SOURCE_INIT.equals(e.getSource()) && TYPE_ES.equals(e.getTarget()))) {
-                            // 查询事件是否有同步映射配置
-                            Option<List<EsSyncMappingTable>> esMappingList = SOURCE_INIT.equals(e.getSource()) ?
-                                    esMappingCache.getMapping(e.getMappingId(), e.getTable()) :
-                                    esMappingCache.getMapping(e.getServer(), e.getDatabase(), e.getTable());
-                            if (esMappingList.exist()) {
-                                esMappingList.get().forEach(mapping -> {
-                                    if (mapping.isMult()) {
-                                        // ES多表事件处理
-                                        esTransformService.multEventHandle(mapping.getEsAddr(), eventList.stream().map(event -> new EsEvent(event, mapping)).collect(Collectors.toList()), e.getSource());
-                                    } else {
-                                        // ES单表事件处理
-                                        esTransformService.singleEventHandle(mapping.getEsAddr(), eventList.stream().map(event -> new EsEvent(event, mapping)).collect(Collectors.toList()), e.getSource());
-                                    }
-                                });
-                            }
-                        }
-
-                        /** MySQL数据转换处理 **/
-                        if (SOURCE_CANAL.equals(e.getSource()) || (SOURCE_INIT.equals(e.getSource()) && TYPE_MYSQL.equals(e.getTarget()))) {
-                            // 查询事件是否有同步映射配置
-                            Option<List<MySQLSyncConfig>> mysqlMappingList = mysqlMappingCache.getMapping(e.getServer(), e.getDatabase(), e.getTable());
-                            if (mysqlMappingList.exist()) {
-                                mysqlMappingList.get().stream()
-                                        // 初始化事件，只执行指定映射
-                                        .filter(mapping -> (!SOURCE_INIT.equals(e.getSource()) || mapping.getId().equals(e.getMappingId())))
-                                        .forEach(mapping -> {
-                                            // MySQL事件处理
-                                            mysqlTransformService.eventHandle(eventList.stream().map(event -> new MySQLEvent(event, mapping)).collect(Collectors.toList()));
-                                        });
-                            }
-                        }
-
-                        /** MQ数据转换处理 **/
-                        if (SOURCE_CANAL.equals(e.getSource()) || (SOURCE_INIT.equals(e.getSource()) && TYPE_MQ.equals(e.getTarget()))) {
-                            Option<List<MqSyncConfig>> mqMappingList = mqMappingCache.getMapping(e.getServer(), e.getDatabase(), e.getTable());
-                            if (mqMappingList.exist()) {
-                                mqMappingList.get().stream()
-                                        // 初始化事件，只执行指定映射
-                                        .filter(mapping -> (!SOURCE_INIT.equals(e.getSource()) || mapping.getId().equals(e.getMappingId())))
-                                        .forEach(mapping -> {
-                                            // MQ事件处理
-                                            mqTransformService.eventHandle(mapping, eventList);
-                                        });
-
-                            }
-                        }
+        group(allEventList).forEach((key, eventList) -> {
+            Event e = eventList.get(0);
+            RoutePlan plan = table.getPlan(key);
+            if (SOURCE_CANAL.equals(e.getSource())) {
+                // 同步事件，按路由计划分发到各目标
+                plan.getTargets().forEach(target -> tasks.add(new AbstractMap.SimpleImmutableEntry<>(target, eventList)));
+
+            } else if (SOURCE_INIT.equals(e.getSource())) {
+                if (TYPE_ES.equals(e.getTarget())) {
+                    // ES初始化事件，按映射ID查询映射（包括子表副本映射）
+                    Option<List<EsSyncMappingTable>> esMappingList = esMappingCache.getMapping(e.getMappingId(), e.getTable());
+                    if (esMappingList.exist()) {
+                        esMappingList.get().stream()
+                                .filter(mapping -> !mapping.getConfig().isLocalCopy())
+                                .forEach(mapping -> esEventHandle(mapping, eventList, SOURCE_INIT));
                     }
-                });
+                } else {
+                    // 初始化事件，只执行指定映射
+                    plan.getTargets().stream()
+                            .filter(target -> target.getType().equals(e.getTarget()) && target.getMappingId().equals(e.getMappingId()))
+                            .forEach(target -> target.handle(eventList));
+                }
+            }
+        });
+
+        dispatch(tasks);
+    }
+
+    /**
+     * 同步事件分发（按目标类型合并为一个任务，类型内按事件顺序依次执行各目标，各类型并行执行，等待全部完成）
+     * <p>
+     * 同一目标类型的多个映射可能写入同一索引/表（如主表、子表写入同一ES索引），类型内顺序执行，保持与单线程分发一致的顺序。
+     *
+     * @param tasks 任务列表 <同步目标，事件列表>
+     */
+    private void dispatch(List<Map.Entry<RoutePlan.Target, List<Event>>> tasks) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        // 按目标类型分组（保持任务顺序）
+        Map<String, List<Map.Entry<RoutePlan.Target, List<Event>>>> typeTasks = new LinkedHashMap<>();
+        tasks.forEach(task -> typeTasks.computeIfAbsent(task.getKey().getType(), type -> new ArrayList<>()).add(task));
+        if (typeTasks.size() == 1) {
+            // 单一目标类型，直接执行
+            handleInOrder(tasks);
+            return;
+        }
+
+        // step 1：每个目标类型一个任务，提交到目标线程池，队列已满的任务暂存
+        List<Future<?>> futures = new ArrayList<>(typeTasks.size());
+        List<List<Map.Entry<RoutePlan.Target, List<Event>>>> overflow = new ArrayList<>();
+        typeTasks.forEach((type, sinkTasks) -> {
+            try {
+                futures.add(getSinkPool(type).submit(() -> handleInOrder(sinkTasks)));
+            } catch (RejectedExecutionException ex) {
+                overflow.add(sinkTasks);
+            }
+        });
+
+        // step 2：队列已满的任务由调用线程执行（其他目标类型已提交，不受影响）
+        RuntimeException error = null;
+        for (List<Map.Entry<RoutePlan.Target, List<Event>>> sinkTasks : overflow) {
+            Log.warn("【路由】目标队列已满，由调用线程执行。type：{}，targets：{}", sinkTasks.get(0).getKey().getType(), sinkTasks.size());
+            try {
+                handleInOrder(sinkTasks);
+            } catch (RuntimeException ex) {
+                error = ex;
+            }
+        }
+
+        // step 3：等待全部目标完成（中断时继续等待，避免调用方重试时与未完成的任务并发写入）
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (ExecutionException ex) {
+                    error = ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : new RuntimeException(ex.getCause());
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            if (error == null) {
+                error = new RuntimeException("事件路由等待中断！");
+            }
+        }
+        logQueueDepth();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * 按顺序执行目标（任一目标失败时停止，由调用方重新消费）
+     *
+     * @param tasks 任务列表 <同步目标，事件列表>
+     */
+    private void handleInOrder(List<Map.Entry<RoutePlan.Target, List<Event>>> tasks) {
+        tasks.forEach(task -> task.getKey().handle(task.getValue()));
+    }
+
+    /**
+     * 获得目标线程池（队列已满时拒绝，由调用线程在提交其他目标后执行）
+     *
+     * @param type 目标类型
+     * @return 线程池
+     */
+    private ThreadPoolExecutor getSinkPool(String type) {
+        ThreadPoolExecutor pool = sinkPools.get(type);
+        if (pool == null) {
+            synchronized (this) {
+                pool = sinkPools.computeIfAbsent(type, t -> new ThreadPoolExecutor(sinkThreads, sinkThreads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(sinkQueue), new ThreadPoolExecutor.AbortPolicy()));
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * 获得目标队列深度
+     *
+     * @return 队列深度 <目标类型，等待任务数>
+     */
+    public Map<String, Integer> getQueueDepth() {
+        Map<String, Integer> depth = new TreeMap<>();
+        sinkPools.forEach((type, pool) -> depth.put(type, pool.getQueue().size()));
+        return depth;
+    }
+
+    /**
+     * 按间隔输出目标队列深度、执行中任务数
+     */
+    private void logQueueDepth() {
+        long now = System.currentTimeMillis();
+        if (now - lastStatsTime >= STATS_INTERVAL) {
+            synchronized (this) {
+                if (now - lastStatsTime < STATS_INTERVAL) {
+                    return;
+                }
+                lastStatsTime = now;
+                sinkPools.forEach((type, pool) -> Log.info("【路由】目标队列 type：{}，queue：{}，active：{}，completed：{}", type, pool.getQueue().size(), pool.getActiveCount(), pool.getCompletedTaskCount()));
+            }
+        }
+    }
+
+    /**
+     * 本地副本事件路由（广播消费，只处理本地副本配置）
+     *
+     * @param allEventList 事件列表
+     */
+    public void routeLocalCopy(Event... allEventList) {
+
+        PlanTable table = getPlanTable();
+        // 按 数据库实例+数据库+表名+来源，分组处理
+        group(allEventList).forEach((key, eventList) -> {
+            Event e = eventList.get(0);
+            if (SOURCE_CANAL.equals(e.getSource())) {
+                table.getPlan(key).getLocalCopyTargets().forEach(target -> target.handle(eventList));
+
+            } else if (SOURCE_INIT.equals(e.getSource()) && TYPE_ES.equals(e.getTarget())) {
+                Option<List<EsSyncMappingTable>> esMappingList = esMappingCache.getMapping(e.getMappingId(), e.getTable());
+                if (esMappingList.exist()) {
+                    esMappingList.get().stream()
+                            .filter(mapping -> mapping.getConfig().isLocalCopy())
+                            .forEach(mapping -> esTransformService.localCopyEventHandle(convert(eventList, event -> new EsEvent(event, mapping)), SOURCE_INIT));
+                }
+            }
+        });
+    }
+
+    /**
+     * 事件分组（保持事件顺序）
+     *
+     * @param allEventList 事件列表
+     * @return 分组事件 <路由Key，事件列表>
+     */
+    private Map<RouteKey, List<Event>> group(Event... allEventList) {
+        Map<RouteKey, List<Event>> groups = new LinkedHashMap<>();
+        for (Event event : allEventList) {
+            groups.computeIfAbsent(new RouteKey(event), key -> new ArrayList<>()).add(event);
+        }
+        return groups;
+    }
+
+    /**
+     * 获得路由计划表（映射重新加载后替换为新表）
+     *
+     * @return 路由计划表
+     */
+    private PlanTable getPlanTable() {
+        long version = esMappingCache.getVersion() + redisMappingCache.getVersion() + mysqlMappingCache.getVersion() + mqMappingCache.getVersion();
+        PlanTable table = planTable;
+        if (table.version != version) {
+            table = new PlanTable(version);
+            planTable = table;
+        }
+        return table;
+    }
+
+    /**
+     * 生成路由计划
+     *
+     * @param key 路由Key
+     * @return 路由计划
+     */
+    private RoutePlan buildPlan(RouteKey key) {
+        List<RoutePlan.Target> targets = new ArrayList<>();
+        List<RoutePlan.Target> localCopyTargets = new ArrayList<>();
+
+        /** Redis数据转换处理 **/
+        Option<List<RedisSyncConfig>> redisMappingList = redisMappingCache.getMapping(key.getServer(), key.getDatabase(), key.getTable());
+        if (redisMappingList.exist()) {
+            redisMappingList.get().forEach(mapping -> targets.add(new RoutePlan.Target(TYPE_REDIS, mapping.getId(), events ->
+                    redisTransformService.eventHandle(mapping, convert(events, event -> new RedisEvent(event, mapping)))
+            )));
+        }
+
+        /** ElasticSearch数据转换处理 **/
+        Option<List<EsSyncMappingTable>> esMappingList = esMappingCache.getMapping(key.getServer(), key.getDatabase(), key.getTable());
+        if (esMappingList.exist()) {
+            esMappingList.get().forEach(mapping -> {
+                if (mapping.getConfig().isLocalCopy()) {
+                    // 本地副本由广播消费写入（各节点均需全部数据）
+                    localCopyTargets.add(new RoutePlan.Target(TYPE_ES, mapping.getConfigId(), events ->
+                            esTransformService.localCopyEventHandle(convert(events, event -> new EsEvent(event, mapping)), SOURCE_CANAL)
+                    ));
+                } else {
+                    targets.add(new RoutePlan.Target(TYPE_ES, mapping.getConfigId(), events -> esEventHandle(mapping, events, SOURCE_CANAL)));
+                }
+            });
+        }
+
+        /** MySQL数据转换处理 **/
+        Option<List<MySQLSyncConfig>> mysqlMappingList = mysqlMappingCache.getMapping(key.getServer(), key.getDatabase(), key.getTable());
+        if (mysqlMappingList.exist()) {
+            mysqlMappingList.get().forEach(mapping -> targets.add(new RoutePlan.Target(TYPE_MYSQL, mapping.getId(), events -> {
+                List<MySQLEvent> mysqlEvents = new ArrayList<>(events.size());
+                events.forEach(event -> mysqlEvents.addAll(MySQLEvent.of(event, mapping)));
+                // 重新分表期间，写入前记录删除（补写完成后复核）
+                mysqlReshardService.recordDeletes(mapping, events);
+                mysqlTransformService.eventHandle(mysqlEvents);
+            })));
+        }
+
+        /** MQ数据转换处理 **/
+        Option<List<MqSyncConfig>> mqMappingList = mqMappingCache.getMapping(key.getServer(), key.getDatabase(), key.getTable());
+        if (mqMappingList.exist()) {
+            mqMappingList.get().forEach(mapping -> targets.add(new RoutePlan.Target(TYPE_MQ, mapping.getId(), events ->
+                    mqTransformService.eventHandle(mapping, events)
+            )));
+        }
+
+        return new RoutePlan(targets, localCopyTargets);
+    }
+
+    /**
+     * ES事件处理
+     *
+     * @param mapping ES映射
+     * @param events  事件列表
+     * @param source  事件来源
+     */
+    private void esEventHandle(EsSyncMappingTable mapping, List<Event> events, String source) {
+        if (mapping.isMult()) {
+            // ES多表事件处理
+            esTransformService.multEventHandle(mapping.getEsAddr(), convert(events, event -> new EsEvent(event, mapping)), source);
+        } else {
+            // ES单表事件处理
+            esTransformService.singleEventHandle(mapping.getEsAddr(), convert(events, event -> new EsEvent(event, mapping)), source);
+        }
+    }
+
+    /**
+     * 事件转换
+     *
+     * @param events    事件列表
+     * @param converter 转换
+     * @return 转换后事件列表
+     */
+    private static <T> List<T> convert(List<Event> events, Function<Event, T> converter) {
+        List<T> result = new ArrayList<>(events.size());
+        for (Event event : events) {
+            result.add(converter.apply(event));
+        }
+        return result;
+    }
+
+    /**
+     * 路由计划表（同一映射版本）
+     */
+    private class PlanTable {
+
+        /**
+         * 映射版本
+         */
+        private final long version;
+
+        /**
+         * 路由计划 <路由Key，路由计划>
+         */
+        private final Map<RouteKey, RoutePlan> plans = new ConcurrentHashMap<>();
+
+        PlanTable(long version) {
+            this.version = version;
+        }
 
+        RoutePlan getPlan(RouteKey key) {
+            RoutePlan plan = plans.get(key);
+            return plan != null ? plan : plans.computeIfAbsent(key, EventRouteService.this::buildPlan);
+        }
     }
 
 }
@@ -0,0 +1,70 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.route;
+
+import com.kaishustory.leafant.common.model.Event;
+
+import java.util.Objects;
+
+/**
+ * 路由Key（数据库实例+数据库+表名+来源，不拼接字符串，哈希值预先计算）
+ **/
+final class RouteKey {
+
+    private final String server;
+    private final String database;
+    private final String table;
+    private final String source;
+    private final int hash;
+
+    RouteKey(Event event) {
+        this.server = event.getServer();
+        this.database = event.getDatabase();
+        this.table = event.getTable();
+        this.source = event.getSource();
+        this.hash = Objects.hash(server, database, table, source);
+    }
+
+    String getServer() {
+        return server;
+    }
+
+    String getDatabase() {
+        return database;
+    }
+
+    String getTable() {
+        return table;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RouteKey)) {
+            return false;
+        }
+        RouteKey other = (RouteKey) o;
+        return hash == other.hash
+                && Objects.equals(table, other.table)
+                && Objects.equals(database, other.database)
+                && Objects.equals(server, other.server)
+                && Objects.equals(source, other.source);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.route;
+
+import com.kaishustory.leafant.common.model.Event;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 路由计划（按表预先生成的同步目标及转换处理，映射重新加载后失效重建）
+ **/
+final class RoutePlan {
+
+    /**
+     * 同步目标（Redis、ES、MySQL、MQ，按目标类型并行执行）
+     */
+    private final List<Target> targets;
+
+    /**
+     * 本地副本目标
+     */
+    private final List<Target> localCopyTargets;
+
+    RoutePlan(List<Target> targets, List<Target> localCopyTargets) {
+        this.targets = Collections.unmodifiableList(targets);
+        this.localCopyTargets = Collections.unmodifiableList(localCopyTargets);
+    }
+
+    List<Target> getTargets() {
+        return targets;
+    }
+
+    List<Target> getLocalCopyTargets() {
+        return localCopyTargets;
+    }
+
+    /**
+     * 同步目标
+     */
+    static final class Target {
+
+        /**
+         * 目标类型
+         */
+        private final String type;
+
+        /**
+         * 映射ID
+         */
+        private final String mappingId;
+
+        /**
+         * 转换处理（映射配置已绑定）
+         */
+        private final Consumer<List<Event>> handler;
+
+        Target(String type, String mappingId, Consumer<List<Event>> handler) {
+            this.type = type;
+            this.mappingId = mappingId;
+            this.handler = handler;
+        }
+
+        String getType() {
+            return type;
+        }
+
+        String getMappingId() {
+            return mappingId;
+        }
+
+        void handle(List<Event> events) {
+            handler.accept(events);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.benchmark;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * 基准测试工具（单线程，预热后统计每次操作耗时、内存分配）
+ * <p>
+ * 以 main 方法运行，无需额外依赖，例如：
+ * mvn -pl leaf-ant-transform test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=...
+ **/
+final class Bench {
+
+    /**
+     * 预热次数
+     */
+    static final int WARMUP = 200_000;
+
+    /**
+     * 测量次数
+     */
+    static final int ITERATIONS = 1_000_000;
+
+    /**
+     * 防止结果被JIT消除
+     */
+    static volatile Object sink;
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Bench() {
+    }
+
+    /**
+     * 执行基准测试，输出 耗时(ns/op)、内存分配(B/op)
+     *
+     * @param name 名称
+     * @param op   操作（返回值写入 sink）
+     */
+    static void run(String name, Op op) throws Exception {
+        run(name, WARMUP, ITERATIONS, op);
+    }
+
+    /**
+     * 执行基准测试，输出 耗时(ns/op)、内存分配(B/op)
+     *
+     * @param name       名称
+     * @param warmup     预热次数
+     * @param iterations 测量次数
+     * @param op         操作（返回值写入 sink）
+     */
+    static void run(String name, int warmup, int iterations, Op op) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            sink = op.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long bytes = THREAD_BEAN.getThreadAllocatedBytes(threadId);
+        long begin = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink = op.run();
+        }
+        long nanos = System.nanoTime() - begin;
+        bytes = THREAD_BEAN.getThreadAllocatedBytes(threadId) - bytes;
+        System.out.printf("%-40s %10.1f ns/op %10.1f B/op%n", name, nanos / (double) iterations, bytes / (double) iterations);
+    }
+
+    /**
+     * 基准操作
+     */
+    interface Op {
+        Object run() throws Exception;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.benchmark;
+
+import com.kaishustory.leafant.common.utils.JsonUtils;
+import com.kaishustory.leafant.transform.es.model.CopyRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 子表副本缓存记录基准测试：二进制记录（CopyRecord） vs 原实现（JSON字符串）
+ * <p>
+ * 子表副本 20 个字段（字符串、数字、含转义字符的值各占一部分），对比每条记录字节数（Redis value 大小）及编码、解码耗时与内存分配。
+ **/
+public class CopyRecordBenchmark {
+
+    private static final int FIELDS = 20;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> columns = new HashMap<>();
+        for (int i = 0; i < FIELDS; i++) {
+            columns.put("child_field_" + i, i % 3 == 0 ? "value \"" + i + "\"\n-中文" : i % 3 == 1 ? String.valueOf(1000000L * i) : null);
+        }
+        byte[] json = JsonUtils.toJson(columns).getBytes(StandardCharsets.UTF_8);
+        byte[] binary = CopyRecord.encode(columns);
+        System.out.printf("%-24s %6d B/record%n", "json", json.length);
+        System.out.printf("%-24s %6d B/record%n", "CopyRecord", binary.length);
+
+        Bench.run("json encode", () -> JsonUtils.toJson(columns).getBytes(StandardCharsets.UTF_8));
+        Bench.run("CopyRecord encode", () -> CopyRecord.encode(columns));
+        Bench.run("json decode", () -> JsonUtils.fromJson(new String(json, StandardCharsets.UTF_8), HashMap.class));
+        Bench.run("CopyRecord decode", () -> CopyRecord.decode(binary));
+        // 升级前写入的 JSON 缓存经 CopyRecord 兼容解析
+        Bench.run("CopyRecord decode(json)", () -> CopyRecord.decode(json));
+    }
+}
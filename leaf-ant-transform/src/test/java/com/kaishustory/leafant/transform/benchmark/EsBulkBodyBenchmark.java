@@ -0,0 +1,95 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.kaishustory.leafant.common.utils.JsonUtils;
+import com.kaishustory.leafant.transform.es.model.EsBulkBody;
+import io.searchbox.action.BulkableAction;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.Index;
+import io.searchbox.core.Update;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * ES批处理请求体基准测试：NDJSON直接写入 vs 原实现（Jest命令对象 + Gson序列化）
+ * <p>
+ * 每批 100 条命令（新增文档 20 个字段、更新文档 3 个字段各半），对比生成请求体的耗时与内存分配。
+ **/
+public class EsBulkBodyBenchmark {
+
+    private static final String INDEX = "bench_index";
+    private static final String TYPE = "bench_type";
+    private static final int BATCH = 100;
+    private static final int FIELDS = 20;
+
+    public static void main(String[] args) throws Exception {
+        List<Map<String, Object>> docs = new ArrayList<>(BATCH);
+        List<Map<String, Object>> updates = new ArrayList<>(BATCH);
+        for (int d = 0; d < BATCH; d++) {
+            Map<String, Object> doc = new HashMap<>();
+            for (int i = 0; i < FIELDS; i++) {
+                doc.put("field_" + i, i % 2 == 0 ? "value \"" + d + "\"\n-" + i : String.valueOf(d * i));
+            }
+            docs.add(doc);
+            Map<String, Object> update = new HashMap<>();
+            for (int i = 0; i < 3; i++) {
+                update.put("field_" + i, "updated-" + d + "-" + i);
+            }
+            updates.add(update);
+        }
+        Gson gson = new GsonBuilder().create();
+
+        Bench.run("jest actions + gson", 5_000, 50_000, () -> {
+            List<BulkableAction> actions = new ArrayList<>(BATCH);
+            for (int d = 0; d < BATCH; d++) {
+                String id = String.valueOf(d);
+                if (d % 2 == 0) {
+                    actions.add(new Index.Builder(docs.get(d)).index(INDEX).type(TYPE).id(id).build());
+                } else {
+                    actions.add(new Update.Builder(legacyUpdate(updates.get(d))).index(INDEX).type(TYPE).id(id).build());
+                }
+            }
+            return new Bulk.Builder().defaultIndex(INDEX).defaultType(TYPE).addAction(actions).build().getData(gson);
+        });
+        Bench.run("EsBulkBody", 5_000, 50_000, () -> {
+            EsBulkBody body = EsBulkBody.open();
+            for (int d = 0; d < BATCH; d++) {
+                String id = String.valueOf(d);
+                if (d % 2 == 0) {
+                    body.index(INDEX, TYPE, id, docs.get(d));
+                } else {
+                    body.update(INDEX, TYPE, id, updates.get(d));
+                }
+            }
+            return body.build();
+        });
+    }
+
+    /**
+     * 原实现：更新命令结构经 JSON 序列化
+     */
+    private static String legacyUpdate(Map<String, Object> fields) {
+        Map<String, Object> script = new HashMap<>();
+        script.put("source", fields.keySet().stream().map(field -> "ctx._source." + field + " = params." + field).collect(Collectors.joining("; ")));
+        script.put("lang", "painless");
+        script.put("params", fields);
+        Map<String, Object> update = new HashMap<>();
+        update.put("script", script);
+        update.put("upsert", fields);
+        return JsonUtils.toJson(update);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.benchmark;
+
+import com.kaishustory.leafant.common.model.EsSyncMappingField;
+import com.kaishustory.leafant.common.model.EsSyncMappingTable;
+import com.kaishustory.leafant.common.model.EventColumn;
+import com.kaishustory.leafant.transform.es.model.EsProjectionPlan;
+
+import java.sql.Types;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * ES字段投影基准测试：投影计划 vs 原实现（列值Map + 字段映射流）
+ * <p>
+ * 模拟 30 列的表，映射其中 20 个字段，对比每个事件构建ES文档的耗时与内存分配。
+ **/
+public class EsProjectionBenchmark {
+
+    private static final int COLUMNS = 30;
+    private static final int FIELDS = 20;
+
+    public static void main(String[] args) throws Exception {
+        EsSyncMappingTable mapping = new EsSyncMappingTable();
+        List<EsSyncMappingField> fieldMapping = new ArrayList<>();
+        for (int i = 0; i < FIELDS; i++) {
+            fieldMapping.add(new EsSyncMappingField("field_" + i, i % 2 == 0 ? "varchar" : "int", i % 2 == 0 ? Types.VARCHAR : Types.INTEGER, true, false, "col_" + i));
+        }
+        mapping.setFieldMapping(fieldMapping);
+        mapping.setChildTable(new ArrayList<>());
+
+        List<EventColumn> columns = new ArrayList<>();
+        for (int i = 0; i < COLUMNS; i++) {
+            columns.add(new EventColumn(i == 0, i, "col_" + i, "value-" + i, "varchar(64)", Types.VARCHAR, true, false));
+        }
+
+        EsProjectionPlan plan = EsProjectionPlan.of(mapping);
+        Bench.run("legacy map + stream", () -> legacy(columns, mapping));
+        Bench.run("projection plan", () -> {
+            Map<String, Object> esData = new HashMap<>(plan.getDocFieldCount() * 4 / 3 + 1);
+            plan.project(columns, esData);
+            return esData;
+        });
+        Bench.run("legacy updated columns", () -> legacyUpdated(columns, mapping));
+        Bench.run("projection plan updated columns", () -> plan.projectUpdated(columns));
+    }
+
+    /**
+     * 原实现：列值Map -> 字段映射流
+     */
+    private static Map<String, Object> legacy(List<EventColumn> columnList, EsSyncMappingTable mapping) {
+        Map<String, Object> esData = new HashMap<>();
+        Map<String, Object> mysqlData = new HashMap<>(columnList.stream().collect(Collectors.toMap(EventColumn::getName, e -> e.getValue() != null ? e.getValue() : "")));
+        mapping.getFieldMapping().stream().filter(EsSyncMappingField::isSync).forEach(field -> {
+            Object value = mysqlData.get(field.getSourceColumn());
+            esData.put(field.getField(), value instanceof String && ((String) value).getBytes().length >= EsProjectionPlan.MAX_STRING_BYTES ? ((String) value).substring(0, EsProjectionPlan.MAX_STRING_BYTES / 4) : value);
+        });
+        return esData;
+    }
+
+    /**
+     * 原实现：每个事件生成 列 -> 字段 映射，再转换变更列
+     */
+    private static Map<String, Object> legacyUpdated(List<EventColumn> columnList, EsSyncMappingTable mapping) {
+        Map<String, String> col2FieldMap = mapping.getFieldMapping().stream().collect(Collectors.toMap(EsSyncMappingField::getSourceColumn, EsSyncMappingField::getField, (a, b) -> a));
+        return columnList.stream().filter(EventColumn::isUpdated).collect(Collectors.toMap(col -> col2FieldMap.getOrDefault(col.getName(), col.getName()), col -> (Object) col.getValue(), (a, b) -> a));
+    }
+}
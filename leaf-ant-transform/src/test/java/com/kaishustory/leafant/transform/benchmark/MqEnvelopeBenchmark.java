@@ -0,0 +1,77 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.benchmark;
+
+import com.kaishustory.leafant.common.model.Event;
+import com.kaishustory.leafant.common.model.EventColumn;
+import com.kaishustory.leafant.common.model.MqSchema;
+import com.kaishustory.leafant.common.utils.JsonUtils;
+import com.kaishustory.leafant.common.utils.MqEnvelopeCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static com.kaishustory.leafant.common.constants.EventConstants.TYPE_INSERT;
+import static com.kaishustory.leafant.common.constants.EventConstants.TYPE_UPDATE;
+
+/**
+ * MQ转发格式基准测试：事件列表JSON（原格式） vs 精简JSON vs 二进制（MqEnvelopeCodec）
+ * <p>
+ * 每批 100 条事件（20 个字段，新增、修改3个字段各半），对比每批消息字节数及消费方解码耗时与内存分配。
+ **/
+public class MqEnvelopeBenchmark {
+
+    private static final int BATCH = 100;
+    private static final int FIELDS = 20;
+
+    public static void main(String[] args) throws Exception {
+        List<Event> events = new ArrayList<>(BATCH);
+        for (int d = 0; d < BATCH; d++) {
+            boolean insert = d % 2 == 0;
+            List<EventColumn> columns = new ArrayList<>(FIELDS);
+            for (int i = 0; i < FIELDS; i++) {
+                String value = i % 3 == 0 ? "value \"" + d + "\"\n-中文" : i % 3 == 1 ? String.valueOf(1000000L * d + i) : null;
+                columns.add(new EventColumn(i == 0, i, "field_" + i, value, "varchar(64)", 12, insert || (i > 0 && i <= 3), value == null));
+            }
+            events.add(new Event("MYSQL", "canal", "bench-rds", "bench_db", "bench_table", insert ? TYPE_INSERT : TYPE_UPDATE, insert ? "INSERT" : "UPDATE",
+                    String.valueOf(d), new ArrayList<>(), columns, System.currentTimeMillis(), 1L, "mysql-bin.000001", 4L + d));
+        }
+
+        // 事件列表JSON（一条消息）
+        byte[] json = JsonUtils.toJson(events).getBytes(StandardCharsets.UTF_8);
+        // 精简JSON（每条事件一条消息）
+        List<byte[]> compact = new ArrayList<>(BATCH);
+        events.forEach(event -> compact.add(MqEnvelopeCodec.encodeCompact(event)));
+        // 二进制（同一结构合并为一条消息）
+        MqSchema schema = MqEnvelopeCodec.schemaOf(events.get(0));
+        List<byte[]> rows = new ArrayList<>(BATCH);
+        events.forEach(event -> rows.add(MqEnvelopeCodec.encodeBinaryRow(schema, event)));
+        byte[] binary = MqEnvelopeCodec.encodeBinary(rows);
+
+        System.out.printf("%-24s %8d B/batch%n", "List<Event> json", json.length);
+        System.out.printf("%-24s %8d B/batch%n", "compact json", compact.stream().mapToInt(body -> body.length).sum());
+        System.out.printf("%-24s %8d B/batch%n", "binary", binary.length);
+
+        Bench.run("List<Event> json decode", 2_000, 20_000, () -> JsonUtils.fromJson(new String(json, StandardCharsets.UTF_8), Event[].class));
+        Bench.run("compact json decode", 2_000, 20_000, () -> {
+            List<Object> decoded = new ArrayList<>(BATCH);
+            for (byte[] body : compact) {
+                decoded.add(JsonUtils.fromJson(new String(body, StandardCharsets.UTF_8), HashMap.class));
+            }
+            return decoded;
+        });
+        Bench.run("binary decode", 2_000, 20_000, () -> MqEnvelopeCodec.decodeBinary(schema, binary));
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.es.dao;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+/**
+ * 本地副本存储测试
+ **/
+public class LocalCopyStoreTest {
+
+    /**
+     * 段文件大小（字节）
+     */
+    private static final int SEGMENT_SIZE = 256;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reopenReplaysRecords() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        LocalCopyStore store = open(dir);
+        store.put("a", bytes("1"));
+        store.put("b", bytes("2"));
+        store.put("b", bytes("22"));
+        store.remove("a");
+        store.flush();
+
+        LocalCopyStore reopened = open(dir);
+        assertEquals(1, reopened.size());
+        assertNull(reopened.get("a"));
+        assertEquals("22", string(reopened.get("b")));
+        assertEquals(store.getLiveBytes(), reopened.getLiveBytes());
+    }
+
+    @Test
+    public void truncateCorruptRecord() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        LocalCopyStore store = open(dir);
+        // 记录长度：记录头(12) + Key(1) + 值(1) = 14
+        store.put("a", bytes("1"));
+        store.put("b", bytes("2"));
+        store.put("c", bytes("3"));
+        store.flush();
+
+        // 破坏第二条记录的值，校验和不一致
+        corrupt(dir.resolve("g0-00000.dat"), 14 + 13);
+
+        LocalCopyStore reopened = open(dir);
+        assertEquals(1, reopened.size());
+        assertEquals("1", string(reopened.get("a")));
+        assertNull(reopened.get("b"));
+        assertNull(reopened.get("c"));
+
+        // 截断位置之后继续写入，再次重启可完整读取
+        reopened.put("d", bytes("4"));
+        reopened.flush();
+        LocalCopyStore again = open(dir);
+        assertEquals(2, again.size());
+        assertEquals("1", string(again.get("a")));
+        assertEquals("4", string(again.get("d")));
+    }
+
+    @Test
+    public void truncateDiscardsFollowingSegments() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        LocalCopyStore store = open(dir);
+        byte[] value = new byte[100];
+        for (int i = 0; i < 6; i++) {
+            store.put("k" + i, value);
+        }
+        store.flush();
+        assertTrue(Files.exists(dir.resolve("g0-00002.dat")));
+
+        // 破坏第一个段的第二条记录（记录长度：12 + 2 + 100 = 114）
+        corrupt(dir.resolve("g0-00000.dat"), 114 + 20);
+
+        LocalCopyStore reopened = open(dir);
+        assertEquals(1, reopened.size());
+        assertNotNull(reopened.get("k0"));
+        assertFalse(Files.exists(dir.resolve("g0-00001.dat")));
+        assertFalse(Files.exists(dir.resolve("g0-00002.dat")));
+    }
+
+    @Test
+    public void rejectOversizedRecord() throws IOException {
+        LocalCopyStore store = open(folder.getRoot().toPath());
+        try {
+            store.put("a", new byte[SEGMENT_SIZE]);
+            fail();
+        } catch (IOException expected) {
+            assertEquals(0, store.size());
+        }
+    }
+
+    @Test
+    public void compactionReplay() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        LocalCopyStore store = open(dir);
+        for (int i = 0; i < 40; i++) {
+            store.put("a", bytes("a" + i));
+            store.put("b", bytes("b" + i));
+        }
+        store.put("c", bytes("c"));
+        store.remove("c");
+        assertTrue(store.needsCompact());
+
+        assertTrue(store.compactIfNeeded());
+        assertFalse(store.needsCompact());
+        assertEquals(2, store.size());
+        assertEquals("a39", string(store.get("a")));
+        assertEquals("b39", string(store.get("b")));
+        assertEquals("1", new String(Files.readAllBytes(dir.resolve("CURRENT")), StandardCharsets.UTF_8));
+        assertFalse(Files.exists(dir.resolve("g0-00000.dat")));
+
+        // 压缩后继续写入，重启后按新一代段文件重建
+        store.put("b", bytes("b40"));
+        store.put("d", bytes("d"));
+        store.remove("a");
+        store.flush();
+
+        LocalCopyStore reopened = open(dir);
+        assertEquals(2, reopened.size());
+        assertNull(reopened.get("a"));
+        assertEquals("b40", string(reopened.get("b")));
+        assertEquals("d", string(reopened.get("d")));
+        assertEquals(store.getLiveBytes(), reopened.getLiveBytes());
+    }
+
+    private static LocalCopyStore open(Path dir) throws IOException {
+        LocalCopyStore store = new LocalCopyStore(dir, SEGMENT_SIZE);
+        store.open();
+        return store;
+    }
+
+    /**
+     * 翻转指定位置的字节
+     */
+    private static void corrupt(Path segment, int pos) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(pos);
+            int b = file.read();
+            file.seek(pos);
+            file.write(b ^ 0xFF);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.es.model;
+
+import com.kaishustory.leafant.common.utils.JsonUtils;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * 子表副本缓存记录编码测试
+ **/
+public class CopyRecordTest {
+
+    @Test
+    public void roundTrip() {
+        Map<String, String> columns = new HashMap<>();
+        columns.put("id", "1001");
+        columns.put("name", "value \"quoted\"\n-中文");
+        columns.put("empty", "");
+        columns.put("nullable", null);
+        columns.put(repeat('k', 200), repeat('v', 70000));
+
+        assertEquals(columns, CopyRecord.decode(CopyRecord.encode(columns)));
+    }
+
+    @Test
+    public void emptyRecord() {
+        assertEquals(new HashMap<>(), CopyRecord.decode(CopyRecord.encode(new HashMap<>())));
+    }
+
+    @Test
+    public void decodeLegacyJson() {
+        Map<String, String> columns = new HashMap<>();
+        columns.put("id", "1001");
+        columns.put("name", "中文");
+
+        assertEquals(columns, CopyRecord.decode(JsonUtils.toJson(columns).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void rejectUnknownVersion() {
+        byte[] data = CopyRecord.encode(sample());
+        data[0] = 2;
+        assertRejected(data);
+    }
+
+    @Test
+    public void rejectEmptyInput() {
+        assertRejected(new byte[0]);
+    }
+
+    @Test
+    public void rejectTruncatedInput() {
+        byte[] data = CopyRecord.encode(sample());
+        for (int len = 1; len < data.length; len++) {
+            assertRejected(Arrays.copyOf(data, len));
+        }
+    }
+
+    @Test
+    public void rejectTrailingBytes() {
+        byte[] data = CopyRecord.encode(sample());
+        assertRejected(Arrays.copyOf(data, data.length + 1));
+    }
+
+    @Test
+    public void rejectBadLengthPrefix() {
+        // 字段数 1，名称长度为 5 字节 varint（超过 int 范围）
+        assertRejected(new byte[]{1, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0});
+        // 字段数远大于剩余长度
+        assertRejected(new byte[]{1, (byte) 0xFF, (byte) 0xFF, 0x7F, 0, 0});
+    }
+
+    private static Map<String, String> sample() {
+        Map<String, String> columns = new HashMap<>();
+        columns.put("id", "1001");
+        columns.put("name", "中文");
+        columns.put("nullable", null);
+        return columns;
+    }
+
+    private static void assertRejected(byte[] data) {
+        try {
+            CopyRecord.decode(data);
+            fail("应拒绝无效记录：" + Arrays.toString(data));
+        } catch (IllegalArgumentException e) {
+            // 预期
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.mq.dao;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * 分层时间轮测试
+ **/
+public class TimingWheelTest {
+
+    /**
+     * 每层格数
+     */
+    private static final long SLOTS = 64;
+
+    /**
+     * 任务执行时间 <任务位置，执行时间>
+     */
+    private final Map<Long, Long> runTimes = new HashMap<>();
+
+    @Test
+    public void expireAtEachLevel() {
+        TimingWheel wheel = new TimingWheel(1, 0, runTimes::get);
+        // 第0层、第1层、第2层、第3层及层级边界
+        long[] delays = {1, 63, 64, 65, SLOTS * SLOTS - 1, SLOTS * SLOTS, SLOTS * SLOTS + 5, SLOTS * SLOTS * SLOTS + 7, SLOTS * SLOTS * SLOTS * 3 + 11};
+        for (int i = 0; i < delays.length; i++) {
+            add(wheel, i, delays[i]);
+        }
+        assertEquals(delays.length, wheel.size());
+        for (int i = 0; i < delays.length; i++) {
+            // 到期前一刻度不执行，到期刻度执行（高层格降级后到期）
+            assertEquals(0, wheel.advance(delays[i] - 1).size());
+            assertEquals(Collections.singletonList((long) i), toList(wheel.advance(delays[i])));
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void expireBeyondMaxSpan() {
+        TimingWheel wheel = new TimingWheel(1, 0, runTimes::get);
+        long maxSpan = SLOTS * SLOTS * SLOTS * SLOTS;
+        add(wheel, 1, maxSpan + 100);
+        assertEquals(0, wheel.advance(maxSpan - 1).size());
+        assertEquals(1, wheel.size());
+        assertEquals(0, wheel.advance(maxSpan + 99).size());
+        assertEquals(Collections.singletonList(1L), toList(wheel.advance(maxSpan + 100)));
+    }
+
+    @Test
+    public void expireInRunTimeOrder() {
+        TimingWheel wheel = new TimingWheel(1, 0, runTimes::get);
+        Random random = new Random(42);
+        for (long location = 0; location < 5000; location++) {
+            add(wheel, location, 1 + random.nextInt(300000));
+        }
+
+        long now = 0;
+        long lastRunTime = 0;
+        int expired = 0;
+        while (now < 300000) {
+            long prev = now;
+            now += 1 + random.nextInt(2000);
+            TimingWheel.LongList due = wheel.advance(now);
+            for (int i = 0; i < due.size(); i++) {
+                long runTime = runTimes.get(due.get(i));
+                // 在覆盖执行时间的推进中到期，且按执行时间顺序
+                assertTrue(runTime > prev && runTime <= now);
+                assertTrue(runTime >= lastRunTime);
+                lastRunTime = runTime;
+            }
+            expired += due.size();
+        }
+        assertEquals(5000, expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void sameTickKeepsInsertionOrder() {
+        TimingWheel wheel = new TimingWheel(1, 0, runTimes::get);
+        add(wheel, 3, 5000);
+        add(wheel, 1, 5000);
+        add(wheel, 2, 5000);
+        add(wheel, 4, 10);
+        assertEquals(Arrays.asList(4L, 3L, 1L, 2L), toList(wheel.advance(6000)));
+    }
+
+    @Test
+    public void roundUpToTick() {
+        TimingWheel wheel = new TimingWheel(1000, 10000, runTimes::get);
+        // 执行时间不足一个刻度时向上取整，不提前执行
+        add(wheel, 1, 12001);
+        assertEquals(0, wheel.advance(12999).size());
+        assertEquals(Collections.singletonList(1L), toList(wheel.advance(13000)));
+    }
+
+    @Test
+    public void pastRunTimeIsDue() {
+        TimingWheel wheel = new TimingWheel(1, 1000, runTimes::get);
+        add(wheel, 1, 500);
+        add(wheel, 2, 1000);
+        assertEquals(0, wheel.size());
+        assertEquals(Arrays.asList(1L, 2L), toList(wheel.advance(1000)));
+        assertEquals(0, wheel.advance(1000).size());
+    }
+
+    private void add(TimingWheel wheel, long location, long runTime) {
+        runTimes.put(location, runTime);
+        wheel.add(location, runTime);
+    }
+
+    private static List<Long> toList(TimingWheel.LongList list) {
+        List<Long> values = new ArrayList<>(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            values.add(list.get(i));
+        }
+        return values;
+    }
+}
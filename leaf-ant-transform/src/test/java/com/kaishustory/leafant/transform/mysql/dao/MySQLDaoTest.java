@@ -0,0 +1,179 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.mysql.dao;
+
+import com.kaishustory.leafant.common.model.Event;
+import com.kaishustory.leafant.common.model.EventColumn;
+import com.kaishustory.leafant.transform.mysql.model.MySQLEvent;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.kaishustory.leafant.common.constants.EventConstants.TYPE_DELETE;
+import static org.junit.Assert.*;
+
+/**
+ * MySQL Dao 测试（LOAD DATA 转义、删除分块）
+ **/
+public class MySQLDaoTest {
+
+    @Test
+    public void escapeLoadData() throws IOException {
+        assertEquals("a\\tb\\nc\\\\d\\re\\0f", escape("a\tb\nc\\d\re\0f"));
+        assertEquals("\\\\N", escape("\\N"));
+        assertEquals("中文,'\"", escape("中文,'\""));
+        assertEquals("\\t\\t", escape("\t\t"));
+        assertEquals("", escape(""));
+    }
+
+    @Test
+    public void deleteSingleKey() throws Exception {
+        RecordingConnection conn = new RecordingConnection();
+        dao(500).delete(conn.proxy(), "t_user", Arrays.asList(delete("1"), delete("2"), delete("3"), delete("2")));
+
+        // 3个主键（去重后），分块按2的幂取整为4，以最后一个主键补齐
+        assertEquals(Arrays.asList("delete from t_user where id in (?,?,?,?)"), conn.sqls);
+        assertEquals(Arrays.asList(Arrays.asList("1", "2", "3", "3")), conn.batches);
+    }
+
+    @Test
+    public void deleteCompositeKeyChunks() throws Exception {
+        RecordingConnection conn = new RecordingConnection();
+        List<MySQLEvent> events = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            events.add(delete("u" + i, "o" + i));
+        }
+        dao(2).delete(conn.proxy(), "t_order", events);
+
+        assertEquals(Arrays.asList("delete from t_order where (user_id,order_id) in ((?,?),(?,?))"), conn.sqls);
+        assertEquals(Arrays.asList(
+                Arrays.asList("u1", "o1", "u2", "o2"),
+                Arrays.asList("u3", "o3", "u4", "o4"),
+                Arrays.asList("u5", "o5", "u5", "o5")
+        ), conn.batches);
+    }
+
+    @Test
+    public void deleteChunkReusesStatement() throws Exception {
+        MySQLDao dao = dao(4);
+        RecordingConnection conn = new RecordingConnection();
+        List<MySQLEvent> events = new ArrayList<>();
+        for (int i = 1; i <= 9; i++) {
+            events.add(delete(String.valueOf(i)));
+        }
+        dao.delete(conn.proxy(), "t_user", events);
+
+        assertEquals(Arrays.asList("delete from t_user where id in (?,?,?,?)"), conn.sqls);
+        assertEquals(3, conn.batches.size());
+        assertEquals(Arrays.asList("9", "9", "9", "9"), conn.batches.get(2));
+    }
+
+    @Test(expected = SQLException.class)
+    public void deleteWithoutKey() throws Exception {
+        Event event = new Event();
+        event.setType(TYPE_DELETE);
+        event.setPrimaryKey("1");
+        event.setBeforeColumns(Arrays.asList(column(false, "name", "a")));
+        MySQLEvent mysqlEvent = new MySQLEvent();
+        mysqlEvent.setEvent(event);
+        dao(500).delete(new RecordingConnection().proxy(), "t_user", Arrays.asList(mysqlEvent));
+    }
+
+    private static String escape(String value) throws IOException {
+        StringWriter writer = new StringWriter();
+        MySQLDao.writeEscaped(writer, value);
+        return writer.toString();
+    }
+
+    private static MySQLDao dao(int deleteChunkSize) throws Exception {
+        MySQLDao dao = new MySQLDao();
+        Field field = MySQLDao.class.getDeclaredField("deleteChunkSize");
+        field.setAccessible(true);
+        field.setInt(dao, deleteChunkSize);
+        return dao;
+    }
+
+    private static MySQLEvent delete(String id) {
+        return delete(id, column(true, "id", id), column(false, "name", "n" + id));
+    }
+
+    private static MySQLEvent delete(String userId, String orderId) {
+        return delete(userId + ":" + orderId, column(true, "user_id", userId), column(false, "amount", "1"), column(true, "order_id", orderId));
+    }
+
+    private static MySQLEvent delete(String primaryKey, EventColumn... columns) {
+        Event event = new Event();
+        event.setType(TYPE_DELETE);
+        event.setPrimaryKey(primaryKey);
+        event.setBeforeColumns(Arrays.asList(columns));
+        MySQLEvent mysqlEvent = new MySQLEvent();
+        mysqlEvent.setEvent(event);
+        return mysqlEvent;
+    }
+
+    private static EventColumn column(boolean isKey, String name, String value) {
+        return new EventColumn(isKey, 0, name, value, "varchar(32)", 12, false, false);
+    }
+
+    /**
+     * 记录预编译语句及批次参数的连接
+     */
+    private static class RecordingConnection {
+
+        private final List<String> sqls = new ArrayList<>();
+
+        private final List<List<String>> batches = new ArrayList<>();
+
+        private List<String> params = new ArrayList<>();
+
+        Connection proxy() {
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Connection.class}, (proxy, method, args) -> {
+                if ("prepareStatement".equals(method.getName())) {
+                    sqls.add((String) args[0]);
+                    return statement();
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+        }
+
+        private PreparedStatement statement() {
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{PreparedStatement.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "setString":
+                        assertEquals(params.size() + 1, args[0]);
+                        params.add((String) args[1]);
+                        return null;
+                    case "addBatch":
+                        batches.add(params);
+                        params = new ArrayList<>();
+                        return null;
+                    case "executeBatch":
+                        return new int[batches.size()];
+                    case "close":
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.transform.redis.model;
+
+import com.kaishustory.leafant.common.model.EventColumn;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Redis内容编码测试
+ **/
+public class RedisValueCodecTest {
+
+    @Test
+    public void roundTrip() {
+        List<EventColumn> columns = columns(3);
+        assertArrayEquals(columns.toArray(), RedisValueCodec.decode(RedisValueCodec.encodeColumns(columns, false)));
+    }
+
+    @Test
+    public void roundTripSimplify() {
+        List<EventColumn> columns = columns(3);
+        EventColumn[] decoded = RedisValueCodec.decode(RedisValueCodec.encodeColumns(columns, true));
+        assertEquals(columns.size(), decoded.length);
+        for (int i = 0; i < decoded.length; i++) {
+            assertEquals(columns.get(i).getName(), decoded[i].getName());
+            assertEquals(columns.get(i).getValue(), decoded[i].getValue());
+            assertNull(decoded[i].getMysqlType());
+        }
+    }
+
+    @Test
+    public void roundTripCompressed() {
+        List<EventColumn> columns = columns(200);
+        byte[] data = RedisValueCodec.encodeColumns(columns, false);
+        byte[] compressed = RedisValueCodec.compress(data, 64);
+        assertTrue(compressed.length < data.length);
+        assertArrayEquals(columns.toArray(), RedisValueCodec.decode(compressed));
+    }
+
+    @Test
+    public void compressBelowThreshold() {
+        byte[] data = RedisValueCodec.encodeColumns(columns(1), false);
+        assertSame(data, RedisValueCodec.compress(data, data.length + 1));
+        assertSame(data, RedisValueCodec.compress(data, 0));
+    }
+
+    @Test
+    public void decodeJson() {
+        EventColumn[] decoded = RedisValueCodec.decode("{\"id\":\"1\"}".getBytes());
+        assertEquals(1, decoded.length);
+        assertEquals("id", decoded[0].getName());
+        assertEquals("1", decoded[0].getValue());
+        assertNull(RedisValueCodec.decode(new byte[0]));
+    }
+
+    @Test
+    public void rejectTruncatedBinary() {
+        byte[] data = RedisValueCodec.encodeColumns(columns(3), false);
+        for (int len = 1; len < data.length; len++) {
+            assertRejected(Arrays.copyOf(data, len));
+        }
+    }
+
+    @Test
+    public void rejectTrailingBytes() {
+        byte[] data = RedisValueCodec.encodeColumns(columns(3), false);
+        assertRejected(Arrays.copyOf(data, data.length + 1));
+    }
+
+    @Test(timeout = 10000)
+    public void rejectTruncatedCompressed() {
+        byte[] compressed = RedisValueCodec.compress(RedisValueCodec.encodeColumns(columns(200), false), 64);
+        for (int len = 1; len < compressed.length; len++) {
+            assertRejected(Arrays.copyOf(compressed, len));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void rejectCorruptCompressed() {
+        byte[] compressed = RedisValueCodec.compress(RedisValueCodec.encodeColumns(columns(200), false), 64);
+        byte[] corrupt = compressed.clone();
+        for (int i = compressed.length / 2; i < compressed.length; i++) {
+            corrupt[i] = (byte) 0xFF;
+        }
+        assertRejected(corrupt);
+    }
+
+    @Test
+    public void rejectLengthMismatch() {
+        byte[] data = RedisValueCodec.encodeColumns(columns(200), false);
+        byte[] compressed = RedisValueCodec.compress(data, 64);
+        // 原长度前缀（varint，2字节）改为小于、大于实际长度
+        byte[] shorter = compressed.clone();
+        shorter[1] = (byte) ((shorter[1] & 0x7F) == 0 ? 0xFF : shorter[1] - 1);
+        assertRejected(shorter);
+        byte[] longer = compressed.clone();
+        longer[2] = (byte) (longer[2] + 1);
+        assertRejected(longer);
+    }
+
+    private static void assertRejected(byte[] data) {
+        try {
+            RedisValueCodec.decode(data);
+            fail("应拒绝内容：" + Arrays.toString(data));
+        } catch (IllegalArgumentException expected) {
+            // 内容不完整或已损坏
+        }
+    }
+
+    private static List<EventColumn> columns(int count) {
+        List<EventColumn> columns = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            EventColumn col = new EventColumn();
+            col.setName("col_" + i);
+            col.setValue(i % 5 == 0 ? null : "value-" + i + "-中文");
+            col.setMysqlType("varchar(64)");
+            col.setSqlType(12);
+            col.setIndex(i);
+            col.setKey(i == 0);
+            col.setUpdated(i % 2 == 0);
+            col.setNull(i % 5 == 0);
+            columns.add(col);
+        }
+        return columns;
+    }
+}
@@ -134,6 +134,39 @@ public class ElasticSearchController {
         }
     }
 
+    /**
+     * 重建索引（按新索引定义创建新版本索引，全量导入完成后自动切换）
+     *
+     * @param esSyncConfig 新索引定义（id 为原映射ID）
+     * @param fromIndex    是否从现有索引复制（仅ES字段设置变更时使用，不重新读取MySQL）
+     * @return 返回结果
+     */
+    @PostMapping("/rebuildIndex")
+    public Result rebuildIndex(@RequestBody EsSyncConfig esSyncConfig, @RequestParam(defaultValue = "false") boolean fromIndex) {
+        boolean success = elasticSearchMappingService.rebuildIndex(esSyncConfig, fromIndex);
+        if (success) {
+            return new Result(Result.success, "success");
+        } else {
+            return new Result(Result.fail, "fail");
+        }
+    }
+
+    /**
+     * 切换索引（重建导入完成后，手动重试切换）
+     *
+     * @param mappingId 数据同步定义ID
+     * @return 返回结果
+     */
+    @GetMapping("/switchIndex")
+    public Result switchIndex(String mappingId) {
+        boolean success = elasticSearchMappingService.switchIndex(mappingId);
+        if (success) {
+            return new Result(Result.success, "success");
+        } else {
+            return new Result(Result.fail, "fail");
+        }
+    }
+
     /**
      * 修改同步状态
      *
@@ -0,0 +1,47 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.web.controller;
+
+import com.kaishustory.leafant.web.service.MonitorService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+
+/**
+ * 运行监控Controller
+ **/
+@RestController
+@RequestMapping("/monitor")
+public class MonitorController {
+
+    /**
+     * 运行监控
+     */
+    @Autowired
+    private MonitorService monitorService;
+
+    /**
+     * 事件路由目标队列深度
+     *
+     * @return 队列深度 <目标类型，等待任务数>（查询失败时为空）
+     */
+    @GetMapping("/routeQueue")
+    public Map routeQueue() {
+        return monitorService.routeQueueDepth();
+    }
+
+}
@@ -12,6 +12,7 @@
 
 package com.kaishustory.leafant.web.controller;
 
+import com.kaishustory.leafant.common.model.MqSchema;
 import com.kaishustory.leafant.common.model.MqSyncConfig;
 import com.kaishustory.leafant.common.utils.Page;
 import com.kaishustory.leafant.common.utils.Result;
@@ -46,6 +47,17 @@ public class MqController {
         return mqMappingService.search(sourceTable, page, pageSize);
     }
 
+    /**
+     * 二进制格式结构（消费方按消息属性 schemaId 查询字段定义后解码）
+     *
+     * @param schemaId 结构ID
+     * @return 结构描述（不存在时为空）
+     */
+    @GetMapping("/schema")
+    public MqSchema schema(@RequestParam String schemaId) {
+        return mqMappingService.findSchema(schemaId);
+    }
+
     /**
      * 创建映射
      *
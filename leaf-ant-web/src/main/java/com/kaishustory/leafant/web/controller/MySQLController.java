@@ -12,6 +12,7 @@
 
 package com.kaishustory.leafant.web.controller;
 
+import com.kaishustory.leafant.common.model.MySQLReshardChange;
 import com.kaishustory.leafant.common.model.MySQLSyncConfig;
 import com.kaishustory.leafant.common.utils.Page;
 import com.kaishustory.leafant.common.utils.Result;
@@ -91,4 +92,52 @@ public class MySQLController {
         return new Result(Result.success, "success");
     }
 
+    /**
+     * 重新分表（后台补写变更分表的记录）
+     *
+     * @param reshardChange 分表变更
+     * @return 返回结果
+     */
+    @PostMapping("/reshard")
+    public Result reshard(@RequestBody MySQLReshardChange reshardChange) {
+        boolean success = mysqlMappingService.reshard(reshardChange);
+        if (success) {
+            return new Result(Result.success, "success");
+        } else {
+            return new Result(Result.fail, "fail");
+        }
+    }
+
+    /**
+     * 继续重新分表（补写失败或中断后重新补写，完成后停止写入原分表）
+     *
+     * @param mappingId 映射ID
+     * @return 返回结果
+     */
+    @PostMapping("/resumeReshard")
+    public Result resumeReshard(@RequestParam String mappingId) {
+        boolean success = mysqlMappingService.resumeReshard(mappingId);
+        if (success) {
+            return new Result(Result.success, "success");
+        } else {
+            return new Result(Result.fail, "fail");
+        }
+    }
+
+    /**
+     * 完成重新分表（复核补写期间删除的记录，停止写入原分表）
+     *
+     * @param mappingId 映射ID
+     * @return 返回结果
+     */
+    @PostMapping("/finishReshard")
+    public Result finishReshard(@RequestParam String mappingId) {
+        boolean success = mysqlMappingService.finishReshard(mappingId);
+        if (success) {
+            return new Result(Result.success, "success");
+        } else {
+            return new Result(Result.fail, "fail");
+        }
+    }
+
 }
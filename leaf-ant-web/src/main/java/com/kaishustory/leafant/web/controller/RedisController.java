@@ -91,4 +91,37 @@ public class RedisController {
         return new Result(Result.success, "success");
     }
 
+    /**
+     * 增加分片（后台迁移新分片负责的Key）
+     *
+     * @param mappingId 数据同步定义ID
+     * @param shard     新增分片
+     * @return 返回结果
+     */
+    @PostMapping("/addShard")
+    public Result addShard(@RequestParam String mappingId, @RequestBody RedisSyncConfig.RedisDataSourceConfig shard) {
+        boolean success = redisMappingService.addShard(mappingId, shard);
+        if (success) {
+            return new Result(Result.success, "success");
+        } else {
+            return new Result(Result.fail, "fail");
+        }
+    }
+
+    /**
+     * 继续分片迁移（上次迁移失败或中断后重新执行，完成后清除迁移前分片）
+     *
+     * @param mappingId 数据同步定义ID
+     * @return 返回结果
+     */
+    @PostMapping("/resumeShard")
+    public Result resumeShard(@RequestParam String mappingId) {
+        boolean success = redisMappingService.resumeShard(mappingId);
+        if (success) {
+            return new Result(Result.success, "success");
+        } else {
+            return new Result(Result.fail, "fail");
+        }
+    }
+
 }
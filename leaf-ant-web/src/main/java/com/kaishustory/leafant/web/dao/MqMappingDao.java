@@ -12,6 +12,7 @@
 
 package com.kaishustory.leafant.web.dao;
 
+import com.kaishustory.leafant.common.model.MqSchema;
 import com.kaishustory.leafant.common.model.MqSyncConfig;
 import com.kaishustory.leafant.common.utils.Page;
 import org.springframework.beans.factory.annotation.Value;
@@ -33,6 +34,10 @@ public class MqMappingDao {
      * 集合
      */
     private final String collection = "mq_mapping";
+    /**
+     * 二进制格式结构集合
+     */
+    private final String schemaCollection = "mq_schema";
     @Resource(name = "mongoTemplate")
     private MongoTemplate mongoTemplate;
     /**
@@ -78,4 +83,14 @@ public class MqMappingDao {
     public MqSyncConfig find(String mappingId) {
         return mongoTemplate.findById(mappingId, MqSyncConfig.class, collection);
     }
+
+    /**
+     * 查询二进制格式结构
+     *
+     * @param schemaId 结构ID
+     * @return 结构描述
+     */
+    public MqSchema findSchema(String schemaId) {
+        return mongoTemplate.findById(schemaId, MqSchema.class, schemaCollection);
+    }
 }
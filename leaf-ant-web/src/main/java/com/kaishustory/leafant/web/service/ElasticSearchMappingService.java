@@ -30,8 +30,14 @@ import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import static com.kaishustory.leafant.common.constants.EventConstants.ACTION_INDEX_COPY;
+import static com.kaishustory.leafant.common.constants.EventConstants.ACTION_INDEX_REBUILD;
+import static com.kaishustory.leafant.common.constants.EventConstants.ACTION_INDEX_SWITCH;
 import static com.kaishustory.leafant.common.constants.EventConstants.ACTION_LOAD;
+import static com.kaishustory.leafant.common.constants.EventConstants.LOAD_STATUS_COMPLETE;
+import static com.kaishustory.leafant.common.constants.EventConstants.LOAD_STATUS_FAIL;
 import static com.kaishustory.leafant.common.constants.MappingConstants.TYPE_ES;
+import static com.kaishustory.leafant.common.constants.MappingConstants.TYPE_LOCAL;
 import static com.kaishustory.leafant.common.constants.MappingConstants.TYPE_REDIS;
 import static com.kaishustory.message.common.model.RpcResponse.STATUS_SUCCESS;
 
@@ -41,6 +47,16 @@ import static com.kaishustory.message.common.model.RpcResponse.STATUS_SUCCESS;
 @Service
 public class ElasticSearchMappingService {
 
+    /**
+     * 复制索引最长等待时间（毫秒）
+     */
+    private static final long COPY_TIMEOUT = 24 * 60 * 60 * 1000L;
+
+    /**
+     * 复制索引状态检查间隔（毫秒）
+     */
+    private static final long COPY_CHECK_INTERVAL = 10 * 1000L;
+
     /**
      * Es同步映射配置Dao
      */
@@ -123,21 +139,112 @@ public class ElasticSearchMappingService {
             return false;
         }
 
-        new Thread(() -> {
-            Log.info("ES 初始化开始。database：{}，table：{}", esSyncConfig.getMasterTable().getDataSourceConfig().getDatabase(), esSyncConfig.getMasterTable().getDataSourceConfig().getTable());
-            // 初始化ES数据
-            RpcResponse esResponse = loadMessageProducer.sendSyncMsg(new RpcRequest(ACTION_LOAD, JsonUtils.toJson(new EsInitLoadInfo(esSyncConfig))), 3, TimeUnit.HOURS);
-            if (esResponse.success()) {
-                Log.info("ES 初始化成功。database：{}，table：{}", esSyncConfig.getMasterTable().getDataSourceConfig().getDatabase(), esSyncConfig.getMasterTable().getDataSourceConfig().getTable());
-            } else {
-                Log.error("ES 初始化失败。database：{}，table：{}", esSyncConfig.getMasterTable().getDataSourceConfig().getDatabase(), esSyncConfig.getMasterTable().getDataSourceConfig().getTable());
+        new Thread(() -> load(esSyncConfig), "es-load-monitor-thread").start();
+
+        return true;
+    }
+
+    /**
+     * 重建索引（创建新版本索引并双写，全量导入完成后切换别名）
+     *
+     * @param esSyncConfig 新索引定义
+     * @param fromIndex    是否从现有索引复制（仅ES字段设置变更时使用，不重新读取MySQL）
+     */
+    public boolean rebuildIndex(EsSyncConfig esSyncConfig, boolean fromIndex) {
+        // 发送重建索引消息
+        RpcResponse response = createMappingMessageProducer.sendSyncMsg(new RpcRequest(ACTION_INDEX_REBUILD, JsonUtils.toJson(esSyncConfig)));
+        if (response == null || !response.success()) {
+            Log.error("ES 重建索引失败。mappingId：{}，index：{}", esSyncConfig.getId(), esSyncConfig.getIndex());
+            return false;
+        }
+
+        // 查询映射配置（包括新版本索引）
+        EsSyncConfig rebuildConfig = elasticSearchMappingDao.find(esSyncConfig.getId());
+        Log.info("ES 重建索引开始。index：{}，rebuildIndex：{}", rebuildConfig.getIndex(), rebuildConfig.getRebuildIndex());
 
+        new Thread(() -> {
+            // 全量导入（或从现有索引复制）新版本索引，完成后切换
+            if (fromIndex ? copy(rebuildConfig) : load(rebuildConfig)) {
+                switchIndex(rebuildConfig.getId());
             }
-        }, "es-load-monitor-thread").start();
+        }, "es-rebuild-monitor-thread").start();
 
         return true;
     }
 
+    /**
+     * 切换索引（别名切换到重建完成的新版本索引）
+     *
+     * @param mappingId 数据同步定义ID
+     */
+    public boolean switchIndex(String mappingId) {
+        // 切换前补写重建期间变更文档，可能耗时较长
+        RpcResponse response = createMappingMessageProducer.sendSyncMsg(new RpcRequest(ACTION_INDEX_SWITCH, mappingId), 30, TimeUnit.MINUTES);
+        if (response != null && response.success()) {
+            Log.info("ES 切换索引成功。mappingId：{}", mappingId);
+            return true;
+        } else {
+            Log.error("ES 切换索引失败。mappingId：{}，status：{}", mappingId, response != null ? response.getStatus() : "timeout");
+            return false;
+        }
+    }
+
+    /**
+     * 从现有索引复制数据到重建索引（后台复制，按初始化状态等待完成）
+     *
+     * @param esSyncConfig 映射配置
+     * @return 是否成功
+     */
+    private boolean copy(EsSyncConfig esSyncConfig) {
+        Log.info("ES 复制索引开始。index：{} -> {}", esSyncConfig.getIndex(), esSyncConfig.getRebuildIndex());
+        RpcResponse response = createMappingMessageProducer.sendSyncMsg(new RpcRequest(ACTION_INDEX_COPY, esSyncConfig.getId()));
+        if (response == null || !response.success()) {
+            Log.error("ES 复制索引启动失败。index：{} -> {}，status：{}", esSyncConfig.getIndex(), esSyncConfig.getRebuildIndex(), response != null ? response.getStatus() : "timeout");
+            return false;
+        }
+        long deadline = System.currentTimeMillis() + COPY_TIMEOUT;
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                Thread.sleep(COPY_CHECK_INTERVAL);
+                EsSyncConfig current = elasticSearchMappingDao.find(esSyncConfig.getId());
+                if (current == null) {
+                    Log.error("ES 复制索引失败，配置已删除。mappingId：{}", esSyncConfig.getId());
+                    return false;
+                }
+                if (LOAD_STATUS_COMPLETE.equals(current.getInit())) {
+                    Log.info("ES 复制索引成功。index：{} -> {}", esSyncConfig.getIndex(), esSyncConfig.getRebuildIndex());
+                    return true;
+                }
+                if (LOAD_STATUS_FAIL.equals(current.getInit())) {
+                    Log.error("ES 复制索引失败。index：{} -> {}", esSyncConfig.getIndex(), esSyncConfig.getRebuildIndex());
+                    return false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Log.error("ES 复制索引等待超时，复制完成后请手动切换。index：{} -> {}", esSyncConfig.getIndex(), esSyncConfig.getRebuildIndex());
+        return false;
+    }
+
+    /**
+     * 全量导入数据（同步等待完成）
+     *
+     * @param esSyncConfig 映射配置
+     * @return 是否成功
+     */
+    private boolean load(EsSyncConfig esSyncConfig) {
+        Log.info("ES 初始化开始。database：{}，table：{}", esSyncConfig.getMasterTable().getDataSourceConfig().getDatabase(), esSyncConfig.getMasterTable().getDataSourceConfig().getTable());
+        // 初始化ES数据
+        RpcResponse esResponse = loadMessageProducer.sendSyncMsg(new RpcRequest(ACTION_LOAD, JsonUtils.toJson(new EsInitLoadInfo(esSyncConfig))), 3, TimeUnit.HOURS);
+        if (esResponse.success()) {
+            Log.info("ES 初始化成功。database：{}，table：{}", esSyncConfig.getMasterTable().getDataSourceConfig().getDatabase(), esSyncConfig.getMasterTable().getDataSourceConfig().getTable());
+        } else {
+            Log.error("ES 初始化失败。database：{}，table：{}", esSyncConfig.getMasterTable().getDataSourceConfig().getDatabase(), esSyncConfig.getMasterTable().getDataSourceConfig().getTable());
+        }
+        return esResponse.success();
+    }
+
     /**
      * 同步状态变更
      *
@@ -154,7 +261,7 @@ public class ElasticSearchMappingService {
                 esSyncConfig.getTableList().stream().filter(EsSyncMappingTable::isChild).forEach(child -> {
                     syncMessageProducer.sendSyncMsg(new RpcRequest(TYPE_REDIS, JsonUtils.toJson(new SyncStatus(TYPE_REDIS, child.getRedisMappingId(), syncStatus))));
                 });
-            } else if (TYPE_ES.equals(esSyncConfig.getCopyChildType())) {
+            } else if (TYPE_ES.equals(esSyncConfig.getCopyChildType()) || TYPE_LOCAL.equals(esSyncConfig.getCopyChildType())) {
                 esSyncConfig.getTableList().stream().filter(EsSyncMappingTable::isChild).forEach(child -> {
                     syncMessageProducer.sendSyncMsg(new RpcRequest(TYPE_ES, JsonUtils.toJson(new SyncStatus(TYPE_ES, child.getEsCopyMappingId(), syncStatus))));
                 });
@@ -0,0 +1,60 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.kaishustory.leafant.web.service;
+
+import com.kaishustory.leafant.common.utils.JsonUtils;
+import com.kaishustory.leafant.common.utils.Log;
+import com.kaishustory.message.common.model.RpcRequest;
+import com.kaishustory.message.common.model.RpcResponse;
+import com.kaishustory.message.producer.NettyTopicProducer;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.kaishustory.leafant.common.constants.EventConstants.ACTION_ROUTE_STATS;
+import static com.kaishustory.message.common.model.RpcResponse.STATUS_SUCCESS;
+
+/**
+ * 运行监控
+ **/
+@Service
+public class MonitorService {
+
+    /**
+     * 查询超时（秒）
+     */
+    private static final int STATS_TIMEOUT = 10;
+
+    /**
+     * 映射管理
+     */
+    @Resource(name = "createMappingMessageProducerObject")
+    private NettyTopicProducer createMappingMessageProducer;
+
+    /**
+     * 查询事件路由目标队列深度（处理请求的转换节点）
+     *
+     * @return 队列深度 <目标类型，等待任务数>，查询失败时为空
+     */
+    public Map routeQueueDepth() {
+        RpcResponse response = createMappingMessageProducer.sendSyncMsg(new RpcRequest(ACTION_ROUTE_STATS, ""), STATS_TIMEOUT, TimeUnit.SECONDS);
+        if (response != null && response.getStatus() == STATUS_SUCCESS) {
+            return JsonUtils.fromJson(response.getData(), Map.class);
+        } else {
+            Log.error("查询事件路由队列深度失败。response：{}", response);
+            return null;
+        }
+    }
+}
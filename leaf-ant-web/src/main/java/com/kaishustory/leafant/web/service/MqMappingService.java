@@ -13,6 +13,7 @@
 package com.kaishustory.leafant.web.service;
 
 import com.kaishustory.leafant.common.model.InitLoadInfo;
+import com.kaishustory.leafant.common.model.MqSchema;
 import com.kaishustory.leafant.common.model.MqSyncConfig;
 import com.kaishustory.leafant.common.model.SyncStatus;
 import com.kaishustory.leafant.common.utils.JsonUtils;
@@ -84,6 +85,16 @@ public class MqMappingService {
         return domains;
     }
 
+    /**
+     * 查询二进制格式结构（二进制消费方按消息属性 schemaId 查询）
+     *
+     * @param schemaId 结构ID
+     * @return 结构描述
+     */
+    public MqSchema findSchema(String schemaId) {
+        return mqMappingDao.findSchema(schemaId);
+    }
+
     /**
      * 创建映射
      *
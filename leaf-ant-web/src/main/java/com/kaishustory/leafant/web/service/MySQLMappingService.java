@@ -13,6 +13,7 @@
 package com.kaishustory.leafant.web.service;
 
 import com.kaishustory.leafant.common.model.InitLoadInfo;
+import com.kaishustory.leafant.common.model.MySQLReshardChange;
 import com.kaishustory.leafant.common.model.MySQLSyncConfig;
 import com.kaishustory.leafant.common.model.SyncStatus;
 import com.kaishustory.leafant.common.utils.JsonUtils;
@@ -29,6 +30,8 @@ import javax.annotation.Resource;
 import java.util.concurrent.TimeUnit;
 
 import static com.kaishustory.leafant.common.constants.EventConstants.ACTION_LOAD;
+import static com.kaishustory.leafant.common.constants.EventConstants.ACTION_MYSQL_RESHARD;
+import static com.kaishustory.leafant.common.constants.EventConstants.ACTION_MYSQL_RESHARD_FINISH;
 import static com.kaishustory.leafant.common.constants.MappingConstants.TYPE_MYSQL;
 import static com.kaishustory.message.common.model.RpcResponse.STATUS_SUCCESS;
 
@@ -38,6 +41,16 @@ import static com.kaishustory.message.common.model.RpcResponse.STATUS_SUCCESS;
 @Service
 public class MySQLMappingService {
 
+    /**
+     * 重新分表补写最长等待时间（小时，大于数据加载最长等待时间）
+     */
+    private static final long LOAD_TIMEOUT = 25;
+
+    /**
+     * 重新分表完成最长等待时间（分钟，包含删除记录复核）
+     */
+    private static final long FINISH_TIMEOUT = 60;
+
     /**
      * MySQL同步映射配置Dao
      */
@@ -141,5 +154,80 @@ public class MySQLMappingService {
         syncMessageProducer.sendSyncMsg(new RpcRequest(TYPE_MYSQL, JsonUtils.toJson(new SyncStatus(TYPE_MYSQL, mappingId, syncStatus))));
     }
 
+    /**
+     * 重新分表（新分表生效并同时写入原分表，后台补写变更分表的记录，完成后停止写入原分表）
+     *
+     * @param reshardChange 分表变更
+     * @return 是否开始迁移
+     */
+    public boolean reshard(MySQLReshardChange reshardChange) {
+
+        // 查询映射配置
+        MySQLSyncConfig mysqlSyncConfig = mysqlMappingDao.find(reshardChange.getMappingId());
+
+        if (mysqlSyncConfig == null) {
+            Log.error("MySQL 配置ID不存在。{}", reshardChange.getMappingId());
+            return false;
+        }
+
+        // 新分表规则生效
+        RpcResponse response = createMappingMessageProducer.sendSyncMsg(new RpcRequest(ACTION_MYSQL_RESHARD, JsonUtils.toJson(reshardChange)));
+        if (response == null || !response.success()) {
+            Log.error("MySQL 重新分表失败。table：{}，strategy：{}，status：{}", mysqlSyncConfig.getSourceTable(), reshardChange.getShardingStrategy(), response != null ? response.getStatus() : "timeout");
+            return false;
+        }
+
+        new Thread(() -> backfill(mysqlSyncConfig), "mysql-reshard-monitor-thread").start();
+        return true;
+    }
+
+    /**
+     * 继续重新分表（补写失败或中断后，重新补写并完成迁移）
+     *
+     * @param mappingId 数据同步定义ID
+     * @return 是否开始补写
+     */
+    public boolean resumeReshard(String mappingId) {
+        MySQLSyncConfig mysqlSyncConfig = mysqlMappingDao.find(mappingId);
+        if (mysqlSyncConfig == null || !mysqlSyncConfig.isMigrating()) {
+            Log.error("MySQL 映射不在重新分表中。{}", mappingId);
+            return false;
+        }
+        new Thread(() -> backfill(mysqlSyncConfig), "mysql-reshard-monitor-thread").start();
+        return true;
+    }
+
+    /**
+     * 完成重新分表（复核补写期间删除的记录，停止写入原分表）
+     *
+     * @param mappingId 数据同步定义ID
+     * @return 是否完成
+     */
+    public boolean finishReshard(String mappingId) {
+        RpcResponse response = createMappingMessageProducer.sendSyncMsg(new RpcRequest(ACTION_MYSQL_RESHARD_FINISH, mappingId), FINISH_TIMEOUT, TimeUnit.MINUTES);
+        if (response == null || !response.success()) {
+            Log.error("MySQL 重新分表完成失败，继续同时写入原分表。mappingId：{}，status：{}", mappingId, response != null ? response.getStatus() : "timeout");
+            return false;
+        }
+        Log.info("MySQL 重新分表完成。mappingId：{}", mappingId);
+        return true;
+    }
+
+    /**
+     * 补写目标分表变更的记录，完成后停止写入原分表
+     *
+     * @param mysqlSyncConfig MySQL映射配置
+     */
+    private void backfill(MySQLSyncConfig mysqlSyncConfig) {
+        Log.info("MySQL 重新分表补写开始。database：{}，table：{}", mysqlSyncConfig.getSourceDatabase(), mysqlSyncConfig.getSourceTable());
+        InitLoadInfo initLoadInfo = new InitLoadInfo(TYPE_MYSQL, mysqlSyncConfig.getId(), mysqlSyncConfig.getSourceDataSource());
+        initLoadInfo.setReshard(true);
+        RpcResponse loadResponse = loadMessageProducer.sendSyncMsg(new RpcRequest(ACTION_LOAD, JsonUtils.toJson(initLoadInfo)), LOAD_TIMEOUT, TimeUnit.HOURS);
+        if (loadResponse == null || !loadResponse.success()) {
+            Log.error("MySQL 重新分表补写失败，继续同时写入原分表，可继续迁移。database：{}，table：{}，status：{}", mysqlSyncConfig.getSourceDatabase(), mysqlSyncConfig.getSourceTable(), loadResponse != null ? loadResponse.getStatus() : "timeout");
+            return;
+        }
+        finishReshard(mysqlSyncConfig.getId());
+    }
 
 }
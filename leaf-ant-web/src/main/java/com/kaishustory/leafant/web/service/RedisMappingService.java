@@ -13,6 +13,7 @@
 package com.kaishustory.leafant.web.service;
 
 import com.kaishustory.leafant.common.model.InitLoadInfo;
+import com.kaishustory.leafant.common.model.RedisShardChange;
 import com.kaishustory.leafant.common.model.RedisSyncConfig;
 import com.kaishustory.leafant.common.model.SyncStatus;
 import com.kaishustory.leafant.common.utils.JsonUtils;
@@ -29,6 +30,8 @@ import javax.annotation.Resource;
 import java.util.concurrent.TimeUnit;
 
 import static com.kaishustory.leafant.common.constants.EventConstants.ACTION_LOAD;
+import static com.kaishustory.leafant.common.constants.EventConstants.ACTION_REDIS_ADD_SHARD;
+import static com.kaishustory.leafant.common.constants.EventConstants.ACTION_REDIS_RESUME_SHARD;
 import static com.kaishustory.leafant.common.constants.MappingConstants.TYPE_REDIS;
 import static com.kaishustory.message.common.model.RpcResponse.STATUS_SUCCESS;
 
@@ -38,6 +41,16 @@ import static com.kaishustory.message.common.model.RpcResponse.STATUS_SUCCESS;
 @Service
 public class RedisMappingService {
 
+    /**
+     * 分片迁移最长等待时间（毫秒）
+     */
+    private static final long MIGRATE_TIMEOUT = 6 * 60 * 60 * 1000L;
+
+    /**
+     * 分片迁移状态检查间隔（毫秒）
+     */
+    private static final long MIGRATE_CHECK_INTERVAL = 10 * 1000L;
+
     /**
      * Redis同步映射配置Dao
      */
@@ -90,9 +103,14 @@ public class RedisMappingService {
      */
     public boolean createMapping(RedisSyncConfig redisSyncConfig) {
 
+        // 过期数据不能清除索引成员，不支持同时配置
+        if (redisSyncConfig.getExpireSeconds() > 0 && redisSyncConfig.hasIndex()) {
+            Log.error("Redis 创建映射失败，过期时间不能与二级索引同时配置。key_prefix：{}", redisSyncConfig.getRedisKeyPrefix());
+            return false;
+        }
         // 发送创建映射消息
         RpcResponse response = createMappingMessageProducer.sendSyncMsg(new RpcRequest(TYPE_REDIS, JsonUtils.toJson(redisSyncConfig)));
-        if (response.getStatus() == STATUS_SUCCESS) {
+        if (response != null && response.getStatus() == STATUS_SUCCESS) {
             Log.info("Redis 创建映射成功。key_prefix：{}", redisSyncConfig.getRedisKeyPrefix());
             return true;
         } else {
@@ -120,7 +138,7 @@ public class RedisMappingService {
             Log.info("Redis 初始化开始。database：{}，table：{}", redisSyncConfig.getDataSourceConfig().getDatabase(), redisSyncConfig.getDataSourceConfig().getTable());
             // 发送初始数据消息
             RpcResponse response = loadMessageProducer.sendSyncMsg(new RpcRequest(ACTION_LOAD, JsonUtils.toJson(new InitLoadInfo(TYPE_REDIS, mappingId, redisSyncConfig.getDataSourceConfig()))), 3, TimeUnit.HOURS);
-            if (response.getStatus() == STATUS_SUCCESS) {
+            if (response != null && response.getStatus() == STATUS_SUCCESS) {
                 Log.info("Redis 初始化数据成功。database：{}，table：{}", redisSyncConfig.getDataSourceConfig().getDatabase(), redisSyncConfig.getDataSourceConfig().getTable());
             } else {
                 Log.error("Redis 初始化数据失败。database：{}，table：{}", redisSyncConfig.getDataSourceConfig().getDatabase(), redisSyncConfig.getDataSourceConfig().getTable());
@@ -141,5 +159,75 @@ public class RedisMappingService {
         syncMessageProducer.sendSyncMsg(new RpcRequest(TYPE_REDIS, JsonUtils.toJson(new SyncStatus(TYPE_REDIS, mappingId, syncStatus))));
     }
 
+    /**
+     * 增加分片（迁移新分片负责的Key，后台等待完成）
+     *
+     * @param mappingId 数据同步定义ID
+     * @param shard     新增分片
+     * @return 消息是否发送
+     */
+    public boolean addShard(String mappingId, RedisSyncConfig.RedisDataSourceConfig shard) {
+
+        // 查询映射配置
+        RedisSyncConfig redisSyncConfig = redisMappingDao.find(mappingId);
+
+        if (redisSyncConfig == null) {
+            Log.error("Redis 配置ID不存在。{}", mappingId);
+            return false;
+        }
+
+        // 新分片生效后，转换节点后台迁移
+        Log.info("Redis 增加分片开始。key_prefix：{}，shard：{}/{}", redisSyncConfig.getRedisKeyPrefix(), shard.getRedisAddr(), shard.getDatabase());
+        RpcResponse response = createMappingMessageProducer.sendSyncMsg(new RpcRequest(ACTION_REDIS_ADD_SHARD, JsonUtils.toJson(new RedisShardChange(mappingId, shard))));
+        if (response == null || response.getStatus() != STATUS_SUCCESS) {
+            Log.error("Redis 增加分片失败。key_prefix：{}，shard：{}/{}，status：{}", redisSyncConfig.getRedisKeyPrefix(), shard.getRedisAddr(), shard.getDatabase(), response != null ? response.getStatus() : "timeout");
+            return false;
+        }
+        new Thread(() -> waitMigrate(mappingId), "redis-shard-monitor-thread").start();
+        return true;
+    }
+
+    /**
+     * 继续分片迁移（上次迁移失败或中断后重新执行）
+     *
+     * @param mappingId 数据同步定义ID
+     * @return 是否开始迁移
+     */
+    public boolean resumeShard(String mappingId) {
+        RpcResponse response = createMappingMessageProducer.sendSyncMsg(new RpcRequest(ACTION_REDIS_RESUME_SHARD, mappingId));
+        if (response == null || response.getStatus() != STATUS_SUCCESS) {
+            Log.error("Redis 继续分片迁移失败。mappingId：{}，status：{}", mappingId, response != null ? response.getStatus() : "timeout");
+            return false;
+        }
+        new Thread(() -> waitMigrate(mappingId), "redis-shard-monitor-thread").start();
+        return true;
+    }
+
+    /**
+     * 等待分片迁移完成（迁移前分片清除）
+     *
+     * @param mappingId 数据同步定义ID
+     */
+    private void waitMigrate(String mappingId) {
+        long deadline = System.currentTimeMillis() + MIGRATE_TIMEOUT;
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                Thread.sleep(MIGRATE_CHECK_INTERVAL);
+                RedisSyncConfig config = redisMappingDao.find(mappingId);
+                if (config == null) {
+                    Log.error("Redis 分片迁移等待结束，配置已删除。mappingId：{}", mappingId);
+                    return;
+                }
+                if (config.getMigrateFromShards() == null || config.getMigrateFromShards().isEmpty()) {
+                    Log.info("Redis 分片迁移完成。key_prefix：{}，shards：{}", config.getRedisKeyPrefix(), config.getShards().size());
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Log.error("Redis 分片迁移未完成（迁移失败或仍在进行），可继续迁移。mappingId：{}", mappingId);
+    }
+
 
 }